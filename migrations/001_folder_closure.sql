@@ -0,0 +1,51 @@
+-- ==============================
+-- 001: Closure table cho cây thư mục
+-- Mỗi cặp (tổ tiên, hậu duệ) là một dòng, kể cả chính nó (Depth = 0).
+--   * Hậu duệ của X : SELECT DescendantID FROM FolderClosure WHERE AncestorID = X
+--   * Đường dẫn của X: SELECT ... FROM FolderClosure WHERE DescendantID = X ORDER BY Depth DESC
+--   * X nằm dưới Y ?  : SELECT 1 FROM FolderClosure WHERE AncestorID = Y AND DescendantID = X
+-- Chạy lại nhiều lần không sao (INSERT IGNORE). Yêu cầu MySQL 8 (WITH RECURSIVE).
+-- ==============================
+
+USE syncdb;
+
+CREATE TABLE IF NOT EXISTS FolderClosure (
+                               AncestorID INT NOT NULL,
+                               DescendantID INT NOT NULL,
+                               Depth INT NOT NULL,
+                               PRIMARY KEY (AncestorID, DescendantID),
+                               CONSTRAINT fk_closure_ancestor
+                                   FOREIGN KEY (AncestorID) REFERENCES Folders(FolderID)
+                                       ON UPDATE CASCADE ON DELETE CASCADE,
+                               CONSTRAINT fk_closure_descendant
+                                   FOREIGN KEY (DescendantID) REFERENCES Folders(FolderID)
+                                       ON UPDATE CASCADE ON DELETE CASCADE
+);
+
+-- Tạo index nếu chưa có (MySQL không hỗ trợ CREATE INDEX IF NOT EXISTS)
+SET @idx_exists = (SELECT COUNT(*) FROM information_schema.statistics
+                   WHERE table_schema = DATABASE() AND table_name = 'FolderClosure'
+                     AND index_name = 'idx_closure_descendant');
+SET @ddl = IF(@idx_exists = 0,
+              'CREATE INDEX idx_closure_descendant ON FolderClosure(DescendantID, Depth)',
+              'SELECT 1');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- Backfill từ ParentFolderID hiện có
+INSERT IGNORE INTO FolderClosure (AncestorID, DescendantID, Depth)
+WITH RECURSIVE paths (AncestorID, DescendantID, Depth) AS (
+    SELECT FolderID, FolderID, 0 FROM Folders
+    UNION ALL
+    SELECT p.AncestorID, f.FolderID, p.Depth + 1
+    FROM paths p
+    JOIN Folders f ON f.ParentFolderID = p.DescendantID
+)
+SELECT AncestorID, DescendantID, Depth FROM paths;
+
+-- Kiểm tra: mỗi folder phải có đúng một dòng Depth = 0
+SELECT COUNT(*) AS FoldersWithoutSelfRow
+FROM Folders f
+LEFT JOIN FolderClosure c ON c.AncestorID = f.FolderID AND c.DescendantID = f.FolderID
+WHERE c.AncestorID IS NULL;
@@ -0,0 +1,17 @@
+-- ==============================
+-- 002: Index theo nội dung file (FileHash, FileSize)
+-- Dùng cho UPLOAD_PREFLIGHT: tìm file đã có cùng nội dung để link/copy thay vì nhận lại từ client.
+-- Chạy lại nhiều lần không sao.
+-- ==============================
+
+USE syncdb;
+
+SET @idx_exists = (SELECT COUNT(*) FROM information_schema.statistics
+                   WHERE table_schema = DATABASE() AND table_name = 'Files'
+                     AND index_name = 'idx_files_hash');
+SET @ddl = IF(@idx_exists = 0,
+              'CREATE INDEX idx_files_hash ON Files(FileHash, FileSize)',
+              'SELECT 1');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
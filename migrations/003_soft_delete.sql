@@ -0,0 +1,27 @@
+-- ==============================
+-- 003: Thùng rác cho file (xóa mềm)
+-- DELETE_FILE chỉ đặt DeletedAt/DeletedBy; TrashCollector xóa hẳn (dòng DB + nội dung trên đĩa) khi quá hạn.
+-- Mọi truy vấn đọc file đều lọc DeletedAt IS NULL nên cần chạy migration này trước khi nâng cấp server.
+-- Chạy lại nhiều lần không sao.
+-- ==============================
+
+USE syncdb;
+
+SET @col_exists = (SELECT COUNT(*) FROM information_schema.columns
+                   WHERE table_schema = DATABASE() AND table_name = 'Files' AND column_name = 'DeletedAt');
+SET @ddl = IF(@col_exists = 0,
+              'ALTER TABLE Files ADD COLUMN DeletedAt TIMESTAMP NULL DEFAULT NULL, ADD COLUMN DeletedBy INT NULL',
+              'SELECT 1');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @idx_exists = (SELECT COUNT(*) FROM information_schema.statistics
+                   WHERE table_schema = DATABASE() AND table_name = 'Files'
+                     AND index_name = 'idx_files_deleted');
+SET @ddl = IF(@idx_exists = 0,
+              'CREATE INDEX idx_files_deleted ON Files(DeletedAt)',
+              'SELECT 1');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
@@ -0,0 +1,47 @@
+-- ==============================
+-- 004: Lịch sử phiên bản file
+-- Files.VersionNo: số phiên bản của nội dung hiện tại (tăng khi nội dung đổi).
+-- FileVersions: các phiên bản cũ. Nội dung nằm ở <storage.versions.root>/ab/cd/<FileID>/<VersionNo>.full|.delta
+--   Kind = PENDING : vừa bị thay, đang là bản đầy đủ (hard link tới nội dung cũ), chờ VersionCompactor nén
+--          FULL    : giữ bản đầy đủ (delta không lợi hơn / file quá lớn)
+--          DELTA   : delta nhị phân để dựng lại từ phiên bản BaseVersionNo (mới hơn)
+-- Chạy lại nhiều lần không sao.
+-- ==============================
+
+USE syncdb;
+
+SET @col_exists = (SELECT COUNT(*) FROM information_schema.columns
+                   WHERE table_schema = DATABASE() AND table_name = 'Files' AND column_name = 'VersionNo');
+SET @ddl = IF(@col_exists = 0,
+              'ALTER TABLE Files ADD COLUMN VersionNo INT NOT NULL DEFAULT 1',
+              'SELECT 1');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+CREATE TABLE IF NOT EXISTS FileVersions (
+                              VersionID INT AUTO_INCREMENT PRIMARY KEY,
+                              FileID INT NOT NULL,
+                              VersionNo INT NOT NULL,
+                              FileSize BIGINT NOT NULL,
+                              FileHash CHAR(64),
+                              LastModified TIMESTAMP NULL DEFAULT NULL,
+                              CreatedAt TIMESTAMP DEFAULT CURRENT_TIMESTAMP, -- lúc bị thay bởi phiên bản mới
+                              Kind ENUM('PENDING','FULL','DELTA') NOT NULL DEFAULT 'PENDING',
+                              BaseVersionNo INT NULL,
+                              StoredSize BIGINT NOT NULL,
+                              CONSTRAINT fk_versions_file
+                                  FOREIGN KEY (FileID) REFERENCES Files(FileID)
+                                      ON UPDATE CASCADE ON DELETE CASCADE,
+                              CONSTRAINT uq_file_version UNIQUE (FileID, VersionNo)
+);
+
+SET @idx_exists = (SELECT COUNT(*) FROM information_schema.statistics
+                   WHERE table_schema = DATABASE() AND table_name = 'FileVersions'
+                     AND index_name = 'idx_versions_kind');
+SET @ddl = IF(@idx_exists = 0,
+              'CREATE INDEX idx_versions_kind ON FileVersions(Kind)',
+              'SELECT 1');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
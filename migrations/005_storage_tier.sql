@@ -0,0 +1,29 @@
+-- ==============================
+-- 005: Lưu trữ phân tầng (nóng / lạnh)
+-- Files.Tier      : 0 = nội dung ở storage chính, 1 = đã chuyển sang tier.cold.root (có thể đã nén gzip)
+-- Files.ColdSize  : số byte thực chiếm ở tầng lạnh (sau nén), NULL khi ở tầng nóng
+-- Files.LastAccessedAt: lần đọc gần nhất (ghi theo lô bởi TieringService), NULL = chưa đọc từ khi upload
+-- Upsert đặt lại Tier = 0 nên cần chạy migration này trước khi nâng cấp server.
+-- Chạy lại nhiều lần không sao.
+-- ==============================
+
+USE syncdb;
+
+SET @col_exists = (SELECT COUNT(*) FROM information_schema.columns
+                   WHERE table_schema = DATABASE() AND table_name = 'Files' AND column_name = 'Tier');
+SET @ddl = IF(@col_exists = 0,
+              'ALTER TABLE Files ADD COLUMN Tier TINYINT NOT NULL DEFAULT 0, ADD COLUMN ColdSize BIGINT NULL, ADD COLUMN LastAccessedAt TIMESTAMP NULL DEFAULT NULL',
+              'SELECT 1');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @idx_exists = (SELECT COUNT(*) FROM information_schema.statistics
+                   WHERE table_schema = DATABASE() AND table_name = 'Files'
+                     AND index_name = 'idx_files_tier');
+SET @ddl = IF(@idx_exists = 0,
+              'CREATE INDEX idx_files_tier ON Files(Tier, FileID)',
+              'SELECT 1');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
@@ -0,0 +1,28 @@
+-- ==============================
+-- 006: Gói file nhỏ vào segment (storage.pack.enabled)
+-- PackedContent: nội dung của file nằm ở <storage.pack.root>/seg-<SegmentID>.pack, từ byte SegmentOffset,
+--   dài Length byte. File không có dòng ở đây thì nội dung nằm riêng như cũ (path / object layout).
+-- Chạy lại nhiều lần không sao.
+-- ==============================
+
+USE syncdb;
+
+CREATE TABLE IF NOT EXISTS PackedContent (
+                              FileID INT NOT NULL PRIMARY KEY,
+                              SegmentID INT NOT NULL,
+                              SegmentOffset BIGINT NOT NULL,
+                              Length INT NOT NULL,
+                              CONSTRAINT fk_packed_file
+                                  FOREIGN KEY (FileID) REFERENCES Files(FileID)
+                                      ON UPDATE CASCADE ON DELETE CASCADE
+);
+
+SET @idx_exists = (SELECT COUNT(*) FROM information_schema.statistics
+                   WHERE table_schema = DATABASE() AND table_name = 'PackedContent'
+                     AND index_name = 'idx_packed_segment');
+SET @ddl = IF(@idx_exists = 0,
+              'CREATE INDEX idx_packed_segment ON PackedContent(SegmentID)',
+              'SELECT 1');
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
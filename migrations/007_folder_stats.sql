@@ -0,0 +1,101 @@
+-- ==============================
+-- 007: Thống kê dồn theo cây thư mục
+-- FolderStats: tổng dung lượng / số file / lần sửa mới nhất của các file còn sống (DeletedAt IS NULL) trong cả
+--   cây con của từng folder (gồm file của chính nó). Trigger trên Files cộng phần thay đổi vào mọi tổ tiên qua
+--   FolderClosure ngay trong câu lệnh đổi file (cùng transaction, O(độ sâu) dòng), nên mọi đường ghi (upload,
+--   xóa mềm, khôi phục, dọn thùng rác...) đều được tính mà không thêm round trip.
+--   NewestModified chỉ tăng: xóa file mới nhất không kéo lùi.
+--   Chuyển folder: FolderDAO.moveFolder tự trừ / cộng tổng của cây con vào tổ tiên cũ / mới.
+--   Trigger không chạy khi dòng Files bị xóa dây chuyền (ON DELETE CASCADE): xóa folder phải xóa file trước.
+-- FolderStats.QuotaBytes: hạn mức dung lượng của cây con (NULL = không giới hạn), kiểm tra khi upload (quota.enabled).
+-- Chạy lại nhiều lần không sao (tính lại toàn bộ từ Files; nên chạy khi server dừng).
+-- ==============================
+
+USE syncdb;
+
+CREATE TABLE IF NOT EXISTS FolderStats (
+                              FolderID INT NOT NULL PRIMARY KEY,
+                              TotalBytes BIGINT NOT NULL DEFAULT 0,
+                              FileCount INT NOT NULL DEFAULT 0,
+                              NewestModified TIMESTAMP NULL DEFAULT NULL,
+                              QuotaBytes BIGINT NULL DEFAULT NULL,
+                              CONSTRAINT fk_stats_folder
+                                  FOREIGN KEY (FolderID) REFERENCES Folders(FolderID)
+                                      ON UPDATE CASCADE ON DELETE CASCADE
+);
+
+DROP TRIGGER IF EXISTS trg_folders_stats_ins;
+DROP TRIGGER IF EXISTS trg_files_stats_ins;
+DROP TRIGGER IF EXISTS trg_files_stats_upd;
+DROP TRIGGER IF EXISTS trg_files_stats_del;
+DROP PROCEDURE IF EXISTS folder_stats_apply;
+
+DELIMITER //
+
+-- Cộng delta vào folder p_folder và mọi tổ tiên của nó
+CREATE PROCEDURE folder_stats_apply(IN p_folder INT, IN p_bytes BIGINT, IN p_count INT, IN p_modified TIMESTAMP)
+BEGIN
+    UPDATE FolderStats s JOIN FolderClosure c ON c.AncestorID = s.FolderID
+    SET s.TotalBytes = s.TotalBytes + p_bytes,
+        s.FileCount = s.FileCount + p_count,
+        s.NewestModified = IF(p_modified IS NOT NULL AND (s.NewestModified IS NULL OR p_modified > s.NewestModified),
+                              p_modified, s.NewestModified)
+    WHERE c.DescendantID = p_folder;
+END//
+
+CREATE TRIGGER trg_folders_stats_ins AFTER INSERT ON Folders FOR EACH ROW
+BEGIN
+    INSERT IGNORE INTO FolderStats (FolderID) VALUES (NEW.FolderID);
+END//
+
+CREATE TRIGGER trg_files_stats_ins AFTER INSERT ON Files FOR EACH ROW
+BEGIN
+    IF NEW.DeletedAt IS NULL THEN
+        CALL folder_stats_apply(NEW.FolderID, COALESCE(NEW.FileSize, 0), 1, NEW.LastModified);
+    END IF;
+END//
+
+-- Bỏ qua các UPDATE không đổi dung lượng / trạng thái / thời điểm sửa (LastAccessedAt, Tier...)
+CREATE TRIGGER trg_files_stats_upd AFTER UPDATE ON Files FOR EACH ROW
+BEGIN
+    DECLARE old_live INT DEFAULT IF(OLD.DeletedAt IS NULL, 1, 0);
+    DECLARE new_live INT DEFAULT IF(NEW.DeletedAt IS NULL, 1, 0);
+    IF OLD.FolderID <> NEW.FolderID THEN
+        IF old_live = 1 THEN
+            CALL folder_stats_apply(OLD.FolderID, -COALESCE(OLD.FileSize, 0), -1, NULL);
+        END IF;
+        IF new_live = 1 THEN
+            CALL folder_stats_apply(NEW.FolderID, COALESCE(NEW.FileSize, 0), 1, NEW.LastModified);
+        END IF;
+    ELSEIF old_live <> new_live
+        OR (new_live = 1 AND (NOT (OLD.FileSize <=> NEW.FileSize) OR NOT (OLD.LastModified <=> NEW.LastModified))) THEN
+        CALL folder_stats_apply(NEW.FolderID,
+                                new_live * COALESCE(NEW.FileSize, 0) - old_live * COALESCE(OLD.FileSize, 0),
+                                new_live - old_live,
+                                IF(new_live = 1, NEW.LastModified, NULL));
+    END IF;
+END//
+
+CREATE TRIGGER trg_files_stats_del AFTER DELETE ON Files FOR EACH ROW
+BEGIN
+    IF OLD.DeletedAt IS NULL THEN
+        CALL folder_stats_apply(OLD.FolderID, -COALESCE(OLD.FileSize, 0), -1, NULL);
+    END IF;
+END//
+
+DELIMITER ;
+
+-- Tính lại toàn bộ (lần đầu / sửa lệch)
+INSERT IGNORE INTO FolderStats (FolderID) SELECT FolderID FROM Folders;
+
+UPDATE FolderStats s
+    LEFT JOIN (SELECT c.AncestorID,
+                      SUM(COALESCE(f.FileSize, 0)) AS Bytes,
+                      COUNT(*) AS Cnt,
+                      MAX(COALESCE(f.LastModified, f.CreatedAt)) AS Newest
+               FROM FolderClosure c
+                        JOIN Files f ON f.FolderID = c.DescendantID AND f.DeletedAt IS NULL
+               GROUP BY c.AncestorID) t ON t.AncestorID = s.FolderID
+SET s.TotalBytes = COALESCE(t.Bytes, 0),
+    s.FileCount = COALESCE(t.Cnt, 0),
+    s.NewestModified = t.Newest;
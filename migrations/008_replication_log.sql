@@ -0,0 +1,213 @@
+-- ==============================
+-- 008: Nhật ký nhân bản (primary -> replica)
+-- ReplicationLog: mỗi thay đổi trên các bảng được nhân bản (Users, Folders, Files, FolderAccessControl,
+--   FileAccessControl, hạn mức trong FolderStats) ghi một dòng "ảnh dòng" JSON ngay trong câu lệnh đổi dữ liệu
+--   (trigger, cùng transaction). Op 'U': ảnh đầy đủ sau khi đổi (replica upsert), 'D': khóa chính (replica xóa).
+--   Cột TIMESTAMP được ghi thành mili giây epoch để không phụ thuộc múi giờ của session.
+--   Không ghi: FolderClosure / thống kê dồn (replica tự dựng như primary), cột tầng lạnh và LastAccessedAt của Files
+--   (trạng thái lưu trữ riêng của từng server), FileVersions / PackedContent.
+--   Dòng bị xóa dây chuyền (ON DELETE CASCADE) không qua trigger; replica xóa cùng khóa ngoại nên cũng dây chuyền y hệt.
+-- Session đang áp nhật ký trên replica đặt @replication_apply = 1 để không ghi lại những gì nó vừa áp.
+-- ReplicationState / ReplicationPendingContent: trạng thái của replica (seq đã áp, nội dung file còn phải tải).
+-- Chạy lại nhiều lần không sao.
+-- ==============================
+
+USE syncdb;
+
+CREATE TABLE IF NOT EXISTS ReplicationLog (
+                                Seq BIGINT AUTO_INCREMENT PRIMARY KEY,
+                                TableName VARCHAR(32) NOT NULL,
+                                Op CHAR(1) NOT NULL,
+                                RowData JSON NOT NULL,
+                                CreatedAt TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+                                INDEX idx_repl_created (CreatedAt)
+);
+
+CREATE TABLE IF NOT EXISTS ReplicationState (
+                                ID TINYINT NOT NULL PRIMARY KEY,
+                                AppliedSeq BIGINT NOT NULL DEFAULT 0,
+                                Promoted TINYINT NOT NULL DEFAULT 0,
+                                UpdatedAt TIMESTAMP NULL DEFAULT NULL
+);
+
+CREATE TABLE IF NOT EXISTS ReplicationPendingContent (
+                                FileID INT NOT NULL PRIMARY KEY
+);
+
+DROP TRIGGER IF EXISTS trg_users_repl_ins;
+DROP TRIGGER IF EXISTS trg_users_repl_upd;
+DROP TRIGGER IF EXISTS trg_users_repl_del;
+DROP TRIGGER IF EXISTS trg_folders_repl_ins;
+DROP TRIGGER IF EXISTS trg_folders_repl_upd;
+DROP TRIGGER IF EXISTS trg_folders_repl_del;
+DROP TRIGGER IF EXISTS trg_files_repl_ins;
+DROP TRIGGER IF EXISTS trg_files_repl_upd;
+DROP TRIGGER IF EXISTS trg_files_repl_del;
+DROP TRIGGER IF EXISTS trg_folacc_repl_ins;
+DROP TRIGGER IF EXISTS trg_folacc_repl_upd;
+DROP TRIGGER IF EXISTS trg_folacc_repl_del;
+DROP TRIGGER IF EXISTS trg_facc_repl_ins;
+DROP TRIGGER IF EXISTS trg_facc_repl_upd;
+DROP TRIGGER IF EXISTS trg_facc_repl_del;
+DROP TRIGGER IF EXISTS trg_stats_repl_ins;
+DROP TRIGGER IF EXISTS trg_stats_repl_upd;
+
+DELIMITER //
+
+CREATE TRIGGER trg_users_repl_ins AFTER INSERT ON Users FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData) VALUES ('Users', 'U', JSON_OBJECT(
+            'UserID', NEW.UserID, 'Username', NEW.Username, 'PasswordHash', NEW.PasswordHash, 'Email', NEW.Email,
+            'RoleID', NEW.RoleID, 'CreatedAt', ROUND(UNIX_TIMESTAMP(NEW.CreatedAt) * 1000)));
+    END IF;
+END//
+
+CREATE TRIGGER trg_users_repl_upd AFTER UPDATE ON Users FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData) VALUES ('Users', 'U', JSON_OBJECT(
+            'UserID', NEW.UserID, 'Username', NEW.Username, 'PasswordHash', NEW.PasswordHash, 'Email', NEW.Email,
+            'RoleID', NEW.RoleID, 'CreatedAt', ROUND(UNIX_TIMESTAMP(NEW.CreatedAt) * 1000)));
+    END IF;
+END//
+
+CREATE TRIGGER trg_users_repl_del AFTER DELETE ON Users FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData) VALUES ('Users', 'D', JSON_OBJECT('UserID', OLD.UserID));
+    END IF;
+END//
+
+CREATE TRIGGER trg_folders_repl_ins AFTER INSERT ON Folders FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData) VALUES ('Folders', 'U', JSON_OBJECT(
+            'FolderID', NEW.FolderID, 'ParentFolderID', NEW.ParentFolderID, 'FolderName', NEW.FolderName,
+            'LastModified', ROUND(UNIX_TIMESTAMP(NEW.LastModified) * 1000),
+            'CreatedAt', ROUND(UNIX_TIMESTAMP(NEW.CreatedAt) * 1000)));
+    END IF;
+END//
+
+CREATE TRIGGER trg_folders_repl_upd AFTER UPDATE ON Folders FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData) VALUES ('Folders', 'U', JSON_OBJECT(
+            'FolderID', NEW.FolderID, 'ParentFolderID', NEW.ParentFolderID, 'FolderName', NEW.FolderName,
+            'LastModified', ROUND(UNIX_TIMESTAMP(NEW.LastModified) * 1000),
+            'CreatedAt', ROUND(UNIX_TIMESTAMP(NEW.CreatedAt) * 1000)));
+    END IF;
+END//
+
+CREATE TRIGGER trg_folders_repl_del AFTER DELETE ON Folders FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData) VALUES ('Folders', 'D', JSON_OBJECT('FolderID', OLD.FolderID));
+    END IF;
+END//
+
+CREATE TRIGGER trg_files_repl_ins AFTER INSERT ON Files FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData) VALUES ('Files', 'U', JSON_OBJECT(
+            'FileID', NEW.FileID, 'FolderID', NEW.FolderID, 'FileName', NEW.FileName, 'FileSize', NEW.FileSize,
+            'FileHash', NEW.FileHash, 'LastModified', ROUND(UNIX_TIMESTAMP(NEW.LastModified) * 1000),
+            'CreatedAt', ROUND(UNIX_TIMESTAMP(NEW.CreatedAt) * 1000),
+            'DeletedAt', ROUND(UNIX_TIMESTAMP(NEW.DeletedAt) * 1000), 'DeletedBy', NEW.DeletedBy,
+            'VersionNo', NEW.VersionNo));
+    END IF;
+END//
+
+-- Chỉ đổi cột tầng lạnh / LastAccessedAt (TieringService) thì không ghi
+CREATE TRIGGER trg_files_repl_upd AFTER UPDATE ON Files FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL AND NOT (OLD.FolderID <=> NEW.FolderID AND OLD.FileName <=> NEW.FileName
+            AND OLD.FileSize <=> NEW.FileSize AND OLD.FileHash <=> NEW.FileHash
+            AND OLD.LastModified <=> NEW.LastModified AND OLD.DeletedAt <=> NEW.DeletedAt
+            AND OLD.DeletedBy <=> NEW.DeletedBy AND OLD.VersionNo <=> NEW.VersionNo) THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData) VALUES ('Files', 'U', JSON_OBJECT(
+            'FileID', NEW.FileID, 'FolderID', NEW.FolderID, 'FileName', NEW.FileName, 'FileSize', NEW.FileSize,
+            'FileHash', NEW.FileHash, 'LastModified', ROUND(UNIX_TIMESTAMP(NEW.LastModified) * 1000),
+            'CreatedAt', ROUND(UNIX_TIMESTAMP(NEW.CreatedAt) * 1000),
+            'DeletedAt', ROUND(UNIX_TIMESTAMP(NEW.DeletedAt) * 1000), 'DeletedBy', NEW.DeletedBy,
+            'VersionNo', NEW.VersionNo));
+    END IF;
+END//
+
+CREATE TRIGGER trg_files_repl_del AFTER DELETE ON Files FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData) VALUES ('Files', 'D', JSON_OBJECT('FileID', OLD.FileID));
+    END IF;
+END//
+
+CREATE TRIGGER trg_folacc_repl_ins AFTER INSERT ON FolderAccessControl FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData) VALUES ('FolderAccessControl', 'U', JSON_OBJECT(
+            'FolderAccessID', NEW.FolderAccessID, 'UserID', NEW.UserID, 'FolderID', NEW.FolderID,
+            'Permission', NEW.Permission, 'GrantedAt', ROUND(UNIX_TIMESTAMP(NEW.GrantedAt) * 1000)));
+    END IF;
+END//
+
+CREATE TRIGGER trg_folacc_repl_upd AFTER UPDATE ON FolderAccessControl FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData) VALUES ('FolderAccessControl', 'U', JSON_OBJECT(
+            'FolderAccessID', NEW.FolderAccessID, 'UserID', NEW.UserID, 'FolderID', NEW.FolderID,
+            'Permission', NEW.Permission, 'GrantedAt', ROUND(UNIX_TIMESTAMP(NEW.GrantedAt) * 1000)));
+    END IF;
+END//
+
+CREATE TRIGGER trg_folacc_repl_del AFTER DELETE ON FolderAccessControl FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData)
+        VALUES ('FolderAccessControl', 'D', JSON_OBJECT('FolderAccessID', OLD.FolderAccessID));
+    END IF;
+END//
+
+CREATE TRIGGER trg_facc_repl_ins AFTER INSERT ON FileAccessControl FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData) VALUES ('FileAccessControl', 'U', JSON_OBJECT(
+            'FileAccessID', NEW.FileAccessID, 'UserID', NEW.UserID, 'FileID', NEW.FileID,
+            'Permission', NEW.Permission, 'GrantedAt', ROUND(UNIX_TIMESTAMP(NEW.GrantedAt) * 1000)));
+    END IF;
+END//
+
+CREATE TRIGGER trg_facc_repl_upd AFTER UPDATE ON FileAccessControl FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData) VALUES ('FileAccessControl', 'U', JSON_OBJECT(
+            'FileAccessID', NEW.FileAccessID, 'UserID', NEW.UserID, 'FileID', NEW.FileID,
+            'Permission', NEW.Permission, 'GrantedAt', ROUND(UNIX_TIMESTAMP(NEW.GrantedAt) * 1000)));
+    END IF;
+END//
+
+CREATE TRIGGER trg_facc_repl_del AFTER DELETE ON FileAccessControl FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData)
+        VALUES ('FileAccessControl', 'D', JSON_OBJECT('FileAccessID', OLD.FileAccessID));
+    END IF;
+END//
+
+-- FolderStats: chỉ hạn mức được nhân bản (tổng dung lượng do trigger của mỗi server tự giữ)
+CREATE TRIGGER trg_stats_repl_ins AFTER INSERT ON FolderStats FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL AND NEW.QuotaBytes IS NOT NULL THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData)
+        VALUES ('FolderStats', 'U', JSON_OBJECT('FolderID', NEW.FolderID, 'QuotaBytes', NEW.QuotaBytes));
+    END IF;
+END//
+
+CREATE TRIGGER trg_stats_repl_upd AFTER UPDATE ON FolderStats FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL AND NOT (OLD.QuotaBytes <=> NEW.QuotaBytes) THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData)
+        VALUES ('FolderStats', 'U', JSON_OBJECT('FolderID', NEW.FolderID, 'QuotaBytes', NEW.QuotaBytes));
+    END IF;
+END//
+
+DELIMITER ;
@@ -1,9 +1,7 @@
 package com.pbl4.syncproject.client.controllers;
 
-import com.google.gson.JsonObject;
 import com.pbl4.syncproject.client.services.ClientConnectionManager;
 import com.pbl4.syncproject.common.jsonhandler.JsonUtils;
-import com.pbl4.syncproject.common.jsonhandler.Request;
 import com.pbl4.syncproject.common.jsonhandler.Response;
 
 import javafx.fxml.FXML;
@@ -75,15 +73,8 @@ public class LoginController {
                     connectionManager.connect(ip, port);
                 }
                 
-                JsonObject data = new JsonObject();
-                data.addProperty("username", username);
-                data.addProperty("password", password);
-
-                Request req = new Request("LOGIN", data);
-                String jsonString = JsonUtils.toJson(req);
-
-                // Gửi yêu cầu và nhận phản hồi qua manager
-                String responseStr = connectionManager.sendRequestAndGetResponse(jsonString);
+                // Gửi LOGIN qua manager: manager nhớ tài khoản để đăng nhập lại khi phải kết nối lại
+                String responseStr = connectionManager.login(username, password);
                 
                 if (responseStr == null) {
                     throw new IOException("Không nhận được phản hồi từ server.");
@@ -644,8 +644,30 @@ public class MainController implements Initializable {
         );
 
         if (confirmed) {
-            // TODO: Implement delete logic via NetworkService
-            mainView.setStatusMessage("Chức năng delete sẽ được implement");
+            if (fileItem.getFileId() <= 0) {
+                mainView.setStatusMessage("Không xác định được file trên server, hãy làm mới danh sách");
+                return;
+            }
+            TaskWrapper.executeAsync(
+                "Đang xóa file...",
+                () -> {
+                    try {
+                        Response response = networkService.deleteFile(fileItem.getFileId());
+                        if (response == null || !"success".equals(response.getStatus())) {
+                            throw new Exception(response != null ? response.getMessage() : "Lỗi không xác định");
+                        }
+                        return response;
+                    } catch (Exception e) {
+                        throw new RuntimeException(e.getMessage(), e);
+                    }
+                },
+                (Response response) -> {
+                    mainView.setStatusMessage("Đã chuyển vào thùng rác: " + fileItem.getFileName());
+                    refresh();
+                },
+                (String error) -> mainView.showAlert("Lỗi", "Không thể xóa file: " + error, IMainView.AlertType.ERROR),
+                mainView
+            );
         }
     }
 
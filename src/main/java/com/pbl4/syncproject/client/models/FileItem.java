@@ -12,6 +12,7 @@ public class FileItem {
     private String permissions;
     private String syncStatus;
     private String folderName; // Thêm trường folder để biết file thuộc folder nào
+    private int fileId; // FileID trên server (0 nếu chưa biết, ví dụ folder hoặc file vừa thêm ở client)
 
     public FileItem() {
         // Default constructor
@@ -41,6 +42,14 @@ public class FileItem {
     }
 
     // Getters and setters
+    public int getFileId() {
+        return fileId;
+    }
+
+    public void setFileId(int fileId) {
+        this.fileId = fileId;
+    }
+
     public String getFileName() {
         return fileName;
     }
@@ -1,5 +1,10 @@
 package com.pbl4.syncproject.client.services;
 
+import com.google.gson.JsonObject;
+import com.pbl4.syncproject.common.jsonhandler.JsonUtils;
+import com.pbl4.syncproject.common.jsonhandler.Request;
+import com.pbl4.syncproject.common.jsonhandler.Response;
+
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -17,6 +22,9 @@ public class ClientConnectionManager {
     private BufferedReader reader;
     private String serverIP;
     private int serverPort;
+    // Tài khoản đã đăng nhập thành công: server giữ session theo từng kết nối nên kết nối mới phải LOGIN lại
+    private String username;
+    private String password;
     
     // Private constructor để đảm bảo singleton
     private ClientConnectionManager() {}
@@ -51,6 +59,46 @@ public class ClientConnectionManager {
         reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
         
         System.out.println("✅ Kết nối liên tục được thiết lập tới " + ip + ":" + port);
+        if (username != null) replayLogin();
+    }
+
+    /**
+     * Đăng nhập trên kết nối hiện tại; thành công thì nhớ tài khoản để tự LOGIN lại mỗi khi phải kết nối lại
+     * @return phản hồi LOGIN của server
+     */
+    public synchronized String login(String username, String password) throws IOException {
+        this.username = null;
+        this.password = null;
+        String responseStr = sendRequestAndGetResponse(loginRequest(username, password));
+        Response res = JsonUtils.fromJson(responseStr, Response.class);
+        if (res != null && "success".equalsIgnoreCase(res.getStatus())) {
+            this.username = username;
+            this.password = password;
+        }
+        return responseStr;
+    }
+
+    // Kết nối vừa tạo lại chưa có session: gửi lại LOGIN trước request đang chờ
+    private void replayLogin() throws IOException {
+        writer.println(loginRequest(username, password));
+        String line = reader.readLine();
+        if (line == null) {
+            close();
+            throw new IOException("Server đã đóng kết nối");
+        }
+        Response res = JsonUtils.fromJson(line, Response.class);
+        if (res != null && "success".equalsIgnoreCase(res.getStatus())) {
+            System.out.println("🔑 Đã đăng nhập lại sau khi kết nối lại");
+        } else {
+            System.err.println("⚠️ Đăng nhập lại thất bại: " + (res != null ? res.getMessage() : line));
+        }
+    }
+
+    private static String loginRequest(String username, String password) {
+        JsonObject data = new JsonObject();
+        data.addProperty("username", username);
+        data.addProperty("password", password);
+        return JsonUtils.toJson(new Request("LOGIN", data));
     }
 
     /**
@@ -88,6 +136,44 @@ public class ClientConnectionManager {
         }
     }
 
+    /**
+     * Gửi yêu cầu có response dạng stream (StreamingResponse): header, các dòng base64, dòng rỗng, trailer.
+     * @param isStreamHeader kiểm tra dòng header có kèm thân stream không (response lỗi thì không)
+     * @param body nơi ghi các byte đã giải mã của thân
+     * @return trailer nếu có stream, ngược lại chính dòng header
+     */
+    public synchronized String sendRequestAndStream(String jsonRequest, java.util.function.Predicate<String> isStreamHeader,
+                                                    java.io.OutputStream body) throws IOException {
+        if (!isConnected()) {
+            throw new IOException("Không có kết nối tới server. Vui lòng đăng nhập lại.");
+        }
+
+        try {
+            writer.println(jsonRequest);
+            String header = reader.readLine();
+            if (header == null) {
+                throw new IOException("Server đã đóng kết nối");
+            }
+            if (!isStreamHeader.test(header)) {
+                return header;
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                body.write(java.util.Base64.getDecoder().decode(line));
+            }
+            String trailer = line == null ? null : reader.readLine();
+            if (trailer == null) {
+                throw new IOException("Server đã đóng kết nối giữa chừng");
+            }
+            return trailer;
+        } catch (IOException e) {
+            // Lỗi giữa chừng (kể cả khi ghi body) làm lệch luồng dòng: đóng kết nối để lần sau tạo mới
+            close();
+            throw e;
+        }
+    }
+
     /**
      * Lấy thông tin server hiện tại
      * @return chuỗi "IP:Port" hoặc "Not connected"
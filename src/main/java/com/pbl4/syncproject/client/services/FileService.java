@@ -223,7 +223,9 @@ public class FileService {
             String icon = isFolder ? "📁" : getFileIcon(name);
             String displayName = icon + " " + name;
 
-            return new FileItem(displayName, size, fileType, lastModified, permission, syncStatus, folderName);
+            FileItem item = new FileItem(displayName, size, fileType, lastModified, permission, syncStatus, folderName);
+            if (!isFolder && json.has("id")) item.setFileId(json.get("id").getAsInt());
+            return item;
 
         } catch (Exception e) {
             System.err.println("Error creating FileItem from JSON: " + e.getMessage());
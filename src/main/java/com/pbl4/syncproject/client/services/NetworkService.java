@@ -8,6 +8,8 @@ import com.pbl4.syncproject.common.jsonhandler.Response;
 import java.io.*;
 import java.nio.file.Files;
 import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Service class để xử lý network communication với server
@@ -16,10 +18,14 @@ import java.util.Base64;
  */
 public class NetworkService {
     private static final long MAX_FILE_SIZE = 100 * 1024 * 1024; // 100MB limit
+    private static final int DOWNLOAD_CHUNK_SIZE = 4 * 1024 * 1024; // bằng giới hạn READ_RANGE của server
 
     private String serverIP;
     private int serverPort;
 
+    // Listing đã nhận kèm ETag, gửi lại ETag qua ifNoneMatch để server trả "not_modified" nếu không đổi
+    private final Map<String, Response> listingCache = new ConcurrentHashMap<>();
+
     /**
      * Constructor - PHẢI set server address sau khi tạo object
      */
@@ -89,6 +95,10 @@ public class NetworkService {
             throw new Exception("Không thể đọc file: " + file.getAbsolutePath());
         }
 
+        // Gửi hash trước: nếu server đã có nội dung này thì không cần gửi file
+        Response preflight = uploadPreflight(file, folderId);
+        if (preflight != null) return preflight;
+
         try {
             // Đọc file và encode base64
             byte[] fileBytes = Files.readAllBytes(file.toPath());
@@ -121,6 +131,43 @@ public class NetworkService {
         }
     }
 
+    /**
+     * UPLOAD_PREFLIGHT: gửi tên, kích thước, SHA-256.
+     * @return response của server nếu file đã được tạo từ nội dung sẵn có, null nếu vẫn phải upload
+     */
+    private Response uploadPreflight(File file, int folderId) {
+        try {
+            JsonObject data = new JsonObject();
+            data.addProperty("fileName", file.getName());
+            data.addProperty("folderId", folderId);
+            data.addProperty("fileSize", file.length());
+            data.addProperty("fileHash", sha256Hex(file));
+
+            Response res = sendRequest(new Request("UPLOAD_PREFLIGHT", data));
+            if (res != null && "success".equals(res.getStatus()) && res.getData() != null
+                    && res.getData().isJsonObject()
+                    && !res.getData().getAsJsonObject().get("uploadRequired").getAsBoolean()) {
+                return res;
+            }
+        } catch (Exception e) {
+            // Server cũ / chưa đăng nhập: upload bình thường
+            System.err.println("Preflight không dùng được: " + e.getMessage());
+        }
+        return null;
+    }
+
+    private static String sha256Hex(File file) throws Exception {
+        java.security.MessageDigest digest = java.security.MessageDigest.getInstance("SHA-256");
+        byte[] buf = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(buf)) > 0) digest.update(buf, 0, n);
+        }
+        StringBuilder sb = new StringBuilder(64);
+        for (byte b : digest.digest()) sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+
     /**
      * Upload file lên server với default folder (root)
      */
@@ -138,7 +185,7 @@ public class NetworkService {
         data.addProperty("folderId", folderId);
 
         Request request = new Request("GET_FILE_LIST", data);
-        return sendRequest(request);
+        return sendListingRequest("L:" + folderId, request);
     }
 
     /**
@@ -181,7 +228,7 @@ public class NetworkService {
             data.addProperty("parentId", parentId);
         }
         Request request = new Request("FOLDER_TREE", data);
-        return sendRequest(request);
+        return sendListingRequest("T:" + parentId, request);
     }
     
     /**
@@ -192,6 +239,37 @@ public class NetworkService {
         return getFolderTree(0); // Yêu cầu các thư mục gốc theo mặc định
     }
 
+    /**
+     * Lấy cả cây thư mục trong 1 request (FOLDER_TREE_SNAPSHOT)
+     * @param rootId gốc cây con (null = toàn bộ cây)
+     * @param maxDepth số cấp tối đa dưới gốc (null = không giới hạn)
+     * @param sinceVersion version đang cache ở client (null = lấy snapshot đầy đủ)
+     */
+    public Response getFolderTreeSnapshot(Integer rootId, Integer maxDepth, String sinceVersion) throws Exception {
+        validateServerAddress();
+        JsonObject data = new JsonObject();
+        if (rootId != null) data.addProperty("rootId", rootId);
+        if (maxDepth != null) data.addProperty("maxDepth", maxDepth);
+        if (sinceVersion != null) data.addProperty("sinceVersion", sinceVersion);
+        Request request = new Request("FOLDER_TREE_SNAPSHOT", data);
+        return sendRequest(request);
+    }
+
+    /**
+     * Tìm file/folder theo tên trên toàn bộ cây (SEARCH)
+     * @param query chuỗi tìm (không phân biệt dấu, hoa thường)
+     * @param filters bộ lọc tùy chọn: type, minSize, maxSize, modifiedFrom, modifiedTo (null = không lọc)
+     */
+    public Response search(String query, JsonObject filters, int offset, int limit) throws Exception {
+        validateServerAddress();
+        JsonObject data = filters != null ? filters.deepCopy() : new JsonObject();
+        data.addProperty("query", query);
+        data.addProperty("offset", offset);
+        data.addProperty("limit", limit);
+        Request request = new Request("SEARCH", data);
+        return sendRequest(request);
+    }
+
     /**
      * Download file từ server
      */
@@ -206,6 +284,166 @@ public class NetworkService {
         return sendRequest(request);
     }
 
+    /**
+     * Đọc một đoạn của file (READ_RANGE)
+     */
+    public Response readRange(int fileId, long offset, long length) throws Exception {
+        validateServerAddress();
+        JsonObject data = new JsonObject();
+        data.addProperty("fileId", fileId);
+        data.addProperty("offset", offset);
+        data.addProperty("length", length);
+        Request request = new Request("READ_RANGE", data);
+        return sendRequest(request);
+    }
+
+    /**
+     * Tải file theo từng đoạn vào dest, tiếp tục được nếu lần trước bị ngắt:
+     * phần đã tải nằm ở "dest.part", hash của phiên bản đang tải ở "dest.part.hash".
+     * Nếu file trên server đã đổi (hash khác) thì tải lại từ đầu.
+     */
+    public void downloadFileResumable(int fileId, File dest) throws Exception {
+        File part = new File(dest.getPath() + ".part");
+        File hashFile = new File(dest.getPath() + ".part.hash");
+        String expectedHash = hashFile.exists() ? new String(Files.readAllBytes(hashFile.toPath())).trim() : null;
+        long offset = part.exists() && expectedHash != null ? part.length() : 0L;
+
+        while (true) {
+            Response res = readRange(fileId, offset, DOWNLOAD_CHUNK_SIZE);
+            if (res == null || !"success".equals(res.getStatus())) {
+                throw new Exception(res != null ? res.getMessage() : "Không nhận được phản hồi");
+            }
+            JsonObject d = res.getData().getAsJsonObject();
+            String hash = d.has("hash") && !d.get("hash").isJsonNull() ? d.get("hash").getAsString() : "";
+            if (expectedHash != null && !expectedHash.equals(hash)) {
+                // File đã bị ghi đè giữa chừng: bỏ phần cũ
+                expectedHash = null;
+                offset = 0;
+                continue;
+            }
+            if (expectedHash == null) {
+                expectedHash = hash;
+                Files.write(hashFile.toPath(), hash.getBytes());
+                Files.deleteIfExists(part.toPath());
+            }
+
+            byte[] bytes = Base64.getDecoder().decode(d.get("content").getAsString());
+            try (RandomAccessFile raf = new RandomAccessFile(part, "rw")) {
+                raf.seek(offset);
+                raf.write(bytes);
+                raf.setLength(offset + bytes.length);
+            }
+            offset += bytes.length;
+            if (d.get("eof").getAsBoolean()) break;
+            if (bytes.length == 0) throw new Exception("Server trả về đoạn rỗng trước cuối file");
+        }
+
+        Files.move(part.toPath(), dest.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(hashFile.toPath());
+    }
+
+    /**
+     * Tải cả thư mục (kèm thư mục con) thành một file ZIP (DOWNLOAD_FOLDER_ARCHIVE).
+     * Nội dung được ghi dần vào dest.part trong lúc nhận, xong mới đổi tên thành dest.
+     * @return trailer của server (folders, files, skipped, bytes)
+     */
+    public Response downloadFolderArchive(int folderId, File dest) throws Exception {
+        validateServerAddress();
+        ClientConnectionManager connectionManager = ClientConnectionManager.getInstance();
+        if (!connectionManager.isConnected()) {
+            connectionManager.connect(serverIP, serverPort);
+        }
+        JsonObject data = new JsonObject();
+        data.addProperty("folderId", folderId);
+
+        File part = new File(dest.getPath() + ".part");
+        String trailerJson;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(part))) {
+            trailerJson = connectionManager.sendRequestAndStream(
+                    JsonUtils.toJson(new Request("DOWNLOAD_FOLDER_ARCHIVE", data)),
+                    header -> {
+                        Response h = JsonUtils.fromJson(header, Response.class);
+                        return h != null && "success".equals(h.getStatus()) && h.getData() != null
+                                && h.getData().isJsonObject() && h.getData().getAsJsonObject().has("stream");
+                    },
+                    out);
+        } catch (IOException e) {
+            Files.deleteIfExists(part.toPath());
+            throw new Exception("Lỗi kết nối mạng: " + e.getMessage(), e);
+        }
+
+        Response trailer = JsonUtils.fromJson(trailerJson, Response.class);
+        if (trailer == null || !"success".equals(trailer.getStatus())) {
+            Files.deleteIfExists(part.toPath());
+            throw new Exception(trailer != null ? trailer.getMessage() : "Không thể phân tích phản hồi từ server");
+        }
+        Files.move(part.toPath(), dest.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        return trailer;
+    }
+
+    /**
+     * Chuyển file vào thùng rác (DELETE_FILE)
+     */
+    public Response deleteFile(int fileId) throws Exception {
+        validateServerAddress();
+        JsonObject data = new JsonObject();
+        data.addProperty("fileId", fileId);
+        return sendRequest(new Request("DELETE_FILE", data));
+    }
+
+    /**
+     * Chuyển file vào thùng rác theo tên trong folder (DELETE_FILE)
+     */
+    public Response deleteFile(int folderId, String fileName) throws Exception {
+        validateServerAddress();
+        JsonObject data = new JsonObject();
+        data.addProperty("folderId", folderId);
+        data.addProperty("fileName", fileName);
+        return sendRequest(new Request("DELETE_FILE", data));
+    }
+
+    /**
+     * Khôi phục file từ thùng rác (RESTORE_FILE)
+     */
+    public Response restoreFile(int fileId) throws Exception {
+        validateServerAddress();
+        JsonObject data = new JsonObject();
+        data.addProperty("fileId", fileId);
+        return sendRequest(new Request("RESTORE_FILE", data));
+    }
+
+    /**
+     * Danh sách file trong thùng rác (LIST_TRASH)
+     * @param folderId null = mọi folder
+     */
+    public Response listTrash(Integer folderId) throws Exception {
+        validateServerAddress();
+        JsonObject data = new JsonObject();
+        if (folderId != null) data.addProperty("folderId", folderId);
+        return sendRequest(new Request("LIST_TRASH", data));
+    }
+
+    /**
+     * Lịch sử phiên bản của file (LIST_VERSIONS)
+     */
+    public Response listVersions(int fileId) throws Exception {
+        validateServerAddress();
+        JsonObject data = new JsonObject();
+        data.addProperty("fileId", fileId);
+        return sendRequest(new Request("LIST_VERSIONS", data));
+    }
+
+    /**
+     * Đưa file về nội dung của một phiên bản cũ (RESTORE_VERSION)
+     */
+    public Response restoreVersion(int fileId, int versionNo) throws Exception {
+        validateServerAddress();
+        JsonObject data = new JsonObject();
+        data.addProperty("fileId", fileId);
+        data.addProperty("versionNo", versionNo);
+        return sendRequest(new Request("RESTORE_VERSION", data));
+    }
+
     /**
      * Test connection to server - sử dụng persistent connection
      */
@@ -279,6 +517,27 @@ public class NetworkService {
         }
     }
 
+    /**
+     * Gửi request listing kèm ifNoneMatch; nếu server trả "not_modified" thì dùng lại response đã cache
+     */
+    private Response sendListingRequest(String cacheKey, Request request) throws Exception {
+        Response cached = listingCache.get(cacheKey);
+        if (cached != null) {
+            request.getData().addProperty("ifNoneMatch", cached.getEtag());
+        }
+
+        Response response = sendRequest(request);
+        if ("not_modified".equals(response.getStatus()) && cached != null) {
+            return cached;
+        }
+        if ("success".equals(response.getStatus()) && response.getEtag() != null) {
+            listingCache.put(cacheKey, response);
+        } else {
+            listingCache.remove(cacheKey);
+        }
+        return response;
+    }
+
     /**
      * Get current server info from connection manager
      */
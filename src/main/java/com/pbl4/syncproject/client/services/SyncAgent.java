@@ -1,5 +1,7 @@
 package com.pbl4.syncproject.client.services;
 
+import com.pbl4.syncproject.common.jsonhandler.Response;
+
 import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -305,8 +307,14 @@ public class SyncAgent implements FileWatcherService.FileChangeListener {
                         break;
                         
                     case DELETE:
-                        // TODO: Implement delete file on server
-                        System.out.println("Would delete: " + task.relativePath);
+                        // Upload đang đưa mọi file lên root (folder 1) theo tên, nên xóa cũng theo tên ở đó
+                        Response res = networkService.deleteFile(1, new File(task.relativePath).getName());
+                        if (res != null && "success".equals(res.getStatus())) {
+                            System.out.println("Deleted (trash): " + task.relativePath);
+                        } else {
+                            System.err.println("Delete failed: " + task.relativePath
+                                    + (res != null ? " - " + res.getMessage() : ""));
+                        }
                         break;
                         
                     case DOWNLOAD:
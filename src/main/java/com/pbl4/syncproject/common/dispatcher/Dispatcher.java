@@ -3,20 +3,53 @@ package com.pbl4.syncproject.common.dispatcher;
 import com.pbl4.syncproject.common.jsonhandler.Request;
 import com.pbl4.syncproject.common.jsonhandler.Response;
 import com.pbl4.syncproject.server.handlers.*;
+import com.pbl4.syncproject.server.service.ReplicaSync;
 
 import java.sql.Connection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 public class Dispatcher {
+    // Replica chưa promote chỉ nhận các action không ghi metadata / nội dung
+    private static final Set<String> READ_ONLY_ACTIONS = Set.of(
+            "LOGIN", "PING", "FOLDER_TREE", "FOLDER_TREE_SNAPSHOT", "SEARCH", "GET_FILE_LIST", "READ_RANGE",
+            "DOWNLOAD_FOLDER_ARCHIVE", "LIST_TRASH", "LIST_VERSIONS", "FOLDER_JOB_STATUS", "SERVER_STATS",
+            "REPLICATION_PULL", "REPLICATION_SNAPSHOT", "REPLICATION_READ", "REPLICATION_STATUS", "PROMOTE_REPLICA");
+
     private final Map<String, RequestHandler> handlers = new HashMap<>();
 
     public Dispatcher(Connection dbConnection) {
-        handlers.put("LOGIN", new LoginHandler(dbConnection));
-        handlers.put("FOLDER_TREE", new FolderTreeHandler(dbConnection));
-        handlers.put("GET_FILE_LIST", new FileListHandler(dbConnection));
-        handlers.put("UPLOAD_FILE", new UploadFileHandler());
-        handlers.put("CREATE_FOLDER", new CreateFolderHandler());
+        // Mỗi kết nối có một Dispatcher riêng nên session cũng riêng theo kết nối
+        ClientSession session = new ClientSession();
+
+        handlers.put("LOGIN", new LoginHandler(dbConnection, session));
+        handlers.put("FOLDER_TREE", new FolderTreeHandler(dbConnection, session));
+        handlers.put("FOLDER_TREE_SNAPSHOT", new FolderTreeSnapshotHandler(dbConnection, session));
+        handlers.put("SEARCH", new SearchHandler(dbConnection, session));
+        handlers.put("GET_FILE_LIST", new FileListHandler(dbConnection, session));
+        handlers.put("UPLOAD_PREFLIGHT", new UploadPreflightHandler(dbConnection, session));
+        handlers.put("UPLOAD_FILE", new UploadFileHandler(session));
+        handlers.put("READ_RANGE", new ReadRangeHandler(dbConnection, session));
+        handlers.put("DOWNLOAD_FOLDER_ARCHIVE", new FolderArchiveHandler(dbConnection, session));
+        handlers.put("DELETE_FILE", new DeleteFileHandler(dbConnection, session));
+        handlers.put("RESTORE_FILE", new RestoreFileHandler(dbConnection, session));
+        handlers.put("LIST_TRASH", new TrashListHandler(dbConnection, session));
+        handlers.put("LIST_VERSIONS", new ListVersionsHandler(dbConnection, session));
+        handlers.put("RESTORE_VERSION", new RestoreVersionHandler(dbConnection, session));
+        handlers.put("CREATE_FOLDER", new CreateFolderHandler(session));
+        handlers.put("RENAME_FOLDER", new RenameFolderHandler(dbConnection, session));
+        handlers.put("DELETE_FOLDER", new DeleteFolderHandler(dbConnection, session));
+        handlers.put("MOVE_FOLDER", new MoveFolderHandler(dbConnection, session));
+        handlers.put("FOLDER_JOB_STATUS", new FolderJobStatusHandler(session));
+        handlers.put("SET_PERMISSIONS", new SetPermissionsHandler(dbConnection, session));
+        handlers.put("SET_FOLDER_QUOTA", new SetFolderQuotaHandler(dbConnection, session));
+        handlers.put("SERVER_STATS", new ServerStatsHandler(session));
+        handlers.put("REPLICATION_PULL", new ReplicationPullHandler(dbConnection, session));
+        handlers.put("REPLICATION_SNAPSHOT", new ReplicationSnapshotHandler(dbConnection, session));
+        handlers.put("REPLICATION_READ", new ReplicationReadHandler(dbConnection, session));
+        handlers.put("REPLICATION_STATUS", new ReplicationStatusHandler(dbConnection, session));
+        handlers.put("PROMOTE_REPLICA", new PromoteReplicaHandler(dbConnection, session));
         
         // Add PING handler for connection testing
         handlers.put("PING", new RequestHandler() {
@@ -32,6 +65,9 @@ public class Dispatcher {
 
     public Response dispatch(Request req) {
         RequestHandler handler = handlers.get(req.getAction());
+        if (handler != null && ReplicaSync.getInstance().isReadOnly() && !READ_ONLY_ACTIONS.contains(req.getAction())) {
+            return new Response("error", "Server đang là replica (chỉ đọc)", null);
+        }
         if (handler != null) {
             return handler.handle(req);
         } else {
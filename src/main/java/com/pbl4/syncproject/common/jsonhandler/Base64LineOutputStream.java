@@ -0,0 +1,72 @@
+package com.pbl4.syncproject.common.jsonhandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Ghi byte thành các dòng base64 (mỗi dòng tối đa CHUNK byte gốc) lên kết nối theo dòng.
+ * Bộ nhớ cố định: chỉ một buffer CHUNK byte. close() ghi nốt phần còn lại + dòng rỗng kết thúc,
+ * không đóng writer bên dưới.
+ */
+public class Base64LineOutputStream extends OutputStream {
+
+    // Bội số của 3 để không có padding giữa chừng
+    public static final int CHUNK = 48 * 1024;
+
+    private final PrintWriter out;
+    private final byte[] buf = new byte[CHUNK];
+    private int count;
+    private long total;
+    private boolean closed;
+
+    public Base64LineOutputStream(PrintWriter out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == CHUNK) flushLine();
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == CHUNK) flushLine();
+            int n = Math.min(len, CHUNK - count);
+            System.arraycopy(b, off, buf, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void flushLine() throws IOException {
+        if (count == 0) return;
+        out.println(Base64.getEncoder().encodeToString(count == CHUNK ? buf : Arrays.copyOf(buf, count)));
+        // PrintWriter nuốt IOException: client ngắt kết nối thì dừng ngay thay vì đọc hết cây thư mục
+        if (out.checkError()) throw new IOException("Client đã ngắt kết nối");
+        total += count;
+        count = 0;
+    }
+
+    /** Số byte gốc đã ghi ra kết nối */
+    public long getTotal() {
+        return total;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            flushLine();
+        } finally {
+            out.println();
+            out.flush();
+        }
+    }
+}
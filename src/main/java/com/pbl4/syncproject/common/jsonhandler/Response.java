@@ -3,9 +3,10 @@ package com.pbl4.syncproject.common.jsonhandler;
 import com.google.gson.JsonElement;
 
 public class Response {
-    private String status;   // success | error
+    private String status;   // success | error | not_modified
     private String message;
     private JsonElement data;
+    private String etag;     // chỉ có ở các listing hỗ trợ ifNoneMatch (GET_FILE_LIST, FOLDER_TREE)
 
     public Response() {}
 
@@ -38,4 +39,19 @@ public class Response {
     public void setData(JsonElement data) {
         this.data = data;
     }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public void setEtag(String etag) {
+        this.etag = etag;
+    }
+
+    /** Trả lời gọn khi ifNoneMatch của client trùng ETag hiện tại: không có data */
+    public static Response notModified(String etag) {
+        Response r = new Response("not_modified", null, null);
+        r.setEtag(etag);
+        return r;
+    }
 }
@@ -0,0 +1,34 @@
+package com.pbl4.syncproject.common.jsonhandler;
+
+import com.google.gson.JsonElement;
+
+import java.io.OutputStream;
+
+/**
+ * Response có thân dài được stream sau dòng header (vd. DOWNLOAD_FOLDER_ARCHIVE).
+ *
+ * Trên dây (vẫn theo dòng như mọi response khác):
+ *   1. dòng JSON của response này (header, data.stream = true)
+ *   2. các dòng base64, mỗi dòng một đoạn byte của thân (Base64LineOutputStream)
+ *   3. một dòng rỗng = hết thân
+ *   4. dòng JSON trailer: success kèm thống kê, hoặc error nếu hỏng giữa chừng (client phải bỏ phần đã nhận)
+ */
+public class StreamingResponse extends Response {
+
+    /** Ghi thân vào out, trả về trailer */
+    public interface BodyWriter {
+        Response write(OutputStream out) throws Exception;
+    }
+
+    // transient: không serialize vào dòng header
+    private final transient BodyWriter body;
+
+    public StreamingResponse(String message, JsonElement data, BodyWriter body) {
+        super("success", message, data);
+        this.body = body;
+    }
+
+    public BodyWriter getBody() {
+        return body;
+    }
+}
@@ -1,4 +1,26 @@
 package com.pbl4.syncproject.common.model;
 
 public class User {
+    private int userId;
+    private String username;
+    private String roleName;
+
+    public User() {}
+
+    public User(int userId, String username, String roleName) {
+        this.userId = userId;
+        this.username = username;
+        this.roleName = roleName;
+    }
+
+    public int getUserId() { return userId; }
+    public void setUserId(int userId) { this.userId = userId; }
+
+    public String getUsername() { return username; }
+    public void setUsername(String username) { this.username = username; }
+
+    public String getRoleName() { return roleName; }
+    public void setRoleName(String roleName) { this.roleName = roleName; }
+
+    public boolean isAdmin() { return "ADMIN".equalsIgnoreCase(roleName); }
 }
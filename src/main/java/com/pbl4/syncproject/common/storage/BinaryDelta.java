@@ -0,0 +1,198 @@
+package com.pbl4.syncproject.common.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Delta nhị phân giữa hai nội dung (kiểu rsync/xdelta đơn giản): target được mô tả bằng các lệnh
+ * COPY(offset, len) lấy từ base và INSERT(bytes) cho phần mới, rồi nén deflate.
+ *
+ * Base được chia khối BLOCK byte không chồng nhau và băm vào bảng; target được quét bằng rolling hash,
+ * gặp khối trùng thì mở rộng đoạn khớp về hai phía. Bộ nhớ ~ base + target + 4 byte / khối.
+ */
+public final class BinaryDelta {
+
+    private static final int BLOCK = 16;
+    private static final int MAGIC = 0x42443031; // "BD01"
+    private static final int OP_COPY = 1;
+    private static final int OP_INSERT = 2;
+    private static final int OP_END = 0;
+    private static final int MULT = 0x01000193;
+
+    private BinaryDelta() {}
+
+    /** Delta để dựng lại target từ base */
+    public static byte[] encode(byte[] base, byte[] target) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream(Math.max(64, target.length / 8));
+        DataOutputStream out = new DataOutputStream(bout);
+        out.writeInt(MAGIC);
+        writeVarLong(out, base.length);
+        writeVarLong(out, target.length);
+        CRC32 crc = new CRC32();
+        crc.update(target, 0, target.length);
+        out.writeInt((int) crc.getValue());
+        out.flush();
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream ops = new DataOutputStream(new DeflaterOutputStream(bout, deflater, 64 * 1024))) {
+            writeOps(ops, base, target);
+            ops.writeByte(OP_END);
+        } finally {
+            deflater.end();
+        }
+        return bout.toByteArray();
+    }
+
+    /** Dựng lại target từ base và delta (kiểm tra độ dài và CRC) */
+    public static byte[] apply(byte[] base, byte[] delta) throws IOException {
+        DataInputStream head = new DataInputStream(new java.io.ByteArrayInputStream(delta));
+        if (head.readInt() != MAGIC) throw new IOException("Delta không hợp lệ");
+        long baseLen = readVarLong(head);
+        long targetLen = readVarLong(head);
+        int expectedCrc = head.readInt();
+        if (baseLen != base.length) throw new IOException("Delta không khớp base (" + baseLen + " != " + base.length + ")");
+        if (targetLen < 0 || targetLen > Integer.MAX_VALUE - 8) throw new IOException("Target quá lớn");
+
+        byte[] target = new byte[(int) targetLen];
+        int pos = 0;
+        try (DataInputStream ops = new DataInputStream(new InflaterInputStream(head))) {
+            while (true) {
+                int op = ops.readUnsignedByte();
+                if (op == OP_END) break;
+                if (op == OP_COPY) {
+                    int off = readLength(ops);
+                    int len = readLength(ops);
+                    if ((long) off + len > base.length || (long) pos + len > target.length) {
+                        throw new IOException("Lệnh COPY vượt giới hạn");
+                    }
+                    System.arraycopy(base, off, target, pos, len);
+                    pos += len;
+                } else if (op == OP_INSERT) {
+                    int len = readLength(ops);
+                    if ((long) pos + len > target.length) throw new IOException("Lệnh INSERT vượt giới hạn");
+                    ops.readFully(target, pos, len);
+                    pos += len;
+                } else {
+                    throw new IOException("Lệnh delta không biết: " + op);
+                }
+            }
+        }
+        if (pos != target.length) throw new IOException("Delta thiếu dữ liệu");
+        CRC32 crc = new CRC32();
+        crc.update(target, 0, target.length);
+        if ((int) crc.getValue() != expectedCrc) throw new IOException("CRC không khớp sau khi áp delta");
+        return target;
+    }
+
+    // ---------- Encode ----------
+
+    private static void writeOps(DataOutputStream ops, byte[] base, byte[] target) throws IOException {
+        int blocks = base.length / BLOCK;
+        if (blocks == 0 || target.length < BLOCK) {
+            writeInsert(ops, target, 0, target.length);
+            return;
+        }
+
+        // Bảng băm khối của base: ô lưu (vị trí khối + 1), 0 = trống; trùng hash thì khối sau ghi đè (chấp nhận mất)
+        int cap = Integer.highestOneBit(Math.max(16, blocks * 2 - 1)) << 1;
+        int mask = cap - 1;
+        int[] table = new int[cap];
+        for (int b = 0; b < blocks; b++) {
+            int off = b * BLOCK;
+            table[mix(hash(base, off)) & mask] = off + 1;
+        }
+
+        int pow = 1; // MULT^(BLOCK-1)
+        for (int i = 0; i < BLOCK - 1; i++) pow *= MULT;
+
+        int pending = 0;   // đầu đoạn chưa ghi (sẽ là INSERT)
+        int p = 0;
+        int h = hash(target, 0);
+        int last = target.length - BLOCK;
+        while (p <= last) {
+            int cand = table[mix(h) & mask] - 1;
+            if (cand >= 0 && regionEquals(base, cand, target, p, BLOCK)) {
+                // Mở rộng về sau...
+                int len = BLOCK;
+                while (p + len < target.length && cand + len < base.length && base[cand + len] == target[p + len]) len++;
+                // ...và về trước (lấn vào phần INSERT đang chờ)
+                int back = 0;
+                while (p - back > pending && cand - back > 0 && base[cand - back - 1] == target[p - back - 1]) back++;
+
+                int start = p - back;
+                if (start > pending) writeInsert(ops, target, pending, start - pending);
+                ops.writeByte(OP_COPY);
+                writeVarLong(ops, cand - back);
+                writeVarLong(ops, len + back);
+
+                p += len;
+                pending = p;
+                if (p <= last) h = hash(target, p);
+            } else {
+                if (p < last) h = (h - (target[p] & 0xff) * pow) * MULT + (target[p + BLOCK] & 0xff);
+                p++;
+            }
+        }
+        if (pending < target.length) writeInsert(ops, target, pending, target.length - pending);
+    }
+
+    private static void writeInsert(DataOutputStream ops, byte[] data, int off, int len) throws IOException {
+        if (len == 0) return;
+        ops.writeByte(OP_INSERT);
+        writeVarLong(ops, len);
+        ops.write(data, off, len);
+    }
+
+    private static int hash(byte[] a, int off) {
+        int h = 0;
+        for (int i = 0; i < BLOCK; i++) h = h * MULT + (a[off + i] & 0xff);
+        return h;
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 15);
+    }
+
+    private static boolean regionEquals(byte[] a, int aOff, byte[] b, int bOff, int len) {
+        return Arrays.equals(a, aOff, aOff + len, b, bOff, bOff + len);
+    }
+
+    // ---------- Varint ----------
+
+    private static void writeVarLong(OutputStream out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    private static long readVarLong(InputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) throw new EOFException();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IOException("Varint quá dài");
+    }
+
+    // Offset / độ dài trong lệnh delta: varint ngoài [0, Integer.MAX_VALUE] là delta hỏng, không được ép kiểu
+    private static int readLength(InputStream in) throws IOException {
+        long v = readVarLong(in);
+        if (v < 0 || v > Integer.MAX_VALUE) throw new IOException("Offset/độ dài trong delta không hợp lệ: " + v);
+        return (int) v;
+    }
+}
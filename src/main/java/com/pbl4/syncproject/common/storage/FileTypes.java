@@ -0,0 +1,89 @@
+package com.pbl4.syncproject.common.storage;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Phân loại file theo phần mở rộng (cột "Loại" ở client, bộ lọc của SEARCH...).
+ */
+public final class FileTypes {
+
+    public static final String DOCUMENT = "Document";
+    public static final String SPREADSHEET = "Spreadsheet";
+    public static final String PRESENTATION = "Presentation";
+    public static final String IMAGE = "Image";
+    public static final String VIDEO = "Video";
+    public static final String AUDIO = "Audio";
+    public static final String ARCHIVE = "Archive";
+    public static final String FILE = "File";
+
+    /** Mọi loại, thứ tự cố định (index dùng được làm mã loại) */
+    public static final List<String> ALL = Collections.unmodifiableList(Arrays.asList(
+            DOCUMENT, SPREADSHEET, PRESENTATION, IMAGE, VIDEO, AUDIO, ARCHIVE, FILE));
+
+    private FileTypes() {}
+
+    public static String categoryOf(String fileName) {
+        if (fileName == null || !fileName.contains(".")) {
+            return FILE;
+        }
+
+        String extension = fileName.substring(fileName.lastIndexOf(".")).toLowerCase();
+
+        switch (extension) {
+            case ".doc":
+            case ".docx":
+            case ".pdf":
+            case ".txt":
+            case ".rtf":
+                return DOCUMENT;
+            case ".xls":
+            case ".xlsx":
+            case ".csv":
+                return SPREADSHEET;
+            case ".ppt":
+            case ".pptx":
+                return PRESENTATION;
+            case ".jpg":
+            case ".jpeg":
+            case ".png":
+            case ".gif":
+            case ".bmp":
+            case ".tiff":
+                return IMAGE;
+            case ".mp4":
+            case ".avi":
+            case ".mkv":
+            case ".mov":
+            case ".wmv":
+                return VIDEO;
+            case ".mp3":
+            case ".wav":
+            case ".flac":
+            case ".aac":
+                return AUDIO;
+            case ".zip":
+            case ".rar":
+            case ".7z":
+            case ".tar":
+            case ".gz":
+                return ARCHIVE;
+            default:
+                return FILE;
+        }
+    }
+
+    /** Mã loại (index trong ALL) */
+    public static int codeOf(String fileName) {
+        return ALL.indexOf(categoryOf(fileName));
+    }
+
+    /** Mã của tên loại (không phân biệt hoa thường), -1 nếu không có */
+    public static int codeOfCategory(String category) {
+        for (int i = 0; i < ALL.size(); i++) {
+            if (ALL.get(i).equalsIgnoreCase(category)) return i;
+        }
+        return -1;
+    }
+}
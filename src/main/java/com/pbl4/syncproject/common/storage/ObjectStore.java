@@ -0,0 +1,847 @@
+package com.pbl4.syncproject.common.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lưu nội dung file theo FileID, không phụ thuộc tên/vị trí folder:
+ *   <objects>/ab/cd/<fileId>   với abcd là 2 byte thấp của FileID (hex), mỗi thư mục tối đa 256 nhánh.
+ * Đổi tên / di chuyển folder chỉ còn là cập nhật DB, đường dẫn nội dung không đổi.
+ * Ghi luôn qua file tạm trong <objects>/.tmp rồi rename nguyên tử vào chỗ.
+ *
+ * Có thể chia trên nhiều thư mục gốc (storage.objects.roots, mỗi root thường là một ổ đĩa):
+ * object được đặt ở root có điểm rendezvous hash cao nhất, điểm có trọng số theo dung lượng trống
+ * (ghi một lần trong <root>/.root lúc root được thêm, sửa tay được). Thêm/bớt root chỉ làm đổi chỗ
+ * khoảng 1/N object; các object sai chỗ vẫn đọc được (tìm ở root ưu tiên trước rồi các root còn lại)
+ * và được StorageRebalancer chuyển dần về đúng root. Root đang rút (storage.objects.drain) vẫn được đọc
+ * nhưng không nhận object mới.
+ *
+ * Nhân bản (storage.objects.replicas = N > 1): object nằm ở N root có điểm cao nhất trong các root đang
+ * dùng được. commit ghi song song N bản và trả về khi đủ write quorum; các bản chậm ghi tiếp ở nền và bị
+ * bỏ nếu đã có commit mới hơn cho cùng FileID. Đọc chọn bản ở root đang nhẹ tải nhất (độ trễ trung bình
+ * x số thao tác đang chạy); root đó trả lời chậm quá ngưỡng thì hỏi song song bản tiếp theo (hedge).
+ * Các bản của cùng một lần ghi có cùng kích thước + mtime; StorageRebalancer dùng điều này để tìm bản lệch
+ * và chép lại khi root mất / quay lại / ghi thiếu.
+ */
+public final class ObjectStore {
+
+    private static final String ROOT_FILE = ".root";
+    private static final int LOCK_STRIPES = 256;
+    // Khi không cấu hình storage.read.hedge.ms: hedge sau max(HEDGE_MIN_MS, HEDGE_FACTOR x độ trễ trung bình)
+    private static final long HEDGE_MIN_MS = 5;
+    private static final int HEDGE_FACTOR = 4;
+    private static final long PROBE_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+
+    private final List<Root> roots;     // theo thứ tự cấu hình, roots.get(0) là root chính
+    private final Root[] placement;     // các root nhận object mới (trọng số > 0)
+    private final int replicas;
+    private final int writeQuorum;
+    private final long hedgeMs;         // 0 = tự tính theo độ trễ
+    // commit / relocate / delete cùng một FileID không được chen nhau (rebalancer không được đè bản mới hơn)
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+    // FileID -> số thứ tự của commit nhân bản mới nhất còn bản đang ghi; bản chậm chỉ được đặt vào chỗ nếu còn khớp
+    private final Map<Integer, Long> latestCommit = new ConcurrentHashMap<>();
+    private final AtomicLong commitSeq = new AtomicLong();
+    private final AtomicLong degradedWrites = new AtomicLong();
+    private volatile StorageMetrics metrics = StorageMetrics.NONE;
+    private volatile ExecutorService ioPool;
+
+    ObjectStore(Path root) {
+        this(Collections.singletonList(root), Collections.emptySet(), 1, 1, 0);
+    }
+
+    ObjectStore(List<Path> dirs, Set<Path> draining) {
+        this(dirs, draining, 1, 1, 0);
+    }
+
+    ObjectStore(List<Path> dirs, Set<Path> draining, int replicas, int writeQuorum, long hedgeMs) {
+        List<Root> list = new ArrayList<>();
+        List<Root> active = new ArrayList<>();
+        for (Path dir : dirs) {
+            Path abs = dir.toAbsolutePath().normalize();
+            Root r = new Root(list.size(), abs, draining.contains(abs), dirs.size() > 1);
+            list.add(r);
+            if (r.weight > 0) active.add(r);
+        }
+        if (active.isEmpty()) throw new IllegalStateException("Không có object root nào nhận được dữ liệu mới");
+        this.roots = Collections.unmodifiableList(list);
+        this.placement = active.toArray(new Root[0]);
+        if (replicas > placement.length) {
+            System.err.println("⚠️ storage.objects.replicas=" + replicas + " lớn hơn số root nhận dữ liệu ("
+                    + placement.length + ")");
+            replicas = placement.length;
+        }
+        this.replicas = Math.max(1, replicas);
+        this.writeQuorum = Math.max(1, Math.min(this.replicas, writeQuorum));
+        this.hedgeMs = hedgeMs;
+        for (int i = 0; i < LOCK_STRIPES; i++) locks[i] = new ReentrantLock();
+    }
+
+    /** Root chính (root đầu tiên trong cấu hình) */
+    public Path getRoot() {
+        return roots.get(0).dir;
+    }
+
+    void setMetrics(StorageMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public List<Root> roots() {
+        return roots;
+    }
+
+    public boolean isStriped() {
+        return roots.size() > 1;
+    }
+
+    public int getReplicas() {
+        return replicas;
+    }
+
+    /** p là thư mục gốc của một object root */
+    public boolean isRootDir(Path p) {
+        Path abs = p.toAbsolutePath().normalize();
+        for (Root r : roots) if (abs.equals(r.dir)) return true;
+        return false;
+    }
+
+    /** p nằm trong một object root */
+    public boolean contains(Path p) {
+        Path abs = p.toAbsolutePath().normalize();
+        for (Root r : roots) if (abs.startsWith(r.dir)) return true;
+        return false;
+    }
+
+    /** Root mà fileId nên nằm ở đó (bản chính) */
+    public Root preferredRoot(int fileId) {
+        return preferredRoots(fileId).get(0);
+    }
+
+    /** Các root nên giữ bản của fileId: N root dùng được có điểm cao nhất, điểm giảm dần */
+    public List<Root> preferredRoots(int fileId) {
+        if (placement.length == 1) return Collections.singletonList(placement[0]);
+        List<Root> candidates = new ArrayList<>(placement.length);
+        for (Root r : placement) if (r.available) candidates.add(r);
+        if (candidates.isEmpty()) Collections.addAll(candidates, placement); // mọi ổ đều lỗi: vẫn trả về chỗ để báo lỗi I/O
+        if (candidates.size() == 1) return candidates;
+        if (replicas == 1) {
+            Root best = null;
+            double bestScore = -1;
+            for (Root r : candidates) {
+                double s = r.score(fileId);
+                if (s > bestScore) {
+                    bestScore = s;
+                    best = r;
+                }
+            }
+            return Collections.singletonList(best);
+        }
+        candidates.sort(Comparator.comparingDouble((Root r) -> r.score(fileId)).reversed());
+        return candidates.subList(0, Math.min(replicas, candidates.size()));
+    }
+
+    /** Đường dẫn nội dung của fileId: bản đang có nếu có, ngược lại vị trí ở root ưu tiên (chưa tồn tại) */
+    public Path pathOf(int fileId) {
+        if (roots.size() == 1) return placement[0].pathOf(fileId);
+        Path p = locateExisting(fileId);
+        return p != null ? p : preferredRoot(fileId).pathOf(fileId);
+    }
+
+    /** Đường dẫn để đọc object (null nếu không có ở root nào); tính vào số lần đọc của root */
+    public Path locate(int fileId) {
+        Path p = null;
+        if (replicas > 1) {
+            List<Root> targets = preferredRoots(fileId);
+            if (targets.size() > 1) p = locateReplica(fileId, targets);
+        }
+        if (p == null) p = locateExisting(fileId);
+        if (p != null) metrics.increment(rootOf(p).metric("reads"));
+        return p;
+    }
+
+    private Path locateExisting(int fileId) {
+        Root pref = preferredRoot(fileId);
+        Path p = pref.pathOf(fileId);
+        if (Files.isRegularFile(p)) return p;
+        for (Root r : roots) {
+            if (r == pref || !r.available) continue;
+            Path q = r.pathOf(fileId);
+            if (Files.isRegularFile(q)) return q;
+        }
+        return null;
+    }
+
+    /**
+     * Chọn bản để đọc: thử root nhẹ tải nhất trước; quá ngưỡng hedge mà chưa trả lời thì hỏi thêm root
+     * tiếp theo song song, lấy kết quả có trước. Bản không có ở root nào trong các root ưu tiên -> null.
+     */
+    private Path locateReplica(int fileId, List<Root> targets) {
+        List<Root> ordered = new ArrayList<>(targets);
+        ordered.sort(Comparator.comparingDouble(Root::load));
+        CompletionService<Root> cs = new ExecutorCompletionService<>(ioPool());
+        int submitted = 0;
+        int done = 0;
+        cs.submit(probe(ordered.get(submitted++), fileId));
+        try {
+            while (done < submitted) {
+                boolean more = submitted < ordered.size();
+                long wait = more ? hedgeDelayMs(ordered.get(submitted - 1)) : PROBE_TIMEOUT_MS;
+                Future<Root> f = cs.poll(wait, TimeUnit.MILLISECONDS);
+                if (f == null) {
+                    if (!more) return null;
+                    metrics.increment("storage.read.hedged");
+                    cs.submit(probe(ordered.get(submitted++), fileId));
+                    continue;
+                }
+                done++;
+                Root found = f.get();
+                if (found != null) return found.pathOf(fileId);
+                if (done == submitted && submitted < ordered.size()) {
+                    cs.submit(probe(ordered.get(submitted++), fileId));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // probe không ném lỗi
+        }
+        return null;
+    }
+
+    private Callable<Root> probe(Root r, int fileId) {
+        return () -> {
+            long start = System.nanoTime();
+            r.inFlight.incrementAndGet();
+            try {
+                return Files.isRegularFile(r.pathOf(fileId)) ? r : null;
+            } finally {
+                r.inFlight.decrementAndGet();
+                r.recordLatency(System.nanoTime() - start);
+            }
+        };
+    }
+
+    private long hedgeDelayMs(Root r) {
+        if (hedgeMs > 0) return hedgeMs;
+        return Math.max(HEDGE_MIN_MS, HEDGE_FACTOR * r.latencyNanos / 1_000_000);
+    }
+
+    public boolean exists(int fileId) {
+        return locateExisting(fileId) != null;
+    }
+
+    /** File tạm rỗng cùng filesystem với kho (để rename nguyên tử vào chỗ) */
+    public Path newTempFile() throws IOException {
+        return newTempFile(0);
+    }
+
+    /**
+     * File tạm ở root sẽ chứa fileIdHint (nếu đã biết, ví dụ ghi đè file có sẵn), để commit chỉ là rename.
+     * Chưa biết FileID (0): chọn ngẫu nhiên theo trọng số, commit có thể phải chép sang root khác.
+     */
+    public Path newTempFile(int fileIdHint) throws IOException {
+        return (fileIdHint > 0 ? preferredRoot(fileIdHint) : randomRoot()).newTempFile();
+    }
+
+    /** Ghi bytes ra file tạm; caller commit() hoặc xóa file tạm */
+    public Path writeTemp(byte[] bytes) throws IOException {
+        return writeTemp(bytes, 0);
+    }
+
+    public Path writeTemp(byte[] bytes, int fileIdHint) throws IOException {
+        Path tmp = newTempFile(fileIdHint);
+        Files.write(tmp, bytes, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        return tmp;
+    }
+
+    /** Đưa file tạm vào vị trí của fileId (thay bản cũ nếu có, kể cả bản ở root khác) */
+    public Path commit(Path tmp, int fileId) throws IOException {
+        List<Root> targets = preferredRoots(fileId);
+        if (targets.size() > 1) return commitReplicated(tmp, fileId, targets);
+
+        Root target = targets.get(0);
+        Path dest = target.pathOf(fileId);
+        Path hop = null;
+        Path src = tmp;
+        if (!tmp.toAbsolutePath().normalize().startsWith(target.dir)) {
+            // File tạm ở ổ khác: chép sang .tmp của root đích trước (ngoài khóa) để bước cuối vẫn là rename nguyên tử
+            hop = target.newTempFile();
+            try {
+                Files.move(tmp, hop, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                Files.deleteIfExists(hop);
+                throw e;
+            }
+            src = hop;
+            metrics.increment("storage.objects.cross.root.commits");
+        }
+        ReentrantLock lock = lockFor(fileId);
+        lock.lock();
+        try {
+            latestCommit.remove(fileId); // bản chậm của commit nhân bản trước đó không được đè lên
+            long size = Files.size(src);
+            Files.createDirectories(dest.getParent());
+            moveIntoPlace(src, dest);
+            metrics.increment(target.metric("writes"));
+            metrics.add(target.metric("bytes.written"), size);
+            if (roots.size() > 1) {
+                // Bản cũ nằm ở root khác (trước khi thêm/bớt root) không còn đúng
+                for (Root r : roots) {
+                    if (r != target && r.available) Files.deleteIfExists(r.pathOf(fileId));
+                }
+            }
+        } finally {
+            lock.unlock();
+            if (hop != null) Files.deleteIfExists(hop);
+        }
+        return dest;
+    }
+
+    /**
+     * Ghi song song N bản, trả về khi đủ write quorum. File tạm được đổi tên thành bản stage riêng
+     * (caller xóa tmp sau khi commit trả về, trong khi các bản chậm vẫn đang chép từ stage).
+     */
+    private Path commitReplicated(Path tmp, int fileId, List<Root> targets) throws IOException {
+        Path stage = tmp.resolveSibling(tmp.getFileName() + ".stage");
+        Files.move(tmp, stage, StandardCopyOption.REPLACE_EXISTING);
+        long size = Files.size(stage);
+        long seq = commitSeq.incrementAndGet();
+        latestCommit.put(fileId, seq);
+
+        AtomicInteger remaining = new AtomicInteger(targets.size());
+        AtomicInteger failed = new AtomicInteger();
+        CompletionService<Root> cs = new ExecutorCompletionService<>(ioPool());
+        for (Root target : targets) {
+            cs.submit(() -> {
+                try {
+                    writeReplica(stage, fileId, seq, target, size);
+                    return target;
+                } catch (IOException e) {
+                    failed.incrementAndGet();
+                    throw e;
+                } finally {
+                    if (remaining.decrementAndGet() == 0) finishReplicated(stage, fileId, seq, targets, failed.get());
+                }
+            });
+        }
+
+        int ok = 0;
+        int errors = 0;
+        Root first = null;
+        IOException lastError = null;
+        try {
+            while (ok < writeQuorum && ok + errors < targets.size()) {
+                Future<Root> f = cs.take();
+                try {
+                    Root r = f.get();
+                    if (first == null) first = r;
+                    ok++;
+                } catch (ExecutionException e) {
+                    errors++;
+                    lastError = e.getCause() instanceof IOException ? (IOException) e.getCause()
+                            : new IOException(e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Bị ngắt khi chờ ghi bản sao", e);
+        }
+        if (ok < writeQuorum) {
+            metrics.increment("storage.replica.quorum.failures");
+            throw new IOException("Chỉ ghi được " + ok + "/" + targets.size() + " bản (cần " + writeQuorum + ")",
+                    lastError);
+        }
+        return first.pathOf(fileId);
+    }
+
+    private void writeReplica(Path stage, int fileId, long seq, Root target, long size) throws IOException {
+        Path dest = target.pathOf(fileId);
+        long start = System.nanoTime();
+        target.inFlight.incrementAndGet();
+        Path tmp = null;
+        try {
+            tmp = target.newTempFile();
+            // COPY_ATTRIBUTES: mọi bản của cùng một lần ghi có cùng mtime
+            Files.copy(stage, tmp, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            Files.createDirectories(dest.getParent());
+            ReentrantLock lock = lockFor(fileId);
+            lock.lock();
+            try {
+                if (!Long.valueOf(seq).equals(latestCommit.get(fileId))) {
+                    metrics.increment("storage.replica.superseded");
+                    return; // đã có commit mới hơn hoặc file đã bị xóa
+                }
+                moveIntoPlace(tmp, dest);
+            } finally {
+                lock.unlock();
+            }
+            metrics.increment(target.metric("writes"));
+            metrics.add(target.metric("bytes.written"), size);
+        } catch (IOException e) {
+            metrics.increment(target.metric("write.errors"));
+            System.err.println("⚠️ Không ghi được bản sao object " + fileId + " vào " + target.dir + ": " + e.getMessage());
+            // Bản cũ ở root này giờ đã lệch: xóa nếu còn xóa được để không bị đọc nhầm
+            try {
+                Files.deleteIfExists(dest);
+            } catch (IOException ignore) {
+            }
+            throw e;
+        } finally {
+            target.inFlight.decrementAndGet();
+            target.recordLatency(System.nanoTime() - start);
+            if (tmp != null) Files.deleteIfExists(tmp);
+        }
+    }
+
+    // Bản cuối cùng xong (thành công hay lỗi): dọn stage, xóa bản ở root ngoài danh sách
+    private void finishReplicated(Path stage, int fileId, long seq, List<Root> targets, int failed) {
+        try {
+            Files.deleteIfExists(stage);
+        } catch (IOException ignore) {
+        }
+        if (failed > 0) degradedWrites.incrementAndGet();
+        ReentrantLock lock = lockFor(fileId);
+        lock.lock();
+        try {
+            if (!latestCommit.remove(fileId, seq)) return;
+            if (failed > 0) return; // giữ các bản cũ cho tới khi rebalancer chép đủ
+            for (Root r : roots) {
+                if (!targets.contains(r) && r.available) Files.deleteIfExists(r.pathOf(fileId));
+            }
+        } catch (IOException e) {
+            System.err.println("⚠️ Không dọn được bản cũ của object " + fileId + ": " + e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean delete(int fileId) throws IOException {
+        ReentrantLock lock = lockFor(fileId);
+        lock.lock();
+        try {
+            latestCommit.remove(fileId);
+            boolean deleted = false;
+            for (Root r : roots) {
+                if (Files.deleteIfExists(r.pathOf(fileId))) {
+                    metrics.increment(r.metric("deletes"));
+                    deleted = true;
+                }
+            }
+            return deleted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Xóa mọi bản của fileId nếu nội dung vẫn là bản có kích thước / mtime đã biết (dùng khi chuyển sang
+     * tầng lạnh: không được xóa nội dung vừa được upload đè trong lúc nén).
+     */
+    public boolean deleteIfUnchanged(int fileId, long size, long lastModifiedMs) throws IOException {
+        ReentrantLock lock = lockFor(fileId);
+        lock.lock();
+        try {
+            if (latestCommit.containsKey(fileId)) return false;
+            Path p = locateExisting(fileId);
+            BasicFileAttributes a = p != null ? attrsOrNull(p) : null;
+            if (a == null || a.size() != size || a.lastModifiedTime().toMillis() != lastModifiedMs) return false;
+            for (Root r : roots) Files.deleteIfExists(r.pathOf(fileId));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Đặt tmp vào chỗ của fileId chỉ khi chưa có bản nào (khôi phục từ tầng lạnh: không đè upload mới hơn).
+     * Chỉ ghi một bản ở root ưu tiên; khi nhân bản, rebalancer chép bù các bản còn lại.
+     * @return đường dẫn object nếu đã đặt vào, null nếu object đã có sẵn
+     */
+    public Path restoreIfAbsent(Path tmp, int fileId) throws IOException {
+        ReentrantLock lock = lockFor(fileId);
+        lock.lock();
+        try {
+            if (latestCommit.containsKey(fileId) || locateExisting(fileId) != null) return null;
+            Root target = preferredRoot(fileId);
+            Path dest = target.pathOf(fileId);
+            Path src = tmp;
+            if (!tmp.toAbsolutePath().normalize().startsWith(target.dir)) {
+                src = target.newTempFile();
+                Files.move(tmp, src, StandardCopyOption.REPLACE_EXISTING);
+            }
+            try {
+                Files.createDirectories(dest.getParent());
+                moveIntoPlace(src, dest);
+            } finally {
+                Files.deleteIfExists(src);
+            }
+            if (replicas > 1) degradedWrites.incrementAndGet();
+            return dest;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Đưa object fileId (đang có bản ở root from) về đúng chỗ (dùng bởi StorageRebalancer):
+     *   - mỗi root ưu tiên chưa có bản, hoặc có bản lệch (khác kích thước/mtime với bản mới nhất), được chép lại;
+     *   - bản ở from bị xóa nếu from không còn là root ưu tiên và mọi root ưu tiên đã có bản đúng.
+     * Bản mới nhất (mtime lớn nhất trong các root dùng được) là bản chuẩn.
+     * @return số byte đã chép (0 nếu chỉ xóa), -1 nếu không phải làm gì
+     */
+    public long relocate(int fileId, Root from) throws IOException {
+        List<Root> targets = preferredRoots(fileId);
+        if (replicas == 1 && targets.get(0) == from) return -1;
+        ReentrantLock lock = lockFor(fileId);
+        lock.lock();
+        try {
+            if (latestCommit.containsKey(fileId)) return -1; // đang có commit nhân bản, lượt sau xét
+            Path src = from.pathOf(fileId);
+            if (!Files.isRegularFile(src)) return -1;
+
+            // Bản chuẩn (bản ở root đích có thể mới hơn: commit sau khi root đổi)
+            Root best = from;
+            BasicFileAttributes bestAttrs = Files.readAttributes(src, BasicFileAttributes.class);
+            for (Root r : roots) {
+                if (r == from || !r.available) continue;
+                BasicFileAttributes a = attrsOrNull(r.pathOf(fileId));
+                if (a != null && a.lastModifiedTime().compareTo(bestAttrs.lastModifiedTime()) > 0) {
+                    best = r;
+                    bestAttrs = a;
+                }
+            }
+
+            long copied = 0;
+            boolean changed = false;
+            for (Root target : targets) {
+                if (target == best) continue;
+                Path dest = target.pathOf(fileId);
+                BasicFileAttributes a = attrsOrNull(dest);
+                if (a != null && a.size() == bestAttrs.size()
+                        && a.lastModifiedTime().equals(bestAttrs.lastModifiedTime())) continue;
+                Path tmp = target.newTempFile();
+                try {
+                    Files.copy(best.pathOf(fileId), tmp, StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.COPY_ATTRIBUTES);
+                    Files.createDirectories(dest.getParent());
+                    moveIntoPlace(tmp, dest);
+                } finally {
+                    Files.deleteIfExists(tmp);
+                }
+                copied += bestAttrs.size();
+                changed = true;
+                metrics.increment(target.metric(a == null ? "moved.in" : "repaired"));
+                metrics.add(target.metric("bytes.written"), bestAttrs.size());
+            }
+            if (!targets.contains(from)) {
+                Files.delete(src);
+                metrics.increment(from.metric("moved.out"));
+                changed = true;
+            }
+            return changed ? copied : -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static BasicFileAttributes attrsOrNull(Path p) {
+        try {
+            BasicFileAttributes a = Files.readAttributes(p, BasicFileAttributes.class);
+            return a.isRegularFile() ? a : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Kiểm tra từng root còn dùng được (thư mục còn, file .root còn - ổ bị tháo thường để lại mount point rỗng).
+     * @return true nếu có root đổi trạng thái
+     */
+    public boolean checkHealth() {
+        if (!isStriped()) return false;
+        boolean changed = false;
+        for (Root r : roots) {
+            boolean ok = Files.isDirectory(r.dir) && Files.isRegularFile(r.dir.resolve(ROOT_FILE));
+            if (ok != r.available) {
+                r.available = ok;
+                changed = true;
+                metrics.increment(r.metric(ok ? "recovered" : "failed"));
+                System.err.println((ok ? "✅ Object root dùng lại được: " : "❌ Object root không dùng được: ") + r.dir);
+            }
+        }
+        return changed;
+    }
+
+    /** Số lần ghi nhân bản thiếu bản từ lần gọi trước (cần chép bù) */
+    public long takeDegradedWrites() {
+        return degradedWrites.getAndSet(0);
+    }
+
+    /** Nhận từng object khi duyệt một root */
+    public interface Visitor {
+        void object(int fileId, Path path) throws IOException;
+
+        /** File trong cây ab/cd không phải object (tên không phải FileID) */
+        default void foreign(Path path) throws IOException {}
+    }
+
+    /** Duyệt mọi object của root theo cây ab/cd (bỏ qua .tmp và các file hệ thống ở gốc) */
+    public void forEach(Root root, Visitor visitor) throws IOException {
+        if (!Files.isDirectory(root.dir)) return;
+        try (DirectoryStream<Path> l1 = Files.newDirectoryStream(root.dir)) {
+            for (Path a : l1) {
+                if (!Files.isDirectory(a) || a.getFileName().toString().startsWith(".")) continue;
+                try (DirectoryStream<Path> l2 = Files.newDirectoryStream(a)) {
+                    for (Path b : l2) {
+                        if (!Files.isDirectory(b)) continue;
+                        // Đọc hết thư mục lá trước: visitor có thể xóa/chuyển file (xóa trong lúc readdir làm sót entry)
+                        List<Path> files = new ArrayList<>();
+                        try (DirectoryStream<Path> l3 = Files.newDirectoryStream(b)) {
+                            for (Path f : l3) files.add(f);
+                        }
+                        for (Path f : files) {
+                            int id;
+                            try {
+                                id = Integer.parseInt(f.getFileName().toString());
+                            } catch (NumberFormatException e) {
+                                visitor.foreign(f);
+                                continue;
+                            }
+                            visitor.object(id, f);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /** Root chứa đường dẫn p (p phải nằm trong một object root) */
+    public Root rootOf(Path p) {
+        Path abs = p.toAbsolutePath().normalize();
+        for (Root r : roots) if (abs.startsWith(r.dir)) return r;
+        throw new IllegalArgumentException("Không thuộc object root nào: " + p);
+    }
+
+    private Root randomRoot() {
+        if (placement.length == 1) return placement[0];
+        long total = 0;
+        for (Root r : placement) if (r.available) total += r.weight;
+        if (total == 0) return placement[0];
+        long x = ThreadLocalRandom.current().nextLong(total);
+        for (Root r : placement) {
+            if (!r.available) continue;
+            x -= r.weight;
+            if (x < 0) return r;
+        }
+        return placement[placement.length - 1];
+    }
+
+    private ExecutorService ioPool() {
+        ExecutorService p = ioPool;
+        if (p == null) {
+            synchronized (this) {
+                p = ioPool;
+                if (p == null) {
+                    AtomicInteger n = new AtomicInteger();
+                    ioPool = p = Executors.newCachedThreadPool(r -> {
+                        Thread t = new Thread(r, "object-io-" + n.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+                }
+            }
+        }
+        return p;
+    }
+
+    private ReentrantLock lockFor(int fileId) {
+        return locks[fileId & (LOCK_STRIPES - 1)];
+    }
+
+    private static void moveIntoPlace(Path tmp, Path target) throws IOException {
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // splitmix64: trộn bit để điểm của các root độc lập với nhau
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /** Một thư mục gốc của kho object */
+    public static final class Root {
+        private final int index;
+        private final Path dir;
+        private final Path tmpDir;
+        private final boolean draining;
+        // id ngẫu nhiên lưu trong <root>/.root: vị trí object không đổi khi đổi mount point hay thứ tự cấu hình
+        private final long id;
+        private final long weight;
+        private final String metricPrefix;
+        private volatile boolean available = true;
+        // Tải hiện tại: số thao tác đang chạy + độ trễ trung bình (EWMA, 1/8)
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile long latencyNanos = TimeUnit.MILLISECONDS.toNanos(1);
+
+        Root(int index, Path dir, boolean draining, boolean striped) {
+            this.index = index;
+            this.dir = dir;
+            this.tmpDir = dir.resolve(".tmp");
+            this.draining = draining;
+            this.metricPrefix = "storage.root." + index + ".";
+            if (!striped) {
+                // Một root: không cần trọng số, không tạo gì trên đĩa lúc khởi động
+                this.id = 0;
+                this.weight = 1;
+                return;
+            }
+
+            Properties p = new Properties();
+            Path file = dir.resolve(ROOT_FILE);
+            try (InputStream in = Files.newInputStream(file)) {
+                p.load(in);
+            } catch (IOException ignore) {
+                // root mới
+            }
+            long rootId;
+            long w;
+            try {
+                rootId = Long.parseLong(p.getProperty("id"));
+                w = Long.parseLong(p.getProperty("weight"));
+            } catch (RuntimeException e) {
+                // Lần đầu thấy root này: trọng số = dung lượng trống lúc thêm (MB)
+                rootId = ThreadLocalRandom.current().nextLong();
+                w = Math.max(1, usableBytes(dir) / (1024 * 1024));
+                p.setProperty("id", Long.toString(rootId));
+                p.setProperty("weight", Long.toString(w));
+                try {
+                    Files.createDirectories(dir);
+                    try (OutputStream out = Files.newOutputStream(file)) {
+                        p.store(out, "ObjectStore root: weight (MB) quyết định tỉ lệ object mới được đặt ở root này");
+                    }
+                } catch (IOException e2) {
+                    System.err.println("⚠️ Không ghi được " + file + ": " + e2.getMessage());
+                }
+            }
+            this.id = rootId;
+            this.weight = draining ? 0 : Math.max(1, w);
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public Path getDir() {
+            return dir;
+        }
+
+        public long getWeight() {
+            return weight;
+        }
+
+        public boolean isDraining() {
+            return draining;
+        }
+
+        public boolean isAvailable() {
+            return available;
+        }
+
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        public long getLatencyMicros() {
+            return latencyNanos / 1000;
+        }
+
+        public long getUsableSpace() {
+            return usableBytes(dir);
+        }
+
+        public long getTotalSpace() {
+            try {
+                return Files.getFileStore(dir).getTotalSpace();
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+
+        public Path getTmpDir() {
+            return tmpDir;
+        }
+
+        public Path pathOf(int fileId) {
+            String hex = String.format("%08x", fileId);
+            return dir.resolve(hex.substring(6, 8)).resolve(hex.substring(4, 6)).resolve(Integer.toString(fileId));
+        }
+
+        Path newTempFile() throws IOException {
+            Files.createDirectories(tmpDir);
+            return Files.createTempFile(tmpDir, "obj-", ".tmp");
+        }
+
+        // Weighted rendezvous hashing: -w / ln(u), u đều trong (0,1)
+        double score(int fileId) {
+            long h = mix64(id ^ mix64(fileId));
+            double u = ((h >>> 11) + 0.5) / (double) (1L << 53);
+            return weight / -Math.log(u);
+        }
+
+        double load() {
+            return (double) latencyNanos * (1 + inFlight.get());
+        }
+
+        void recordLatency(long nanos) {
+            long cur = latencyNanos;
+            latencyNanos = cur + (nanos - cur) / 8; // cập nhật lỏng, không cần chính xác tuyệt đối
+        }
+
+        String metric(String name) {
+            return metricPrefix + name;
+        }
+
+        private static long usableBytes(Path dir) {
+            try {
+                Path p = dir;
+                while (p != null && !Files.exists(p)) p = p.getParent();
+                return p != null ? Files.getFileStore(p).getUsableSpace() : 0;
+            } catch (IOException e) {
+                return 0;
+            }
+        }
+    }
+}
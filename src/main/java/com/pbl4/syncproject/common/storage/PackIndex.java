@@ -0,0 +1,22 @@
+package com.pbl4.syncproject.common.storage;
+
+import java.sql.SQLException;
+
+/**
+ * Nơi lưu vị trí (segment, offset, length) của nội dung đã gói, dùng trên một kết nối DB (xem PackStore).
+ * Phía server gắn bảng PackedContent qua StorageManager.setPackIndex.
+ */
+public interface PackIndex {
+
+    interface SlotVisitor {
+        void slot(int fileId, int segmentId, long offset, int length);
+    }
+
+    // Ghi vị trí mới của nội dung file (thay vị trí cũ nếu có)
+    void upsert(int fileId, int segmentId, long offset, int length) throws SQLException;
+
+    void delete(int fileId) throws SQLException;
+
+    // Duyệt toàn bộ index (nạp lúc khởi động), theo FileID
+    void forEach(SlotVisitor visitor) throws SQLException;
+}
@@ -0,0 +1,412 @@
+package com.pbl4.syncproject.common.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Gói file nhỏ (≤ storage.pack.max.bytes) vào các segment chỉ ghi nối đuôi thay vì mỗi file một file riêng
+ * (tốn inode, entry thư mục và open/write/close cho mỗi upload):
+ *   <storage.pack.root>/seg-00000001.pack, seg-00000002.pack, ...
+ *
+ * Vị trí (segment, offset, length) của từng FileID nằm trong bảng PackedContent và được giữ trong bộ nhớ để
+ * đọc không cần truy vấn; đọc bằng FileChannel.read theo vị trí trên channel dùng chung của segment.
+ * Ghi đè / xóa chỉ đổi index: byte cũ thành "chết". PackCompactor chép các bản còn sống của segment có tỉ lệ
+ * byte chết vượt ngưỡng sang segment đang ghi rồi bỏ segment cũ (sau một khoảng chờ để các lượt đọc dở kết thúc).
+ *
+ * Thứ tự ghi: nối dữ liệu -> force (gộp chung cho các upload đồng thời) -> ghi index vào DB -> index bộ nhớ,
+ * nên index không bao giờ trỏ tới dữ liệu chưa xuống đĩa. Crash giữa chừng chỉ để lại byte chết.
+ */
+public final class PackStore {
+
+    private static final int LOCK_STRIPES = 256;
+    private static final String PREFIX = "seg-";
+    private static final String SUFFIX = ".pack";
+    // Segment đã bị gộp vẫn mở thêm một lúc cho các lượt đọc đang dở
+    private static final long RETIRE_GRACE_MS = TimeUnit.MINUTES.toMillis(1);
+
+    /** Vị trí nội dung của một file trong segment */
+    public static final class Slot {
+        public final int segmentId;
+        public final long offset;
+        public final int length;
+
+        Slot(int segmentId, long offset, int length) {
+            this.segmentId = segmentId;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static final class Segment {
+        final int id;
+        final Path path;
+        final FileChannel channel;
+        final AtomicLong live = new AtomicLong();
+        // Lượt ghi đã nối vào segment nhưng chưa cập nhật index: chưa được bỏ segment
+        final AtomicInteger pending = new AtomicInteger();
+        volatile long size;      // byte đã ghi (chỉ tăng, chỉ ghi trong appendLock)
+        volatile long forcedTo;  // byte đã force xuống đĩa (chỉ ghi trong forceLock)
+        volatile long retiredAt;
+
+        Segment(int id, Path path, FileChannel channel, long size) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.size = size;
+            this.forcedTo = size;
+        }
+    }
+
+    private final Path root;
+    private final long segmentBytes;
+    private final int maxFileBytes;
+    private final Map<Integer, Slot> index = new ConcurrentHashMap<>();
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+    private final List<Segment> retired = new ArrayList<>(); // chỉ đọc/ghi khi giữ khóa retired
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+    private final Object appendLock = new Object();
+    private final Object forceLock = new Object();
+    private volatile Function<Connection, PackIndex> indexOpener;
+    private volatile StorageMetrics metrics = StorageMetrics.NONE;
+    private volatile Segment active;
+    private volatile boolean loaded;
+
+    PackStore(Path root, long segmentBytes, int maxFileBytes) {
+        this.root = root.toAbsolutePath().normalize();
+        this.segmentBytes = segmentBytes;
+        this.maxFileBytes = maxFileBytes;
+        for (int i = 0; i < LOCK_STRIPES; i++) locks[i] = new ReentrantLock();
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    void setIndex(Function<Connection, PackIndex> indexOpener) {
+        this.indexOpener = indexOpener;
+    }
+
+    void setMetrics(StorageMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // Index trên kết nối conn; chưa gắn (StorageManager.setPackIndex) thì không đọc/ghi được segment
+    private PackIndex indexOn(Connection conn) throws SQLException {
+        Function<Connection, PackIndex> opener = indexOpener;
+        if (opener == null) throw new SQLException("PackStore chưa được gắn index (StorageManager.setPackIndex)");
+        return opener.apply(conn);
+    }
+
+    /** File có kích thước này được gói vào segment */
+    public boolean accepts(long size) {
+        return size <= maxFileBytes;
+    }
+
+    // ---------- Nạp index ----------
+
+    // Lần đầu dùng: mở các segment có sẵn, nạp index từ DB, tính byte còn sống của từng segment
+    private void ensureLoaded(Connection conn) throws SQLException, IOException {
+        if (loaded) return;
+        synchronized (this) {
+            if (loaded) return;
+            Files.createDirectories(root);
+            int maxId = 0;
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(root, PREFIX + "*" + SUFFIX)) {
+                for (Path p : ds) {
+                    String name = p.getFileName().toString();
+                    int id;
+                    try {
+                        id = Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+                    } catch (NumberFormatException e) {
+                        continue;
+                    }
+                    FileChannel ch = FileChannel.open(p, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    segments.put(id, new Segment(id, p, ch, ch.size()));
+                    maxId = Math.max(maxId, id);
+                }
+            }
+            index.clear();
+            indexOn(conn).forEach((fileId, segmentId, offset, length) -> {
+                Segment s = segments.get(segmentId);
+                if (s == null || offset + length > s.size) {
+                    System.err.println("⚠️ PackStore: FileID " + fileId + " trỏ tới segment " + segmentId + " không hợp lệ");
+                    return;
+                }
+                index.put(fileId, new Slot(segmentId, offset, length));
+                s.live.addAndGet(length);
+            });
+            // Ghi tiếp vào segment mới nhất nếu còn chỗ (đuôi dở do crash chỉ là byte chết)
+            Segment last = segments.get(maxId);
+            active = last != null && last.size < segmentBytes ? last : newSegment(maxId + 1);
+            loaded = true;
+        }
+    }
+
+    private Segment newSegment(int id) throws IOException {
+        Path p = root.resolve(String.format("%s%08d%s", PREFIX, id, SUFFIX));
+        FileChannel ch = FileChannel.open(p, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment s = new Segment(id, p, ch, ch.size());
+        segments.put(id, s);
+        metrics.increment("storage.pack.segments.created");
+        return s;
+    }
+
+    // ---------- Đọc / ghi ----------
+
+    /** Vị trí nội dung của fileId, null nếu file không được gói */
+    public Slot slotOf(Connection conn, int fileId) throws SQLException, IOException {
+        ensureLoaded(conn);
+        return index.get(fileId);
+    }
+
+    /** Mở nội dung đã gói của fileId, null nếu file không được gói */
+    public StoredContent open(Connection conn, int fileId) throws SQLException, IOException {
+        ensureLoaded(conn);
+        Slot slot = index.get(fileId);
+        if (slot == null) return null;
+        Segment s = segmentOf(slot);
+        metrics.increment("storage.pack.reads");
+        return StoredContent.ofSlice(s.channel, slot.offset, slot.length);
+    }
+
+    /** Đọc toàn bộ nội dung đã gói của fileId, null nếu file không được gói */
+    public byte[] read(Connection conn, int fileId) throws SQLException, IOException {
+        StoredContent c = open(conn, fileId);
+        return c != null ? c.readAll() : null;
+    }
+
+    /** Ghi nội dung mới cho fileId (thay bản cũ nếu có) */
+    public Slot put(Connection conn, int fileId, byte[] bytes) throws SQLException, IOException {
+        if (!accepts(bytes.length)) throw new IOException("File quá lớn để gói: " + bytes.length + " byte");
+        ensureLoaded(conn);
+        ReentrantLock lock = lockFor(fileId);
+        lock.lock();
+        try {
+            Slot slot = append(bytes);
+            try {
+                indexOn(conn).upsert(fileId, slot.segmentId, slot.offset, slot.length);
+                replace(fileId, slot);
+            } finally {
+                appended(slot);
+            }
+            metrics.increment("storage.pack.writes");
+            metrics.add("storage.pack.bytes", bytes.length);
+            return slot;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Bỏ nội dung đã gói của fileId (file bị xóa hẳn, hoặc nội dung mới quá lớn nên nằm riêng) */
+    public boolean remove(Connection conn, int fileId) throws SQLException, IOException {
+        ensureLoaded(conn);
+        ReentrantLock lock = lockFor(fileId);
+        lock.lock();
+        try {
+            if (!index.containsKey(fileId)) return false;
+            indexOn(conn).delete(fileId);
+            replace(fileId, null);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Cập nhật index bộ nhớ + số byte còn sống (gọi trong khóa của fileId, sau khi DB đã ghi)
+    private void replace(int fileId, Slot slot) {
+        Slot old = slot != null ? index.put(fileId, slot) : index.remove(fileId);
+        if (old != null) {
+            Segment s = segments.get(old.segmentId);
+            if (s != null) s.live.addAndGet(-old.length);
+        }
+        if (slot != null) segments.get(slot.segmentId).live.addAndGet(slot.length);
+    }
+
+    /**
+     * Nối bytes vào segment đang ghi rồi chờ tới khi chúng xuống đĩa.
+     * Người gọi phải gọi appended(slot) sau khi đã cập nhật index.
+     */
+    private Slot append(byte[] bytes) throws IOException {
+        Segment s;
+        long offset;
+        synchronized (appendLock) {
+            s = active;
+            if (s.size > 0 && s.size + bytes.length > segmentBytes) {
+                s = active = newSegment(s.id + 1);
+            }
+            offset = s.size;
+            s.pending.incrementAndGet();
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            long pos = offset;
+            while (buf.hasRemaining()) pos += s.channel.write(buf, pos);
+            s.size = pos;
+        }
+        Slot slot = new Slot(s.id, offset, bytes.length);
+        try {
+            forceTo(s, offset + bytes.length);
+        } catch (IOException e) {
+            appended(slot);
+            throw e;
+        }
+        return slot;
+    }
+
+    private void appended(Slot slot) {
+        segments.get(slot.segmentId).pending.decrementAndGet();
+    }
+
+    // Một lần force phủ được mọi lượt nối đã xong trước nó: các upload đồng thời chờ chung một lần
+    private void forceTo(Segment s, long end) throws IOException {
+        if (s.forcedTo >= end) return;
+        synchronized (forceLock) {
+            if (s.forcedTo >= end) return;
+            long target = s.size;
+            s.channel.force(false);
+            s.forcedTo = target;
+            metrics.increment("storage.pack.forces");
+        }
+    }
+
+    private Segment segmentOf(Slot slot) throws IOException {
+        Segment s = segments.get(slot.segmentId);
+        if (s == null) {
+            synchronized (retired) {
+                for (Segment r : retired) if (r.id == slot.segmentId) return r;
+            }
+            throw new IOException("Segment " + slot.segmentId + " không còn");
+        }
+        return s;
+    }
+
+    // ---------- Gộp segment ----------
+
+    /** Các segment (trừ segment đang ghi) có tỉ lệ byte chết ≥ minDeadRatio, nhiều byte chết nhất trước */
+    public List<Integer> compactionCandidates(Connection conn, double minDeadRatio) throws SQLException, IOException {
+        ensureLoaded(conn);
+        List<Segment> list = new ArrayList<>();
+        for (Segment s : segments.values()) {
+            if (s == active) continue;
+            long dead = s.size - s.live.get();
+            if (dead >= s.size * minDeadRatio) list.add(s);
+        }
+        list.sort((a, b) -> Long.compare(b.size - b.live.get(), a.size - a.live.get()));
+        List<Integer> ids = new ArrayList<>();
+        for (Segment s : list) ids.add(s.id);
+        return ids;
+    }
+
+    /**
+     * Chép các bản còn sống của segment sang segment đang ghi rồi bỏ segment cũ.
+     * @return số byte đã chép
+     */
+    public long compact(Connection conn, int segmentId) throws SQLException, IOException {
+        ensureLoaded(conn);
+        Segment s = segments.get(segmentId);
+        if (s == null || s == active) return 0;
+
+        List<Integer> fileIds = new ArrayList<>();
+        for (Map.Entry<Integer, Slot> e : index.entrySet()) {
+            if (e.getValue().segmentId == segmentId) fileIds.add(e.getKey());
+        }
+        long copied = 0;
+        PackIndex dao = indexOn(conn);
+        for (int fileId : fileIds) {
+            ReentrantLock lock = lockFor(fileId);
+            lock.lock();
+            try {
+                Slot slot = index.get(fileId);
+                if (slot == null || slot.segmentId != segmentId) continue; // vừa bị ghi đè / xóa
+                byte[] bytes = StoredContent.ofSlice(s.channel, slot.offset, slot.length).readAll();
+                Slot moved = append(bytes);
+                try {
+                    dao.upsert(fileId, moved.segmentId, moved.offset, moved.length);
+                    replace(fileId, moved);
+                } finally {
+                    appended(moved);
+                }
+                copied += bytes.length;
+            } finally {
+                lock.unlock();
+            }
+        }
+        // Upload vừa nối vào segment ngay trước khi nó thôi là segment đang ghi: để lượt sau
+        if (s.pending.get() != 0 || s.live.get() != 0) return copied;
+
+        s.retiredAt = System.currentTimeMillis();
+        synchronized (retired) {
+            retired.add(s);
+        }
+        segments.remove(segmentId);
+        metrics.increment("storage.pack.compacted.segments");
+        metrics.add("storage.pack.compacted.bytes", copied);
+        metrics.add("storage.pack.reclaimed.bytes", s.size - copied);
+        return copied;
+    }
+
+    /** Đóng và xóa các segment đã gộp xong quá khoảng chờ */
+    public int sweepRetired() {
+        List<Segment> expired = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        synchronized (retired) {
+            for (Iterator<Segment> it = retired.iterator(); it.hasNext(); ) {
+                Segment s = it.next();
+                if (now - s.retiredAt >= RETIRE_GRACE_MS) {
+                    expired.add(s);
+                    it.remove();
+                }
+            }
+        }
+        for (Segment s : expired) {
+            try {
+                s.channel.close();
+                Files.deleteIfExists(s.path);
+            } catch (IOException e) {
+                System.err.println("⚠️ Không xóa được segment " + s.path + ": " + e.getMessage());
+            }
+        }
+        return expired.size();
+    }
+
+    // ---------- Thống kê ----------
+
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    public long liveBytes() {
+        long n = 0;
+        for (Segment s : segments.values()) n += s.live.get();
+        return n;
+    }
+
+    public long totalBytes() {
+        long n = 0;
+        for (Segment s : segments.values()) n += s.size;
+        return n;
+    }
+
+    public int packedFiles() {
+        return index.size();
+    }
+
+    private ReentrantLock lockFor(int fileId) {
+        return locks[fileId & (LOCK_STRIPES - 1)];
+    }
+}
@@ -1,10 +1,21 @@
 package com.pbl4.syncproject.common.storage;
 
+import com.pbl4.syncproject.common.model.Folders;
+
 import java.io.*;
 import java.nio.file.*;
 import java.sql.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 public final class StorageManager {
 
@@ -22,6 +33,29 @@ public final class StorageManager {
     }
 
     private Path rootDir;
+    // storage.layout=object: nội dung file nằm trong ObjectStore theo FileID thay vì theo cây thư mục
+    private final boolean objectLayout;
+    private final ObjectStore objectStore;
+    private final VersionStore versionStore;
+    // null nếu tier.enabled=false
+    private final TierStore tierStore;
+    // null nếu storage.pack.enabled=false
+    private final PackStore packStore;
+    // toRealPath của root chỉ tính một lần (lần đầu getRoot())
+    private volatile Path realRootDir;
+    // false nếu DB chưa có bảng FolderClosure
+    private volatile boolean closureAvailable = true;
+    // Chuỗi tổ tiên trong bộ nhớ (từ root xuống, null nếu không có): server gắn vào NamespaceIndex lúc khởi động
+    private volatile Function<Integer, List<Folders>> ancestorLookup;
+
+    // Cache FolderID -> đường dẫn thật, kèm liên kết cha/con để xóa theo cây con khi rename/move/delete
+    private final Map<Integer, CachedFolder> folderPaths = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<Integer>> folderChildren = new ConcurrentHashMap<>();
+    private final Object folderCacheLock = new Object();
+    private long folderCacheGeneration; // chỉ đọc/ghi trong folderCacheLock
+
+    private static final int NO_PARENT = 0;
+    private static final int MAX_DEPTH = 1024;
 
     private StorageManager() {
         Config cfg = loadConfig();
@@ -31,12 +65,76 @@ public final class StorageManager {
             );
         }
         this.rootDir = Paths.get(cfg.storageRoot).toAbsolutePath().normalize();
+        this.objectLayout = "object".equalsIgnoreCase(cfg.layout);
+        this.objectStore = createObjectStore(cfg);
+        this.versionStore = new VersionStore(cfg.versionsRoot != null && !cfg.versionsRoot.isBlank()
+                ? Paths.get(cfg.versionsRoot) : rootDir.resolve(".versions"));
+        this.tierStore = createTierStore(cfg);
+        this.packStore = createPackStore(cfg, rootDir);
+    }
+
+    private static PackStore createPackStore(Config cfg, Path rootDir) {
+        if (!"true".equalsIgnoreCase(cfg.packEnabled)) return null;
+        Path dir = cfg.packRoot != null && !cfg.packRoot.isBlank()
+                ? Paths.get(cfg.packRoot.strip()) : rootDir.resolve(".packs");
+        return new PackStore(dir, parseInt(cfg.packSegmentMb, 64) * 1024L * 1024L, parseInt(cfg.packMaxBytes, 64 * 1024));
+    }
+
+    private static TierStore createTierStore(Config cfg) {
+        if (!"true".equalsIgnoreCase(cfg.tierEnabled)) return null;
+        if (cfg.tierColdRoot == null || cfg.tierColdRoot.isBlank()) {
+            throw new IllegalStateException("tier.enabled=true nhưng thiếu 'tier.cold.root'");
+        }
+        return new TierStore(Paths.get(cfg.tierColdRoot.strip()));
+    }
+
+    // storage.objects.roots (nhiều ổ, cách nhau dấu phẩy) được ưu tiên hơn storage.objects.root
+    private ObjectStore createObjectStore(Config cfg) {
+        List<Path> dirs = new ArrayList<>();
+        if (cfg.objectsRoots != null) {
+            for (String s : cfg.objectsRoots.split(",")) {
+                if (!s.isBlank()) dirs.add(Paths.get(s.strip()).toAbsolutePath().normalize());
+            }
+        }
+        if (dirs.isEmpty()) {
+            dirs.add(cfg.objectsRoot != null && !cfg.objectsRoot.isBlank()
+                    ? Paths.get(cfg.objectsRoot) : rootDir.resolve(".objects"));
+            return new ObjectStore(dirs.get(0));
+        }
+        Set<Path> draining = new HashSet<>();
+        if (cfg.objectsDrain != null) {
+            for (String s : cfg.objectsDrain.split(",")) {
+                if (s.isBlank()) continue;
+                Path p = Paths.get(s.strip()).toAbsolutePath().normalize();
+                draining.add(p);
+                // Root đang rút vẫn phải được đọc dù đã bị bỏ khỏi danh sách
+                if (!dirs.contains(p)) dirs.add(p);
+            }
+        }
+        int replicas = parseInt(cfg.replicas, 1);
+        int quorum = parseInt(cfg.writeQuorum, replicas / 2 + 1);
+        return new ObjectStore(dirs, draining, replicas, quorum, parseInt(cfg.hedgeMs, 0));
+    }
+
+    private static int parseInt(String s, int def) {
+        try {
+            return s != null && !s.isBlank() ? Integer.parseInt(s.strip()) : def;
+        } catch (NumberFormatException e) {
+            return def;
+        }
     }
 
     // ---------- Public API ----------
 
-    public synchronized Path getRoot() throws IOException {
-        Files.createDirectories(rootDir);
+    public Path getRoot() throws IOException {
+        if (realRootDir == null) {
+            synchronized (this) {
+                if (realRootDir == null) {
+                    Files.createDirectories(rootDir);
+                    realRootDir = rootDir.toRealPath();
+                }
+            }
+        }
         return rootDir;
     }
 
@@ -61,13 +159,165 @@ public final class StorageManager {
 
     /** Chặn path thoát khỏi root */
     public void assertWithinRoot(Path p) throws IOException {
-        Path root = getRoot().toRealPath();
+        getRoot();
+        Path root = realRootDir;
         Path real = p.toAbsolutePath().normalize().toRealPath(LinkOption.NOFOLLOW_LINKS);
         if (!real.startsWith(root)) {
             throw new SecurityException("Path outside of storage root: " + p);
         }
     }
 
+    /**
+     * Ghi file qua file tạm cùng thư mục rồi rename nguyên tử: không bao giờ ghi đè tại chỗ,
+     * nên file đang là hard link chung nội dung với file khác (xem linkOrCopy) không bị ảnh hưởng.
+     */
+    public void writeAtomically(Path target, byte[] bytes) throws IOException {
+        Path tmp = Files.createTempFile(target.getParent(), ".upload-", ".tmp");
+        try {
+            Files.write(tmp, bytes, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            moveIntoPlace(tmp, target);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Tạo target có cùng nội dung với source mà không truyền dữ liệu qua mạng:
+     * hard link nếu cùng filesystem (không tốn chỗ), ngược lại copy.
+     * Mọi thao tác ghi của server đều thay file bằng rename (writeAtomically) nên hard link
+     * hoạt động như copy-on-write: sửa một bên không làm đổi bên kia.
+     * @return true nếu đã hard link, false nếu phải copy
+     */
+    public boolean linkOrCopy(Path source, Path target) throws IOException {
+        assertWithinStorage(source);
+        assertWithinStorage(target.getParent());
+        if (Files.exists(target) && Files.isSameFile(source, target)) return true;
+
+        Path tmp = target.resolveSibling(".link-" + System.nanoTime() + ".tmp");
+        boolean linked;
+        try {
+            try {
+                Files.createLink(tmp, source);
+                linked = true;
+            } catch (UnsupportedOperationException | IOException e) {
+                // Khác filesystem / FS không hỗ trợ hard link
+                Files.copy(source, tmp, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+                linked = false;
+            }
+            moveIntoPlace(tmp, target);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return linked;
+    }
+
+    // Path nằm trong storage root hoặc trong ObjectStore / VersionStore (có thể được cấu hình ở ổ khác)
+    private void assertWithinStorage(Path p) throws IOException {
+        Path abs = p.toAbsolutePath().normalize();
+        if (objectStore.contains(abs) || abs.startsWith(versionStore.getRoot())) return;
+        assertWithinRoot(p);
+    }
+
+    private static void moveIntoPlace(Path tmp, Path target) throws IOException {
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // ---------- Vị trí nội dung file ----------
+
+    public boolean isObjectLayout() {
+        return objectLayout;
+    }
+
+    public ObjectStore objects() {
+        return objectStore;
+    }
+
+    public VersionStore versions() {
+        return versionStore;
+    }
+
+    /** Tầng lạnh, null nếu không bật tier.enabled */
+    public TierStore tier() {
+        return tierStore;
+    }
+
+    /** Segment chứa file nhỏ, null nếu không bật storage.pack.enabled */
+    public PackStore packs() {
+        return packStore;
+    }
+
+    /** Thư mục của UploadJournal: nằm trong root để nội dung staged được hard link vào chỗ */
+    public Path journalRoot() {
+        return rootDir.resolve(".journal");
+    }
+
+    /** Thư mục tạm của replica khi tải nội dung từ primary (xem ReplicaSync) */
+    public Path replicationRoot() {
+        return rootDir.resolve(".replication");
+    }
+
+    /**
+     * Mở nội dung hiện tại của file để đọc: bản đã gói trong segment nếu có, ngược lại file riêng
+     * (locateFile). NoSuchFileException nếu không còn nội dung.
+     */
+    public StoredContent openContent(Connection conn, int fileId, int folderId, String fileName)
+            throws SQLException, IOException {
+        if (packStore != null) {
+            StoredContent packed = packStore.open(conn, fileId);
+            if (packed != null) return packed;
+        }
+        return StoredContent.ofFile(locateFile(conn, fileId, folderId, fileName));
+    }
+
+    /** Xóa bản nội dung nằm riêng của file (object và đường dẫn cũ), sau khi nội dung đã được gói */
+    public void deleteLooseFile(Connection conn, int fileId, int folderId, String fileName) throws SQLException, IOException {
+        if (objectLayout) objectStore.delete(fileId);
+        Files.deleteIfExists(legacyFilePath(conn, folderId, fileName));
+        if (tierStore != null) tierStore.delete(fileId);
+    }
+
+    /** Đường dẫn kiểu cũ của file: <thư mục theo cây DB>/<tên file> */
+    public Path legacyFilePath(Connection conn, int folderId, String fileName) throws SQLException, IOException {
+        return resolveFolderPathFromDb(conn, folderId).resolve(fileName).normalize();
+    }
+
+    /**
+     * Đường dẫn để ĐỌC nội dung file. Nội dung đã chuyển sang tầng lạnh được khôi phục về trước khi
+     * trả đường dẫn (xem TierStore).
+     */
+    public Path locateFile(Connection conn, int fileId, int folderId, String fileName) throws SQLException, IOException {
+        Path hot = locateHotFile(conn, fileId, folderId, fileName);
+        if (tierStore == null) return hot;
+        if (Files.isRegularFile(hot)) {
+            tierStore.hotHit(fileId);
+            return hot;
+        }
+        Path restored = tierStore.promote(conn, fileId, folderId, fileName);
+        return restored != null ? restored : hot;
+    }
+
+    /**
+     * Như locateFile nhưng chỉ xét storage chính. Với layout object, file chưa được StorageLayoutMigrator
+     * chuyển vẫn nằm ở đường dẫn cũ nên thử object trước rồi mới tới đường dẫn cũ.
+     */
+    public Path locateHotFile(Connection conn, int fileId, int folderId, String fileName) throws SQLException, IOException {
+        if (objectLayout) {
+            Path obj = objectStore.locate(fileId);
+            if (obj != null) return obj;
+        }
+        return legacyFilePath(conn, folderId, fileName);
+    }
+
+    /** Xóa bản theo đường dẫn cũ (sau khi bản trong ObjectStore đã được ghi) */
+    public void deleteLegacyFile(Connection conn, int folderId, String fileName) throws SQLException, IOException {
+        if (!objectLayout) return;
+        Files.deleteIfExists(legacyFilePath(conn, folderId, fileName));
+    }
+
     /** Sanitize tên */
     public static String sanitizeName(String name) {
         if (name == null) return "_";
@@ -82,54 +332,203 @@ public final class StorageManager {
     // ---------- Hỗ trợ SERVER: dựng path theo cây DB ----------
 
     /**
-     * Dựng đường dẫn thật của một FolderID bằng Folders(FolderName, ParentFolderID)
+     * Dựng đường dẫn thật của một FolderID bằng Folders(FolderName, ParentFolderID).
+     * Kết quả được cache theo FolderID: lần sau chỉ là một lần tra HashMap, không query DB,
+     * không gọi filesystem. Khi cache miss lấy cả chuỗi tổ tiên bằng 1 query qua FolderClosure.
      */
     public Path resolveFolderPathFromDb(Connection conn, int folderId) throws SQLException, IOException {
-        String name = null; Integer parent = null;
+        CachedFolder hit = folderPaths.get(folderId);
+        if (hit != null) return hit.path;
+
+        Path base = getRoot();
+        long generation;
+        synchronized (folderCacheLock) { generation = folderCacheGeneration; }
+
+        // 1) Lấy các tổ tiên chưa có trong cache (từ node root xuống), dừng ở tổ tiên đã cache
+        AncestorChain chain = loadAncestorsFromIndex(folderId);
+        if (chain == null) chain = loadAncestorsFromClosure(conn, folderId);
+        if (chain == null) chain = loadAncestorsByWalk(conn, folderId);
+        Deque<FolderRow> missing = chain.missing;
+        Path ancestorPath = chain.cachedAncestor;
+        if (missing.isEmpty() && ancestorPath != null) return ancestorPath; // đã được cache bởi luồng khác
+
+        // 2) Đi xuống để dựng path. Node root (parent = null) ứng với đúng storage.root, KHÔNG thêm tên root
+        Path path = ancestorPath != null ? ancestorPath : base;
+        List<CachedFolder> built = new ArrayList<>(missing.size());
+        while (!missing.isEmpty()) {
+            FolderRow row = missing.pop();
+            if (row.parentId != null) path = path.resolve(sanitizeName(row.name));
+            built.add(new CachedFolder(row.id, row.parentId != null ? row.parentId : NO_PARENT, path));
+        }
+
+        Path full = path.normalize();
+        // Tên đã sanitize nên không thể chứa '/' hay '..': chỉ cần kiểm tra theo chuỗi, không cần toRealPath
+        if (!full.startsWith(base)) throw new SecurityException("Path outside of storage root: " + full);
+
+        // 3) Lưu cache nếu không có invalidate nào chen vào trong lúc query
+        synchronized (folderCacheLock) {
+            if (generation == folderCacheGeneration) {
+                for (CachedFolder f : built) {
+                    folderPaths.put(f.id, f);
+                    if (f.parentId != NO_PARENT) {
+                        folderChildren.computeIfAbsent(f.parentId, k -> ConcurrentHashMap.newKeySet()).add(f.id);
+                    }
+                }
+            }
+        }
+        return full;
+    }
+
+    /**
+     * Nguồn chuỗi tổ tiên trong bộ nhớ dùng trước khi query FolderClosure: trả về các folder từ root xuống
+     * (gồm chính nó), null/rỗng nếu không có. null = luôn đọc DB.
+     */
+    public void setAncestorLookup(Function<Integer, List<Folders>> ancestorLookup) {
+        this.ancestorLookup = ancestorLookup;
+    }
+
+    /** Bộ đếm cho object/tier/pack store (mặc định bỏ qua) */
+    public void setMetrics(StorageMetrics metrics) {
+        StorageMetrics m = metrics != null ? metrics : StorageMetrics.NONE;
+        objectStore.setMetrics(m);
+        if (tierStore != null) tierStore.setMetrics(m);
+        if (packStore != null) packStore.setMetrics(m);
+    }
+
+    /** Mở index vị trí nội dung đã gói trên một kết nối DB; phải gắn trước khi dùng packs() */
+    public void setPackIndex(Function<Connection, PackIndex> indexOpener) {
+        if (packStore != null) packStore.setIndex(indexOpener);
+    }
+
+    /** Chuỗi tổ tiên lấy từ ancestorLookup (null nếu chưa gắn, index chưa nạp hoặc không có folder) */
+    private AncestorChain loadAncestorsFromIndex(int folderId) {
+        Function<Integer, List<Folders>> lookup = ancestorLookup;
+        if (lookup == null) return null;
+        List<Folders> ancestors = lookup.apply(folderId); // từ root xuống
+        if (ancestors == null || ancestors.isEmpty()) return null;
+
+        AncestorChain chain = new AncestorChain();
+        for (int i = ancestors.size() - 1; i >= 0; i--) {
+            Folders f = ancestors.get(i);
+            CachedFolder cached = folderPaths.get(f.getFolderId());
+            if (cached != null) {
+                chain.cachedAncestor = cached.path;
+                break;
+            }
+            chain.missing.push(new FolderRow(f.getFolderId(), f.getFolderName(), f.getParentId()));
+        }
+        return chain;
+    }
+
+    /**
+     * Cả chuỗi tổ tiên trong 1 query qua FolderClosure (sắp từ chính nó đi lên).
+     * Trả về null nếu DB chưa có closure cho folder này để dùng cách đi từng cấp.
+     */
+    private AncestorChain loadAncestorsFromClosure(Connection conn, int folderId) {
+        if (!closureAvailable) return null;
+        AncestorChain chain = new AncestorChain();
         try (PreparedStatement ps = conn.prepareStatement(
-                "SELECT FolderName, ParentFolderID FROM Folders WHERE FolderID=?")) {
+                "SELECT f.FolderID, f.FolderName, f.ParentFolderID FROM FolderClosure c " +
+                        "JOIN Folders f ON f.FolderID = c.AncestorID WHERE c.DescendantID=? ORDER BY c.Depth")) {
             ps.setInt(1, folderId);
             try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    name = rs.getString(1);
-                    parent = (Integer) rs.getObject(2);
+                while (rs.next()) {
+                    CachedFolder cached = folderPaths.get(rs.getInt(1));
+                    if (cached != null) {
+                        chain.cachedAncestor = cached.path;
+                        return chain;
+                    }
+                    chain.missing.push(new FolderRow(rs.getInt(1), rs.getString(2), (Integer) rs.getObject(3)));
                 }
             }
+        } catch (SQLException e) {
+            closureAvailable = false;
+            System.err.println("⚠️ FolderClosure không dùng được, chuyển sang dựng path từng cấp: " + e.getMessage());
+            return null;
         }
-        if (name == null) throw new SQLException("Folder không tồn tại: id=" + folderId);
-
-        // Nếu là node ROOT (parent null) -> trả về đúng storage.root
-        Path base = getRoot();
-        if (parent == null) {
-            assertWithinRoot(base);
-            return base; // <storage.root>
-        }
+        // Không có dòng closure nào (folder tạo trước migration) -> để cách đi từng cấp xử lý
+        return chain.missing.isEmpty() ? null : chain;
+    }
 
-        // Không phải root: build chuỗi tên, NHƯNG bỏ qua tên của node root (parent=null)
-        Path rel = Paths.get(sanitizeName(name));
-        Integer cur = parent;
+    /** Đi lên từng cấp bằng ParentFolderID cho tới khi gặp tổ tiên đã cache hoặc tới node root */
+    private AncestorChain loadAncestorsByWalk(Connection conn, int folderId) throws SQLException {
+        AncestorChain chain = new AncestorChain();
+        Integer cur = folderId;
         try (PreparedStatement ps = conn.prepareStatement(
                 "SELECT FolderName, ParentFolderID FROM Folders WHERE FolderID=?")) {
             while (cur != null) {
+                CachedFolder cached = folderPaths.get(cur);
+                if (cached != null) {
+                    chain.cachedAncestor = cached.path;
+                    break;
+                }
+                if (chain.missing.size() > MAX_DEPTH) throw new SQLException("Cây thư mục có vòng lặp tại folder id=" + folderId);
+
                 ps.setInt(1, cur);
                 try (ResultSet rs = ps.executeQuery()) {
-                    if (!rs.next()) break;
-                    String nm = sanitizeName(rs.getString(1));
-                    Integer nextParent = (Integer) rs.getObject(2);
-
-                    if (nextParent == null) {
-                        // cur là node root -> KHÔNG thêm tên của root
-                        break;
+                    if (!rs.next()) {
+                        if (cur == folderId) throw new SQLException("Folder không tồn tại: id=" + folderId);
+                        break; // tổ tiên bị mất: coi như node root
                     }
-                    rel = Paths.get(nm).resolve(rel);
-                    cur = nextParent;
+                    Integer parent = (Integer) rs.getObject(2);
+                    chain.missing.push(new FolderRow(cur, rs.getString(1), parent));
+                    cur = parent;
                 }
             }
         }
+        return chain;
+    }
+
+    /**
+     * Xóa cache đường dẫn của folder và toàn bộ cây con (gọi khi rename / move / delete folder).
+     */
+    public void invalidateFolderSubtree(int folderId) {
+        synchronized (folderCacheLock) {
+            folderCacheGeneration++;
+            CachedFolder removed = folderPaths.get(folderId);
+            if (removed != null && removed.parentId != NO_PARENT) {
+                Set<Integer> siblings = folderChildren.get(removed.parentId);
+                if (siblings != null) siblings.remove(folderId);
+            }
+            Deque<Integer> stack = new ArrayDeque<>();
+            stack.push(folderId);
+            while (!stack.isEmpty()) {
+                int id = stack.pop();
+                folderPaths.remove(id);
+                Set<Integer> children = folderChildren.remove(id);
+                if (children != null) stack.addAll(children);
+            }
+        }
+    }
 
-        Path full = base.resolve(rel).normalize();
-        assertWithinRoot(base);
-        return full;
+    private static final class FolderRow {
+        final int id;
+        final String name;
+        final Integer parentId;
+
+        FolderRow(int id, String name, Integer parentId) {
+            this.id = id;
+            this.name = name;
+            this.parentId = parentId;
+        }
+    }
+
+    // Các folder cần dựng path (đỉnh stack là tổ tiên cao nhất) + path của tổ tiên gần nhất đã cache
+    private static final class AncestorChain {
+        final Deque<FolderRow> missing = new ArrayDeque<>();
+        Path cachedAncestor;
+    }
+
+    private static final class CachedFolder {
+        final int id;
+        final int parentId;
+        final Path path;
+
+        CachedFolder(int id, int parentId, Path path) {
+            this.id = id;
+            this.parentId = parentId;
+            this.path = path;
+        }
     }
 
 
@@ -137,6 +536,20 @@ public final class StorageManager {
 
     private static final class Config {
         String storageRoot;
+        String layout;
+        String objectsRoot;
+        String objectsRoots;
+        String objectsDrain;
+        String replicas;
+        String writeQuorum;
+        String hedgeMs;
+        String versionsRoot;
+        String tierEnabled;
+        String tierColdRoot;
+        String packEnabled;
+        String packRoot;
+        String packSegmentMb;
+        String packMaxBytes;
     }
 
     /** CHỈ nạp từ classpath: /app.properties */
@@ -153,6 +566,20 @@ public final class StorageManager {
 
         Config cfg = new Config();
         cfg.storageRoot = p.getProperty("storage.root");
+        cfg.layout = System.getProperty("storage.layout", p.getProperty("storage.layout", "path"));
+        cfg.objectsRoot = System.getProperty("storage.objects.root", p.getProperty("storage.objects.root"));
+        cfg.objectsRoots = System.getProperty("storage.objects.roots", p.getProperty("storage.objects.roots"));
+        cfg.objectsDrain = System.getProperty("storage.objects.drain", p.getProperty("storage.objects.drain"));
+        cfg.replicas = System.getProperty("storage.objects.replicas", p.getProperty("storage.objects.replicas"));
+        cfg.writeQuorum = System.getProperty("storage.objects.write.quorum", p.getProperty("storage.objects.write.quorum"));
+        cfg.hedgeMs = System.getProperty("storage.read.hedge.ms", p.getProperty("storage.read.hedge.ms"));
+        cfg.versionsRoot = System.getProperty("storage.versions.root", p.getProperty("storage.versions.root"));
+        cfg.tierEnabled = System.getProperty("tier.enabled", p.getProperty("tier.enabled"));
+        cfg.tierColdRoot = System.getProperty("tier.cold.root", p.getProperty("tier.cold.root"));
+        cfg.packEnabled = System.getProperty("storage.pack.enabled", p.getProperty("storage.pack.enabled"));
+        cfg.packRoot = System.getProperty("storage.pack.root", p.getProperty("storage.pack.root"));
+        cfg.packSegmentMb = System.getProperty("storage.pack.segment.mb", p.getProperty("storage.pack.segment.mb"));
+        cfg.packMaxBytes = System.getProperty("storage.pack.max.bytes", p.getProperty("storage.pack.max.bytes"));
         return cfg;
     }
 }
@@ -0,0 +1,20 @@
+package com.pbl4.syncproject.common.storage;
+
+/**
+ * Bộ đếm mà tầng lưu trữ ghi vào (số lần đọc/ghi, byte...). Phía server gắn bộ đếm thật qua
+ * StorageManager.setMetrics; chưa gắn thì bỏ qua.
+ */
+public interface StorageMetrics {
+
+    StorageMetrics NONE = new StorageMetrics() {
+        @Override
+        public void increment(String name) {}
+
+        @Override
+        public void add(String name, long delta) {}
+    };
+
+    void increment(String name);
+
+    void add(String name, long delta);
+}
@@ -0,0 +1,113 @@
+package com.pbl4.syncproject.common.storage;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Nội dung hiện tại của một file để đọc (StorageManager.openContent): một file riêng trên đĩa, hoặc một đoạn
+ * trong segment của PackStore. Đọc theo vị trí (positioned read) nên dùng chung được giữa nhiều luồng.
+ */
+public final class StoredContent implements Closeable {
+
+    private final FileChannel channel;
+    private final long base;
+    private final long length;
+    private final Path path;      // null nếu nằm trong segment
+    private final boolean owned;  // channel riêng của handle này (đóng khi close)
+
+    private StoredContent(FileChannel channel, long base, long length, Path path, boolean owned) {
+        this.channel = channel;
+        this.base = base;
+        this.length = length;
+        this.path = path;
+        this.owned = owned;
+    }
+
+    /** Mở file riêng; NoSuchFileException nếu không còn */
+    static StoredContent ofFile(Path path) throws IOException {
+        FileChannel ch = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new StoredContent(ch, 0, ch.size(), path, true);
+        } catch (IOException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    /** Một đoạn trong segment (channel dùng chung, không bị đóng bởi handle) */
+    static StoredContent ofSlice(FileChannel segment, long offset, long length) {
+        return new StoredContent(segment, offset, length, null, false);
+    }
+
+    public long size() {
+        return length;
+    }
+
+    /** File riêng trên đĩa (dùng được cho hard link / dedupe), null nếu nội dung nằm trong segment */
+    public Path path() {
+        return path;
+    }
+
+    public boolean isPacked() {
+        return path == null;
+    }
+
+    /** Như FileChannel.read(dst, position), giới hạn trong nội dung của file; -1 khi hết */
+    public int read(ByteBuffer dst, long position) throws IOException {
+        long left = length - position;
+        if (left <= 0) return -1;
+        if (dst.remaining() > left) {
+            ByteBuffer slice = dst.duplicate();
+            slice.limit(slice.position() + (int) left);
+            int n = channel.read(slice, base + position);
+            if (n > 0) dst.position(dst.position() + n);
+            return n;
+        }
+        return channel.read(dst, base + position);
+    }
+
+    /** Đọc toàn bộ (chỉ dùng cho file nhỏ / đã biết giới hạn kích thước) */
+    public byte[] readAll() throws IOException {
+        if (length > Integer.MAX_VALUE - 8) throw new IOException("File quá lớn để đọc vào bộ nhớ: " + length);
+        ByteBuffer buf = ByteBuffer.allocate((int) length);
+        long pos = 0;
+        while (buf.hasRemaining()) {
+            int n = read(buf, pos);
+            if (n < 0) throw new EOFException("Nội dung bị cắt ngắn khi đang đọc");
+            pos += n;
+        }
+        return buf.array();
+    }
+
+    public InputStream newInputStream() {
+        return new InputStream() {
+            private long pos;
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                int n = read(one, 0, 1);
+                return n < 0 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) return 0;
+                int n = StoredContent.this.read(ByteBuffer.wrap(b, off, len), pos);
+                if (n > 0) pos += n;
+                return n;
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (owned) channel.close();
+    }
+}
@@ -0,0 +1,321 @@
+package com.pbl4.syncproject.common.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Tầng lạnh: nội dung file lâu không được đọc được TieringService chuyển khỏi storage chính sang
+ * tier.cold.root, theo FileID (cả hai layout):
+ *   <cold>/ab/cd/<fileId>.gz    đã nén gzip (loại file nén được và nén có lợi)
+ *   <cold>/ab/cd/<fileId>       nguyên vẹn
+ * mtime của bản lạnh = mtime của nội dung gốc.
+ *
+ * Đọc trong suốt: StorageManager.locateFile không thấy bản nóng thì promote() giải nén trả về chỗ cũ
+ * (storage chính) rồi mới trả đường dẫn, nên mọi chỗ đọc (đọc theo đoạn, ZIP, hard link dedupe...) vẫn làm
+ * việc với một file thường. Chuyển đi / khôi phục cùng FileID được khóa với nhau; upload đè trong lúc
+ * đang nén luôn thắng (bản lạnh khi đó bị bỏ).
+ */
+public final class TierStore {
+
+    private static final int LOCK_STRIPES = 256;
+    private static final int IO_BUFFER = 64 * 1024;
+    private static final String GZ = ".gz";
+
+    private final Path root;
+    private final Path tmpDir;
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+    // Lần đọc gần nhất chưa ghi xuống DB, và các file vừa được khôi phục (TieringService ghi theo lô)
+    private final Map<Integer, Long> accesses = new ConcurrentHashMap<>();
+    private final Set<Integer> promoted = ConcurrentHashMap.newKeySet();
+    private volatile StorageMetrics metrics = StorageMetrics.NONE;
+
+    TierStore(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+        this.tmpDir = this.root.resolve(".tmp");
+        for (int i = 0; i < LOCK_STRIPES; i++) locks[i] = new ReentrantLock();
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    void setMetrics(StorageMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /** Bản lạnh của fileId (nén hoặc không), null nếu file không ở tầng lạnh */
+    public Path coldPathOf(int fileId) {
+        Path gz = gzPath(fileId);
+        if (Files.isRegularFile(gz)) return gz;
+        Path raw = rawPath(fileId);
+        return Files.isRegularFile(raw) ? raw : null;
+    }
+
+    private Path rawPath(int fileId) {
+        String hex = String.format("%08x", fileId);
+        return root.resolve(hex.substring(6, 8)).resolve(hex.substring(4, 6)).resolve(Integer.toString(fileId));
+    }
+
+    private Path gzPath(int fileId) {
+        Path raw = rawPath(fileId);
+        return raw.resolveSibling(raw.getFileName() + GZ);
+    }
+
+    // ---------- Theo dõi lượt đọc ----------
+
+    /** Đọc trúng bản nóng */
+    void hotHit(int fileId) {
+        metrics.increment("tier.hot.hits");
+        accesses.put(fileId, System.currentTimeMillis());
+    }
+
+    /** Lần đọc gần nhất chưa ghi xuống DB (0 nếu không có) */
+    public long pendingAccess(int fileId) {
+        return accesses.getOrDefault(fileId, 0L);
+    }
+
+    /** Lấy và xóa các lượt đọc chưa ghi xuống DB */
+    public Map<Integer, Long> drainAccesses() {
+        Map<Integer, Long> out = new HashMap<>();
+        for (Integer id : accesses.keySet()) {
+            Long t = accesses.remove(id);
+            if (t != null) out.put(id, t);
+        }
+        return out;
+    }
+
+    /** Lấy và xóa các FileID vừa được khôi phục về tầng nóng */
+    public Set<Integer> drainPromoted() {
+        Set<Integer> out = new HashSet<>();
+        for (Integer id : promoted) {
+            if (promoted.remove(id)) out.add(id);
+        }
+        return out;
+    }
+
+    // ---------- Chuyển đi / khôi phục ----------
+
+    /**
+     * Chuyển nội dung nóng của file sang tầng lạnh. Nén (nếu compress) và chép ngoài khóa; chỉ xóa bản nóng
+     * nếu nó vẫn đúng là bản đã chép.
+     * @return số byte chiếm ở tầng lạnh, -1 nếu không chuyển (không còn bản nóng, hoặc vừa bị ghi đè)
+     */
+    public long demote(Connection conn, int fileId, int folderId, String fileName, boolean compress,
+                       double minRatio) throws SQLException, IOException {
+        StorageManager storage = StorageManager.getInstance();
+        Path hot = storage.locateHotFile(conn, fileId, folderId, fileName);
+        BasicFileAttributes before = attrsOrNull(hot);
+        if (before == null) return -1;
+        long size = before.size();
+
+        Files.createDirectories(tmpDir);
+        Path tmp = Files.createTempFile(tmpDir, "cold-", ".tmp");
+        try {
+            long stored = -1;
+            boolean gz = false;
+            if (compress) {
+                stored = gzip(hot, tmp);
+                gz = stored < size * minRatio;
+            }
+            if (!gz) {
+                Files.copy(hot, tmp, StandardCopyOption.REPLACE_EXISTING);
+                stored = size;
+            }
+            if (!sameContent(before, attrsOrNull(hot))) return -1; // bị ghi đè trong lúc chép
+            Files.setLastModifiedTime(tmp, before.lastModifiedTime());
+
+            Path dest = gz ? gzPath(fileId) : rawPath(fileId);
+            ReentrantLock lock = lockFor(fileId);
+            lock.lock();
+            try {
+                Files.createDirectories(dest.getParent());
+                moveIntoPlace(tmp, dest);
+                Files.deleteIfExists(gz ? rawPath(fileId) : gzPath(fileId));
+                if (!removeHot(storage, fileId, hot, before)) {
+                    Files.deleteIfExists(dest);
+                    return -1;
+                }
+            } finally {
+                lock.unlock();
+            }
+            metrics.increment("tier.demoted");
+            metrics.add("tier.demoted.bytes.original", size);
+            metrics.add("tier.demoted.bytes.stored", stored);
+            return stored;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Khôi phục nội dung lạnh về storage chính (giải nén nếu cần), không đè bản nóng mới hơn.
+     * @return đường dẫn bản nóng, null nếu file không ở tầng lạnh
+     */
+    public Path promote(Connection conn, int fileId, int folderId, String fileName) throws SQLException, IOException {
+        if (coldPathOf(fileId) == null) return null;
+        StorageManager storage = StorageManager.getInstance();
+        ReentrantLock lock = lockFor(fileId);
+        lock.lock();
+        try {
+            // Luồng khác vừa khôi phục, hoặc vừa có upload mới
+            Path hot = storage.locateHotFile(conn, fileId, folderId, fileName);
+            if (Files.isRegularFile(hot)) return hot;
+            Path cold = coldPathOf(fileId);
+            if (cold == null) return null;
+
+            Path placed;
+            if (storage.isObjectLayout()) {
+                Path tmp = storage.objects().newTempFile(fileId);
+                try {
+                    expand(cold, tmp);
+                    placed = storage.objects().restoreIfAbsent(tmp, fileId);
+                } finally {
+                    Files.deleteIfExists(tmp);
+                }
+                if (placed == null) placed = storage.objects().pathOf(fileId);
+            } else {
+                Files.createDirectories(hot.getParent());
+                Path tmp = Files.createTempFile(hot.getParent(), ".tier-", ".tmp");
+                try {
+                    expand(cold, tmp);
+                    placeIfAbsent(tmp, hot);
+                } finally {
+                    Files.deleteIfExists(tmp);
+                }
+                placed = hot;
+            }
+            Files.deleteIfExists(cold);
+            promoted.add(fileId);
+            accesses.put(fileId, System.currentTimeMillis());
+            metrics.increment("tier.cold.hits");
+            metrics.add("tier.promoted.bytes", Files.size(placed));
+            return placed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Bỏ bản lạnh (file bị xóa hẳn, hoặc nội dung vừa được thay) */
+    public boolean delete(int fileId) throws IOException {
+        ReentrantLock lock = lockFor(fileId);
+        lock.lock();
+        try {
+            boolean a = Files.deleteIfExists(gzPath(fileId));
+            boolean b = Files.deleteIfExists(rawPath(fileId));
+            return a || b;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Xóa bản nóng nếu vẫn là bản đã chép (gọi trong khóa của FileID)
+    private static boolean removeHot(StorageManager storage, int fileId, Path hot, BasicFileAttributes before)
+            throws IOException {
+        if (storage.isObjectLayout() && storage.objects().contains(hot)) {
+            return storage.objects().deleteIfUnchanged(fileId, before.size(), before.lastModifiedTime().toMillis());
+        }
+        // Layout path: đổi tên sang chỗ riêng rồi mới kiểm tra, để không xóa nhầm bản vừa được rename vào chỗ
+        Path grave = hot.resolveSibling(".tier-" + System.nanoTime() + ".tmp");
+        try {
+            moveIntoPlace(hot, grave);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        if (sameContent(before, attrsOrNull(grave))) {
+            Files.delete(grave);
+            return true;
+        }
+        // Upload mới chen vào: trả lại chỗ cũ (nếu chưa có bản mới hơn nữa)
+        try {
+            placeIfAbsent(grave, hot);
+        } finally {
+            Files.deleteIfExists(grave);
+        }
+        return false;
+    }
+
+    private static long gzip(Path source, Path target) throws IOException {
+        byte[] buf = new byte[IO_BUFFER];
+        try (InputStream in = Files.newInputStream(source);
+             OutputStream out = new GZIPOutputStream(Files.newOutputStream(target), IO_BUFFER)) {
+            int n;
+            while ((n = in.read(buf)) > 0) out.write(buf, 0, n);
+        }
+        return Files.size(target);
+    }
+
+    private static void expand(Path cold, Path target) throws IOException {
+        if (cold.getFileName().toString().endsWith(GZ)) {
+            byte[] buf = new byte[IO_BUFFER];
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(cold), IO_BUFFER);
+                 OutputStream out = Files.newOutputStream(target)) {
+                int n;
+                while ((n = in.read(buf)) > 0) out.write(buf, 0, n);
+            }
+        } else {
+            Files.copy(cold, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.setLastModifiedTime(target, Files.getLastModifiedTime(cold));
+    }
+
+    // Đặt tmp vào target nếu target chưa có (hard link không đè được file có sẵn)
+    private static void placeIfAbsent(Path tmp, Path target) throws IOException {
+        try {
+            Files.createLink(target, tmp);
+        } catch (FileAlreadyExistsException e) {
+            // đã có bản mới hơn
+        } catch (UnsupportedOperationException | IOException e) {
+            try {
+                Files.move(tmp, target);
+            } catch (FileAlreadyExistsException ignore) {
+                // đã có bản mới hơn
+            }
+        }
+    }
+
+    private static boolean sameContent(BasicFileAttributes a, BasicFileAttributes b) {
+        return a != null && b != null && a.size() == b.size()
+                && a.lastModifiedTime().equals(b.lastModifiedTime())
+                && Objects.equals(a.fileKey(), b.fileKey());
+    }
+
+    private static BasicFileAttributes attrsOrNull(Path p) {
+        try {
+            BasicFileAttributes a = Files.readAttributes(p, BasicFileAttributes.class);
+            return a.isRegularFile() ? a : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private ReentrantLock lockFor(int fileId) {
+        return locks[fileId & (LOCK_STRIPES - 1)];
+    }
+
+    private static void moveIntoPlace(Path tmp, Path target) throws IOException {
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.pbl4.syncproject.common.storage;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Nội dung các phiên bản cũ của file: <versions>/ab/cd/<fileId>/<versionNo>.full
+ * hoặc <versionNo>.<baseVersionNo>.delta (ab/cd như ObjectStore). Tên delta chứa cả base để khi rebase
+ * thì file mới không đè file cũ trước khi DB được cập nhật.
+ * Bản .full thường là hard link tới nội dung cũ nên lúc chụp gần như miễn phí; VersionCompactor sau đó đổi nó thành .delta.
+ */
+public final class VersionStore {
+
+    private final Path root;
+
+    VersionStore(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    public Path dirOf(int fileId) {
+        String hex = String.format("%08x", fileId);
+        return root.resolve(hex.substring(6, 8)).resolve(hex.substring(4, 6)).resolve(Integer.toString(fileId));
+    }
+
+    public Path fullPath(int fileId, int versionNo) {
+        return dirOf(fileId).resolve(versionNo + ".full");
+    }
+
+    public Path deltaPath(int fileId, int versionNo, int baseVersionNo) {
+        return dirOf(fileId).resolve(versionNo + "." + baseVersionNo + ".delta");
+    }
+
+    /**
+     * Giữ nội dung hiện tại làm bản FULL của versionNo: hard link (không tốn chỗ, không đọc file), không được thì copy.
+     * Nội dung hiện tại luôn được thay bằng rename chứ không ghi đè tại chỗ nên link vẫn giữ đúng bản cũ.
+     */
+    public void captureFull(Path current, int fileId, int versionNo) throws IOException {
+        Path target = fullPath(fileId, versionNo);
+        Files.createDirectories(target.getParent());
+        Path tmp = target.resolveSibling("." + versionNo + ".tmp");
+        try {
+            try {
+                Files.deleteIfExists(tmp);
+                Files.createLink(tmp, current);
+            } catch (UnsupportedOperationException | IOException e) {
+                Files.copy(current, tmp, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            }
+            moveIntoPlace(tmp, target);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    public byte[] readFull(int fileId, int versionNo) throws IOException {
+        return Files.readAllBytes(fullPath(fileId, versionNo));
+    }
+
+    public byte[] readDelta(int fileId, int versionNo, int baseVersionNo) throws IOException {
+        return Files.readAllBytes(deltaPath(fileId, versionNo, baseVersionNo));
+    }
+
+    public Path writeDelta(int fileId, int versionNo, int baseVersionNo, byte[] delta) throws IOException {
+        return write(deltaPath(fileId, versionNo, baseVersionNo), versionNo, delta);
+    }
+
+    public Path writeFull(int fileId, int versionNo, byte[] content) throws IOException {
+        return write(fullPath(fileId, versionNo), versionNo, content);
+    }
+
+    private static Path write(Path target, int versionNo, byte[] bytes) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path tmp = Files.createTempFile(target.getParent(), "." + versionNo + "-", ".tmp");
+        try {
+            Files.write(tmp, bytes, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            moveIntoPlace(tmp, target);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return target;
+    }
+
+    /** Xóa mọi file của versionNo, trừ keep (null = xóa hết) */
+    public void delete(int fileId, int versionNo, Path keep) throws IOException {
+        Path dir = dirOf(fileId);
+        if (!Files.isDirectory(dir)) return;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, versionNo + ".*")) {
+            for (Path p : ds) {
+                if (!p.equals(keep)) Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    /** Xóa mọi phiên bản của file (khi file bị xóa hẳn) */
+    public void deleteAll(int fileId) throws IOException {
+        Path dir = dirOf(fileId);
+        if (!Files.isDirectory(dir)) return;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path p : ds) Files.deleteIfExists(p);
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    private static void moveIntoPlace(Path tmp, Path target) throws IOException {
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,637 @@
+package com.pbl4.syncproject.server;
+
+import com.pbl4.syncproject.common.storage.StorageManager;
+import com.pbl4.syncproject.server.dao.DatabaseManager;
+import com.pbl4.syncproject.server.dao.FolderDAO;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Nhập hàng loạt một cây thư mục có sẵn trên máy server vào kho (Folders/Files + nội dung), thay cho việc
+ * upload từng file qua client.
+ *
+ * Cách dùng:
+ *   java com.pbl4.syncproject.server.BulkImporter <thư mục nguồn> [--into folderId] [--threads N]
+ *        [--batch N] [--link] [--checkpoint file] [--restart]
+ *
+ *   --into        folder đích (mặc định folder root); nội dung của thư mục nguồn được đặt ngay trong đó
+ *   --threads     số luồng duyệt + băm (mặc định số core)
+ *   --batch       số dòng Files mỗi transaction (mặc định 1000)
+ *   --link        hard link thay vì copy (chỉ dùng khi nguồn sẽ không bị sửa tại chỗ sau này,
+ *                 vì sửa tại chỗ ở nguồn sẽ đổi luôn nội dung trong kho)
+ *
+ * Luồng xử lý:
+ *   - ForkJoinPool duyệt cây: mỗi thư mục là một task, file trong thư mục chia thành các task FILES_PER_TASK file;
+ *     mỗi file được đọc một lượt vừa copy vào kho vừa tính SHA-256 (--link: link rồi đọc để băm).
+ *   - Một luồng ghi DB gom các dòng thành batch (INSERT IGNORE ... addBatch/executeBatch, một transaction mỗi batch).
+ *     Hàng đợi giữa hai bên có giới hạn nên luồng băm tự chậm lại khi DB không theo kịp.
+ *   - Layout object: nội dung nằm ở file tạm tới khi có FileID (sau khi batch commit) mới được đưa vào chỗ.
+ *
+ * Checkpoint: thư mục có mọi file đã được commit thì đường dẫn tương đối của nó được ghi thêm vào file checkpoint
+ * (mặc định <storage.root>/.import/<mã nguồn>.checkpoint). Chạy lại sẽ bỏ qua các thư mục đó; thư mục làm dở
+ * được làm lại - file đã có cùng tên và cùng nội dung được bỏ qua, khác nội dung thì báo conflict, không ghi đè.
+ *
+ * Các chỉ mục trong bộ nhớ của server (tìm kiếm, NamespaceIndex) được nạp lúc khởi động: nên chạy khi server dừng,
+ * hoặc khởi động lại server sau khi nhập xong.
+ */
+public final class BulkImporter {
+
+    private static final int FILES_PER_TASK = 64;
+    private static final int IO_BUFFER = 256 * 1024;
+    private static final long IDLE_FLUSH_MS = 500;
+    private static final long PROGRESS_INTERVAL_MS = 5000;
+    private static final Row END = new Row(null, null, 0, null, 0, null);
+
+    private final Path source;
+    private final int targetFolderId;
+    private final int threads;
+    private final int batchSize;
+    private final boolean link;
+    private final Path checkpointFile;
+    private final StorageManager storage = StorageManager.getInstance();
+    private final boolean objectLayout = storage.isObjectLayout();
+
+    private final Set<String> doneDirs = ConcurrentHashMap.newKeySet();
+    private final BlockingQueue<Row> queue;
+    private final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[IO_BUFFER]);
+
+    // Tạo folder / đọc danh sách file có sẵn: ít so với số file nên dùng chung một kết nối có khóa
+    private final Object folderLock = new Object();
+    private Connection folderConn;
+    private BufferedWriter checkpointOut;
+    private volatile Exception writerFailure;
+
+    private final LongAdder scanned = new LongAdder();
+    private final LongAdder imported = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder folders = new LongAdder();
+
+    public BulkImporter(Path source, int targetFolderId, int threads, int batchSize, boolean link, Path checkpointFile) {
+        this.source = source.toAbsolutePath().normalize();
+        this.targetFolderId = targetFolderId;
+        this.threads = threads;
+        this.batchSize = batchSize;
+        this.link = link;
+        this.checkpointFile = checkpointFile;
+        this.queue = new ArrayBlockingQueue<>(batchSize * 4);
+    }
+
+    public static void main(String[] args) throws Exception {
+        StorageBindings.install();
+        Path source = null;
+        Integer into = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int batch = 1000;
+        boolean link = false;
+        boolean restart = false;
+        Path checkpoint = null;
+        for (int i = 0; i < args.length; i++) {
+            if ("--into".equals(args[i]) && i + 1 < args.length) into = Integer.parseInt(args[++i]);
+            else if ("--threads".equals(args[i]) && i + 1 < args.length) threads = Integer.parseInt(args[++i]);
+            else if ("--batch".equals(args[i]) && i + 1 < args.length) batch = Integer.parseInt(args[++i]);
+            else if ("--checkpoint".equals(args[i]) && i + 1 < args.length) checkpoint = Paths.get(args[++i]);
+            else if ("--link".equals(args[i])) link = true;
+            else if ("--restart".equals(args[i])) restart = true;
+            else if (!args[i].startsWith("--")) source = Paths.get(args[i]);
+        }
+        if (source == null || !Files.isDirectory(source)) {
+            System.err.println("❌ Cách dùng: BulkImporter <thư mục nguồn> [--into folderId] [--threads N] [--batch N] "
+                    + "[--link] [--checkpoint file] [--restart]");
+            System.exit(1);
+        }
+
+        try (Connection conn = DatabaseManager.openConnection()) {
+            if (into == null) {
+                com.pbl4.syncproject.common.model.Folders root = new FolderDAO(conn).getRootFolder();
+                if (root == null) {
+                    System.err.println("❌ Chưa có folder root, hãy chỉ định --into");
+                    System.exit(1);
+                }
+                into = root.getFolderId();
+            }
+        }
+        if (checkpoint == null) {
+            String key = Integer.toHexString((source.toAbsolutePath().normalize() + "|" + into).hashCode());
+            checkpoint = StorageManager.getInstance().getRoot().resolve(".import").resolve(key + ".checkpoint");
+        }
+        if (restart) Files.deleteIfExists(checkpoint);
+
+        BulkImporter importer = new BulkImporter(source, into, Math.max(1, threads), Math.max(1, batch), link, checkpoint);
+        System.exit(importer.run() ? 0 : 1);
+    }
+
+    /** @return true nếu mọi file đã được nhập (hoặc bỏ qua vì đã có) */
+    public boolean run() throws Exception {
+        Files.createDirectories(checkpointFile.getParent());
+        if (Files.exists(checkpointFile)) {
+            doneDirs.addAll(Files.readAllLines(checkpointFile, StandardCharsets.UTF_8));
+        }
+        System.out.printf("▶ Nhập %s vào folder %d (%s, %d luồng, batch %d), %d thư mục đã xong từ lần trước%n",
+                source, targetFolderId, link ? "link" : "copy", threads, batchSize, doneDirs.size());
+
+        long started = System.currentTimeMillis();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        Thread writer = new Thread(this::writeLoop, "import-db-writer");
+        Thread progress = new Thread(() -> progressLoop(started), "import-progress");
+        progress.setDaemon(true);
+
+        try (Connection conn = DatabaseManager.openConnection();
+             BufferedWriter cp = Files.newBufferedWriter(checkpointFile, StandardCharsets.UTF_8,
+                     StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            folderConn = conn;
+            checkpointOut = cp;
+            Path targetPath = objectLayout ? null : storage.resolveFolderPathFromDb(conn, targetFolderId);
+            if (targetPath != null) Files.createDirectories(targetPath);
+
+            writer.start();
+            progress.start();
+            pool.invoke(new DirTask(source, ".", targetFolderId, targetPath));
+            pool.shutdown();
+            queue.put(END);
+            writer.join();
+            progress.interrupt();
+        }
+
+        printProgress(started, "✅ Xong");
+        if (writerFailure != null) {
+            System.err.println("❌ Ghi DB lỗi: " + writerFailure.getMessage() + " - chạy lại để tiếp tục từ checkpoint");
+        }
+        if (failed.sum() > 0 || conflicts.sum() > 0) {
+            System.out.println("ℹ Có file lỗi/conflict: thư mục chứa chúng chưa được ghi checkpoint, chạy lại sẽ thử lại");
+        }
+        return writerFailure == null && failed.sum() == 0;
+    }
+
+    // ---------- Duyệt cây (ForkJoin) ----------
+
+    private final class DirTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Path dir;
+        private final String rel;
+        private final int folderId;
+        private final Path folderPath; // null ở layout object
+
+        DirTask(Path dir, String rel, int folderId, Path folderPath) {
+            this.dir = dir;
+            this.rel = rel;
+            this.folderId = folderId;
+            this.folderPath = folderPath;
+        }
+
+        @Override
+        protected void compute() {
+            List<Path> files = new ArrayList<>();
+            List<Path> dirs = new ArrayList<>();
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+                for (Path p : ds) {
+                    // Không theo symlink: tránh vòng lặp và file nằm ngoài cây nguồn
+                    BasicFileAttributes a = Files.readAttributes(p, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (a.isDirectory()) dirs.add(p);
+                    else if (a.isRegularFile()) files.add(p);
+                }
+            } catch (IOException e) {
+                System.err.println("⚠️ Không đọc được thư mục " + dir + ": " + e.getMessage());
+                failed.increment();
+                return;
+            }
+
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            try {
+                for (Path d : dirs) {
+                    String name = StorageManager.sanitizeName(d.getFileName().toString());
+                    int childId = getOrCreateFolder(folderId, name);
+                    Path childPath = folderPath != null ? folderPath.resolve(name) : null;
+                    if (childPath != null) Files.createDirectories(childPath);
+                    String childRel = ".".equals(rel) ? d.getFileName().toString() : rel + "/" + d.getFileName();
+                    tasks.add(new DirTask(d, childRel, childId, childPath));
+                }
+            } catch (Exception e) {
+                System.err.println("⚠️ Không tạo được folder con của " + dir + ": " + e.getMessage());
+                failed.increment();
+            }
+
+            if (doneDirs.contains(rel)) {
+                skipped.add(files.size());
+            } else {
+                DirState state = new DirState(rel, folderId, folderPath);
+                try {
+                    Map<String, Existing> existing = files.isEmpty() ? new HashMap<>() : loadExisting(folderId);
+                    for (int i = 0; i < files.size(); i += FILES_PER_TASK) {
+                        tasks.add(new FileBatchTask(state, files.subList(i, Math.min(files.size(), i + FILES_PER_TASK)),
+                                existing));
+                    }
+                } catch (SQLException e) {
+                    System.err.println("⚠️ Không đọc được danh sách file của folder " + folderId + ": " + e.getMessage());
+                    state.failed = true;
+                    failed.add(files.size());
+                }
+                invokeAll(tasks);
+                state.release(); // thư mục chỉ xong khi mọi file đã được xếp hàng và commit
+                return;
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    private final class FileBatchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final DirState state;
+        private final List<Path> files;
+        private final Map<String, Existing> existing;
+
+        FileBatchTask(DirState state, List<Path> files, Map<String, Existing> existing) {
+            this.state = state;
+            this.files = files;
+            this.existing = existing;
+        }
+
+        @Override
+        protected void compute() {
+            for (Path f : files) {
+                try {
+                    importFile(state, f, existing);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    System.err.println("⚠️ " + f + ": " + e.getMessage());
+                    failed.increment();
+                    state.failed = true;
+                }
+            }
+        }
+    }
+
+    private void importFile(DirState state, Path file, Map<String, Existing> existing) throws Exception {
+        scanned.increment();
+        String name = StorageManager.sanitizeName(file.getFileName().toString());
+        if (!state.names.add(name)) {
+            // Hai tên nguồn thành cùng một tên sau khi sanitize
+            conflicts.increment();
+            state.failed = true;
+            return;
+        }
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        long mtime = attrs.lastModifiedTime().toMillis();
+
+        Existing ex = existing.get(name);
+        if (ex != null) {
+            // Đã có tên này (lần chạy trước hoặc có sẵn): chỉ bỏ qua khi cùng nội dung
+            if (ex.size != attrs.size() || !ex.hash.equalsIgnoreCase(sha256Of(file))) {
+                conflicts.increment();
+                state.failed = true;
+                return;
+            }
+            if (objectLayout && !storage.objects().exists(ex.fileId)) {
+                // Lần trước dừng sau khi commit DB nhưng trước khi đặt nội dung
+                Path tmp = storage.objects().newTempFile();
+                try {
+                    place(file, tmp, mtime);
+                    storage.objects().commit(tmp, ex.fileId);
+                } finally {
+                    Files.deleteIfExists(tmp);
+                }
+            }
+            skipped.increment();
+            return;
+        }
+
+        Path tmp = objectLayout
+                ? storage.objects().newTempFile()
+                : Files.createTempFile(state.folderPath, ".import-", ".tmp");
+        try {
+            String hash = place(file, tmp, mtime);
+            if (!objectLayout) {
+                moveIntoPlace(tmp, state.folderPath.resolve(name));
+                tmp = null;
+            }
+            state.pending.incrementAndGet();
+            queue.put(new Row(state, name, attrs.size(), hash, mtime, tmp));
+            tmp = null; // luồng ghi DB chịu trách nhiệm file tạm từ đây
+        } finally {
+            if (tmp != null) Files.deleteIfExists(tmp);
+        }
+    }
+
+    /** Đưa nội dung file nguồn vào tmp (copy một lượt kèm băm, hoặc link rồi băm), trả về SHA-256 */
+    private String place(Path file, Path tmp, long mtime) throws Exception {
+        if (link) {
+            try {
+                Files.deleteIfExists(tmp);
+                Files.createLink(tmp, file);
+                return sha256Of(tmp);
+            } catch (UnsupportedOperationException | IOException e) {
+                // Khác filesystem: copy
+            }
+        }
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] buf = buffers.get();
+        try (InputStream in = Files.newInputStream(file);
+             OutputStream out = Files.newOutputStream(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                digest.update(buf, 0, n);
+                out.write(buf, 0, n);
+                bytes.add(n);
+            }
+        }
+        Files.setLastModifiedTime(tmp, FileTime.fromMillis(mtime));
+        return hex(digest.digest());
+    }
+
+    private String sha256Of(Path file) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] buf = buffers.get();
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                digest.update(buf, 0, n);
+                bytes.add(n);
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    // ---------- Folder ----------
+
+    private int getOrCreateFolder(int parentId, String name) throws SQLException {
+        synchronized (folderLock) {
+            FolderDAO dao = new FolderDAO(folderConn);
+            Integer id = dao.findChildId(parentId, name);
+            if (id != null) return id;
+            folders.increment();
+            return dao.insertFolder(parentId, name);
+        }
+    }
+
+    private Map<String, Existing> loadExisting(int folderId) throws SQLException {
+        synchronized (folderLock) {
+            Map<String, Existing> map = new HashMap<>();
+            try (PreparedStatement ps = folderConn.prepareStatement(
+                    "SELECT FileID, FileName, FileSize, FileHash FROM Files WHERE FolderID = ?")) {
+                ps.setInt(1, folderId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        map.put(rs.getString(2), new Existing(rs.getInt(1), rs.getLong(3), rs.getString(4)));
+                    }
+                }
+            }
+            return map;
+        }
+    }
+
+    // ---------- Ghi DB theo batch ----------
+
+    private void writeLoop() {
+        List<Row> batch = new ArrayList<>(batchSize);
+        try (Connection conn = DatabaseManager.openConnection()) {
+            conn.setAutoCommit(false);
+            while (true) {
+                Row r = queue.poll(IDLE_FLUSH_MS, TimeUnit.MILLISECONDS);
+                if (r == END) break;
+                if (r != null) batch.add(r);
+                if (batch.size() >= batchSize || (r == null && !batch.isEmpty())) {
+                    flush(conn, batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) flush(conn, batch);
+        } catch (Exception e) {
+            writerFailure = e;
+            abandon(batch);
+            // Vẫn phải rút hết hàng đợi để các luồng duyệt không bị chặn mãi
+            try {
+                Row r;
+                while ((r = queue.take()) != END) abandon(java.util.Collections.singletonList(r));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void flush(Connection conn, List<Row> batch) throws Exception {
+        int[] counts;
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT IGNORE INTO Files (FolderID, FileName, FileSize, FileHash, LastModified) VALUES (?,?,?,?,?)")) {
+            for (Row r : batch) {
+                ps.setInt(1, r.dir.folderId);
+                ps.setString(2, r.name);
+                ps.setLong(3, r.size);
+                ps.setString(4, r.hash);
+                ps.setTimestamp(5, new Timestamp(r.mtime));
+                ps.addBatch();
+            }
+            counts = ps.executeBatch();
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        }
+
+        Map<Row, Integer> ids = objectLayout ? lookupIds(conn, batch) : null;
+        for (int i = 0; i < batch.size(); i++) {
+            Row r = batch.get(i);
+            try {
+                boolean inserted = counts[i] != 0; // SUCCESS_NO_INFO (-2) cũng là đã ghi
+                if (objectLayout) {
+                    Integer id = ids.get(r);
+                    if (id != null) {
+                        storage.objects().commit(r.tmp, id);
+                    } else {
+                        inserted = false;
+                    }
+                }
+                if (inserted) imported.increment();
+                else {
+                    // Tên vừa được tạo bởi người khác (server đang chạy): không đè
+                    conflicts.increment();
+                    r.dir.failed = true;
+                }
+            } catch (IOException e) {
+                failed.increment();
+                r.dir.failed = true;
+            } finally {
+                if (r.tmp != null) Files.deleteIfExists(r.tmp);
+                r.dir.release();
+            }
+        }
+        synchronized (this) {
+            checkpointOut.flush();
+        }
+    }
+
+    // FileID của các dòng vừa ghi (khớp cả hash: dòng trùng tên có sẵn không phải của mình)
+    private Map<Row, Integer> lookupIds(Connection conn, List<Row> batch) throws SQLException {
+        Map<Integer, List<Row>> byFolder = new LinkedHashMap<>();
+        for (Row r : batch) byFolder.computeIfAbsent(r.dir.folderId, k -> new ArrayList<>()).add(r);
+
+        Map<Row, Integer> ids = new HashMap<>();
+        for (Map.Entry<Integer, List<Row>> e : byFolder.entrySet()) {
+            List<Row> rows = e.getValue();
+            StringBuilder in = new StringBuilder();
+            for (int i = 0; i < rows.size(); i++) in.append(i == 0 ? "?" : ",?");
+            Map<String, Row> byName = new HashMap<>();
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT FileID, FileName, FileHash FROM Files WHERE FolderID = ? AND FileName IN (" + in + ")")) {
+                ps.setInt(1, e.getKey());
+                for (int i = 0; i < rows.size(); i++) {
+                    ps.setString(i + 2, rows.get(i).name);
+                    byName.put(rows.get(i).name, rows.get(i));
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        Row r = byName.get(rs.getString(2));
+                        if (r != null && r.hash.equalsIgnoreCase(rs.getString(3))) ids.put(r, rs.getInt(1));
+                    }
+                }
+            }
+        }
+        return ids;
+    }
+
+    private void abandon(List<Row> rows) {
+        for (Row r : rows) {
+            failed.increment();
+            r.dir.failed = true;
+            try {
+                if (r.tmp != null) Files.deleteIfExists(r.tmp);
+            } catch (IOException ignore) {
+                // file tạm sót lại trong <objects>/.tmp
+            }
+        }
+    }
+
+    private synchronized void markDone(String rel) {
+        try {
+            checkpointOut.write(rel);
+            checkpointOut.newLine();
+        } catch (IOException e) {
+            System.err.println("⚠️ Không ghi được checkpoint: " + e.getMessage());
+        }
+    }
+
+    // ---------- Tiến độ ----------
+
+    private void progressLoop(long started) {
+        try {
+            while (true) {
+                Thread.sleep(PROGRESS_INTERVAL_MS);
+                printProgress(started, "  …");
+            }
+        } catch (InterruptedException e) {
+            // xong
+        }
+    }
+
+    private void printProgress(long started, String prefix) {
+        double secs = Math.max(1, System.currentTimeMillis() - started) / 1000.0;
+        double mb = bytes.sum() / 1024.0 / 1024.0;
+        System.out.printf("%s quét=%d, nhập=%d, bỏ qua=%d, conflict=%d, lỗi=%d, folder mới=%d, đọc %.1f MB (%.1f MB/s), hàng đợi=%d%n",
+                prefix, scanned.sum(), imported.sum(), skipped.sum(), conflicts.sum(), failed.sum(), folders.sum(),
+                mb, mb / secs, queue.size());
+    }
+
+    // ---------- Kiểu dữ liệu ----------
+
+    /** Trạng thái một thư mục nguồn: xong khi pending về 0 (1 cho chính việc duyệt + 1 cho mỗi file đang chờ DB) */
+    private final class DirState {
+        final String rel;
+        final int folderId;
+        final Path folderPath;
+        final AtomicInteger pending = new AtomicInteger(1);
+        final Set<String> names = ConcurrentHashMap.newKeySet();
+        volatile boolean failed;
+
+        DirState(String rel, int folderId, Path folderPath) {
+            this.rel = rel;
+            this.folderId = folderId;
+            this.folderPath = folderPath;
+        }
+
+        void release() {
+            if (pending.decrementAndGet() == 0 && !failed) markDone(rel);
+        }
+    }
+
+    private static final class Row {
+        final DirState dir;
+        final String name;
+        final long size;
+        final String hash;
+        final long mtime;
+        final Path tmp; // layout object: nội dung chờ FileID
+
+        Row(DirState dir, String name, long size, String hash, long mtime, Path tmp) {
+            this.dir = dir;
+            this.name = name;
+            this.size = size;
+            this.hash = hash;
+            this.mtime = mtime;
+            this.tmp = tmp;
+        }
+    }
+
+    private static final class Existing {
+        final int fileId;
+        final long size;
+        final String hash;
+
+        Existing(int fileId, long size, String hash) {
+            this.fileId = fileId;
+            this.size = size;
+            this.hash = hash != null ? hash : "";
+        }
+    }
+
+    private static void moveIntoPlace(Path tmp, Path target) throws IOException {
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static String hex(byte[] hash) {
+        StringBuilder sb = new StringBuilder(64);
+        for (byte b : hash) sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+}
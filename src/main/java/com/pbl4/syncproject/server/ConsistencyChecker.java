@@ -0,0 +1,741 @@
+package com.pbl4.syncproject.server;
+
+import com.google.gson.JsonObject;
+import com.pbl4.syncproject.common.jsonhandler.JsonUtils;
+import com.pbl4.syncproject.common.storage.ObjectStore;
+import com.pbl4.syncproject.common.storage.StorageManager;
+import com.pbl4.syncproject.server.dao.DatabaseManager;
+import com.pbl4.syncproject.server.dao.FilesDAO;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Kiểm tra nhất quán giữa bảng Files và nội dung trên đĩa (thay cho việc chạy tay check_uploaded_files.sql).
+ *
+ * Cách dùng:
+ *   java com.pbl4.syncproject.server.ConsistencyChecker [--full] [--threads N] [--mbps N] [--report file] [--repair]
+ *
+ *   --full     băm lại mọi file (mặc định chỉ file có LastModified trong DB hoặc mtime trên đĩa mới hơn lần chạy trước)
+ *   --threads  số luồng băm (mặc định số core)
+ *   --mbps     giới hạn tổng tốc độ đọc khi băm, MB/s (mặc định 50, 0 = không giới hạn)
+ *   --report   file báo cáo JSON Lines (mặc định <storage.root>/.fsck/report-<thời gian>.jsonl)
+ *   --repair   sửa sau khi quét xong (xem repair())
+ *
+ * Một lượt duyệt, so khớp hai phía đã sắp cùng thứ tự (sorted merge):
+ *   - layout path: theo từng folder, danh sách file/folder con trong DB và trên đĩa cùng sắp theo tên;
+ *   - layout object: các dòng Files theo FileID (trang keyset) với FileID của các object trên đĩa đã sắp.
+ * Khớp tên mà kích thước khác -> SIZE_MISMATCH ngay; khớp cả kích thước thì (nếu cần) đưa vào pool băm.
+ * Dòng DB không có nội dung (MISSING) được kiểm tra lại trước khi báo vì server có thể đang đổi tên/ghi đè;
+ * file trên đĩa mới hơn lúc bắt đầu chạy không bị coi là mồ côi (ORPHAN) vì có thể là upload đang diễn ra.
+ *
+ * Mỗi dòng báo cáo: {"type": ..., "fileId", "folderId", "path", "expected", "actual", "repaired"}; dòng cuối
+ * {"type":"SUMMARY", ...}. Lượt chạy xong trọn vẹn thì thời điểm bắt đầu được lưu ở <storage.root>/.fsck/checkpoint.
+ */
+public final class ConsistencyChecker {
+
+    public static final String MISSING = "MISSING";
+    public static final String ORPHAN = "ORPHAN";
+    public static final String ORPHAN_DIR = "ORPHAN_DIR";
+    public static final String MISSING_DIR = "MISSING_DIR";
+    public static final String SIZE_MISMATCH = "SIZE_MISMATCH";
+    public static final String HASH_MISMATCH = "HASH_MISMATCH";
+    public static final String STALE_TEMP = "STALE_TEMP";
+
+    private static final int PAGE_SIZE = 1000;
+    private static final int IO_BUFFER = 256 * 1024;
+    // TIMESTAMP của MySQL làm tròn giây + lệch đồng hồ giữa DB và máy chạy
+    private static final long CHANGE_SLACK_MS = 2000;
+    private static final long STALE_TEMP_MS = TimeUnit.HOURS.toMillis(1);
+
+    private final Connection conn;
+    private final StorageManager storage = StorageManager.getInstance();
+    private final boolean full;
+    private final boolean repair;
+    private final int threads;
+    private final RateLimiter limiter;
+    private final Path fsckDir;
+    private final Path reportFile;
+    private final Path checkpointFile;
+
+    private long startedAt;
+    private long changedSince;
+    private BufferedWriter report;
+    private ExecutorService pool;
+    private Semaphore inFlight;
+    private final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[IO_BUFFER]);
+    // Các phát hiện cần sửa; chỉ có khi có lỗi nên giữ trong bộ nhớ được
+    private final ConcurrentLinkedQueue<Finding> problems = new ConcurrentLinkedQueue<>();
+
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder diskFiles = new LongAdder();
+    private final LongAdder hashed = new LongAdder();
+    private final LongAdder hashedBytes = new LongAdder();
+    private final LongAdder findings = new LongAdder();
+
+    public ConsistencyChecker(Connection conn, boolean full, boolean repair, int threads, long bytesPerSec,
+                              Path reportFile) throws IOException {
+        this.conn = conn;
+        this.full = full;
+        this.repair = repair;
+        this.threads = threads;
+        this.limiter = new RateLimiter(bytesPerSec);
+        this.fsckDir = storage.getRoot().resolve(".fsck");
+        this.checkpointFile = fsckDir.resolve("checkpoint");
+        this.reportFile = reportFile != null ? reportFile
+                : fsckDir.resolve("report-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".jsonl");
+    }
+
+    public static void main(String[] args) throws Exception {
+        StorageBindings.install();
+        boolean full = false;
+        boolean repair = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long mbps = 50;
+        Path reportFile = null;
+        for (int i = 0; i < args.length; i++) {
+            if ("--full".equals(args[i])) full = true;
+            else if ("--repair".equals(args[i])) repair = true;
+            else if ("--threads".equals(args[i]) && i + 1 < args.length) threads = Integer.parseInt(args[++i]);
+            else if ("--mbps".equals(args[i]) && i + 1 < args.length) mbps = Long.parseLong(args[++i]);
+            else if ("--report".equals(args[i]) && i + 1 < args.length) reportFile = Paths.get(args[++i]);
+        }
+        try (Connection conn = DatabaseManager.openConnection()) {
+            ConsistencyChecker checker = new ConsistencyChecker(conn, full, repair, Math.max(1, threads),
+                    mbps * 1024 * 1024, reportFile);
+            System.exit(checker.run() == 0 ? 0 : 2);
+        }
+    }
+
+    /** @return số vấn đề tìm thấy */
+    public long run() throws Exception {
+        Files.createDirectories(fsckDir);
+        startedAt = System.currentTimeMillis();
+        changedSince = full ? Long.MIN_VALUE : readCheckpoint() - CHANGE_SLACK_MS;
+        System.out.printf("▶ Kiểm tra %s (%s), báo cáo: %s%n", storage.isObjectLayout() ? "layout object" : "layout path",
+                full || changedSince < 0 ? "băm lại toàn bộ" : "chỉ băm file thay đổi từ " + new Date(changedSince),
+                reportFile);
+
+        pool = Executors.newFixedThreadPool(threads);
+        inFlight = new Semaphore(threads * 4);
+        try (BufferedWriter out = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8)) {
+            report = out;
+            if (storage.isObjectLayout()) {
+                checkObjects();
+            } else {
+                checkTree(rootFolderIds(), storage.getRoot(), true);
+            }
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+            if (repair) repair();
+
+            JsonObject summary = new JsonObject();
+            summary.addProperty("type", "SUMMARY");
+            summary.addProperty("layout", storage.isObjectLayout() ? "object" : "path");
+            summary.addProperty("rows", rows.sum());
+            summary.addProperty("diskFiles", diskFiles.sum());
+            summary.addProperty("hashed", hashed.sum());
+            summary.addProperty("hashedBytes", hashedBytes.sum());
+            summary.addProperty("findings", findings.sum());
+            summary.addProperty("repair", repair);
+            summary.addProperty("startedAt", startedAt);
+            summary.addProperty("durationMs", System.currentTimeMillis() - startedAt);
+            writeLine(summary);
+        }
+
+        writeCheckpoint(startedAt);
+        System.out.printf("✅ Xong: %d dòng, %d file trên đĩa, băm %d file (%.1f MB), %d vấn đề%n",
+                rows.sum(), diskFiles.sum(), hashed.sum(), hashedBytes.sum() / 1024.0 / 1024.0, findings.sum());
+        return findings.sum();
+    }
+
+    // ---------- Layout path: merge theo từng folder ----------
+
+    /**
+     * So khớp một thư mục trên đĩa với các folder DB ứng với nó (thường là một; ở root có thể nhiều folder root
+     * cùng ánh xạ vào storage.root).
+     */
+    private void checkTree(List<Integer> folderIds, Path dir, boolean isRoot) throws Exception {
+        List<Row> dbFiles = new ArrayList<>();
+        List<Child> dbDirs = new ArrayList<>();
+        for (int id : folderIds) {
+            dbFiles.addAll(filesOf(id));
+            dbDirs.addAll(childFoldersOf(id));
+        }
+        dbFiles.sort((a, b) -> a.diskName.compareTo(b.diskName));
+        dbDirs.sort((a, b) -> a.diskName.compareTo(b.diskName));
+
+        List<Entry> diskFilesHere = new ArrayList<>();
+        List<Entry> diskDirs = new ArrayList<>();
+        if (Files.isDirectory(dir)) {
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+                for (Path p : ds) {
+                    String name = p.getFileName().toString();
+                    BasicFileAttributes a = Files.readAttributes(p, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (a.isDirectory()) {
+                        // Thư mục hệ thống ở root (.objects, .versions, .fsck, .import...)
+                        if (isRoot && name.startsWith(".")) continue;
+                        if (isReserved(p)) continue;
+                        diskDirs.add(new Entry(name, p, a));
+                    } else if (a.isRegularFile()) {
+                        diskFilesHere.add(new Entry(name, p, a));
+                    }
+                }
+            }
+        }
+        diskFilesHere.sort((a, b) -> a.name.compareTo(b.name));
+        diskDirs.sort((a, b) -> a.name.compareTo(b.name));
+
+        // File
+        int i = 0, j = 0;
+        while (i < dbFiles.size() || j < diskFilesHere.size()) {
+            int cmp = i >= dbFiles.size() ? 1 : j >= diskFilesHere.size() ? -1
+                    : dbFiles.get(i).diskName.compareTo(diskFilesHere.get(j).name);
+            if (cmp == 0) {
+                Entry e = diskFilesHere.get(j);
+                diskFiles.increment();
+                compare(dbFiles.get(i), e.path, e.attrs);
+                i++;
+                j++;
+            } else if (cmp < 0) {
+                missing(dbFiles.get(i++));
+            } else {
+                Entry e = diskFilesHere.get(j++);
+                diskFiles.increment();
+                orphanOrTemp(e.path, e.attrs);
+            }
+        }
+
+        // Folder con
+        i = 0;
+        j = 0;
+        while (i < dbDirs.size() || j < diskDirs.size()) {
+            int cmp = i >= dbDirs.size() ? 1 : j >= diskDirs.size() ? -1
+                    : dbDirs.get(i).diskName.compareTo(diskDirs.get(j).name);
+            if (cmp == 0) {
+                // Hai folder DB trùng tên sau sanitize: gộp lại như ở root
+                List<Integer> ids = new ArrayList<>();
+                String name = dbDirs.get(i).diskName;
+                while (i < dbDirs.size() && dbDirs.get(i).diskName.equals(name)) ids.add(dbDirs.get(i++).folderId);
+                checkTree(ids, diskDirs.get(j++).path, false);
+            } else if (cmp < 0) {
+                // Folder chưa có thư mục trên đĩa: bình thường nếu rỗng (tạo lúc upload), vẫn phải xét file của nó
+                Child c = dbDirs.get(i++);
+                if (!filesOf(c.folderId).isEmpty()) {
+                    report(new Finding(MISSING_DIR, null, c.folderId, dir.resolve(c.diskName), null, null));
+                }
+                checkTree(Collections.singletonList(c.folderId), dir.resolve(c.diskName), false);
+            } else {
+                Entry e = diskDirs.get(j++);
+                if (e.attrs.lastModifiedTime().toMillis() >= startedAt) continue;
+                report(new Finding(ORPHAN_DIR, null, null, e.path, null, null));
+                orphanSubtree(e.path);
+            }
+        }
+    }
+
+    private void orphanSubtree(Path dir) throws IOException {
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path p : ds) {
+                BasicFileAttributes a = Files.readAttributes(p, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                if (a.isDirectory()) {
+                    orphanSubtree(p);
+                } else if (a.isRegularFile()) {
+                    diskFiles.increment();
+                    orphanOrTemp(p, a);
+                }
+            }
+        }
+    }
+
+    private boolean isReserved(Path p) {
+        Path abs = p.toAbsolutePath().normalize();
+        return storage.objects().isRootDir(abs) || abs.equals(storage.versions().getRoot()) || abs.equals(fsckDir)
+                || (storage.tier() != null && abs.equals(storage.tier().getRoot()))
+                || (storage.packs() != null && abs.equals(storage.packs().getRoot()))
+                || abs.equals(storage.journalRoot()) || abs.equals(storage.replicationRoot());
+    }
+
+    // ---------- Layout object: merge theo FileID ----------
+
+    private void checkObjects() throws Exception {
+        // FileID của mọi object trên đĩa (mọi root), đã sắp (4 byte mỗi file)
+        IdList ids = new IdList();
+        for (ObjectStore.Root root : storage.objects().roots()) {
+            storage.objects().forEach(root, new ObjectStore.Visitor() {
+                @Override
+                public void object(int fileId, Path path) {
+                    ids.add(fileId);
+                }
+
+                @Override
+                public void foreign(Path path) throws IOException {
+                    diskFiles.increment();
+                    orphanOrTemp(path, Files.readAttributes(path, BasicFileAttributes.class));
+                }
+            });
+            checkStaleTemps(root.getTmpDir());
+        }
+        // Cùng FileID ở hai root (rebalancer đang chuyển): chỉ xét một lần
+        checkMerge(ids.a, ids.sortDistinct());
+    }
+
+    private void checkMerge(int[] ids, int n) throws Exception {
+        int j = 0;
+        int after = 0;
+        while (true) {
+            List<Row> page = rowsPage(after);
+            for (Row r : page) {
+                while (j < n && ids[j] < r.fileId) orphanObject(ids[j++]);
+                if (j < n && ids[j] == r.fileId) {
+                    j++;
+                    diskFiles.increment();
+                    Path p = storage.objects().pathOf(r.fileId);
+                    compare(r, p, Files.readAttributes(p, BasicFileAttributes.class));
+                } else {
+                    // Chưa migrate: nội dung còn ở đường dẫn cũ
+                    Path legacy = legacyPath(r);
+                    if (legacy != null && Files.isRegularFile(legacy)) {
+                        compare(r, legacy, Files.readAttributes(legacy, BasicFileAttributes.class));
+                    } else {
+                        missing(r);
+                    }
+                }
+            }
+            if (page.size() < PAGE_SIZE) break;
+            after = page.get(page.size() - 1).fileId;
+        }
+        while (j < n) orphanObject(ids[j++]);
+    }
+
+    private void orphanObject(int fileId) throws IOException {
+        diskFiles.increment();
+        Path p = storage.objects().pathOf(fileId);
+        if (Files.exists(p)) orphanOrTemp(p, Files.readAttributes(p, BasicFileAttributes.class));
+    }
+
+    private void checkStaleTemps(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) return;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path p : ds) {
+                BasicFileAttributes a = Files.readAttributes(p, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                if (a.isRegularFile() && a.lastModifiedTime().toMillis() < startedAt - STALE_TEMP_MS) {
+                    report(new Finding(STALE_TEMP, null, null, p, null, null));
+                }
+            }
+        }
+    }
+
+    private Path legacyPath(Row r) {
+        try {
+            return storage.legacyFilePath(conn, r.folderId, r.fileName);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // ---------- So sánh ----------
+
+    private void compare(Row r, Path path, BasicFileAttributes attrs) throws Exception {
+        if (attrs.size() != r.size) {
+            report(new Finding(SIZE_MISMATCH, r.fileId, r.folderId, path, Long.toString(r.size), Long.toString(attrs.size())));
+            return;
+        }
+        boolean changed = r.lastModifiedMs >= changedSince || attrs.lastModifiedTime().toMillis() >= changedSince;
+        if (!changed || r.hash == null || r.hash.isEmpty()) return;
+
+        inFlight.acquire();
+        pool.execute(() -> {
+            try {
+                String actual = sha256Of(path);
+                hashed.increment();
+                if (!actual.equalsIgnoreCase(r.hash) && stillCurrent(r)) {
+                    report(new Finding(HASH_MISMATCH, r.fileId, r.folderId, path, r.hash, actual));
+                }
+            } catch (java.nio.file.NoSuchFileException e) {
+                // bị thay/xóa trong lúc băm: lượt sau sẽ xét
+            } catch (Exception e) {
+                System.err.println("⚠️ Không băm được " + path + ": " + e.getMessage());
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    private void missing(Row r) throws Exception {
+        // Kiểm tra lại: dòng có thể vừa bị đổi/xóa, hoặc nội dung vừa được ghi
+        FilesDAO.CurrentContent now;
+        synchronized (conn) {
+            now = new FilesDAO(conn).getCurrentContent(r.fileId);
+        }
+        if (now == null) return;
+        // Nội dung đã chuyển sang tầng lạnh (không khôi phục về chỉ để kiểm tra) / được gói vào segment
+        if (storage.tier() != null && storage.tier().coldPathOf(now.fileId) != null) return;
+        if (storage.packs() != null) {
+            synchronized (conn) {
+                if (storage.packs().slotOf(conn, now.fileId) != null) return;
+            }
+        }
+        Path p;
+        try {
+            synchronized (conn) {
+                p = storage.locateHotFile(conn, now.fileId, now.folderId, now.fileName);
+            }
+        } catch (Exception e) {
+            p = null;
+        }
+        if (p != null && Files.isRegularFile(p)) return;
+        report(new Finding(MISSING, r.fileId, r.folderId, p, r.hash, null));
+    }
+
+    private void orphanOrTemp(Path p, BasicFileAttributes a) throws IOException {
+        long mtime = a.lastModifiedTime().toMillis();
+        String name = p.getFileName().toString();
+        if (name.startsWith(".") && name.endsWith(".tmp")) {
+            if (mtime < startedAt - STALE_TEMP_MS) report(new Finding(STALE_TEMP, null, null, p, null, null));
+            return;
+        }
+        if (mtime >= startedAt) return; // upload đang diễn ra
+        report(new Finding(ORPHAN, null, null, p, null, null));
+    }
+
+    // Nội dung trong DB vẫn là cái đã so (không bị upload ghi đè trong lúc băm)
+    private boolean stillCurrent(Row r) throws SQLException {
+        synchronized (conn) {
+            FilesDAO.CurrentContent now = new FilesDAO(conn).getCurrentContent(r.fileId);
+            return now != null && r.hash.equalsIgnoreCase(now.hash);
+        }
+    }
+
+    // ---------- Sửa ----------
+
+    /**
+     * Chỉ làm sau khi quét xong, không bao giờ xóa hẳn dữ liệu:
+     *   MISSING        -> dòng được đưa vào thùng rác (người dùng thấy file mất, vẫn khôi phục metadata được)
+     *   SIZE/HASH      -> nếu có file khác còn nguyên nội dung đúng (cùng hash) thì lấy lại từ đó,
+     *                     không có thì cập nhật FileSize/FileHash theo nội dung thực tế
+     *   ORPHAN(_DIR)   -> chuyển vào <storage.root>/.fsck/orphans/ (giữ đường dẫn tương đối)
+     *   STALE_TEMP     -> xóa
+     */
+    private void repair() {
+        for (Finding f : problems) {
+            try {
+                switch (f.type) {
+                    case MISSING:
+                        try (PreparedStatement ps = conn.prepareStatement(
+                                "UPDATE Files SET DeletedAt = NOW(), LastModified = LastModified " +
+                                        "WHERE FileID = ? AND DeletedAt IS NULL")) {
+                            ps.setInt(1, f.fileId);
+                            ps.executeUpdate();
+                        }
+                        break;
+                    case SIZE_MISMATCH:
+                    case HASH_MISMATCH:
+                        repairContent(f);
+                        break;
+                    case ORPHAN:
+                        quarantine(f.path);
+                        break;
+                    case STALE_TEMP:
+                        Files.deleteIfExists(f.path);
+                        break;
+                    default:
+                        continue; // ORPHAN_DIR: các file bên trong đã được xử lý; MISSING_DIR: tạo lại khi upload
+                }
+                f.repaired = true;
+            } catch (Exception e) {
+                System.err.println("⚠️ Không sửa được " + f.type + " " + f.path + ": " + e.getMessage());
+            }
+            JsonObject o = f.toJson();
+            o.addProperty("phase", "repair");
+            writeLine(o);
+        }
+    }
+
+    private void repairContent(Finding f) throws Exception {
+        FilesDAO dao = new FilesDAO(conn);
+        FilesDAO.CurrentContent cur = dao.getCurrentContent(f.fileId);
+        if (cur == null) return;
+        for (com.pbl4.syncproject.common.model.Files c : dao.findByHash(cur.hash, cur.size, 5)) {
+            if (c.getFileId() == cur.fileId) continue;
+            Path source = storage.locateFile(conn, c.getFileId(), c.getFolderId(), c.getFileName());
+            if (!Files.isRegularFile(source) || Files.size(source) != cur.size
+                    || !cur.hash.equalsIgnoreCase(sha256Of(source))) continue;
+            Path tmp = f.path.resolveSibling(".fsck-" + System.nanoTime() + ".tmp");
+            try {
+                Files.copy(source, tmp, StandardCopyOption.COPY_ATTRIBUTES);
+                Files.move(tmp, f.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            return;
+        }
+        // Không còn bản đúng nào: metadata theo nội dung thực tế để client không tải về rồi báo sai hash mãi
+        String actual = sha256Of(f.path);
+        try (PreparedStatement ps = conn.prepareStatement(
+                "UPDATE Files SET FileSize = ?, FileHash = ?, LastModified = LastModified WHERE FileID = ?")) {
+            ps.setLong(1, Files.size(f.path));
+            ps.setString(2, actual);
+            ps.setInt(3, f.fileId);
+            ps.executeUpdate();
+        }
+    }
+
+    private void quarantine(Path p) throws IOException {
+        Path rel = storage.getRoot().relativize(p.toAbsolutePath().normalize());
+        Path target = fsckDir.resolve("orphans").resolve(rel);
+        Files.createDirectories(target.getParent());
+        Files.move(p, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // ---------- DB ----------
+
+    private List<Integer> rootFolderIds() throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement("SELECT FolderID FROM Folders WHERE ParentFolderID IS NULL");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) ids.add(rs.getInt(1));
+        }
+        return ids;
+    }
+
+    // Kể cả file trong thùng rác: nội dung của chúng vẫn phải còn tới khi TrashCollector xóa hẳn
+    private List<Row> filesOf(int folderId) throws SQLException {
+        synchronized (conn) {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT FileID, FolderID, FileName, FileSize, FileHash, LastModified FROM Files WHERE FolderID = ?")) {
+                ps.setInt(1, folderId);
+                return readRows(ps);
+            }
+        }
+    }
+
+    private List<Row> rowsPage(int afterFileId) throws SQLException {
+        synchronized (conn) {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT FileID, FolderID, FileName, FileSize, FileHash, LastModified FROM Files " +
+                            "WHERE FileID > ? ORDER BY FileID LIMIT ?")) {
+                ps.setInt(1, afterFileId);
+                ps.setInt(2, PAGE_SIZE);
+                return readRows(ps);
+            }
+        }
+    }
+
+    private List<Row> readRows(PreparedStatement ps) throws SQLException {
+        List<Row> list = new ArrayList<>();
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                Timestamp ts = rs.getTimestamp(6);
+                list.add(new Row(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getLong(4), rs.getString(5),
+                        ts != null ? ts.getTime() : Long.MAX_VALUE));
+            }
+        }
+        rows.add(list.size());
+        return list;
+    }
+
+    private List<Child> childFoldersOf(int folderId) throws SQLException {
+        synchronized (conn) {
+            List<Child> list = new ArrayList<>();
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT FolderID, FolderName FROM Folders WHERE ParentFolderID = ?")) {
+                ps.setInt(1, folderId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) list.add(new Child(rs.getInt(1), StorageManager.sanitizeName(rs.getString(2))));
+                }
+            }
+            return list;
+        }
+    }
+
+    // ---------- Tiện ích ----------
+
+    private String sha256Of(Path file) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] buf = buffers.get();
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                limiter.acquire(n);
+                digest.update(buf, 0, n);
+                hashedBytes.add(n);
+            }
+        }
+        StringBuilder sb = new StringBuilder(64);
+        for (byte b : digest.digest()) sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+
+    private void report(Finding f) {
+        findings.increment();
+        problems.add(f);
+        writeLine(f.toJson());
+    }
+
+    private synchronized void writeLine(JsonObject o) {
+        try {
+            report.write(JsonUtils.toJson(o));
+            report.newLine();
+        } catch (IOException e) {
+            throw new IllegalStateException("Không ghi được báo cáo: " + e.getMessage(), e);
+        }
+    }
+
+    private long readCheckpoint() {
+        try {
+            return Long.parseLong(Files.readString(checkpointFile).trim());
+        } catch (Exception e) {
+            return Long.MIN_VALUE + CHANGE_SLACK_MS; // chưa chạy lần nào: băm tất cả
+        }
+    }
+
+    private void writeCheckpoint(long value) throws IOException {
+        Path tmp = checkpointFile.resolveSibling("checkpoint.tmp");
+        Files.writeString(tmp, Long.toString(value));
+        Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Giới hạn tổng số byte đọc mỗi giây cho mọi luồng băm */
+    private static final class RateLimiter {
+        private final long bytesPerSec;
+        private long nextFreeNanos = System.nanoTime();
+
+        RateLimiter(long bytesPerSec) {
+            this.bytesPerSec = bytesPerSec;
+        }
+
+        void acquire(int bytes) throws InterruptedException {
+            if (bytesPerSec <= 0) return;
+            long wait;
+            synchronized (this) {
+                long now = System.nanoTime();
+                long start = Math.max(now, nextFreeNanos);
+                nextFreeNanos = start + bytes * 1_000_000_000L / bytesPerSec;
+                wait = start - now;
+            }
+            if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    private static final class Row {
+        final int fileId;
+        final int folderId;
+        final String fileName;
+        final String diskName;
+        final long size;
+        final String hash;
+        final long lastModifiedMs;
+
+        Row(int fileId, int folderId, String fileName, long size, String hash, long lastModifiedMs) {
+            this.fileId = fileId;
+            this.folderId = folderId;
+            this.fileName = fileName;
+            this.diskName = StorageManager.sanitizeName(fileName);
+            this.size = size;
+            this.hash = hash;
+            this.lastModifiedMs = lastModifiedMs;
+        }
+    }
+
+    private static final class IdList {
+        int[] a = new int[1024];
+        int n;
+
+        void add(int id) {
+            if (n == a.length) a = Arrays.copyOf(a, n * 2);
+            a[n++] = id;
+        }
+
+        /** Sắp tăng dần, bỏ trùng; trả về số phần tử còn lại */
+        int sortDistinct() {
+            Arrays.parallelSort(a, 0, n);
+            int d = 0;
+            for (int i = 0; i < n; i++) {
+                if (d == 0 || a[i] != a[d - 1]) a[d++] = a[i];
+            }
+            return n = d;
+        }
+    }
+
+    private static final class Child {
+        final int folderId;
+        final String diskName;
+
+        Child(int folderId, String diskName) {
+            this.folderId = folderId;
+            this.diskName = diskName;
+        }
+    }
+
+    private static final class Entry {
+        final String name;
+        final Path path;
+        final BasicFileAttributes attrs;
+
+        Entry(String name, Path path, BasicFileAttributes attrs) {
+            this.name = name;
+            this.path = path;
+            this.attrs = attrs;
+        }
+    }
+
+    private static final class Finding {
+        final String type;
+        final Integer fileId;
+        final Integer folderId;
+        final Path path;
+        final String expected;
+        final String actual;
+        volatile boolean repaired;
+
+        Finding(String type, Integer fileId, Integer folderId, Path path, String expected, String actual) {
+            this.type = type;
+            this.fileId = fileId;
+            this.folderId = folderId;
+            this.path = path;
+            this.expected = expected;
+            this.actual = actual;
+        }
+
+        JsonObject toJson() {
+            JsonObject o = new JsonObject();
+            o.addProperty("type", type);
+            if (fileId != null) o.addProperty("fileId", fileId);
+            if (folderId != null) o.addProperty("folderId", folderId);
+            if (path != null) o.addProperty("path", path.toString());
+            if (expected != null) o.addProperty("expected", expected);
+            if (actual != null) o.addProperty("actual", actual);
+            o.addProperty("repaired", repaired);
+            return o;
+        }
+    }
+}
@@ -1,16 +1,89 @@
 package com.pbl4.syncproject.server;
 
+import com.pbl4.syncproject.common.storage.StorageManager;
 import com.pbl4.syncproject.server.dao.DatabaseManager;
 import com.pbl4.syncproject.server.handlers.ClientHandler;
+import com.pbl4.syncproject.server.service.FolderETags;
+import com.pbl4.syncproject.server.service.FolderJobService;
+import com.pbl4.syncproject.server.service.FolderTreeVersion;
+import com.pbl4.syncproject.server.service.NamespaceEvents;
+import com.pbl4.syncproject.server.service.NamespaceIndex;
+import com.pbl4.syncproject.server.service.PackCompactor;
+import com.pbl4.syncproject.server.service.PermissionResolver;
+import com.pbl4.syncproject.server.service.ReplicaSync;
+import com.pbl4.syncproject.server.service.ReplicationSource;
+import com.pbl4.syncproject.server.service.SearchIndex;
+import com.pbl4.syncproject.server.service.StorageCacheInvalidator;
+import com.pbl4.syncproject.server.service.StorageRebalancer;
+import com.pbl4.syncproject.server.service.TieringService;
+import com.pbl4.syncproject.server.service.TrashCollector;
+import com.pbl4.syncproject.server.service.UploadJournal;
+import com.pbl4.syncproject.server.service.VersionCompactor;
+import com.pbl4.syncproject.server.service.VersionService;
 
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.sql.Connection;
 
 public class ServerApp {
-    private static final int PORT = 8080;
+    private static final int PORT = ServerConfig.getInt("server.port", 8080);
 
     public static void main(String[] args) {
+        StorageBindings.install();
+
+        // Replica (replication.role=replica): nạp snapshot từ primary lần đầu, TRƯỚC khi các cache đọc DB
+        ReplicaSync replica = ReplicaSync.getInstance();
+        boolean isReplica = replica.prepare();
+
+        // Ảnh cây thư mục/file trong bộ nhớ (tùy chọn): nạp trước khi nhận client, sau đó cập nhật write-through.
+        // Đăng ký TRƯỚC các cache khác để khi chúng invalidate thì index đã mang giá trị mới
+        if (ServerConfig.getBoolean("namespace.index.enabled", false)) {
+            NamespaceIndex index = NamespaceIndex.getInstance();
+            NamespaceEvents.register(index);
+            try {
+                index.load(DatabaseManager.getConnection());
+            } catch (Exception e) {
+                System.err.println("❌ Không nạp được NamespaceIndex, dùng DB trực tiếp: " + e.getMessage());
+            }
+            StorageManager.getInstance().setAncestorLookup(id -> index.isLoaded() ? index.getAncestors(id) : null);
+        }
+
+        // Các cache phía server tự invalidate khi cây thư mục / quyền thay đổi
+        NamespaceEvents.register(PermissionResolver.getInstance());
+        NamespaceEvents.register(new StorageCacheInvalidator(StorageManager.getInstance()));
+        NamespaceEvents.register(FolderTreeVersion.getInstance());
+        NamespaceEvents.register(FolderETags.getInstance());
+
+        // Chỉ mục tìm kiếm theo tên: nạp nền, trong lúc nạp SEARCH dùng LIKE trên DB
+        if (ServerConfig.getBoolean("search.index.enabled", true)) {
+            NamespaceEvents.register(SearchIndex.getInstance());
+            SearchIndex.getInstance().loadAsync();
+        }
+
+        // Nhiều object root: chuyển dần object về đúng root sau khi thêm/bớt root, chép bù bản sao thiếu
+        StorageManager storage = StorageManager.getInstance();
+        if (storage.isObjectLayout() && storage.objects().isStriped()
+                && ServerConfig.getBoolean("storage.rebalance.enabled", true)) {
+            StorageRebalancer.getInstance().start();
+        }
+
+        // Tầng lạnh: chuyển file lâu không dùng sang tier.cold.root (nén nếu có lợi)
+        if (storage.tier() != null) {
+            TieringService.getInstance().start();
+        }
+
+        // File nhỏ gói trong segment: gộp segment có nhiều byte chết
+        if (storage.packs() != null) {
+            PackCompactor.getInstance().start();
+        }
+
+        // Replica chỉ áp thay đổi từ primary: các dịch vụ ghi chờ tới khi PROMOTE_REPLICA
+        if (isReplica) {
+            replica.onPromote(ServerApp::startWriterServices);
+            replica.start();
+        } else {
+            startWriterServices();
+        }
+
         try (ServerSocket serverSocket = new ServerSocket(PORT)) {
             System.out.println("Server started on port " + PORT);
 
@@ -25,4 +98,32 @@ public class ServerApp {
             e.printStackTrace();
         }
     }
+
+    // Các dịch vụ ghi metadata của primary
+    private static void startWriterServices() {
+        // Dọn thùng rác chạy nền
+        if (ServerConfig.getBoolean("trash.gc.enabled", true)) {
+            TrashCollector.getInstance().start();
+        }
+
+        // DELETE_FOLDER / MOVE_FOLDER chạy nền theo lô
+        FolderJobService.getInstance().start();
+
+        // Nén lịch sử phiên bản (delta hóa, rebase, xóa bản quá hạn) chạy nền
+        if (VersionService.getInstance().isEnabled()) {
+            VersionCompactor.getInstance().start();
+        }
+
+        // Nhật ký upload: áp lại các upload chưa vào DB trước khi nhận client
+        if (UploadJournal.getInstance().isEnabled()) {
+            try {
+                UploadJournal.getInstance().start();
+            } catch (Exception e) {
+                System.err.println("❌ Không khởi động được UploadJournal, upload ghi DB trực tiếp: " + e.getMessage());
+            }
+        }
+
+        // Nhật ký nhân bản cho replica (REPLICATION_PULL): dọn bản ghi quá hạn
+        ReplicationSource.getInstance().start();
+    }
 }
@@ -0,0 +1,56 @@
+package com.pbl4.syncproject.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Cấu hình server: đọc từ classpath /app.properties, có thể ghi đè bằng -Dkey=value khi chạy.
+ */
+public final class ServerConfig {
+
+    private static final Properties PROPS = load();
+
+    private ServerConfig() {}
+
+    private static Properties load() {
+        Properties p = new Properties();
+        try (InputStream in = ServerConfig.class.getResourceAsStream("/app.properties")) {
+            if (in != null) p.load(in);
+        } catch (IOException e) {
+            System.err.println("⚠️ Không đọc được app.properties: " + e.getMessage());
+        }
+        return p;
+    }
+
+    public static String getString(String key, String defaultValue) {
+        String v = System.getProperty(key);
+        if (v == null) v = PROPS.getProperty(key);
+        return v != null && !v.isBlank() ? v.trim() : defaultValue;
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String v = getString(key, null);
+        return v != null ? Boolean.parseBoolean(v) : defaultValue;
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        String v = getString(key, null);
+        try {
+            return v != null ? Integer.parseInt(v) : defaultValue;
+        } catch (NumberFormatException e) {
+            System.err.println("⚠️ Giá trị không hợp lệ cho " + key + ": " + v);
+            return defaultValue;
+        }
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        String v = getString(key, null);
+        try {
+            return v != null ? Long.parseLong(v) : defaultValue;
+        } catch (NumberFormatException e) {
+            System.err.println("⚠️ Giá trị không hợp lệ cho " + key + ": " + v);
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.pbl4.syncproject.server;
+
+import com.pbl4.syncproject.common.storage.StorageManager;
+import com.pbl4.syncproject.server.dao.PackedContentDAO;
+import com.pbl4.syncproject.server.service.ServerMetrics;
+
+/**
+ * Gắn phần phía server mà tầng lưu trữ (common) cần: bảng PackedContent làm index cho PackStore và
+ * ServerMetrics làm bộ đếm. Gọi đầu tiên trong main của server và các công cụ dòng lệnh.
+ */
+final class StorageBindings {
+
+    private StorageBindings() {}
+
+    static void install() {
+        StorageManager storage = StorageManager.getInstance();
+        storage.setPackIndex(PackedContentDAO::new);
+        storage.setMetrics(ServerMetrics.getInstance());
+    }
+}
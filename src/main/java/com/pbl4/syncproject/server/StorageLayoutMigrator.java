@@ -0,0 +1,191 @@
+package com.pbl4.syncproject.server;
+
+import com.pbl4.syncproject.common.storage.ObjectStore;
+import com.pbl4.syncproject.common.storage.StorageManager;
+import com.pbl4.syncproject.server.dao.DatabaseManager;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+/**
+ * Chuyển nội dung file từ layout cũ (theo cây thư mục) sang ObjectStore (theo FileID) trong lúc server vẫn chạy.
+ *
+ * Cách dùng:
+ *   1. Đặt storage.layout=object trong app.properties và khởi động lại server.
+ *      Từ lúc này server đọc object trước rồi mới tới đường dẫn cũ, và mọi upload đều ghi vào ObjectStore.
+ *   2. Chạy: java -Dstorage.layout=object com.pbl4.syncproject.server.StorageLayoutMigrator [--pause-ms N] [--restart]
+ *
+ * Với từng file (theo thứ tự FileID): hard link đường dẫn cũ sang object (tạo mới nguyên tử, không ghi đè
+ * object đã có), rồi mới xóa đường dẫn cũ, nên lúc nào người đọc cũng thấy ít nhất một bản.
+ * FileID cuối cùng đã xử lý được lưu ở <objects>/.migration-checkpoint: chạy lại sẽ tiếp tục từ đó.
+ * Cuối cùng xóa các thư mục cũ đã rỗng để rename/move folder chỉ còn là cập nhật DB.
+ */
+public final class StorageLayoutMigrator {
+
+    private static final int BATCH_SIZE = 500;
+
+    private final Connection conn;
+    private final StorageManager storage;
+    private final ObjectStore objects;
+    private final Path checkpointFile;
+    private final long pauseMs;
+
+    private long moved;
+    private long alreadyMigrated;
+    private long missing;
+
+    public StorageLayoutMigrator(Connection conn, long pauseMs) {
+        this.conn = conn;
+        this.storage = StorageManager.getInstance();
+        this.objects = storage.objects();
+        this.checkpointFile = objects.getRoot().resolve(".migration-checkpoint");
+        this.pauseMs = pauseMs;
+    }
+
+    public static void main(String[] args) throws Exception {
+        StorageBindings.install();
+        long pauseMs = 0;
+        boolean restart = false;
+        for (int i = 0; i < args.length; i++) {
+            if ("--pause-ms".equals(args[i]) && i + 1 < args.length) pauseMs = Long.parseLong(args[++i]);
+            else if ("--restart".equals(args[i])) restart = true;
+        }
+        if (!StorageManager.getInstance().isObjectLayout()) {
+            System.err.println("❌ storage.layout phải là 'object' (server cũng phải chạy với layout này trước khi migrate)");
+            System.exit(1);
+        }
+        try (Connection conn = DatabaseManager.openConnection()) {
+            StorageLayoutMigrator m = new StorageLayoutMigrator(conn, pauseMs);
+            if (restart) Files.deleteIfExists(m.checkpointFile);
+            m.run();
+        }
+    }
+
+    public void run() throws Exception {
+        Files.createDirectories(objects.getRoot());
+        int lastId = readCheckpoint();
+        System.out.println("▶ Bắt đầu migrate từ FileID > " + lastId);
+
+        while (true) {
+            int batchLast = lastId;
+            int count = 0;
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT FileID, FolderID, FileName FROM Files WHERE FileID > ? ORDER BY FileID LIMIT ?")) {
+                ps.setInt(1, lastId);
+                ps.setInt(2, BATCH_SIZE);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        int fileId = rs.getInt(1);
+                        migrateOne(fileId, rs.getInt(2), rs.getString(3));
+                        batchLast = fileId;
+                        count++;
+                    }
+                }
+            }
+            if (count == 0) break;
+            lastId = batchLast;
+            writeCheckpoint(lastId);
+            System.out.printf("  FileID <= %d: moved=%d, alreadyMigrated=%d, missing=%d%n",
+                    lastId, moved, alreadyMigrated, missing);
+            if (pauseMs > 0) Thread.sleep(pauseMs);
+        }
+
+        int removedDirs = removeEmptyLegacyDirs(storage.getRoot());
+        System.out.printf("✅ Xong: moved=%d, alreadyMigrated=%d, missing=%d, xóa %d thư mục rỗng%n",
+                moved, alreadyMigrated, missing, removedDirs);
+        if (missing > 0) {
+            System.out.println("ℹ Có file không tìm thấy (folder bị đổi tên trong lúc chạy?): chạy lại với --restart");
+        }
+    }
+
+    private void migrateOne(int fileId, int folderId, String fileName) throws Exception {
+        Path legacy;
+        try {
+            legacy = storage.legacyFilePath(conn, folderId, fileName);
+        } catch (Exception e) {
+            missing++;
+            return;
+        }
+        Path obj = objects.pathOf(fileId);
+
+        if (Files.isRegularFile(obj)) {
+            // Đã migrate, hoặc đã được upload lại sau khi bật layout object: bản cũ là thừa
+            Files.deleteIfExists(legacy);
+            alreadyMigrated++;
+            return;
+        }
+        if (!Files.isRegularFile(legacy)) {
+            missing++;
+            return;
+        }
+
+        Files.createDirectories(obj.getParent());
+        try {
+            Files.createLink(obj, legacy);
+        } catch (FileAlreadyExistsException e) {
+            // Upload mới vừa ghi object: giữ bản mới
+        } catch (NoSuchFileException e) {
+            missing++;
+            return;
+        } catch (UnsupportedOperationException | IOException e) {
+            // ObjectStore ở filesystem khác: copy qua file tạm rồi đặt vào chỗ (không ghi đè object mới hơn)
+            Path tmp = objects.newTempFile();
+            try {
+                Files.copy(legacy, tmp, java.nio.file.StandardCopyOption.REPLACE_EXISTING,
+                        java.nio.file.StandardCopyOption.COPY_ATTRIBUTES);
+                if (!Files.exists(obj)) Files.move(tmp, obj);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+        Files.deleteIfExists(legacy);
+        moved++;
+    }
+
+    // Xóa thư mục rỗng từ dưới lên (không đụng tới ObjectStore, VersionStore và chính root)
+    private int removeEmptyLegacyDirs(Path dir) throws IOException {
+        int removed = 0;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path child : ds) {
+                Path abs = child.toAbsolutePath().normalize();
+                if (Files.isDirectory(child) && !objects.isRootDir(abs)
+                        && !abs.equals(storage.versions().getRoot())) {
+                    removed += removeEmptyLegacyDirs(child);
+                }
+            }
+        }
+        if (!dir.equals(storage.getRoot())) {
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+                if (!ds.iterator().hasNext()) {
+                    Files.delete(dir);
+                    removed++;
+                }
+            } catch (IOException ignore) {
+                // Có file mới được tạo trong lúc quét: giữ lại
+            }
+        }
+        return removed;
+    }
+
+    private int readCheckpoint() {
+        try {
+            return Integer.parseInt(Files.readString(checkpointFile).trim());
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    private void writeCheckpoint(int lastId) throws IOException {
+        Path tmp = checkpointFile.resolveSibling(".migration-checkpoint.tmp");
+        Files.writeString(tmp, Integer.toString(lastId));
+        Files.move(tmp, checkpointFile, java.nio.file.StandardCopyOption.REPLACE_EXISTING,
+                java.nio.file.StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,97 @@
+package com.pbl4.syncproject.server.dao;
+
+import com.pbl4.syncproject.server.service.Permission;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Đọc/ghi bảng FolderAccessControl và FileAccessControl.
+ * Quyền trả về dạng bitmask (xem Permission).
+ */
+public class AccessControlDAO {
+    private final Connection dbConnection;
+
+    public AccessControlDAO(Connection dbConnection) {
+        this.dbConnection = dbConnection;
+    }
+
+    // Toàn bộ quyền folder được cấp trực tiếp cho user: FolderID -> mask
+    public Map<Integer, Integer> getFolderGrants(int userId) throws SQLException {
+        String sql = "SELECT FolderID, Permission FROM FolderAccessControl WHERE UserID = ?";
+        Map<Integer, Integer> grants = new HashMap<>();
+        try (PreparedStatement stm = dbConnection.prepareStatement(sql)) {
+            stm.setInt(1, userId);
+            try (ResultSet rs = stm.executeQuery()) {
+                while (rs.next()) {
+                    grants.merge(rs.getInt("FolderID"), Permission.fromName(rs.getString("Permission")), (a, b) -> a | b);
+                }
+            }
+        }
+        return grants;
+    }
+
+    // Quyền file được cấp trực tiếp cho user trong một folder (1 query cho cả folder): FileID -> mask
+    public Map<Integer, Integer> getFileGrantsInFolder(int userId, int folderId) throws SQLException {
+        String sql = "SELECT a.FileID, a.Permission FROM FileAccessControl a " +
+                "JOIN Files f ON f.FileID = a.FileID WHERE a.UserID = ? AND f.FolderID = ?";
+        Map<Integer, Integer> grants = new HashMap<>();
+        try (PreparedStatement stm = dbConnection.prepareStatement(sql)) {
+            stm.setInt(1, userId);
+            stm.setInt(2, folderId);
+            try (ResultSet rs = stm.executeQuery()) {
+                while (rs.next()) {
+                    grants.merge(rs.getInt("FileID"), Permission.fromName(rs.getString("Permission")), (a, b) -> a | b);
+                }
+            }
+        }
+        return grants;
+    }
+
+    // Ghi đè toàn bộ quyền của user trên một folder bằng mask mới
+    public void replaceFolderGrants(int userId, int folderId, int mask) throws SQLException {
+        replaceGrants("FolderAccessControl", "FolderID", userId, folderId, mask);
+    }
+
+    // Ghi đè toàn bộ quyền của user trên một file bằng mask mới
+    public void replaceFileGrants(int userId, int fileId, int mask) throws SQLException {
+        replaceGrants("FileAccessControl", "FileID", userId, fileId, mask);
+    }
+
+    // Xóa + chèn trong một transaction: phải chạy trên kết nối riêng, không phải kết nối chung của mọi client
+    private void replaceGrants(String table, String idColumn, int userId, int targetId, int mask) throws SQLException {
+        if (DatabaseManager.isSharedConnection(dbConnection)) {
+            throw new SQLException("Ghi quyền phải chạy trên kết nối riêng");
+        }
+        boolean oldAutoCommit = dbConnection.getAutoCommit();
+        dbConnection.setAutoCommit(false);
+        try {
+            try (PreparedStatement del = dbConnection.prepareStatement(
+                    "DELETE FROM " + table + " WHERE UserID = ? AND " + idColumn + " = ?")) {
+                del.setInt(1, userId);
+                del.setInt(2, targetId);
+                del.executeUpdate();
+            }
+            try (PreparedStatement ins = dbConnection.prepareStatement(
+                    "INSERT INTO " + table + " (UserID, " + idColumn + ", Permission) VALUES (?, ?, ?)")) {
+                for (String name : Permission.toNames(mask)) {
+                    ins.setInt(1, userId);
+                    ins.setInt(2, targetId);
+                    ins.setString(3, name);
+                    ins.addBatch();
+                }
+                ins.executeBatch();
+            }
+            dbConnection.commit();
+        } catch (SQLException e) {
+            dbConnection.rollback();
+            throw e;
+        } finally {
+            dbConnection.setAutoCommit(oldAutoCommit);
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package com.pbl4.syncproject.server.dao;
 
+import com.pbl4.syncproject.server.ServerConfig;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
@@ -7,13 +11,16 @@ import java.util.List;
 import java.util.ArrayList;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
 
 public class DatabaseManager {
-    private static final String URL =
+    // Ghi đè bằng db.url / db.user / db.password (vd. replica chạy cùng máy với primary nhưng khác database)
+    private static final String URL = ServerConfig.getString("db.url",
             "jdbc:mysql://syncserver.mysql.database.azure.com:3306/syncdb"
-                    + "?sslMode=REQUIRED&serverTimezone=UTC&connectTimeout=5000&socketTimeout=15000";
-    private static final String USER = "sync_user";      // Flexible: không có @
-    private static final String PASSWORD = "Syncpass123";
+                    + "?sslMode=REQUIRED&serverTimezone=UTC&connectTimeout=5000&socketTimeout=15000");
+    private static final String USER = ServerConfig.getString("db.user", "sync_user");      // Flexible: không có @
+    private static final String PASSWORD = ServerConfig.getString("db.password", "Syncpass123");
 
 
     private static Connection connection;
@@ -27,6 +34,101 @@ public class DatabaseManager {
         return connection;
     }
 
+    // Kết nối chung ở trên: mọi ClientHandler dùng chung nên không được mở transaction trên nó
+    public static boolean isSharedConnection(Connection conn) {
+        return conn != null && conn == connection;
+    }
+
+    // Mở một kết nối riêng (caller tự đóng): cho việc chạy lâu / transaction không được chen ngang
+    // bởi các request khác đang dùng kết nối chung ở trên
+    public static Connection openConnection() throws SQLException {
+        return DriverManager.getConnection(URL, USER, PASSWORD);
+    }
+
+    // Kết nối nhàn rỗi của borrowConnection (tối đa db.pool.idle cái, bỏ nếu nằm quá POOL_VALIDATE_MS mà không hợp lệ)
+    private static final int POOL_IDLE_MAX = ServerConfig.getInt("db.pool.idle", 8);
+    private static final long POOL_VALIDATE_MS = 30_000;
+    private static final BlockingDeque<Pooled> idle = new LinkedBlockingDeque<>();
+
+    private static final class Pooled {
+        final Connection real;
+        long releasedAt;
+
+        Pooled(Connection real) {
+            this.real = real;
+        }
+    }
+
+    /**
+     * Mượn một kết nối riêng cho một request ngắn (UPLOAD_FILE...) để các request song song không xếp hàng trên
+     * kết nối chung. close() trả kết nối về pool thay vì đóng (dùng try-with-resources như kết nối thường).
+     */
+    public static Connection borrowConnection() throws SQLException {
+        Pooled p;
+        while ((p = idle.pollFirst()) != null) {
+            boolean stale = System.currentTimeMillis() - p.releasedAt > POOL_VALIDATE_MS;
+            if (!p.real.isClosed() && (!stale || p.real.isValid(2))) break;
+            closeQuietly(p.real);
+        }
+        if (p == null) p = new Pooled(openConnection());
+        return wrap(p);
+    }
+
+    private static Connection wrap(Pooled p) {
+        boolean[] released = {false};
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                            if (!released[0]) {
+                                released[0] = true;
+                                release(p);
+                            }
+                            return null;
+                        case "isClosed":
+                            if (released[0]) return true;
+                            break;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            if (released[0]) throw new SQLException("Kết nối đã trả về pool");
+                    }
+                    try {
+                        return method.invoke(p.real, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    // Kết nối còn transaction dở / đã hỏng thì đóng luôn, không trả về pool
+    private static void release(Pooled p) {
+        try {
+            if (p.real.isClosed()) return;
+            if (!p.real.getAutoCommit()) {
+                p.real.rollback();
+                p.real.setAutoCommit(true);
+            }
+            p.releasedAt = System.currentTimeMillis();
+            if (idle.size() < POOL_IDLE_MAX) {
+                idle.offerFirst(p);
+                return;
+            }
+        } catch (SQLException e) {
+            // rơi xuống đóng
+        }
+        closeQuietly(p.real);
+    }
+
+    private static void closeQuietly(Connection c) {
+        try {
+            c.close();
+        } catch (SQLException ignore) {
+        }
+    }
+
     // Đóng kết nối (nếu cần)
     public static void closeConnection() {
         try {
@@ -55,7 +157,7 @@ public class DatabaseManager {
 
     public List<String> getFilesInFolder(int folderId) throws SQLException {
         List<String> files = new ArrayList<>();
-        String sql = "SELECT FileName FROM Files WHERE FolderID = ?";
+        String sql = "SELECT FileName FROM Files WHERE FolderID = ? AND DeletedAt IS NULL";
         try (PreparedStatement stmt = getConnection().prepareStatement(sql)) {
             stmt.setInt(1, folderId);
             try (ResultSet rs = stmt.executeQuery()) {
@@ -0,0 +1,141 @@
+package com.pbl4.syncproject.server.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bảng FileVersions: các phiên bản cũ của file (xem VersionService).
+ */
+public class FileVersionDAO {
+
+    public static final String PENDING = "PENDING";
+    public static final String FULL = "FULL";
+    public static final String DELTA = "DELTA";
+
+    private final Connection dbConnection;
+
+    public FileVersionDAO(Connection dbConnection) {
+        this.dbConnection = dbConnection;
+    }
+
+    public static final class Version {
+        public final int fileId;
+        public final int versionNo;
+        public final long size;
+        public final String hash;
+        public final long lastModifiedMs;
+        public final long createdAtMs;
+        public final String kind;
+        public final Integer baseVersionNo;
+        public final long storedSize;
+
+        Version(int fileId, int versionNo, long size, String hash, long lastModifiedMs, long createdAtMs,
+                String kind, Integer baseVersionNo, long storedSize) {
+            this.fileId = fileId;
+            this.versionNo = versionNo;
+            this.size = size;
+            this.hash = hash;
+            this.lastModifiedMs = lastModifiedMs;
+            this.createdAtMs = createdAtMs;
+            this.kind = kind;
+            this.baseVersionNo = baseVersionNo;
+            this.storedSize = storedSize;
+        }
+
+        public Version withEncoding(String kind, Integer baseVersionNo, long storedSize) {
+            return new Version(fileId, versionNo, size, hash, lastModifiedMs, createdAtMs, kind, baseVersionNo, storedSize);
+        }
+    }
+
+    // Thêm phiên bản vừa bị thay (PENDING); bỏ qua nếu đã có (hai upload chạy đồng thời)
+    public boolean insertPending(int fileId, int versionNo, long size, String hash, long lastModifiedMs) throws SQLException {
+        String sql = "INSERT IGNORE INTO FileVersions (FileID, VersionNo, FileSize, FileHash, LastModified, Kind, StoredSize) " +
+                "VALUES (?,?,?,?,?,'PENDING',?)";
+        try (PreparedStatement ps = dbConnection.prepareStatement(sql)) {
+            ps.setInt(1, fileId);
+            ps.setInt(2, versionNo);
+            ps.setLong(3, size);
+            ps.setString(4, hash);
+            ps.setTimestamp(5, new Timestamp(lastModifiedMs));
+            ps.setLong(6, size);
+            return ps.executeUpdate() == 1;
+        }
+    }
+
+    // Các phiên bản của file, mới nhất trước
+    public List<Version> listVersions(int fileId) throws SQLException {
+        String sql = "SELECT * FROM FileVersions WHERE FileID = ? ORDER BY VersionNo DESC";
+        try (PreparedStatement ps = dbConnection.prepareStatement(sql)) {
+            ps.setInt(1, fileId);
+            try (ResultSet rs = ps.executeQuery()) {
+                List<Version> list = new ArrayList<>();
+                while (rs.next()) {
+                    Timestamp modified = rs.getTimestamp("LastModified");
+                    Timestamp created = rs.getTimestamp("CreatedAt");
+                    list.add(new Version(
+                            rs.getInt("FileID"),
+                            rs.getInt("VersionNo"),
+                            rs.getLong("FileSize"),
+                            rs.getString("FileHash"),
+                            modified != null ? modified.getTime() : 0L,
+                            created != null ? created.getTime() : 0L,
+                            rs.getString("Kind"),
+                            (Integer) rs.getObject("BaseVersionNo"),
+                            rs.getLong("StoredSize")
+                    ));
+                }
+                return list;
+            }
+        }
+    }
+
+    // Ghi lại cách lưu mới của một phiên bản (sau khi nén / rebase)
+    public void updateEncoding(int fileId, int versionNo, String kind, Integer baseVersionNo, long storedSize)
+            throws SQLException {
+        String sql = "UPDATE FileVersions SET Kind = ?, BaseVersionNo = ?, StoredSize = ? WHERE FileID = ? AND VersionNo = ?";
+        try (PreparedStatement ps = dbConnection.prepareStatement(sql)) {
+            ps.setString(1, kind);
+            if (baseVersionNo != null) ps.setInt(2, baseVersionNo); else ps.setNull(2, java.sql.Types.INTEGER);
+            ps.setLong(3, storedSize);
+            ps.setInt(4, fileId);
+            ps.setInt(5, versionNo);
+            ps.executeUpdate();
+        }
+    }
+
+    public void deleteVersion(int fileId, int versionNo) throws SQLException {
+        try (PreparedStatement ps = dbConnection.prepareStatement(
+                "DELETE FROM FileVersions WHERE FileID = ? AND VersionNo = ?")) {
+            ps.setInt(1, fileId);
+            ps.setInt(2, versionNo);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Các file (FileID > afterFileId) cần VersionCompactor xử lý: có phiên bản PENDING,
+     * vượt số lượng giữ lại hoặc có phiên bản quá hạn.
+     */
+    public List<Integer> filesNeedingWork(int afterFileId, int maxCount, Timestamp expiredBefore, int limit)
+            throws SQLException {
+        String sql = "SELECT FileID FROM FileVersions WHERE FileID > ? GROUP BY FileID " +
+                "HAVING SUM(Kind = 'PENDING') > 0 OR COUNT(*) > ? OR MIN(CreatedAt) < ? " +
+                "ORDER BY FileID LIMIT ?";
+        try (PreparedStatement ps = dbConnection.prepareStatement(sql)) {
+            ps.setInt(1, afterFileId);
+            ps.setInt(2, maxCount);
+            ps.setTimestamp(3, expiredBefore);
+            ps.setInt(4, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                List<Integer> ids = new ArrayList<>();
+                while (rs.next()) ids.add(rs.getInt(1));
+                return ids;
+            }
+        }
+    }
+}
@@ -6,6 +6,8 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
 import java.util.List;
 import java.util.ArrayList;
 
@@ -17,7 +19,7 @@ public class FilesDAO {
     }
 
     public List<Files> getFilesInFolder(int folderId) throws SQLException {
-        String sql = "SELECT * FROM Files WHERE FolderID = ?";
+        String sql = "SELECT * FROM Files WHERE FolderID = ? AND DeletedAt IS NULL";
         try (PreparedStatement stm = dbConnection.prepareStatement(sql)) {
             stm.setInt(1, folderId);
             try (ResultSet rs = stm.executeQuery()) {
@@ -39,4 +41,328 @@ public class FilesDAO {
             }
         }
     }
+
+    // Một trang file của folder theo FileID tăng dần (FileID > afterFileId), để duyệt folder lớn với bộ nhớ cố định
+    public List<Files> getFilesPage(int folderId, int afterFileId, int limit) throws SQLException {
+        String sql = "SELECT * FROM Files WHERE FolderID = ? AND FileID > ? AND DeletedAt IS NULL ORDER BY FileID LIMIT ?";
+        try (PreparedStatement stm = dbConnection.prepareStatement(sql)) {
+            stm.setInt(1, folderId);
+            stm.setInt(2, afterFileId);
+            stm.setInt(3, limit);
+            try (ResultSet rs = stm.executeQuery()) {
+                List<Files> list = new ArrayList<>();
+                while (rs.next()) {
+                    java.sql.Timestamp tsLastModified = rs.getTimestamp("LastModified");
+                    list.add(new Files(
+                            rs.getInt("FileID"),
+                            rs.getInt("FolderID"),
+                            rs.getString("FileName"),
+                            rs.getLong("FileSize"),
+                            rs.getString("FileHash"),
+                            rs.getTimestamp("CreatedAt").toLocalDateTime(),
+                            tsLastModified != null ? tsLastModified.toLocalDateTime() : null
+                    ));
+                }
+                return list;
+            }
+        }
+    }
+
+    // Lấy một file theo ID (null nếu không tồn tại)
+    public Files getFileById(int fileId) throws SQLException {
+        String sql = "SELECT * FROM Files WHERE FileID = ? AND DeletedAt IS NULL";
+        try (PreparedStatement stm = dbConnection.prepareStatement(sql)) {
+            stm.setInt(1, fileId);
+            try (ResultSet rs = stm.executeQuery()) {
+                if (!rs.next()) return null;
+                java.sql.Timestamp tsLastModified = rs.getTimestamp("LastModified");
+                return new Files(
+                        rs.getInt("FileID"),
+                        rs.getInt("FolderID"),
+                        rs.getString("FileName"),
+                        rs.getLong("FileSize"),
+                        rs.getString("FileHash"),
+                        rs.getTimestamp("CreatedAt").toLocalDateTime(),
+                        tsLastModified != null ? tsLastModified.toLocalDateTime() : null
+                );
+            }
+        }
+    }
+
+    // Lấy FolderID chứa file (null nếu file không tồn tại)
+    public Integer getFolderIdOfFile(int fileId) throws SQLException {
+        String sql = "SELECT FolderID FROM Files WHERE FileID = ?";
+        try (PreparedStatement stm = dbConnection.prepareStatement(sql)) {
+            stm.setInt(1, fileId);
+            try (ResultSet rs = stm.executeQuery()) {
+                return rs.next() ? rs.getInt("FolderID") : null;
+            }
+        }
+    }
+
+    // Các file có cùng nội dung (FileHash + FileSize), dùng idx_files_hash
+    public List<Files> findByHash(String fileHash, long fileSize, int limit) throws SQLException {
+        String sql = "SELECT * FROM Files WHERE FileHash = ? AND FileSize = ? AND DeletedAt IS NULL LIMIT ?";
+        try (PreparedStatement stm = dbConnection.prepareStatement(sql)) {
+            stm.setString(1, fileHash);
+            stm.setLong(2, fileSize);
+            stm.setInt(3, limit);
+            try (ResultSet rs = stm.executeQuery()) {
+                List<Files> list = new ArrayList<>();
+                while (rs.next()) {
+                    java.sql.Timestamp tsLastModified = rs.getTimestamp("LastModified");
+                    list.add(new Files(
+                            rs.getInt("FileID"),
+                            rs.getInt("FolderID"),
+                            rs.getString("FileName"),
+                            rs.getLong("FileSize"),
+                            rs.getString("FileHash"),
+                            rs.getTimestamp("CreatedAt").toLocalDateTime(),
+                            tsLastModified != null ? tsLastModified.toLocalDateTime() : null
+                    ));
+                }
+                return list;
+            }
+        }
+    }
+
+    // Thêm hoặc ghi đè metadata theo UNIQUE(FolderID, FileName) (file trùng tên đang trong thùng rác được dùng lại); trả về FileID (LAST_INSERT_ID(FileID) để lấy id cả khi ghi đè)
+    public int upsertFile(int folderId, String fileName, long fileSize, String fileHash, long lastModifiedMs) throws SQLException {
+        try (PreparedStatement ps = dbConnection.prepareStatement(
+                "INSERT INTO Files (FolderID, FileName, FileSize, FileHash, LastModified) " +
+                        "VALUES (?,?,?,?,?) " +
+                        "ON DUPLICATE KEY UPDATE FileID=LAST_INSERT_ID(FileID), " +
+                        // VersionNo phải đứng trước FileHash: MySQL gán lần lượt từ trái sang phải
+                        "VersionNo=IF(FileHash <=> VALUES(FileHash), VersionNo, VersionNo + 1), " +
+                        "FileSize=VALUES(FileSize), FileHash=VALUES(FileHash), LastModified=VALUES(LastModified), " +
+                        "DeletedAt=NULL, DeletedBy=NULL, Tier=0, ColdSize=NULL",
+                Statement.RETURN_GENERATED_KEYS
+        )) {
+            ps.setInt(1, folderId);
+            ps.setString(2, fileName);
+            ps.setLong(3, fileSize);
+            ps.setString(4, fileHash);
+            ps.setTimestamp(5, new Timestamp(lastModifiedMs));
+            ps.executeUpdate();
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                if (!keys.next()) throw new SQLException("Không lấy được FileID");
+                return keys.getInt(1);
+            }
+        }
+    }
+
+    /** Một dòng cho upsertFiles */
+    public static final class NewContent {
+        public final int folderId;
+        public final String fileName;
+        public final long size;
+        public final String hash;
+        public final long lastModifiedMs;
+
+        public NewContent(int folderId, String fileName, long size, String hash, long lastModifiedMs) {
+            this.folderId = folderId;
+            this.fileName = fileName;
+            this.size = size;
+            this.hash = hash;
+            this.lastModifiedMs = lastModifiedMs;
+        }
+    }
+
+    /**
+     * Như upsertFile cho nhiều file trong một câu lệnh (một round trip). Mỗi (FolderID, FileName) chỉ được
+     * xuất hiện một lần. FileID lấy lại bằng getCurrentContents.
+     */
+    public void upsertFiles(List<NewContent> rows) throws SQLException {
+        if (rows.isEmpty()) return;
+        StringBuilder sql = new StringBuilder("INSERT INTO Files (FolderID, FileName, FileSize, FileHash, LastModified) VALUES ");
+        for (int i = 0; i < rows.size(); i++) sql.append(i == 0 ? "(?,?,?,?,?)" : ",(?,?,?,?,?)");
+        sql.append(" ON DUPLICATE KEY UPDATE " +
+                "VersionNo=IF(FileHash <=> VALUES(FileHash), VersionNo, VersionNo + 1), " +
+                "FileSize=VALUES(FileSize), FileHash=VALUES(FileHash), LastModified=VALUES(LastModified), " +
+                "DeletedAt=NULL, DeletedBy=NULL, Tier=0, ColdSize=NULL");
+        try (PreparedStatement ps = dbConnection.prepareStatement(sql.toString())) {
+            int k = 1;
+            for (NewContent r : rows) {
+                ps.setInt(k++, r.folderId);
+                ps.setString(k++, r.fileName);
+                ps.setLong(k++, r.size);
+                ps.setString(k++, r.hash);
+                ps.setTimestamp(k++, new Timestamp(r.lastModifiedMs));
+            }
+            ps.executeUpdate();
+        }
+    }
+
+    // ---------- Phiên bản ----------
+
+    // Nội dung hiện tại của file (kể cả file trong thùng rác), null nếu không có
+    public CurrentContent getCurrentContent(int fileId) throws SQLException {
+        return queryCurrent("SELECT FileID, FolderID, FileName, FileSize, FileHash, VersionNo, LastModified, CreatedAt " +
+                "FROM Files WHERE FileID = ?", fileId, null);
+    }
+
+    public CurrentContent getCurrentContent(int folderId, String fileName) throws SQLException {
+        return queryCurrent("SELECT FileID, FolderID, FileName, FileSize, FileHash, VersionNo, LastModified, CreatedAt " +
+                "FROM Files WHERE FolderID = ? AND FileName = ?", folderId, fileName);
+    }
+
+    /** Nội dung hiện tại của nhiều file theo (FolderID, FileName), một truy vấn; file chưa có thì không có trong kết quả */
+    public List<CurrentContent> getCurrentContents(List<NewContent> keys) throws SQLException {
+        List<CurrentContent> out = new ArrayList<>();
+        if (keys.isEmpty()) return out;
+        StringBuilder sql = new StringBuilder("SELECT FileID, FolderID, FileName, FileSize, FileHash, VersionNo, LastModified, CreatedAt " +
+                "FROM Files WHERE ");
+        for (int i = 0; i < keys.size(); i++) sql.append(i == 0 ? "(FolderID = ? AND FileName = ?)" : " OR (FolderID = ? AND FileName = ?)");
+        try (PreparedStatement ps = dbConnection.prepareStatement(sql.toString())) {
+            int k = 1;
+            for (NewContent key : keys) {
+                ps.setInt(k++, key.folderId);
+                ps.setString(k++, key.fileName);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) out.add(currentOf(rs));
+            }
+        }
+        return out;
+    }
+
+    private CurrentContent queryCurrent(String sql, int id, String fileName) throws SQLException {
+        try (PreparedStatement stm = dbConnection.prepareStatement(sql)) {
+            stm.setInt(1, id);
+            if (fileName != null) stm.setString(2, fileName);
+            try (ResultSet rs = stm.executeQuery()) {
+                return rs.next() ? currentOf(rs) : null;
+            }
+        }
+    }
+
+    private static CurrentContent currentOf(ResultSet rs) throws SQLException {
+        Timestamp modified = rs.getTimestamp("LastModified");
+        if (modified == null) modified = rs.getTimestamp("CreatedAt");
+        return new CurrentContent(rs.getInt("FileID"), rs.getInt("FolderID"), rs.getString("FileName"),
+                rs.getLong("FileSize"), rs.getString("FileHash"), rs.getInt("VersionNo"),
+                modified != null ? modified.getTime() : 0L);
+    }
+
+    public static final class CurrentContent {
+        public final int fileId;
+        public final int folderId;
+        public final String fileName;
+        public final long size;
+        public final String hash;
+        public final int versionNo;
+        public final long lastModifiedMs;
+
+        CurrentContent(int fileId, int folderId, String fileName, long size, String hash, int versionNo,
+                       long lastModifiedMs) {
+            this.fileId = fileId;
+            this.folderId = folderId;
+            this.fileName = fileName;
+            this.size = size;
+            this.hash = hash;
+            this.versionNo = versionNo;
+            this.lastModifiedMs = lastModifiedMs;
+        }
+    }
+
+    // Nội dung vừa được thay ngoài upsertFile (replica): bản ở tầng lạnh không còn đúng
+    public void resetTier(int fileId) throws SQLException {
+        String sql = "UPDATE Files SET Tier = 0, ColdSize = NULL, LastModified = LastModified WHERE FileID = ? AND Tier <> 0";
+        try (PreparedStatement stm = dbConnection.prepareStatement(sql)) {
+            stm.setInt(1, fileId);
+            stm.executeUpdate();
+        }
+    }
+
+    // ---------- Thùng rác ----------
+
+    // FileID của file (chưa bị xóa) theo tên trong folder, null nếu không có
+    public Integer findFileId(int folderId, String fileName) throws SQLException {
+        String sql = "SELECT FileID FROM Files WHERE FolderID = ? AND FileName = ? AND DeletedAt IS NULL";
+        try (PreparedStatement stm = dbConnection.prepareStatement(sql)) {
+            stm.setInt(1, folderId);
+            stm.setString(2, fileName);
+            try (ResultSet rs = stm.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : null;
+            }
+        }
+    }
+
+    // Chuyển file vào thùng rác: chỉ đổi metadata (giữ nguyên LastModified vì cột có ON UPDATE CURRENT_TIMESTAMP)
+    public boolean moveToTrash(int fileId, int deletedBy) throws SQLException {
+        String sql = "UPDATE Files SET DeletedAt = CURRENT_TIMESTAMP, DeletedBy = ?, LastModified = LastModified " +
+                "WHERE FileID = ? AND DeletedAt IS NULL";
+        try (PreparedStatement stm = dbConnection.prepareStatement(sql)) {
+            stm.setInt(1, deletedBy);
+            stm.setInt(2, fileId);
+            return stm.executeUpdate() == 1;
+        }
+    }
+
+    public boolean restoreFromTrash(int fileId) throws SQLException {
+        String sql = "UPDATE Files SET DeletedAt = NULL, DeletedBy = NULL, LastModified = LastModified " +
+                "WHERE FileID = ? AND DeletedAt IS NOT NULL";
+        try (PreparedStatement stm = dbConnection.prepareStatement(sql)) {
+            stm.setInt(1, fileId);
+            return stm.executeUpdate() == 1;
+        }
+    }
+
+    // File trong thùng rác theo ID (null nếu không có hoặc chưa bị xóa)
+    public TrashedFile getTrashedFile(int fileId) throws SQLException {
+        String sql = "SELECT FileID, FolderID, FileName, FileSize, LastModified, CreatedAt, DeletedAt, DeletedBy " +
+                "FROM Files WHERE FileID = ? AND DeletedAt IS NOT NULL";
+        try (PreparedStatement stm = dbConnection.prepareStatement(sql)) {
+            stm.setInt(1, fileId);
+            try (ResultSet rs = stm.executeQuery()) {
+                return rs.next() ? readTrashed(rs) : null;
+            }
+        }
+    }
+
+    // Các file trong thùng rác (của một folder hoặc tất cả nếu folderId null), mới xóa trước
+    public List<TrashedFile> listTrash(Integer folderId, int limit) throws SQLException {
+        String sql = "SELECT FileID, FolderID, FileName, FileSize, LastModified, CreatedAt, DeletedAt, DeletedBy " +
+                "FROM Files WHERE DeletedAt IS NOT NULL" + (folderId != null ? " AND FolderID = ?" : "") +
+                " ORDER BY DeletedAt DESC LIMIT ?";
+        try (PreparedStatement stm = dbConnection.prepareStatement(sql)) {
+            int i = 1;
+            if (folderId != null) stm.setInt(i++, folderId);
+            stm.setInt(i, limit);
+            try (ResultSet rs = stm.executeQuery()) {
+                List<TrashedFile> list = new ArrayList<>();
+                while (rs.next()) list.add(readTrashed(rs));
+                return list;
+            }
+        }
+    }
+
+    private static TrashedFile readTrashed(ResultSet rs) throws SQLException {
+        Timestamp modified = rs.getTimestamp("LastModified");
+        if (modified == null) modified = rs.getTimestamp("CreatedAt");
+        return new TrashedFile(rs.getInt("FileID"), rs.getInt("FolderID"), rs.getString("FileName"),
+                rs.getLong("FileSize"), modified != null ? modified.getTime() : 0L,
+                rs.getTimestamp("DeletedAt").getTime(), (Integer) rs.getObject("DeletedBy"));
+    }
+
+    public static final class TrashedFile {
+        public final int fileId;
+        public final int folderId;
+        public final String fileName;
+        public final long size;
+        public final long lastModifiedMs;
+        public final long deletedAtMs;
+        public final Integer deletedBy;
+
+        TrashedFile(int fileId, int folderId, String fileName, long size, long lastModifiedMs,
+                    long deletedAtMs, Integer deletedBy) {
+            this.fileId = fileId;
+            this.folderId = folderId;
+            this.fileName = fileName;
+            this.size = size;
+            this.lastModifiedMs = lastModifiedMs;
+            this.deletedAtMs = deletedAtMs;
+            this.deletedBy = deletedBy;
+        }
+    }
 }
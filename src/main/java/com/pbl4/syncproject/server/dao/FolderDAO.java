@@ -1,13 +1,25 @@
 package com.pbl4.syncproject.server.dao;
 
 import com.pbl4.syncproject.common.model.Folders;
+import com.pbl4.syncproject.server.service.NamespaceIndex;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+/**
+ * Truy vấn bảng Folders / FolderClosure.
+ * Các method chỉ đọc dùng NamespaceIndex (trong bộ nhớ) khi index đã được nạp; ghi luôn đi thẳng vào DB.
+ */
 public class FolderDAO {
     private final Connection dbConnection;
+    private final NamespaceIndex index = NamespaceIndex.getInstance();
 
     public FolderDAO(Connection dbConnection) {
         this.dbConnection = dbConnection;
@@ -15,6 +27,7 @@ public class FolderDAO {
 
     // Lấy tất cả folder con của folder parentId
     public List<Folders> getChildren(int parentId) throws SQLException {
+        if (index.isLoaded()) return index.getChildFolders(parentId);
         String sql = "SELECT * FROM Folders WHERE ParentFolderID = ?";
         List<Folders> list = new ArrayList<>();
 
@@ -38,6 +51,7 @@ public class FolderDAO {
 
     // Lấy tất cả folder root (ParentFolderID IS NULL) - cho lazy loading
     public List<Folders> getRootFolders() throws SQLException {
+        if (index.isLoaded()) return index.getChildFolders(null);
         String sql = "SELECT * FROM Folders WHERE ParentFolderID IS NULL";
         List<Folders> list = new ArrayList<>();
 
@@ -60,6 +74,7 @@ public class FolderDAO {
 
     // Kiểm tra xem một thư mục có con hay không - cho lazy loading
     public boolean hasChildren(int folderId) throws SQLException {
+        if (index.isLoaded()) return !index.getIdsWithChildren(List.of(folderId)).isEmpty();
         String sql = "SELECT 1 FROM Folders WHERE ParentFolderID = ? LIMIT 1";
         try (PreparedStatement stm = dbConnection.prepareStatement(sql)) {
             stm.setInt(1, folderId);
@@ -69,6 +84,88 @@ public class FolderDAO {
         }
     }
 
+    // Trong các folder con của parentId (null: các folder root), những folder nào có con - 1 query cho cả danh sách
+    public Set<Integer> getChildIdsWithChildren(Integer parentId) throws SQLException {
+        if (index.isLoaded()) return index.getChildIdsWithChildren(parentId);
+        String sql = "SELECT DISTINCT c.ParentFolderID FROM Folders p JOIN Folders c ON c.ParentFolderID = p.FolderID WHERE " +
+                (parentId == null ? "p.ParentFolderID IS NULL" : "p.ParentFolderID = ?");
+        Set<Integer> ids = new HashSet<>();
+        try (PreparedStatement stm = dbConnection.prepareStatement(sql)) {
+            if (parentId != null) stm.setInt(1, parentId);
+            try (ResultSet rs = stm.executeQuery()) {
+                while (rs.next()) ids.add(rs.getInt(1));
+            }
+        }
+        return ids;
+    }
+
+    // Trong danh sách ids, những folder nào có con - 1 query
+    public Set<Integer> getIdsWithChildren(Collection<Integer> folderIds) throws SQLException {
+        if (index.isLoaded()) return index.getIdsWithChildren(folderIds);
+        Set<Integer> ids = new HashSet<>();
+        if (folderIds.isEmpty()) return ids;
+        String sql = "SELECT DISTINCT ParentFolderID FROM Folders WHERE ParentFolderID IN (" + placeholders(folderIds.size()) + ")";
+        try (PreparedStatement stm = dbConnection.prepareStatement(sql)) {
+            int idx = 1;
+            for (Integer id : folderIds) stm.setInt(idx++, id);
+            try (ResultSet rs = stm.executeQuery()) {
+                while (rs.next()) ids.add(rs.getInt(1));
+            }
+        }
+        return ids;
+    }
+
+    // Toàn bộ bảng Folders (cho snapshot cả cây)
+    public List<Folders> getAllFolders() throws SQLException {
+        if (index.isLoaded()) return index.getAllFolders();
+        return queryFolders("SELECT * FROM Folders", Collections.emptyList());
+    }
+
+    // Đọc lại các folder theo id (folder đã bị xóa sẽ không có trong kết quả)
+    public List<Folders> getFoldersByIds(Collection<Integer> folderIds) throws SQLException {
+        if (index.isLoaded()) return index.getFoldersByIds(folderIds);
+        if (folderIds.isEmpty()) return new ArrayList<>();
+        return queryFolders("SELECT * FROM Folders WHERE FolderID IN (" + placeholders(folderIds.size()) + ")",
+                new ArrayList<>(folderIds));
+    }
+
+    private List<Folders> queryFolders(String sql, List<Integer> params) throws SQLException {
+        List<Folders> list = new ArrayList<>();
+        try (PreparedStatement stm = dbConnection.prepareStatement(sql)) {
+            for (int i = 0; i < params.size(); i++) stm.setInt(i + 1, params.get(i));
+            try (ResultSet rs = stm.executeQuery()) {
+                while (rs.next()) {
+                    Timestamp tsLastModified = rs.getTimestamp("LastModified");
+                    list.add(new Folders(
+                            rs.getInt("FolderID"),
+                            rs.getString("FolderName"),
+                            (Integer) rs.getObject("ParentFolderID"),
+                            rs.getTimestamp("CreatedAt").toLocalDateTime(),
+                            tsLastModified != null ? tsLastModified.toLocalDateTime() : null
+                    ));
+                }
+            }
+        }
+        return list;
+    }
+
+    private static String placeholders(int n) {
+        return String.join(",", Collections.nCopies(n, "?"));
+    }
+
+    // Lấy ParentFolderID của một folder (null nếu là root)
+    public Integer getParentId(int folderId) throws SQLException {
+        if (index.isLoaded()) return index.getParentId(folderId);
+        String sql = "SELECT ParentFolderID FROM Folders WHERE FolderID = ?";
+        try (PreparedStatement stm = dbConnection.prepareStatement(sql)) {
+            stm.setInt(1, folderId);
+            try (ResultSet rs = stm.executeQuery()) {
+                if (!rs.next()) throw new SQLException("Folder không tồn tại: id=" + folderId);
+                return (Integer) rs.getObject("ParentFolderID");
+            }
+        }
+    }
+
     // Lấy folder root (ParentFolderID IS NULL) - giữ để tương thích ngược
     public Folders getRootFolder() throws SQLException {
         String sql = "SELECT * FROM Folders WHERE ParentFolderID IS NULL";
@@ -89,4 +186,286 @@ public class FolderDAO {
         }
         return null;
     }
+
+    // ================= Closure table (FolderClosure) =================
+
+    /**
+     * Tạo folder mới và các dòng closure của nó trong cùng một transaction.
+     * @return FolderID mới
+     */
+    public int insertFolder(Integer parentId, String folderName) throws SQLException {
+        return inTransaction(() -> {
+            int newId;
+            try (PreparedStatement ins = dbConnection.prepareStatement(
+                    "INSERT INTO Folders(ParentFolderID, FolderName, LastModified, CreatedAt) VALUES(?, ?, NOW(), NOW())",
+                    Statement.RETURN_GENERATED_KEYS)) {
+                if (parentId == null) ins.setNull(1, Types.INTEGER); else ins.setInt(1, parentId);
+                ins.setString(2, folderName);
+                ins.executeUpdate();
+                try (ResultSet keys = ins.getGeneratedKeys()) {
+                    if (!keys.next()) throw new SQLException("Không lấy được FolderID mới");
+                    newId = keys.getInt(1);
+                }
+            }
+
+            // Chính nó (Depth 0) + mọi tổ tiên của parent (Depth + 1)
+            try (PreparedStatement cl = dbConnection.prepareStatement(
+                    "INSERT INTO FolderClosure (AncestorID, DescendantID, Depth) " +
+                            "SELECT AncestorID, ?, Depth + 1 FROM FolderClosure WHERE DescendantID = ? " +
+                            "UNION ALL SELECT ?, ?, 0")) {
+                cl.setInt(1, newId);
+                if (parentId == null) cl.setNull(2, Types.INTEGER); else cl.setInt(2, parentId);
+                cl.setInt(3, newId);
+                cl.setInt(4, newId);
+                cl.executeUpdate();
+            }
+            return newId;
+        });
+    }
+
+    /**
+     * Replica: tạo folder với đúng FolderID / thời gian của primary (ảnh dòng trong ReplicationLog) cùng các dòng
+     * closure, như insertFolder.
+     */
+    public void insertReplicatedFolder(int folderId, Integer parentId, String folderName,
+                                       Timestamp lastModified, Timestamp createdAt) throws SQLException {
+        inTransaction(() -> {
+            try (PreparedStatement ins = dbConnection.prepareStatement(
+                    "INSERT INTO Folders(FolderID, ParentFolderID, FolderName, LastModified, CreatedAt) VALUES(?, ?, ?, ?, ?)")) {
+                ins.setInt(1, folderId);
+                if (parentId == null) ins.setNull(2, Types.INTEGER); else ins.setInt(2, parentId);
+                ins.setString(3, folderName);
+                ins.setTimestamp(4, lastModified);
+                ins.setTimestamp(5, createdAt != null ? createdAt : lastModified);
+                ins.executeUpdate();
+            }
+            try (PreparedStatement cl = dbConnection.prepareStatement(
+                    "INSERT INTO FolderClosure (AncestorID, DescendantID, Depth) " +
+                            "SELECT AncestorID, ?, Depth + 1 FROM FolderClosure WHERE DescendantID = ? " +
+                            "UNION ALL SELECT ?, ?, 0")) {
+                cl.setInt(1, folderId);
+                if (parentId == null) cl.setNull(2, Types.INTEGER); else cl.setInt(2, parentId);
+                cl.setInt(3, folderId);
+                cl.setInt(4, folderId);
+                cl.executeUpdate();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Dựng lại toàn bộ FolderClosure từ ParentFolderID (như phần backfill của migrations/001_folder_closure.sql).
+     * Replica gọi sau khi nạp snapshot Folders theo thứ tự khóa, lúc folder con có thể đến trước cha.
+     */
+    public void rebuildClosure() throws SQLException {
+        inTransaction(() -> {
+            try (Statement st = dbConnection.createStatement()) {
+                st.executeUpdate("DELETE FROM FolderClosure");
+                st.executeUpdate(
+                        "INSERT INTO FolderClosure (AncestorID, DescendantID, Depth) " +
+                                "WITH RECURSIVE paths (AncestorID, DescendantID, Depth) AS (" +
+                                "SELECT FolderID, FolderID, 0 FROM Folders " +
+                                "UNION ALL SELECT p.AncestorID, f.FolderID, p.Depth + 1 " +
+                                "FROM paths p JOIN Folders f ON f.ParentFolderID = p.DescendantID) " +
+                                "SELECT AncestorID, DescendantID, Depth FROM paths");
+            }
+            return null;
+        });
+    }
+
+    // Trong parent đã có folder cùng tên chưa (parentId = null: cấp root)
+    public boolean existsInParent(Integer parentId, String folderName) throws SQLException {
+        if (index.isLoaded()) return index.folderExists(parentId, folderName);
+        String sql = "SELECT 1 FROM Folders WHERE " +
+                (parentId == null ? "ParentFolderID IS NULL" : "ParentFolderID = ?") + " AND FolderName = ? LIMIT 1";
+        try (PreparedStatement stm = dbConnection.prepareStatement(sql)) {
+            int idx = 1;
+            if (parentId != null) stm.setInt(idx++, parentId);
+            stm.setString(idx, folderName);
+            try (ResultSet rs = stm.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    // FolderID của folder con theo tên, null nếu không có
+    public Integer findChildId(int parentId, String folderName) throws SQLException {
+        try (PreparedStatement stm = dbConnection.prepareStatement(
+                "SELECT FolderID FROM Folders WHERE ParentFolderID = ? AND FolderName = ? LIMIT 1")) {
+            stm.setInt(1, parentId);
+            stm.setString(2, folderName);
+            try (ResultSet rs = stm.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : null;
+            }
+        }
+    }
+
+    // Đổi tên folder: closure không đổi vì chỉ lưu ID
+    public void renameFolder(int folderId, String newName) throws SQLException {
+        try (PreparedStatement stm = dbConnection.prepareStatement(
+                "UPDATE Folders SET FolderName = ?, LastModified = NOW() WHERE FolderID = ?")) {
+            stm.setString(1, newName);
+            stm.setInt(2, folderId);
+            if (stm.executeUpdate() == 0) throw new SQLException("Folder không tồn tại: id=" + folderId);
+        }
+    }
+
+    /**
+     * Chuyển folder (cùng cả cây con) sang parent mới, cập nhật ParentFolderID, closure và thống kê dồn của các
+     * tổ tiên cũ / mới (FolderStats) trong một transaction.
+     */
+    public void moveFolder(int folderId, int newParentId) throws SQLException {
+        if (folderId == newParentId || isDescendant(newParentId, folderId)) {
+            throw new SQLException("Không thể chuyển folder vào chính nó hoặc cây con của nó");
+        }
+        inTransaction(() -> {
+            try (PreparedStatement up = dbConnection.prepareStatement(
+                    "UPDATE Folders SET ParentFolderID = ?, LastModified = NOW() WHERE FolderID = ?")) {
+                up.setInt(1, newParentId);
+                up.setInt(2, folderId);
+                if (up.executeUpdate() == 0) throw new SQLException("Folder không tồn tại: id=" + folderId);
+            }
+
+            // 0) Tổ tiên cũ mất tổng của cây con (trigger trên Files không thấy việc chuyển folder)
+            FolderStatsDAO stats = new FolderStatsDAO(dbConnection);
+            stats.applySubtreeToAncestors(folderId, -1);
+
+            // 1) Cắt liên kết giữa cây con và các tổ tiên cũ (tổ tiên nằm ngoài cây con)
+            //    (x IS NULL: tổ tiên a.AncestorID không nằm trong cây con của folderId)
+            try (PreparedStatement del = dbConnection.prepareStatement(
+                    "DELETE a FROM FolderClosure a " +
+                            "JOIN FolderClosure d ON a.DescendantID = d.DescendantID " +
+                            "LEFT JOIN FolderClosure x ON x.AncestorID = d.AncestorID AND x.DescendantID = a.AncestorID " +
+                            "WHERE d.AncestorID = ? AND x.AncestorID IS NULL")) {
+                del.setInt(1, folderId);
+                del.executeUpdate();
+            }
+
+            // 2) Nối cây con vào mọi tổ tiên của parent mới
+            try (PreparedStatement ins = dbConnection.prepareStatement(
+                    "INSERT INTO FolderClosure (AncestorID, DescendantID, Depth) " +
+                            "SELECT p.AncestorID, s.DescendantID, p.Depth + s.Depth + 1 " +
+                            "FROM FolderClosure p JOIN FolderClosure s " +
+                            "WHERE p.DescendantID = ? AND s.AncestorID = ?")) {
+                ins.setInt(1, newParentId);
+                ins.setInt(2, folderId);
+                ins.executeUpdate();
+            }
+
+            // 3) Tổ tiên mới nhận tổng của cây con
+            stats.applySubtreeToAncestors(folderId, 1);
+            return null;
+        });
+    }
+
+    // Toàn bộ hậu duệ của folder (không gồm chính nó) - 1 query theo khóa chính
+    public List<Integer> getDescendantIds(int folderId) throws SQLException {
+        String sql = "SELECT DescendantID FROM FolderClosure WHERE AncestorID = ? AND Depth > 0";
+        List<Integer> ids = new ArrayList<>();
+        try (PreparedStatement stm = dbConnection.prepareStatement(sql)) {
+            stm.setInt(1, folderId);
+            try (ResultSet rs = stm.executeQuery()) {
+                while (rs.next()) ids.add(rs.getInt(1));
+            }
+        }
+        return ids;
+    }
+
+    // Cây con của rootId tới độ sâu maxDepth (rootId có Depth 0), sắp theo Depth - 1 query
+    public List<Folders> getSubtree(int rootId, int maxDepth) throws SQLException {
+        if (index.isLoaded()) return index.getSubtree(rootId, maxDepth);
+        String sql = "SELECT f.* FROM FolderClosure c JOIN Folders f ON f.FolderID = c.DescendantID " +
+                "WHERE c.AncestorID = ? AND c.Depth <= ? ORDER BY c.Depth";
+        return queryFolders(sql, List.of(rootId, maxDepth));
+    }
+
+    // Độ sâu của các folder trong ids tính từ rootId (null = từ folder root của mỗi folder); folder không nằm dưới
+    // rootId (hoặc đã bị xóa) không có trong kết quả - 1 query
+    public Map<Integer, Integer> getDepthsBelow(Integer rootId, Collection<Integer> folderIds) throws SQLException {
+        Map<Integer, Integer> depths = new HashMap<>();
+        if (folderIds.isEmpty()) return depths;
+        String in = "DescendantID IN (" + placeholders(folderIds.size()) + ")";
+        String sql = rootId != null
+                ? "SELECT DescendantID, Depth FROM FolderClosure WHERE AncestorID = ? AND " + in
+                : "SELECT DescendantID, MAX(Depth) FROM FolderClosure WHERE " + in + " GROUP BY DescendantID";
+        try (PreparedStatement stm = dbConnection.prepareStatement(sql)) {
+            int idx = 1;
+            if (rootId != null) stm.setInt(idx++, rootId);
+            for (Integer id : folderIds) stm.setInt(idx++, id);
+            try (ResultSet rs = stm.executeQuery()) {
+                while (rs.next()) depths.put(rs.getInt(1), rs.getInt(2));
+            }
+        }
+        return depths;
+    }
+
+    // Chuỗi tổ tiên từ root xuống chính nó (gồm cả chính nó) - 1 query
+    public List<Folders> getAncestors(int folderId) throws SQLException {
+        if (index.isLoaded()) return index.getAncestors(folderId);
+        String sql = "SELECT f.* FROM FolderClosure c JOIN Folders f ON f.FolderID = c.AncestorID " +
+                "WHERE c.DescendantID = ? ORDER BY c.Depth DESC";
+        List<Folders> list = new ArrayList<>();
+        try (PreparedStatement stm = dbConnection.prepareStatement(sql)) {
+            stm.setInt(1, folderId);
+            try (ResultSet rs = stm.executeQuery()) {
+                while (rs.next()) {
+                    Timestamp tsLastModified = rs.getTimestamp("LastModified");
+                    list.add(new Folders(
+                            rs.getInt("FolderID"),
+                            rs.getString("FolderName"),
+                            (Integer) rs.getObject("ParentFolderID"),
+                            rs.getTimestamp("CreatedAt").toLocalDateTime(),
+                            tsLastModified != null ? tsLastModified.toLocalDateTime() : null
+                    ));
+                }
+            }
+        }
+        return list;
+    }
+
+    // Đường dẫn logic dạng "root/documents/2024" - 1 query
+    public String getPath(int folderId) throws SQLException {
+        StringBuilder sb = new StringBuilder();
+        for (Folders f : getAncestors(folderId)) {
+            if (sb.length() > 0) sb.append('/');
+            sb.append(f.getFolderName());
+        }
+        return sb.toString();
+    }
+
+    // folderId có nằm trong cây con của ancestorId không (tính cả chính nó) - 1 lookup theo khóa chính
+    public boolean isDescendant(int folderId, int ancestorId) throws SQLException {
+        String sql = "SELECT 1 FROM FolderClosure WHERE AncestorID = ? AND DescendantID = ?";
+        try (PreparedStatement stm = dbConnection.prepareStatement(sql)) {
+            stm.setInt(1, ancestorId);
+            stm.setInt(2, folderId);
+            try (ResultSet rs = stm.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private interface SqlWork<T> {
+        T run() throws SQLException;
+    }
+
+    // Transaction trên kết nối chung sẽ cuốn theo (hoặc rollback) câu lệnh của các client khác:
+    // người gọi phải dùng DatabaseManager.borrowConnection() / openConnection()
+    private <T> T inTransaction(SqlWork<T> work) throws SQLException {
+        if (DatabaseManager.isSharedConnection(dbConnection)) {
+            throw new SQLException("Thay đổi cây thư mục phải chạy trên kết nối riêng");
+        }
+        boolean oldAutoCommit = dbConnection.getAutoCommit();
+        dbConnection.setAutoCommit(false);
+        try {
+            T result = work.run();
+            dbConnection.commit();
+            return result;
+        } catch (SQLException e) {
+            dbConnection.rollback();
+            throw e;
+        } finally {
+            dbConnection.setAutoCommit(oldAutoCommit);
+        }
+    }
 }
@@ -0,0 +1,183 @@
+package com.pbl4.syncproject.server.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bảng FolderStats: dung lượng / số file / lần sửa mới nhất của cả cây con mỗi folder và hạn mức (QuotaBytes).
+ * Các cột thống kê do trigger trên Files giữ (xem migrations/007_folder_stats.sql); DAO này chỉ đọc, đặt hạn mức
+ * và dời tổng của một cây con khi folder bị chuyển chỗ.
+ */
+public class FolderStatsDAO {
+
+    private final Connection dbConnection;
+
+    public FolderStatsDAO(Connection dbConnection) {
+        this.dbConnection = dbConnection;
+    }
+
+    public static final class Stats {
+        public final int folderId;
+        public final long totalBytes;
+        public final int fileCount;
+        public final long newestModifiedMs; // 0 nếu cây con chưa có file
+        public final Long quotaBytes;       // null: không giới hạn
+
+        Stats(int folderId, long totalBytes, int fileCount, long newestModifiedMs, Long quotaBytes) {
+            this.folderId = folderId;
+            this.totalBytes = totalBytes;
+            this.fileCount = fileCount;
+            this.newestModifiedMs = newestModifiedMs;
+            this.quotaBytes = quotaBytes;
+        }
+    }
+
+    // Thống kê của nhiều folder trong một truy vấn (folder chưa có dòng thì không có trong kết quả)
+    public Map<Integer, Stats> getStats(Collection<Integer> folderIds) throws SQLException {
+        Map<Integer, Stats> out = new HashMap<>();
+        if (folderIds.isEmpty()) return out;
+        StringBuilder in = new StringBuilder();
+        for (int i = 0; i < folderIds.size(); i++) in.append(i == 0 ? "?" : ",?");
+        try (PreparedStatement ps = dbConnection.prepareStatement(
+                "SELECT FolderID, TotalBytes, FileCount, NewestModified, QuotaBytes FROM FolderStats " +
+                        "WHERE FolderID IN (" + in + ")")) {
+            int k = 1;
+            for (int id : folderIds) ps.setInt(k++, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Stats s = statsOf(rs);
+                    out.put(s.folderId, s);
+                }
+            }
+        }
+        return out;
+    }
+
+    public Stats getStats(int folderId) throws SQLException {
+        try (PreparedStatement ps = dbConnection.prepareStatement(
+                "SELECT FolderID, TotalBytes, FileCount, NewestModified, QuotaBytes FROM FolderStats WHERE FolderID = ?")) {
+            ps.setInt(1, folderId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? statsOf(rs) : null;
+            }
+        }
+    }
+
+    private static Stats statsOf(ResultSet rs) throws SQLException {
+        Timestamp newest = rs.getTimestamp("NewestModified");
+        long quota = rs.getLong("QuotaBytes");
+        return new Stats(rs.getInt("FolderID"), rs.getLong("TotalBytes"), rs.getInt("FileCount"),
+                newest != null ? newest.getTime() : 0L, rs.wasNull() ? null : quota);
+    }
+
+    /** Đặt hạn mức cho cây con của folder (null = bỏ giới hạn) */
+    public void setQuota(int folderId, Long quotaBytes) throws SQLException {
+        try (PreparedStatement ps = dbConnection.prepareStatement(
+                "INSERT INTO FolderStats (FolderID, QuotaBytes) VALUES (?, ?) ON DUPLICATE KEY UPDATE QuotaBytes = VALUES(QuotaBytes)")) {
+            ps.setInt(1, folderId);
+            if (quotaBytes == null) ps.setNull(2, Types.BIGINT); else ps.setLong(2, quotaBytes);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Folder có hạn mức đầu tiên (gần nhất) trên đường lên root sẽ bị vượt nếu (folderId, fileName) có newSize byte,
+     * null nếu không vượt. Một truy vấn theo closure: O(độ sâu) dòng, kích thước bản hiện tại được trừ ra.
+     * queued: byte đã nhận nhưng chưa có trong Files (theo folder đích), được cộng vào mọi tổ tiên của folder đó.
+     */
+    public Stats findExceededQuota(int folderId, String fileName, long newSize, Map<Integer, Long> queued)
+            throws SQLException {
+        List<Stats> limited = new ArrayList<>();
+        List<Long> existing = new ArrayList<>();
+        try (PreparedStatement ps = dbConnection.prepareStatement(
+                "SELECT s.FolderID, s.TotalBytes, s.FileCount, s.NewestModified, s.QuotaBytes, " +
+                        "(SELECT COALESCE(SUM(f.FileSize), 0) FROM Files f " +
+                        " WHERE f.FolderID = ? AND f.FileName = ? AND f.DeletedAt IS NULL) AS Existing " +
+                        "FROM FolderClosure c JOIN FolderStats s ON s.FolderID = c.AncestorID " +
+                        "WHERE c.DescendantID = ? AND s.QuotaBytes IS NOT NULL ORDER BY c.Depth")) {
+            ps.setInt(1, folderId);
+            ps.setString(2, fileName);
+            ps.setInt(3, folderId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    limited.add(statsOf(rs));
+                    existing.add(rs.getLong("Existing"));
+                }
+            }
+        }
+        if (limited.isEmpty()) return null;
+        Map<Integer, Long> pending = sumToAncestors(queued);
+        for (int i = 0; i < limited.size(); i++) {
+            Stats s = limited.get(i);
+            long used = s.totalBytes - existing.get(i) + pending.getOrDefault(s.folderId, 0L);
+            if (used + newSize > s.quotaBytes) return s;
+        }
+        return null;
+    }
+
+    // Cộng byte của từng folder vào chính nó và mọi tổ tiên của nó: một truy vấn closure
+    private Map<Integer, Long> sumToAncestors(Map<Integer, Long> bytesByFolder) throws SQLException {
+        Map<Integer, Long> out = new HashMap<>();
+        if (bytesByFolder.isEmpty()) return out;
+        StringBuilder in = new StringBuilder();
+        for (int i = 0; i < bytesByFolder.size(); i++) in.append(i == 0 ? "?" : ",?");
+        try (PreparedStatement ps = dbConnection.prepareStatement(
+                "SELECT AncestorID, DescendantID FROM FolderClosure WHERE DescendantID IN (" + in + ")")) {
+            int k = 1;
+            for (int id : bytesByFolder.keySet()) ps.setInt(k++, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) out.merge(rs.getInt(1), bytesByFolder.get(rs.getInt(2)), Long::sum);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Cộng (sign = 1) hoặc trừ (sign = -1) tổng của cây con folderId vào các tổ tiên hiện tại của nó (không gồm chính
+     * nó). FolderDAO.moveFolder gọi trừ trước khi cắt closure cũ và cộng sau khi nối closure mới, trong cùng transaction.
+     */
+    public void applySubtreeToAncestors(int folderId, int sign) throws SQLException {
+        try (PreparedStatement ps = dbConnection.prepareStatement(
+                "UPDATE FolderStats a " +
+                        "JOIN FolderClosure c ON c.AncestorID = a.FolderID AND c.DescendantID = ? AND c.Depth > 0 " +
+                        "JOIN FolderStats m ON m.FolderID = ? " +
+                        "SET a.TotalBytes = a.TotalBytes + ? * m.TotalBytes, a.FileCount = a.FileCount + ? * m.FileCount, " +
+                        "a.NewestModified = IF(? > 0 AND m.NewestModified IS NOT NULL " +
+                        "AND (a.NewestModified IS NULL OR m.NewestModified > a.NewestModified), m.NewestModified, a.NewestModified)")) {
+            ps.setInt(1, folderId);
+            ps.setInt(2, folderId);
+            ps.setInt(3, sign);
+            ps.setInt(4, sign);
+            ps.setInt(5, sign);
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Tính lại toàn bộ thống kê từ Files và FolderClosure (như phần cuối migrations/007_folder_stats.sql).
+     * Replica gọi sau khi nạp snapshot: dòng được chèn lúc closure chưa dựng xong không được trigger cộng đúng.
+     */
+    public void recomputeAll() throws SQLException {
+        try (Statement st = dbConnection.createStatement()) {
+            st.executeUpdate("INSERT IGNORE INTO FolderStats (FolderID) SELECT FolderID FROM Folders");
+            st.executeUpdate(
+                    "UPDATE FolderStats s LEFT JOIN (" +
+                            "SELECT c.AncestorID, SUM(COALESCE(f.FileSize, 0)) AS Bytes, COUNT(*) AS Cnt, " +
+                            "MAX(COALESCE(f.LastModified, f.CreatedAt)) AS Newest " +
+                            "FROM FolderClosure c JOIN Files f ON f.FolderID = c.DescendantID AND f.DeletedAt IS NULL " +
+                            "GROUP BY c.AncestorID) t ON t.AncestorID = s.FolderID " +
+                            "SET s.TotalBytes = COALESCE(t.Bytes, 0), s.FileCount = COALESCE(t.Cnt, 0), " +
+                            "s.NewestModified = t.Newest");
+        }
+    }
+}
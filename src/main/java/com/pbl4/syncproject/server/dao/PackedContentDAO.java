@@ -0,0 +1,52 @@
+package com.pbl4.syncproject.server.dao;
+
+import com.pbl4.syncproject.common.storage.PackIndex;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Bảng PackedContent: vị trí nội dung của các file nhỏ được gói vào segment (xem PackStore).
+ */
+public class PackedContentDAO implements PackIndex {
+
+    private final Connection dbConnection;
+
+    public PackedContentDAO(Connection dbConnection) {
+        this.dbConnection = dbConnection;
+    }
+
+    @Override
+    public void upsert(int fileId, int segmentId, long offset, int length) throws SQLException {
+        String sql = "INSERT INTO PackedContent (FileID, SegmentID, SegmentOffset, Length) VALUES (?,?,?,?) " +
+                "ON DUPLICATE KEY UPDATE SegmentID=VALUES(SegmentID), SegmentOffset=VALUES(SegmentOffset), Length=VALUES(Length)";
+        try (PreparedStatement ps = dbConnection.prepareStatement(sql)) {
+            ps.setInt(1, fileId);
+            ps.setInt(2, segmentId);
+            ps.setLong(3, offset);
+            ps.setInt(4, length);
+            ps.executeUpdate();
+        }
+    }
+
+    @Override
+    public void delete(int fileId) throws SQLException {
+        try (PreparedStatement ps = dbConnection.prepareStatement("DELETE FROM PackedContent WHERE FileID = ?")) {
+            ps.setInt(1, fileId);
+            ps.executeUpdate();
+        }
+    }
+
+    @Override
+    public void forEach(SlotVisitor visitor) throws SQLException {
+        try (PreparedStatement ps = dbConnection.prepareStatement(
+                "SELECT FileID, SegmentID, SegmentOffset, Length FROM PackedContent ORDER BY FileID")) {
+            ps.setFetchSize(Integer.MIN_VALUE); // MySQL: stream thay vì nạp hết kết quả vào bộ nhớ
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) visitor.slot(rs.getInt(1), rs.getInt(2), rs.getLong(3), rs.getInt(4));
+            }
+        }
+    }
+}
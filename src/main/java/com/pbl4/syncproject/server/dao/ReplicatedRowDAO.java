@@ -0,0 +1,181 @@
+package com.pbl4.syncproject.server.dao;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Đọc / ghi "ảnh dòng" của các bảng được nhân bản, cùng định dạng với RowData trong ReplicationLog
+ * (cột TIMESTAMP là mili giây epoch). Tên bảng / cột chỉ lấy từ danh sách cố định dưới đây, không bao giờ từ
+ * dữ liệu nhận qua mạng.
+ */
+public class ReplicatedRowDAO {
+
+    public static final class Table {
+        public final String name;
+        public final String key;
+        final String[] columns;
+        final Set<String> timestamps;
+        final String snapshotFilter;
+
+        Table(String name, String key, String[] columns, String[] timestamps, String snapshotFilter) {
+            this.name = name;
+            this.key = key;
+            this.columns = columns;
+            this.timestamps = new HashSet<>(Arrays.asList(timestamps));
+            this.snapshotFilter = snapshotFilter;
+        }
+    }
+
+    // Theo thứ tự khóa ngoại: snapshot nạp lần lượt, bảng sau chỉ tham chiếu bảng trước
+    private static final Map<String, Table> TABLES = new LinkedHashMap<>();
+
+    static {
+        add(new Table("Users", "UserID",
+                new String[]{"UserID", "Username", "PasswordHash", "Email", "RoleID", "CreatedAt"},
+                new String[]{"CreatedAt"}, null));
+        add(new Table("Folders", "FolderID",
+                new String[]{"FolderID", "ParentFolderID", "FolderName", "LastModified", "CreatedAt"},
+                new String[]{"LastModified", "CreatedAt"}, null));
+        add(new Table("Files", "FileID",
+                new String[]{"FileID", "FolderID", "FileName", "FileSize", "FileHash", "LastModified", "CreatedAt",
+                        "DeletedAt", "DeletedBy", "VersionNo"},
+                new String[]{"LastModified", "CreatedAt", "DeletedAt"}, null));
+        add(new Table("FolderAccessControl", "FolderAccessID",
+                new String[]{"FolderAccessID", "UserID", "FolderID", "Permission", "GrantedAt"},
+                new String[]{"GrantedAt"}, null));
+        add(new Table("FileAccessControl", "FileAccessID",
+                new String[]{"FileAccessID", "UserID", "FileID", "Permission", "GrantedAt"},
+                new String[]{"GrantedAt"}, null));
+        // Chỉ hạn mức: tổng dung lượng do trigger của mỗi server tự giữ
+        add(new Table("FolderStats", "FolderID",
+                new String[]{"FolderID", "QuotaBytes"},
+                new String[0], "QuotaBytes IS NOT NULL"));
+    }
+
+    private static void add(Table t) {
+        TABLES.put(t.name, t);
+    }
+
+    /** Bảng được nhân bản (theo thứ tự nạp snapshot) */
+    public static List<String> tableNames() {
+        return Collections.unmodifiableList(new ArrayList<>(TABLES.keySet()));
+    }
+
+    /** Spec của bảng, SQLException nếu tên không nằm trong danh sách */
+    public static Table table(String name) throws SQLException {
+        Table t = TABLES.get(name);
+        if (t == null) throw new SQLException("Bảng không được nhân bản: " + name);
+        return t;
+    }
+
+    private final Connection dbConnection;
+
+    public ReplicatedRowDAO(Connection dbConnection) {
+        this.dbConnection = dbConnection;
+    }
+
+    /** Một trang snapshot: các dòng có khóa > afterKey, sắp theo khóa */
+    public List<JsonObject> page(Table t, long afterKey, int limit) throws SQLException {
+        String sql = "SELECT " + selectList(t) + " FROM " + t.name + " WHERE " + t.key + " > ?"
+                + (t.snapshotFilter != null ? " AND " + t.snapshotFilter : "") + " ORDER BY " + t.key + " LIMIT ?";
+        List<JsonObject> rows = new ArrayList<>();
+        try (PreparedStatement ps = dbConnection.prepareStatement(sql)) {
+            ps.setLong(1, afterKey);
+            ps.setInt(2, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) rows.add(rowOf(t, rs));
+            }
+        }
+        return rows;
+    }
+
+    /** Ảnh dòng hiện tại trên server này, null nếu không có */
+    public JsonObject get(Table t, int key) throws SQLException {
+        try (PreparedStatement ps = dbConnection.prepareStatement(
+                "SELECT " + selectList(t) + " FROM " + t.name + " WHERE " + t.key + " = ?")) {
+            ps.setInt(1, key);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rowOf(t, rs) : null;
+            }
+        }
+    }
+
+    /** INSERT ... ON DUPLICATE KEY UPDATE (không dùng REPLACE: xóa rồi chèn sẽ kéo theo xóa dây chuyền) */
+    public void upsert(Table t, JsonObject row) throws SQLException {
+        StringBuilder cols = new StringBuilder();
+        StringBuilder marks = new StringBuilder();
+        StringBuilder updates = new StringBuilder();
+        for (String c : t.columns) {
+            if (cols.length() > 0) {
+                cols.append(", ");
+                marks.append(", ");
+            }
+            cols.append(c);
+            marks.append('?');
+            if (c.equals(t.key)) continue;
+            if (updates.length() > 0) updates.append(", ");
+            updates.append(c).append(" = VALUES(").append(c).append(')');
+        }
+        try (PreparedStatement ps = dbConnection.prepareStatement(
+                "INSERT INTO " + t.name + " (" + cols + ") VALUES (" + marks + ") ON DUPLICATE KEY UPDATE " + updates)) {
+            for (int i = 0; i < t.columns.length; i++) bind(ps, i + 1, t, t.columns[i], row.get(t.columns[i]));
+            ps.executeUpdate();
+        }
+    }
+
+    public void delete(Table t, int key) throws SQLException {
+        try (PreparedStatement ps = dbConnection.prepareStatement(
+                "DELETE FROM " + t.name + " WHERE " + t.key + " = ?")) {
+            ps.setInt(1, key);
+            ps.executeUpdate();
+        }
+    }
+
+    private static String selectList(Table t) {
+        StringBuilder sb = new StringBuilder();
+        for (String c : t.columns) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(t.timestamps.contains(c) ? "ROUND(UNIX_TIMESTAMP(" + c + ") * 1000) AS " + c : c);
+        }
+        return sb.toString();
+    }
+
+    private static JsonObject rowOf(Table t, ResultSet rs) throws SQLException {
+        JsonObject row = new JsonObject();
+        for (String c : t.columns) {
+            Object v = rs.getObject(c);
+            if (v == null) row.add(c, JsonNull.INSTANCE);
+            else if (v instanceof Number) row.addProperty(c, ((Number) v).longValue());
+            else row.addProperty(c, v.toString());
+        }
+        return row;
+    }
+
+    private static void bind(PreparedStatement ps, int i, Table t, String column, JsonElement v) throws SQLException {
+        if (v == null || v.isJsonNull()) {
+            ps.setNull(i, t.timestamps.contains(column) ? Types.TIMESTAMP : Types.VARCHAR);
+        } else if (t.timestamps.contains(column)) {
+            ps.setTimestamp(i, new Timestamp(v.getAsLong()));
+        } else if (v.getAsJsonPrimitive().isNumber()) {
+            ps.setLong(i, v.getAsLong());
+        } else {
+            ps.setString(i, v.getAsString());
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.pbl4.syncproject.server.dao;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Bảng ReplicationLog (primary: trigger ghi, REPLICATION_PULL đọc) và trạng thái của replica
+ * (ReplicationState, ReplicationPendingContent). Xem migrations/008_replication_log.sql.
+ */
+public class ReplicationLogDAO {
+
+    private final Connection dbConnection;
+
+    public ReplicationLogDAO(Connection dbConnection) {
+        this.dbConnection = dbConnection;
+    }
+
+    public static final class Entry {
+        public final long seq;
+        public final String table;
+        public final char op;          // 'U' upsert, 'D' xóa
+        public final JsonObject row;   // U: ảnh dòng, D: khóa chính
+        public final long createdAtMs;
+
+        public Entry(long seq, String table, char op, JsonObject row, long createdAtMs) {
+            this.seq = seq;
+            this.table = table;
+            this.op = op;
+            this.row = row;
+            this.createdAtMs = createdAtMs;
+        }
+    }
+
+    /** Seq nhỏ nhất, lớn nhất còn trong nhật ký (0 nếu rỗng) và giờ hiện tại của DB (ms) */
+    public long[] bounds() throws SQLException {
+        try (Statement st = dbConnection.createStatement();
+             ResultSet rs = st.executeQuery(
+                     "SELECT COALESCE(MIN(Seq), 0), COALESCE(MAX(Seq), 0), ROUND(UNIX_TIMESTAMP(CURRENT_TIMESTAMP(3)) * 1000) " +
+                             "FROM ReplicationLog")) {
+            rs.next();
+            return new long[]{rs.getLong(1), rs.getLong(2), rs.getLong(3)};
+        }
+    }
+
+    public List<Entry> readAfter(long afterSeq, int limit) throws SQLException {
+        List<Entry> out = new ArrayList<>();
+        try (PreparedStatement ps = dbConnection.prepareStatement(
+                "SELECT Seq, TableName, Op, RowData, ROUND(UNIX_TIMESTAMP(CreatedAt) * 1000) FROM ReplicationLog " +
+                        "WHERE Seq > ? ORDER BY Seq LIMIT ?")) {
+            ps.setLong(1, afterSeq);
+            ps.setInt(2, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    out.add(new Entry(rs.getLong(1), rs.getString(2), rs.getString(3).charAt(0),
+                            JsonParser.parseString(rs.getString(4)).getAsJsonObject(), rs.getLong(5)));
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Xóa tối đa limit dòng cũ hơn cutoffMs và có seq nhỏ hơn beforeSeq, trả về số dòng đã xóa.
+     * Người gọi truyền head để dòng mới nhất luôn còn: replica tụt sau nó nhận ra mình đã mất bản ghi.
+     */
+    public int purgeOlderThan(long cutoffMs, long beforeSeq, int limit) throws SQLException {
+        try (PreparedStatement ps = dbConnection.prepareStatement(
+                "DELETE FROM ReplicationLog WHERE CreatedAt < FROM_UNIXTIME(? / 1000) AND Seq < ? ORDER BY Seq LIMIT ?")) {
+            ps.setLong(1, cutoffMs);
+            ps.setLong(2, beforeSeq);
+            ps.setInt(3, limit);
+            return ps.executeUpdate();
+        }
+    }
+
+    // ---------- Phía replica ----------
+
+    /** Seq đã áp, null nếu replica chưa từng nạp snapshot */
+    public Long getAppliedSeq() throws SQLException {
+        try (Statement st = dbConnection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT AppliedSeq FROM ReplicationState WHERE ID = 1")) {
+            return rs.next() ? rs.getLong(1) : null;
+        }
+    }
+
+    public boolean isPromoted() throws SQLException {
+        try (Statement st = dbConnection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT Promoted FROM ReplicationState WHERE ID = 1")) {
+            return rs.next() && rs.getInt(1) != 0;
+        }
+    }
+
+    public void saveAppliedSeq(long seq) throws SQLException {
+        try (PreparedStatement ps = dbConnection.prepareStatement(
+                "INSERT INTO ReplicationState (ID, AppliedSeq, UpdatedAt) VALUES (1, ?, NOW()) " +
+                        "ON DUPLICATE KEY UPDATE AppliedSeq = VALUES(AppliedSeq), UpdatedAt = NOW()")) {
+            ps.setLong(1, seq);
+            ps.executeUpdate();
+        }
+    }
+
+    public void markPromoted() throws SQLException {
+        try (Statement st = dbConnection.createStatement()) {
+            st.executeUpdate("INSERT INTO ReplicationState (ID, Promoted, UpdatedAt) VALUES (1, 1, NOW()) " +
+                    "ON DUPLICATE KEY UPDATE Promoted = 1, UpdatedAt = NOW()");
+        }
+    }
+
+    /** Bỏ trạng thái để lần khởi động sau nạp lại snapshot (nhật ký trên primary đã bị dọn qua seq đã áp) */
+    public void clearState() throws SQLException {
+        try (Statement st = dbConnection.createStatement()) {
+            st.executeUpdate("DELETE FROM ReplicationState WHERE ID = 1");
+        }
+    }
+
+    /**
+     * Xóa sạch dữ liệu trước khi nạp snapshot: các bảng được nhân bản và các bảng server tự dựng từ chúng.
+     * Tắt kiểm tra khóa ngoại trên kết nối này; người gọi bật lại sau khi nạp xong.
+     */
+    public void wipeForSnapshot() throws SQLException {
+        try (Statement st = dbConnection.createStatement()) {
+            st.execute("SET FOREIGN_KEY_CHECKS = 0");
+            for (String table : new String[]{"SyncHistory", "FileAccessControl", "FolderAccessControl", "FileVersions",
+                    "PackedContent", "FolderStats", "FolderClosure", "Files", "Folders", "Users",
+                    "ReplicationPendingContent", "ReplicationLog"}) {
+                st.executeUpdate("DELETE FROM " + table);
+            }
+        }
+    }
+
+    public void addPendingContent(Collection<Integer> fileIds) throws SQLException {
+        if (fileIds.isEmpty()) return;
+        try (PreparedStatement ps = dbConnection.prepareStatement(
+                "INSERT IGNORE INTO ReplicationPendingContent (FileID) VALUES (?)")) {
+            for (int id : fileIds) {
+                ps.setInt(1, id);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /** Sau snapshot: mọi file (kể cả trong thùng rác) đều cần tải nội dung */
+    public void queueAllContent() throws SQLException {
+        try (Statement st = dbConnection.createStatement()) {
+            st.executeUpdate("INSERT IGNORE INTO ReplicationPendingContent (FileID) SELECT FileID FROM Files");
+        }
+    }
+
+    public int countPendingContent() throws SQLException {
+        try (Statement st = dbConnection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM ReplicationPendingContent")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    public List<Integer> getPendingContent(int limit) throws SQLException {
+        List<Integer> out = new ArrayList<>();
+        try (PreparedStatement ps = dbConnection.prepareStatement(
+                "SELECT FileID FROM ReplicationPendingContent ORDER BY FileID LIMIT ?")) {
+            ps.setInt(1, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) out.add(rs.getInt(1));
+            }
+        }
+        return out;
+    }
+
+    public void removePendingContent(int fileId) throws SQLException {
+        try (PreparedStatement ps = dbConnection.prepareStatement(
+                "DELETE FROM ReplicationPendingContent WHERE FileID = ?")) {
+            ps.setInt(1, fileId);
+            ps.executeUpdate();
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package com.pbl4.syncproject.server.dao;
 
+import com.pbl4.syncproject.common.model.User;
+
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 
 public class UserDAO {
     private final Connection connection;
@@ -12,16 +15,36 @@ public class UserDAO {
     }
 
     public boolean checkLogin(String username, String password) {
-        String sql = "SELECT * FROM Users WHERE Username=? AND PasswordHash=?";
+        return findByLogin(username, password) != null;
+    }
+
+    // Trả về user (kèm role) nếu đăng nhập đúng, ngược lại null
+    public User findByLogin(String username, String password) {
+        String sql = "SELECT u.UserID, u.Username, r.RoleName FROM Users u " +
+                "JOIN Roles r ON r.RoleID = u.RoleID WHERE u.Username=? AND u.PasswordHash=?";
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
             stmt.setString(1, username);
             stmt.setString(2, password); // production: hash password
             try (ResultSet rs = stmt.executeQuery()) {
-                return rs.next();
+                if (rs.next()) {
+                    return new User(rs.getInt("UserID"), rs.getString("Username"), rs.getString("RoleName"));
+                }
+                return null;
             }
         } catch (Exception e) {
             e.printStackTrace();
-            return false;
+            return null;
+        }
+    }
+
+    // Lấy UserID theo username (null nếu không có)
+    public Integer findUserId(String username) throws SQLException {
+        String sql = "SELECT UserID FROM Users WHERE Username=?";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setString(1, username);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt("UserID") : null;
+            }
         }
     }
 }
@@ -2,9 +2,11 @@ package com.pbl4.syncproject.server.handlers;
 
 import com.pbl4.syncproject.common.dispatcher.Dispatcher;
 import com.pbl4.syncproject.common.dispatcher.RequestHandler;
+import com.pbl4.syncproject.common.jsonhandler.Base64LineOutputStream;
 import com.pbl4.syncproject.common.jsonhandler.JsonUtils;
 import com.pbl4.syncproject.common.jsonhandler.Request;
 import com.pbl4.syncproject.common.jsonhandler.Response;
+import com.pbl4.syncproject.common.jsonhandler.StreamingResponse;
 import com.pbl4.syncproject.server.dao.DatabaseManager;
 
 import java.io.BufferedReader;
@@ -28,6 +30,30 @@ public class ClientHandler implements Runnable {
         this.dispatcher = new Dispatcher(dbConnection);
     }
 
+    /**
+     * Thân của StreamingResponse: các dòng base64 + dòng rỗng, rồi dòng trailer.
+     * Lỗi giữa chừng vẫn kết thúc thân đúng định dạng để kết nối dùng tiếp được; trailer báo error.
+     */
+    private void writeStreamBody(StreamingResponse res, PrintWriter out) {
+        Response trailer;
+        Base64LineOutputStream body = new Base64LineOutputStream(out);
+        try {
+            trailer = res.getBody().write(body);
+        } catch (Exception e) {
+            e.printStackTrace();
+            trailer = new Response("error", "Lỗi giữa chừng: " + e.getMessage(), null);
+        }
+        try {
+            body.close();
+        } catch (IOException e) {
+            // kết nối đã hỏng, vòng đọc sẽ kết thúc
+        }
+        String trailerJson = JsonUtils.toJson(trailer);
+        System.out.println("Sending stream trailer: " + trailerJson);
+        out.println(trailerJson);
+        out.flush();
+    }
+
     @Override
     public void run() {
         try (
@@ -45,6 +71,9 @@ public class ClientHandler implements Runnable {
                     System.out.println("Sending response: " + responseJson);
                     out.println(responseJson);
                     out.flush();
+                    if (res instanceof StreamingResponse) {
+                        writeStreamBody((StreamingResponse) res, out);
+                    }
                 } catch (Exception e) {
                     e.printStackTrace();
                     Response error = new Response("error", e.getMessage(), null);
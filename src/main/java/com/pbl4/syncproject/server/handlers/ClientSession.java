@@ -0,0 +1,18 @@
+package com.pbl4.syncproject.server.handlers;
+
+import com.pbl4.syncproject.common.model.User;
+
+/**
+ * Trạng thái của một kết nối client (mỗi ClientHandler có một session riêng).
+ * LoginHandler gán user sau khi đăng nhập thành công, các handler khác đọc lại để phân quyền.
+ */
+public class ClientSession {
+    private volatile User user;
+
+    public User getUser() { return user; }
+    public void setUser(User user) { this.user = user; }
+
+    public boolean isAuthenticated() { return user != null; }
+
+    public int getUserId() { return user != null ? user.getUserId() : 0; }
+}
@@ -6,17 +6,33 @@ import com.pbl4.syncproject.common.jsonhandler.Request;
 import com.pbl4.syncproject.common.jsonhandler.Response;
 import com.pbl4.syncproject.common.storage.StorageManager;
 import com.pbl4.syncproject.server.dao.DatabaseManager;
+import com.pbl4.syncproject.server.dao.FolderDAO;
+import com.pbl4.syncproject.server.service.NamespaceEvents;
+import com.pbl4.syncproject.server.service.Permission;
+import com.pbl4.syncproject.server.service.PermissionResolver;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.*;
 
+/**
+ * CREATE_FOLDER: tạo folder con (cần quyền WRITE trên folder cha; folder cấp root chỉ ADMIN được tạo).
+ * data: { "folderName", "parentFolderId" (null: cấp root) }
+ */
 public class CreateFolderHandler implements RequestHandler {
+    private final ClientSession session;
+
+    public CreateFolderHandler(ClientSession session) {
+        this.session = session;
+    }
 
     @Override
     public Response handle(Request req) {
+        if (!session.isAuthenticated()) return error("Chưa đăng nhập");
         Response res = new Response();
-        try (Connection conn = DatabaseManager.getConnection()) {
+        // Kết nối mượn từ pool: insertFolder mở transaction (Folders + FolderClosure), không được chạy trên kết nối
+        // chung của mọi client; close() trả kết nối về pool
+        try (Connection conn = DatabaseManager.borrowConnection()) {
             JsonObject data = req.getData().getAsJsonObject();
             if (data == null || !data.has("folderName") || data.get("folderName").isJsonNull()) {
                 return error("Thiếu 'folderName'");
@@ -28,36 +44,27 @@ public class CreateFolderHandler implements RequestHandler {
 
             if (folderName.isBlank()) return error("Tên thư mục không hợp lệ");
 
-            // 1) Trùng tên trong cùng parent?
-            String existsSql = "SELECT COUNT(*) FROM Folders WHERE " +
-                    (parentId == null ? "ParentFolderID IS NULL" : "ParentFolderID=?") + " AND FolderName=?";
-
-            try (PreparedStatement chk = conn.prepareStatement(existsSql)) {
-                int idx = 1;
-                if (parentId != null) chk.setInt(idx++, parentId);
-                chk.setString(idx, folderName);
-                try (ResultSet rs = chk.executeQuery()) {
-                    rs.next();
-                    if (rs.getInt(1) > 0) return error("Thư mục đã tồn tại");
-                }
+            if (parentId == null) {
+                if (!session.getUser().isAdmin()) return error("Chỉ ADMIN mới được tạo thư mục gốc");
+            } else {
+                int mask = PermissionResolver.getInstance().getFolderPermission(conn, session.getUser(), parentId);
+                if (!Permission.has(mask, Permission.WRITE)) return error("Không có quyền tạo thư mục ở đây");
             }
 
-            // 2) Insert DB
-            int newId;
-            try (PreparedStatement ins = conn.prepareStatement(
-                    "INSERT INTO Folders(ParentFolderID, FolderName, LastModified, CreatedAt) " +
-                            "VALUES(?, ?, NOW(), NOW())",
-                    Statement.RETURN_GENERATED_KEYS)) {
-                if (parentId == null) ins.setNull(1, Types.INTEGER); else ins.setInt(1, parentId);
-                ins.setString(2, folderName);
-                ins.executeUpdate();
-                try (ResultSet keys = ins.getGeneratedKeys()) { keys.next(); newId = keys.getInt(1); }
-            }
+            // 1) Trùng tên trong cùng parent? (lấy từ NamespaceIndex nếu đã nạp)
+            FolderDAO folderDAO = new FolderDAO(conn);
+            if (folderDAO.existsInParent(parentId, folderName)) return error("Thư mục đã tồn tại");
+
+            // 2) Insert DB (Folders + FolderClosure trong cùng transaction)
+            int newId = folderDAO.insertFolder(parentId, folderName);
 
-            // 3) Tạo thư mục trên đĩa theo cây DB
+            // 3) Tạo thư mục trên đĩa theo cây DB (layout object không cần: nội dung nằm theo FileID)
             StorageManager sm = StorageManager.getInstance();
-            Path folderPath = sm.resolveFolderPathFromDb(conn, newId);
-            Files.createDirectories(folderPath);
+            if (!sm.isObjectLayout()) {
+                Path folderPath = sm.resolveFolderPathFromDb(conn, newId);
+                Files.createDirectories(folderPath);
+            }
+            NamespaceEvents.folderCreated(newId, parentId, folderName);
 
             // 4) Trả về
             JsonObject out = new JsonObject();
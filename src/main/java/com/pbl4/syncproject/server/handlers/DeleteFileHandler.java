@@ -0,0 +1,73 @@
+package com.pbl4.syncproject.server.handlers;
+
+import com.google.gson.JsonObject;
+import com.pbl4.syncproject.common.dispatcher.RequestHandler;
+import com.pbl4.syncproject.common.jsonhandler.Request;
+import com.pbl4.syncproject.common.jsonhandler.Response;
+import com.pbl4.syncproject.server.dao.FilesDAO;
+import com.pbl4.syncproject.server.service.NamespaceEvents;
+import com.pbl4.syncproject.server.service.Permission;
+import com.pbl4.syncproject.server.service.PermissionResolver;
+import com.pbl4.syncproject.server.service.TrashCollector;
+
+import java.sql.Connection;
+
+/**
+ * DELETE_FILE: chuyển file vào thùng rác (chỉ cập nhật DeletedAt, không đụng tới đĩa).
+ * TrashCollector xóa hẳn sau trash.retention.days; trước đó có thể RESTORE_FILE.
+ *
+ * data: fileId, hoặc folderId + fileName
+ */
+public class DeleteFileHandler implements RequestHandler {
+
+    private final Connection dbConnection;
+    private final ClientSession session;
+
+    public DeleteFileHandler(Connection dbConnection, ClientSession session) {
+        this.dbConnection = dbConnection;
+        this.session = session;
+    }
+
+    @Override
+    public Response handle(Request req) {
+        if (!session.isAuthenticated()) return error("Chưa đăng nhập");
+        try {
+            JsonObject data = req.getData();
+            if (data == null) return error("Thiếu dữ liệu");
+
+            FilesDAO filesDAO = new FilesDAO(dbConnection);
+            Integer fileId = null;
+            if (data.has("fileId") && !data.get("fileId").isJsonNull()) {
+                fileId = data.get("fileId").getAsInt();
+            } else if (data.has("folderId") && data.has("fileName")) {
+                fileId = filesDAO.findFileId(data.get("folderId").getAsInt(), data.get("fileName").getAsString());
+            } else {
+                return error("Thiếu 'fileId' hoặc 'folderId' + 'fileName'");
+            }
+            com.pbl4.syncproject.common.model.Files file = fileId != null ? filesDAO.getFileById(fileId) : null;
+            if (file == null) return error("File không tồn tại");
+
+            int mask = PermissionResolver.getInstance()
+                    .getFilePermission(dbConnection, session.getUser(), file.getFolderId(), fileId);
+            if (!Permission.has(mask, Permission.DELETE)) return error("Không có quyền xóa file này");
+
+            if (!filesDAO.moveToTrash(fileId, session.getUserId())) return error("File đã bị xóa");
+            NamespaceEvents.fileDeleted(fileId, file.getFolderId());
+
+            JsonObject out = new JsonObject();
+            out.addProperty("fileId", fileId);
+            out.addProperty("folderId", file.getFolderId());
+            out.addProperty("fileName", file.getFileName());
+            out.addProperty("purgeAfter", System.currentTimeMillis() + TrashCollector.getInstance().getRetentionMs());
+            return new Response("success", "Đã chuyển file vào thùng rác", out);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return error("Lỗi xóa file: " + e.getMessage());
+        }
+    }
+
+    private Response error(String msg) {
+        return new Response("error", msg, null);
+    }
+}
@@ -0,0 +1,73 @@
+package com.pbl4.syncproject.server.handlers;
+
+import com.google.gson.JsonObject;
+import com.pbl4.syncproject.common.dispatcher.RequestHandler;
+import com.pbl4.syncproject.common.jsonhandler.Request;
+import com.pbl4.syncproject.common.jsonhandler.Response;
+import com.pbl4.syncproject.server.dao.FolderDAO;
+import com.pbl4.syncproject.server.service.FolderJobService;
+import com.pbl4.syncproject.server.service.Permission;
+import com.pbl4.syncproject.server.service.PermissionResolver;
+
+import java.sql.Connection;
+
+/**
+ * DELETE_FOLDER: xóa một folder cùng cả cây con. Folder không có thùng rác: nếu cây con còn file (kể cả file đã ở
+ * thùng rác) thì chúng bị xóa hẳn, nên người gọi phải gửi permanent = true; không thì hãy DELETE_FILE từng file
+ * (vào thùng rác) trước. Trả về ngay operationId, việc xóa chạy nền theo lô (FolderJobService); theo dõi tiến độ
+ * bằng FOLDER_JOB_STATUS.
+ *
+ * data: { "folderId", "permanent" (không bắt buộc, mặc định false) }
+ */
+public class DeleteFolderHandler implements RequestHandler {
+    private final Connection dbConnection;
+    private final FolderDAO folderDAO;
+    private final ClientSession session;
+
+    public DeleteFolderHandler(Connection dbConnection, ClientSession session) {
+        this.dbConnection = dbConnection;
+        this.folderDAO = new FolderDAO(dbConnection);
+        this.session = session;
+    }
+
+    @Override
+    public Response handle(Request req) {
+        if (!session.isAuthenticated()) return error("Chưa đăng nhập");
+        try {
+            JsonObject data = req.getData();
+            if (data == null || !data.has("folderId") || data.get("folderId").isJsonNull()) {
+                return error("Thiếu 'folderId'");
+            }
+            int folderId = data.get("folderId").getAsInt();
+            boolean permanent = data.has("permanent") && !data.get("permanent").isJsonNull()
+                    && data.get("permanent").getAsBoolean();
+
+            if (folderDAO.getParentId(folderId) == null) return error("Không thể xóa folder root");
+            int mask = PermissionResolver.getInstance().getFolderPermission(dbConnection, session.getUser(), folderId);
+            if (!Permission.has(mask, Permission.DELETE)) return error("Không có quyền xóa thư mục này");
+
+            FolderJobService jobs = FolderJobService.getInstance();
+            FolderJobService.Job busy = jobs.findConflicting(dbConnection, folderId);
+            if (busy != null) return error("Thư mục đang có thao tác khác chạy (operationId=" + busy.id + ")");
+
+            if (!permanent) {
+                long files = jobs.countFiles(dbConnection, folderId);
+                if (files > 0) {
+                    return error("Thư mục còn " + files + " file, xóa thư mục sẽ xóa vĩnh viễn (không qua thùng rác): "
+                            + "gửi 'permanent': true để xác nhận");
+                }
+            }
+
+            FolderJobService.Job job = jobs.submitDelete(folderId, session.getUserId(), permanent);
+            return new Response("success", "Đã nhận yêu cầu xóa thư mục", job.toJson());
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return error("Lỗi xóa thư mục: " + e.getMessage());
+        }
+    }
+
+    private Response error(String msg) {
+        return new Response("error", msg, null);
+    }
+}
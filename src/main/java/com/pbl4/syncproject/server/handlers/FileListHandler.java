@@ -5,21 +5,40 @@ import com.google.gson.JsonObject;
 import com.pbl4.syncproject.common.dispatcher.RequestHandler;
 import com.pbl4.syncproject.common.jsonhandler.Request;
 import com.pbl4.syncproject.common.jsonhandler.Response;
+import com.pbl4.syncproject.common.model.Folders;
+import com.pbl4.syncproject.common.model.User;
+import com.pbl4.syncproject.common.storage.FileTypes;
+import com.pbl4.syncproject.server.dao.FolderStatsDAO;
+import com.pbl4.syncproject.server.service.FolderETags;
+import com.pbl4.syncproject.server.service.FolderStatsCache;
+import com.pbl4.syncproject.server.service.NamespaceIndex;
+import com.pbl4.syncproject.server.service.Permission;
+import com.pbl4.syncproject.server.service.PermissionResolver;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Handler để lấy danh sách files và folders từ database
  */
 public class FileListHandler implements RequestHandler {
     private final Connection dbConnection;
+    private final ClientSession session;
+    private final PermissionResolver permissions = PermissionResolver.getInstance();
+    private final NamespaceIndex index = NamespaceIndex.getInstance();
     private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm");
 
-    public FileListHandler(Connection dbConnection) {
+    public FileListHandler(Connection dbConnection, ClientSession session) {
         this.dbConnection = dbConnection;
+        this.session = session;
     }
 
     @Override
@@ -27,6 +46,12 @@ public class FileListHandler implements RequestHandler {
         Response response = new Response();
 
         try {
+            if (!session.isAuthenticated()) {
+                response.setStatus("error");
+                response.setMessage("Chưa đăng nhập");
+                return response;
+            }
+
             JsonObject data = request.getData();
             // Mặc định là 0, nhưng client đã được sửa để luôn gửi ID hợp lệ
             int folderId = data != null && data.has("folderId") ? data.get("folderId").getAsInt() : 0;
@@ -42,19 +67,32 @@ public class FileListHandler implements RequestHandler {
                 return response;
             }
 
+            // ETag lấy TRƯỚC khi đọc DB; trùng với ifNoneMatch thì không cần đọc DB
+            FolderETags etags = FolderETags.getInstance();
+            long stamp = etags.folderChangeStamp();
+            String etag = etags.etag("L", folderId, session.getUserId());
+            if (data.has("ifNoneMatch") && etag.equals(data.get("ifNoneMatch").getAsString())) {
+                return Response.notModified(etag);
+            }
+
             JsonObject responseData = new JsonObject();
 
+            // Quyền hiệu lực trên folder hiện tại (có kế thừa, lấy từ cache)
+            User user = session.getUser();
+            int folderMask = permissions.getFolderPermission(dbConnection, user, folderId);
+
             // Lấy danh sách các thư mục con
-            JsonArray folders = getFolders(folderId);
+            JsonArray folders = getFolders(folderId, user, folderMask);
             responseData.add("folders", folders);
 
             // Lấy danh sách các tệp
-            JsonArray files = getFiles(folderId);
+            JsonArray files = getFiles(folderId, user, folderMask);
             responseData.add("files", files);
 
             response.setStatus("success");
             response.setMessage("Lấy danh sách thành công");
             response.setData(responseData);
+            if (stamp == etags.folderChangeStamp()) response.setEtag(etag);
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -66,18 +104,46 @@ public class FileListHandler implements RequestHandler {
     }
 
     /**
-     * Lấy danh sách folders con của folder hiện tại
+     * Lấy danh sách folders con của folder hiện tại (chỉ những folder user có quyền đọc)
      */
-    private JsonArray getFolders(int parentFolderId) throws Exception {
+    private JsonArray getFolders(int parentFolderId, User user, int parentMask) throws Exception {
         JsonArray folders = new JsonArray();
+        if (index.isLoaded()) {
+            List<Folders> children = index.getChildFolders(parentFolderId);
+            children.sort(Comparator.comparing(Folders::getFolderName, String.CASE_INSENSITIVE_ORDER));
+            // Dung lượng / số file của cây con: cache theo phiên bản listing, hết hạn thì một truy vấn cho mọi folder con
+            List<Integer> childIds = new ArrayList<>(children.size());
+            for (Folders child : children) childIds.add(child.getFolderId());
+            Map<Integer, FolderStatsDAO.Stats> stats =
+                    FolderStatsCache.getInstance().getChildStats(dbConnection, parentFolderId, childIds);
+            for (Folders child : children) {
+                FolderETags.getInstance().noteChild(parentFolderId, child.getFolderId());
+                int childMask = permissions.getChildFolderPermission(
+                        dbConnection, user, parentFolderId, parentMask, child.getFolderId());
+                if (!Permission.has(childMask, Permission.READ)) continue;
+
+                JsonObject folder = new JsonObject();
+                folder.addProperty("id", child.getFolderId());
+                folder.addProperty("name", child.getFolderName());
+                folder.addProperty("type", "folder");
+                folder.addProperty("lastModified", dateFormat.format(Timestamp.valueOf(child.getUpdatedAt())));
+                addStats(folder, stats.get(child.getFolderId()));
+                folder.addProperty("permission", Permission.toDisplay(childMask));
+                folder.addProperty("syncStatus", "✅ Đã đồng bộ");
+                folders.add(folder);
+            }
+            return folders;
+        }
 
-        String sql = "SELECT FolderID, FolderName, LastModified, CreatedAt FROM Folders WHERE ParentFolderID ";
+        String sql = "SELECT f.FolderID, f.FolderName, f.LastModified, f.CreatedAt, " +
+                "s.TotalBytes, s.FileCount, s.NewestModified " +
+                "FROM Folders f LEFT JOIN FolderStats s ON s.FolderID = f.FolderID WHERE f.ParentFolderID ";
         if (parentFolderId == 0) {
             sql += "IS NULL"; // Root folders
         } else {
             sql += "= ?";
         }
-        sql += " ORDER BY FolderName";
+        sql += " ORDER BY f.FolderName";
 
         System.out.println("SERVER DEBUG: Getting folders with query: " + sql + " (parentFolderId: " + parentFolderId + ")");
 
@@ -89,6 +155,11 @@ public class FileListHandler implements RequestHandler {
             try (ResultSet rs = stmt.executeQuery()) {
                 int folderCount = 0;
                 while (rs.next()) {
+                    FolderETags.getInstance().noteChild(parentFolderId, rs.getInt("FolderID"));
+                    int childMask = permissions.getChildFolderPermission(
+                            dbConnection, user, parentFolderId, parentMask, rs.getInt("FolderID"));
+                    if (!Permission.has(childMask, Permission.READ)) continue;
+
                     folderCount++;
                     JsonObject folder = new JsonObject();
                     folder.addProperty("id", rs.getInt("FolderID"));
@@ -104,8 +175,14 @@ public class FileListHandler implements RequestHandler {
                         folder.addProperty("lastModified", dateFormat.format(createdAt));
                     }
 
-                    folder.addProperty("size", "");
-                    folder.addProperty("permission", "Đọc/Ghi");
+                    long totalBytes = rs.getLong("TotalBytes");
+                    if (rs.wasNull()) {
+                        addStats(folder, null);
+                    } else {
+                        Timestamp newest = rs.getTimestamp("NewestModified");
+                        addStats(folder, totalBytes, rs.getInt("FileCount"), newest != null ? newest.getTime() : 0L);
+                    }
+                    folder.addProperty("permission", Permission.toDisplay(childMask));
                     folder.addProperty("syncStatus", "✅ Đã đồng bộ");
 
                     folders.add(folder);
@@ -119,10 +196,35 @@ public class FileListHandler implements RequestHandler {
     }
 
     /**
-     * Lấy danh sách files trong folder hiện tại
+     * Lấy danh sách files trong folder hiện tại (chỉ những file user có quyền đọc)
      */
-    private JsonArray getFiles(int folderId) throws Exception {
+    private JsonArray getFiles(int folderId, User user, int folderMask) throws Exception {
         JsonArray files = new JsonArray();
+        // Quyền riêng từng file: 1 query cho cả folder (có cache), không query theo từng dòng
+        Map<Integer, Integer> fileGrants = permissions.getFileGrants(dbConnection, user, folderId);
+
+        if (index.isLoaded()) {
+            String folderName = index.getFolderName(folderId);
+            List<NamespaceIndex.FileEntry> entries = index.getFiles(folderId);
+            entries.sort(Comparator.comparing(e -> e.name, String.CASE_INSENSITIVE_ORDER));
+            for (NamespaceIndex.FileEntry e : entries) {
+                int fileMask = folderMask | fileGrants.getOrDefault(e.fileId, Permission.NONE);
+                if (!Permission.has(fileMask, Permission.READ)) continue;
+
+                JsonObject file = new JsonObject();
+                file.addProperty("id", e.fileId);
+                file.addProperty("name", e.name);
+                file.addProperty("type", "file");
+                file.addProperty("folderName", folderName);
+                file.addProperty("size", formatFileSize(e.size));
+                file.addProperty("fileType", FileTypes.categoryOf(e.name));
+                file.addProperty("lastModified", dateFormat.format(new java.util.Date(e.lastModifiedMs)));
+                file.addProperty("permission", Permission.toDisplay(fileMask));
+                file.addProperty("syncStatus", "✅ Đã đồng bộ");
+                files.add(file);
+            }
+            return files;
+        }
 
         String sql;
 
@@ -132,6 +234,7 @@ public class FileListHandler implements RequestHandler {
                     "fd.FolderName as FolderName " +
                     "FROM Files f " +
                     "INNER JOIN Folders fd ON f.FolderID = fd.FolderID " +
+                    "WHERE f.DeletedAt IS NULL " +
                     "ORDER BY fd.FolderName, f.FileName";
             System.out.println("SERVER DEBUG: Getting ALL files with query: " + sql);
         } else {
@@ -140,7 +243,7 @@ public class FileListHandler implements RequestHandler {
                     "fd.FolderName as FolderName " +
                     "FROM Files f " +
                     "INNER JOIN Folders fd ON f.FolderID = fd.FolderID " +
-                    "WHERE f.FolderID = ? ORDER BY f.FileName";
+                    "WHERE f.FolderID = ? AND f.DeletedAt IS NULL ORDER BY f.FileName";
             System.out.println("SERVER DEBUG: Getting files for folder " + folderId + " with query: " + sql);
         }
 
@@ -152,6 +255,9 @@ public class FileListHandler implements RequestHandler {
             try (ResultSet rs = stmt.executeQuery()) {
                 int fileCount = 0;
                 while (rs.next()) {
+                    int fileMask = folderMask | fileGrants.getOrDefault(rs.getInt("FileID"), Permission.NONE);
+                    if (!Permission.has(fileMask, Permission.READ)) continue;
+
                     fileCount++;
                     JsonObject file = new JsonObject();
                     file.addProperty("id", rs.getInt("FileID"));
@@ -167,7 +273,7 @@ public class FileListHandler implements RequestHandler {
 
                     // Get file type from extension
                     String fileName = rs.getString("FileName");
-                    file.addProperty("fileType", getFileType(fileName));
+                    file.addProperty("fileType", FileTypes.categoryOf(fileName));
 
                     // Format date
                     java.sql.Timestamp lastModified = rs.getTimestamp("LastModified");
@@ -178,7 +284,7 @@ public class FileListHandler implements RequestHandler {
                         file.addProperty("lastModified", dateFormat.format(createdAt));
                     }
 
-                    file.addProperty("permission", "Đọc/Ghi");
+                    file.addProperty("permission", Permission.toDisplay(fileMask));
                     file.addProperty("syncStatus", "✅ Đã đồng bộ");
 
                     files.add(file);
@@ -191,6 +297,22 @@ public class FileListHandler implements RequestHandler {
         return files;
     }
 
+    // Thống kê dồn của cây con (FolderStats); folder chưa có dòng thống kê thì để trống như trước
+    private void addStats(JsonObject folder, FolderStatsDAO.Stats stats) {
+        if (stats == null) {
+            folder.addProperty("size", "");
+            return;
+        }
+        addStats(folder, stats.totalBytes, stats.fileCount, stats.newestModifiedMs);
+    }
+
+    private void addStats(JsonObject folder, long totalBytes, int fileCount, long newestModifiedMs) {
+        folder.addProperty("size", formatFileSize(totalBytes));
+        folder.addProperty("sizeBytes", totalBytes);
+        folder.addProperty("fileCount", fileCount);
+        folder.addProperty("newestModified", newestModifiedMs > 0 ? dateFormat.format(new Date(newestModifiedMs)) : "");
+    }
+
     /**
      * Format file size in human readable format
      */
@@ -201,57 +323,4 @@ public class FileListHandler implements RequestHandler {
         String pre = "KMGTPE".charAt(exp - 1) + "";
         return String.format("%.1f %sB", bytes / Math.pow(1024, exp), pre);
     }
-
-    /**
-     * Get file type from extension
-     */
-    private String getFileType(String fileName) {
-        if (fileName == null || !fileName.contains(".")) {
-            return "File";
-        }
-
-        String extension = fileName.substring(fileName.lastIndexOf(".")).toLowerCase();
-
-        switch (extension) {
-            case ".doc":
-            case ".docx":
-            case ".pdf":
-            case ".txt":
-            case ".rtf":
-                return "Document";
-            case ".xls":
-            case ".xlsx":
-            case ".csv":
-                return "Spreadsheet";
-            case ".ppt":
-            case ".pptx":
-                return "Presentation";
-            case ".jpg":
-            case ".jpeg":
-            case ".png":
-            case ".gif":
-            case ".bmp":
-            case ".tiff":
-                return "Image";
-            case ".mp4":
-            case ".avi":
-            case ".mkv":
-            case ".mov":
-            case ".wmv":
-                return "Video";
-            case ".mp3":
-            case ".wav":
-            case ".flac":
-            case ".aac":
-                return "Audio";
-            case ".zip":
-            case ".rar":
-            case ".7z":
-            case ".tar":
-            case ".gz":
-                return "Archive";
-            default:
-                return "File";
-        }
-    }
-}
\ No newline at end of file
+}
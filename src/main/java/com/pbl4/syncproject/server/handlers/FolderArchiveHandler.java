@@ -0,0 +1,238 @@
+package com.pbl4.syncproject.server.handlers;
+
+import com.google.gson.JsonObject;
+import com.pbl4.syncproject.common.dispatcher.RequestHandler;
+import com.pbl4.syncproject.common.jsonhandler.Request;
+import com.pbl4.syncproject.common.jsonhandler.Response;
+import com.pbl4.syncproject.common.jsonhandler.StreamingResponse;
+import com.pbl4.syncproject.common.model.Files;
+import com.pbl4.syncproject.common.model.Folders;
+import com.pbl4.syncproject.common.model.User;
+import com.pbl4.syncproject.common.storage.FileTypes;
+import com.pbl4.syncproject.common.storage.StorageManager;
+import com.pbl4.syncproject.common.storage.StoredContent;
+import com.pbl4.syncproject.server.dao.DatabaseManager;
+import com.pbl4.syncproject.server.dao.FilesDAO;
+import com.pbl4.syncproject.server.dao.FolderDAO;
+import com.pbl4.syncproject.server.service.Permission;
+import com.pbl4.syncproject.server.service.PermissionResolver;
+import com.pbl4.syncproject.server.service.ServerMetrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.NoSuchFileException;
+import java.sql.Connection;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * DOWNLOAD_FOLDER_ARCHIVE: tải cả cây thư mục dưới dạng một file ZIP, stream thẳng ra kết nối
+ * (StreamingResponse) - không tạo file tạm, bộ nhớ không phụ thuộc kích thước cây:
+ *   - duyệt cây theo ParentFolderID bằng stack, file của mỗi folder lấy theo trang FileID;
+ *   - nội dung đọc qua một buffer cố định, ZipOutputStream ghi luôn ra socket.
+ * File đã nén sẵn (Archive, Image, Video) được STORED: đọc 2 lượt (CRC rồi copy) thay vì nén lại vô ích.
+ * Chỉ gồm folder/file user có quyền đọc; file mất trên đĩa được bỏ qua và đếm trong trailer.
+ *
+ * data: folderId
+ * Header: data.stream = true, fileName (tên gợi ý cho file .zip)
+ * Trailer: folders, files, skipped, bytes (tổng kích thước nội dung gốc)
+ */
+public class FolderArchiveHandler implements RequestHandler {
+
+    private static final int FILE_PAGE = 500;
+    private static final int IO_BUFFER = 64 * 1024;
+
+    private final Connection dbConnection;
+    private final ClientSession session;
+    private final PermissionResolver permissions = PermissionResolver.getInstance();
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+
+    public FolderArchiveHandler(Connection dbConnection, ClientSession session) {
+        this.dbConnection = dbConnection;
+        this.session = session;
+    }
+
+    @Override
+    public Response handle(Request req) {
+        if (!session.isAuthenticated()) return error("Chưa đăng nhập");
+        try {
+            JsonObject data = req.getData();
+            if (data == null || !data.has("folderId")) return error("Thiếu 'folderId'");
+            int folderId = data.get("folderId").getAsInt();
+
+            List<Folders> found = new FolderDAO(dbConnection).getFoldersByIds(Collections.singletonList(folderId));
+            if (found.isEmpty()) return error("Thư mục không tồn tại");
+            Folders root = found.get(0);
+
+            User user = session.getUser();
+            int mask = permissions.getFolderPermission(dbConnection, user, folderId);
+            if (!Permission.has(mask, Permission.READ)) return error("Không có quyền đọc thư mục này");
+
+            JsonObject header = new JsonObject();
+            header.addProperty("stream", true);
+            header.addProperty("folderId", folderId);
+            header.addProperty("fileName", root.getFolderName() + ".zip");
+            metrics.increment("archive.requests");
+            return new StreamingResponse("Đang gửi file nén", header,
+                    out -> writeArchive(out, user, root, mask));
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return error("Lỗi tạo file nén: " + e.getMessage());
+        }
+    }
+
+    private Response writeArchive(OutputStream out, User user, Folders root, int rootMask) throws Exception {
+        Stats stats = new Stats();
+        byte[] buffer = new byte[IO_BUFFER];
+        ZipOutputStream zip = new ZipOutputStream(out);
+
+        // Kết nối riêng: việc stream có thể kéo dài, không giữ kết nối dùng chung
+        try (Connection conn = DatabaseManager.openConnection()) {
+            FolderDAO folderDAO = new FolderDAO(conn);
+            FilesDAO filesDAO = new FilesDAO(conn);
+            StorageManager storage = StorageManager.getInstance();
+
+            Deque<Frame> stack = new ArrayDeque<>();
+            stack.push(new Frame(root.getFolderId(), root.getFolderName() + "/", rootMask));
+            while (!stack.isEmpty()) {
+                Frame f = stack.pop();
+                putDirectory(zip, f.prefix);
+                stats.folders++;
+
+                Map<Integer, Integer> grants = permissions.getFileGrants(conn, user, f.folderId);
+                int after = 0;
+                while (true) {
+                    List<Files> page = filesDAO.getFilesPage(f.folderId, after, FILE_PAGE);
+                    for (Files file : page) {
+                        int fileMask = f.mask | grants.getOrDefault(file.getFileId(), Permission.NONE);
+                        if (!Permission.has(fileMask, Permission.READ)) continue;
+                        boolean added;
+                        try (StoredContent content = storage.openContent(conn, file.getFileId(), file.getFolderId(),
+                                file.getFileName())) {
+                            added = putFile(zip, f.prefix + file.getFileName(), content, file, buffer, stats);
+                        } catch (NoSuchFileException e) {
+                            added = false;
+                        }
+                        if (added) {
+                            stats.files++;
+                        } else {
+                            stats.skipped++;
+                        }
+                    }
+                    if (page.size() < FILE_PAGE) break;
+                    after = page.get(page.size() - 1).getFileId();
+                }
+
+                for (Folders child : folderDAO.getChildren(f.folderId)) {
+                    int childMask = permissions.getChildFolderPermission(conn, user, f.folderId, f.mask,
+                            child.getFolderId());
+                    if (!Permission.has(childMask, Permission.READ)) continue;
+                    stack.push(new Frame(child.getFolderId(), f.prefix + child.getFolderName() + "/", childMask));
+                }
+            }
+        }
+        zip.finish();
+        metrics.add("archive.files", stats.files);
+        metrics.add("archive.bytes", stats.bytes);
+
+        JsonObject result = new JsonObject();
+        result.addProperty("folders", stats.folders);
+        result.addProperty("files", stats.files);
+        result.addProperty("skipped", stats.skipped);
+        result.addProperty("bytes", stats.bytes);
+        return new Response("success", "Đã gửi xong file nén", result);
+    }
+
+    private static void putDirectory(ZipOutputStream zip, String name) throws IOException {
+        try {
+            zip.putNextEntry(new ZipEntry(name));
+            zip.closeEntry();
+        } catch (ZipException e) {
+            // trùng tên entry (hiếm): bỏ qua
+        }
+    }
+
+    /** Ghi một file vào ZIP; false nếu trùng tên entry */
+    private static boolean putFile(ZipOutputStream zip, String name, StoredContent in, Files file, byte[] buffer,
+                                   Stats stats) throws IOException {
+        // Nội dung chỉ bị thay bằng rename / nối bản mới vào segment nên 2 lượt đọc luôn thấy cùng một bản
+        ZipEntry entry = new ZipEntry(name);
+        if (file.getUpdatedAt() != null) {
+            entry.setTime(file.getUpdatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        }
+        if (isPrecompressed(file.getFileName())) {
+            // STORED cần biết trước CRC và kích thước
+            long size = in.size();
+            CRC32 crc = new CRC32();
+            ByteBuffer bb = ByteBuffer.wrap(buffer);
+            long pos = 0;
+            int n;
+            while ((n = in.read(bb, pos)) > 0) {
+                crc.update(buffer, 0, n);
+                pos += n;
+                bb.clear();
+            }
+            if (pos != size) throw new IOException("File thay đổi khi đang đọc: " + name);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(size);
+            entry.setCompressedSize(size);
+            entry.setCrc(crc.getValue());
+        } else {
+            entry.setMethod(ZipEntry.DEFLATED);
+        }
+        try {
+            zip.putNextEntry(entry);
+        } catch (ZipException e) {
+            return false;
+        }
+        ByteBuffer bb = ByteBuffer.wrap(buffer);
+        long pos = 0;
+        int n;
+        while ((n = in.read(bb, pos)) > 0) {
+            zip.write(buffer, 0, n);
+            pos += n;
+            bb.clear();
+        }
+        zip.closeEntry();
+        stats.bytes += pos;
+        return true;
+    }
+
+    private static boolean isPrecompressed(String fileName) {
+        String type = FileTypes.categoryOf(fileName);
+        return FileTypes.ARCHIVE.equals(type) || FileTypes.IMAGE.equals(type) || FileTypes.VIDEO.equals(type);
+    }
+
+    private static final class Frame {
+        final int folderId;
+        final String prefix;
+        final int mask;
+
+        Frame(int folderId, String prefix, int mask) {
+            this.folderId = folderId;
+            this.prefix = prefix;
+            this.mask = mask;
+        }
+    }
+
+    private static final class Stats {
+        long folders;
+        long files;
+        long skipped;
+        long bytes;
+    }
+
+    private Response error(String msg) {
+        return new Response("error", msg, null);
+    }
+}
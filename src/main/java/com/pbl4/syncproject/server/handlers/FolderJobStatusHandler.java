@@ -0,0 +1,45 @@
+package com.pbl4.syncproject.server.handlers;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.pbl4.syncproject.common.dispatcher.RequestHandler;
+import com.pbl4.syncproject.common.jsonhandler.Request;
+import com.pbl4.syncproject.common.jsonhandler.Response;
+import com.pbl4.syncproject.server.service.FolderJobService;
+
+/**
+ * FOLDER_JOB_STATUS: tiến độ của DELETE_FOLDER / MOVE_FOLDER.
+ * data: { "operationId" } -> một job; bỏ trống -> mọi job của user hiện tại ("jobs"). Chỉ người tạo job hoặc ADMIN xem được.
+ */
+public class FolderJobStatusHandler implements RequestHandler {
+    private final ClientSession session;
+
+    public FolderJobStatusHandler(ClientSession session) {
+        this.session = session;
+    }
+
+    @Override
+    public Response handle(Request req) {
+        if (!session.isAuthenticated()) return error("Chưa đăng nhập");
+        JsonObject data = req.getData();
+        FolderJobService jobs = FolderJobService.getInstance();
+
+        if (data != null && data.has("operationId") && !data.get("operationId").isJsonNull()) {
+            FolderJobService.Job job = jobs.get(data.get("operationId").getAsString());
+            if (job == null || (job.userId != session.getUserId() && !session.getUser().isAdmin())) {
+                return error("Không tìm thấy thao tác");
+            }
+            return new Response("success", job.getState(), job.toJson());
+        }
+
+        JsonArray list = new JsonArray();
+        for (FolderJobService.Job job : jobs.jobsOf(session.getUserId())) list.add(job.toJson());
+        JsonObject out = new JsonObject();
+        out.add("jobs", list);
+        return new Response("success", "OK", out);
+    }
+
+    private Response error(String msg) {
+        return new Response("error", msg, null);
+    }
+}
@@ -6,18 +6,28 @@ import com.pbl4.syncproject.common.dispatcher.RequestHandler;
 import com.pbl4.syncproject.common.jsonhandler.Request;
 import com.pbl4.syncproject.common.jsonhandler.Response;
 import com.pbl4.syncproject.common.model.Folders;
+import com.pbl4.syncproject.common.model.User;
 import com.pbl4.syncproject.server.dao.FolderDAO;
+import com.pbl4.syncproject.server.service.FolderETags;
+import com.pbl4.syncproject.server.service.Permission;
+import com.pbl4.syncproject.server.service.PermissionResolver;
 
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.Set;
 
 public class FolderTreeHandler implements RequestHandler {
 
+    private final Connection dbConnection;
     private final FolderDAO folderDAO;
+    private final ClientSession session;
+    private final PermissionResolver permissions = PermissionResolver.getInstance();
 
-    public FolderTreeHandler(Connection dbConnection) {
+    public FolderTreeHandler(Connection dbConnection, ClientSession session) {
+        this.dbConnection = dbConnection;
         this.folderDAO = new FolderDAO(dbConnection);
+        this.session = session;
     }
     @Override
     public Response handle(Request req) {
@@ -28,6 +38,22 @@ public class FolderTreeHandler implements RequestHandler {
                 : null;
 
         Response res = new Response();
+        if (!session.isAuthenticated()) {
+            res.setStatus("error");
+            res.setMessage("Chưa đăng nhập");
+            return res;
+        }
+
+        User user = session.getUser();
+
+        // ETag lấy TRƯỚC khi đọc DB: thay đổi xảy ra trong lúc đọc sẽ làm ETag này cũ đi ở lần sau
+        FolderETags etags = FolderETags.getInstance();
+        long stamp = etags.folderChangeStamp();
+        String etag = etags.etag("T", parentId, user.getUserId());
+        if (data != null && data.has("ifNoneMatch") && etag.equals(data.get("ifNoneMatch").getAsString())) {
+            return Response.notModified(etag);
+        }
+
         try {
             List<Folders> children;
             if (parentId == null) {
@@ -39,7 +65,18 @@ public class FolderTreeHandler implements RequestHandler {
 
             if (children != null) {
                 JsonArray array = new JsonArray();
+                // Quyền của folder cha chỉ cần tính một lần cho cả danh sách con
+                int parentMask = parentId != null
+                        ? permissions.getFolderPermission(dbConnection, user, parentId) : Permission.NONE;
+                // hasChildren của cả danh sách lấy bằng 1 query thay vì 1 query cho mỗi folder con
+                Set<Integer> withChildren = folderDAO.getChildIdsWithChildren(parentId);
                 for (Folders child : children) {
+                    int childMask = parentId != null
+                            ? permissions.getChildFolderPermission(dbConnection, user, parentId, parentMask, child.getFolderId())
+                            : permissions.getFolderPermission(dbConnection, user, child.getFolderId());
+                    etags.noteChild(parentId, child.getFolderId());
+                    if (!Permission.has(childMask, Permission.READ)) continue;
+
                     JsonObject obj = new JsonObject();
                     obj.addProperty("folderId", child.getFolderId());
                     if (child.getParentId() != null) {
@@ -49,7 +86,7 @@ public class FolderTreeHandler implements RequestHandler {
                     }
                     obj.addProperty("folderName", child.getFolderName());
                     // Thêm thuộc tính để client biết liệu thư mục này có con hay không
-                    obj.addProperty("hasChildren", folderDAO.hasChildren(child.getFolderId()));
+                    obj.addProperty("hasChildren", withChildren.contains(child.getFolderId()));
 
                     if (child.getCreatedAt() != null) {
                         obj.addProperty("createdAt", child.getCreatedAt().toString());
@@ -66,6 +103,8 @@ public class FolderTreeHandler implements RequestHandler {
                 res.setStatus("success");
                 res.setMessage("Folder tree retrieved");
                 res.setData(array);
+                // Cây thay đổi trước khi kịp ghi nhận quan hệ cha/con -> không cấp ETag lần này
+                if (stamp == etags.folderChangeStamp()) res.setEtag(etag);
             } else {
                 res.setStatus("error");
                 res.setMessage("Could not retrieve children for parentId " + parentId);
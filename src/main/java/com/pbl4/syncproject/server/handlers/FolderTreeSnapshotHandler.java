@@ -0,0 +1,229 @@
+package com.pbl4.syncproject.server.handlers;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.pbl4.syncproject.common.dispatcher.RequestHandler;
+import com.pbl4.syncproject.common.jsonhandler.Request;
+import com.pbl4.syncproject.common.jsonhandler.Response;
+import com.pbl4.syncproject.common.model.Folders;
+import com.pbl4.syncproject.common.model.User;
+import com.pbl4.syncproject.server.dao.FolderDAO;
+import com.pbl4.syncproject.server.service.FolderTreeVersion;
+import com.pbl4.syncproject.server.service.Permission;
+import com.pbl4.syncproject.server.service.PermissionResolver;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * FOLDER_TREE_SNAPSHOT: trả cả cây (hoặc cây con giới hạn độ sâu) trong một response gọn, kèm version.
+ *
+ * data (đều không bắt buộc):
+ *   rootId       - gốc của cây con; bỏ trống = mọi folder root
+ *   maxDepth     - số cấp dưới gốc được trả về; bỏ trống = không giới hạn
+ *   sinceVersion - version client đang cache; nếu còn diff được thì chỉ trả phần thay đổi
+ *
+ * Kết quả: { version, full, folders: [[id, parentId, name, hasChildren], ...], removed: [id, ...] }
+ * Với diff, client ghi đè/thêm các dòng trong folders (bỏ qua dòng có parent chưa cache)
+ * và xóa các folder trong removed cùng toàn bộ cây con của chúng. Diff chỉ gồm folder trong cây con rootId
+ * tới độ sâu maxDepth như snapshot; di chuyển folder hay đổi quyền thì trả lại snapshot đầy đủ (full = true).
+ */
+public class FolderTreeSnapshotHandler implements RequestHandler {
+
+    private final Connection dbConnection;
+    private final FolderDAO folderDAO;
+    private final ClientSession session;
+    private final PermissionResolver permissions = PermissionResolver.getInstance();
+
+    public FolderTreeSnapshotHandler(Connection dbConnection, ClientSession session) {
+        this.dbConnection = dbConnection;
+        this.folderDAO = new FolderDAO(dbConnection);
+        this.session = session;
+    }
+
+    @Override
+    public Response handle(Request req) {
+        if (!session.isAuthenticated()) return error("Chưa đăng nhập");
+
+        JsonObject data = req.getData() != null ? req.getData() : new JsonObject();
+        Integer rootId = intOrNull(data, "rootId");
+        Integer maxDepth = intOrNull(data, "maxDepth");
+        String sinceVersion = data.has("sinceVersion") && !data.get("sinceVersion").isJsonNull()
+                ? data.get("sinceVersion").getAsString() : null;
+        if (maxDepth != null && maxDepth < 0) return error("'maxDepth' không hợp lệ");
+
+        try {
+            // Lấy version TRƯỚC khi đọc DB: thay đổi xảy ra trong lúc đọc sẽ có mặt ở lần diff sau
+            FolderTreeVersion versions = FolderTreeVersion.getInstance();
+            String version = versions.current();
+            Map<Integer, FolderTreeVersion.Change> changes =
+                    sinceVersion != null ? versions.changesSince(sinceVersion) : null;
+
+            JsonObject out = changes != null ? diff(changes, rootId, maxDepth) : snapshot(rootId, maxDepth);
+            out.addProperty("version", version);
+            return new Response("success", "Folder tree snapshot", out);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return error("Lỗi lấy cây thư mục: " + e.getMessage());
+        }
+    }
+
+    private JsonObject snapshot(Integer rootId, Integer maxDepth) throws SQLException {
+        User user = session.getUser();
+
+        // Lấy thêm 1 cấp để biết hasChildren của các folder ở tầng cuối
+        List<Folders> rows;
+        if (rootId != null) {
+            rows = folderDAO.getSubtree(rootId, maxDepth != null ? maxDepth + 1 : Integer.MAX_VALUE);
+            if (rows.isEmpty()) throw new SQLException("Folder không tồn tại: id=" + rootId);
+        } else {
+            rows = folderDAO.getAllFolders();
+        }
+
+        Map<Integer, List<Folders>> childrenOf = new HashMap<>();
+        List<Folders> tops = new ArrayList<>();
+        for (Folders f : rows) {
+            boolean isTop = rootId != null ? f.getFolderId() == rootId : f.getParentId() == null;
+            if (isTop) tops.add(f);
+            else if (f.getParentId() != null) childrenOf.computeIfAbsent(f.getParentId(), k -> new ArrayList<>()).add(f);
+        }
+
+        // Duyệt từ trên xuống: quyền của con tính từ quyền cha, folder không đọc được bị cắt cả cây con
+        JsonArray folders = new JsonArray();
+        Deque<Node> queue = new ArrayDeque<>();
+        for (Folders top : tops) {
+            queue.add(new Node(top, permissions.getFolderPermission(dbConnection, user, top.getFolderId()), 0));
+        }
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            Folders f = node.folder;
+            int mask = node.mask;
+            int depth = node.depth;
+            if (!Permission.has(mask, Permission.READ)) continue;
+
+            List<Folders> children = childrenOf.getOrDefault(f.getFolderId(), Collections.emptyList());
+            folders.add(row(f, !children.isEmpty()));
+            if (maxDepth != null && depth >= maxDepth) continue;
+
+            for (Folders c : children) {
+                int childMask = permissions.getChildFolderPermission(dbConnection, user, f.getFolderId(), mask, c.getFolderId());
+                queue.add(new Node(c, childMask, depth + 1));
+            }
+        }
+
+        JsonObject out = new JsonObject();
+        out.addProperty("full", true);
+        if (rootId != null) out.addProperty("rootId", rootId); else out.add("rootId", JsonNull.INSTANCE);
+        if (maxDepth != null) out.addProperty("maxDepth", maxDepth); else out.add("maxDepth", JsonNull.INSTANCE);
+        out.add("folders", folders);
+        out.add("removed", new JsonArray());
+        return out;
+    }
+
+    private JsonObject diff(Map<Integer, FolderTreeVersion.Change> changes, Integer rootId, Integer maxDepth)
+            throws SQLException {
+        User user = session.getUser();
+
+        // Folder còn tồn tại cần đọc lại, và folder cha của các folder bị xóa (để biết chúng có thuộc cây con không)
+        Set<Integer> changedIds = new HashSet<>();
+        Set<Integer> lookup = new HashSet<>();
+        for (Map.Entry<Integer, FolderTreeVersion.Change> e : changes.entrySet()) {
+            FolderTreeVersion.Change c = e.getValue();
+            if (!c.deleted) {
+                changedIds.add(e.getKey());
+                lookup.add(e.getKey());
+            } else if (c.parentId != null) {
+                lookup.add(c.parentId);
+            }
+        }
+        if (rootId != null) lookup.add(rootId);
+
+        // 3 query cho toàn bộ diff: độ sâu trong cây con, đọc lại các folder và hasChildren của chúng
+        Map<Integer, Integer> depths = folderDAO.getDepthsBelow(rootId, lookup);
+
+        JsonArray removed = new JsonArray();
+        JsonArray folders = new JsonArray();
+        if (rootId != null && !depths.containsKey(rootId)) {
+            // Gốc (hoặc một tổ tiên của nó) đã bị xóa: cả cây con client đang cache không còn
+            removed.add(rootId);
+            return diffResult(folders, removed);
+        }
+        for (Map.Entry<Integer, FolderTreeVersion.Change> e : changes.entrySet()) {
+            FolderTreeVersion.Change c = e.getValue();
+            if (!c.deleted) continue;
+            int id = e.getKey();
+            boolean inScope = rootId != null
+                    ? id == rootId || c.parentId != null && withinDepth(depths.get(c.parentId), maxDepth, 1)
+                    : c.parentId == null || withinDepth(depths.get(c.parentId), maxDepth, 1);
+            if (inScope) removed.add(id);
+        }
+
+        Set<Integer> scoped = new HashSet<>();
+        for (Integer id : changedIds) {
+            if (withinDepth(depths.get(id), maxDepth, 0)) scoped.add(id);
+        }
+        List<Folders> current = folderDAO.getFoldersByIds(scoped);
+        Set<Integer> withChildren = folderDAO.getIdsWithChildren(scoped);
+
+        // Folder bị xóa sau khi được ghi nhận là thay đổi không có trong depths: lần diff sau mang bản ghi xóa
+        for (Folders f : current) {
+            int mask = permissions.getFolderPermission(dbConnection, user, f.getFolderId());
+            if (Permission.has(mask, Permission.READ)) folders.add(row(f, withChildren.contains(f.getFolderId())));
+            else removed.add(f.getFolderId());
+        }
+        return diffResult(folders, removed);
+    }
+
+    private static JsonObject diffResult(JsonArray folders, JsonArray removed) {
+        JsonObject out = new JsonObject();
+        out.addProperty("full", false);
+        out.add("folders", folders);
+        out.add("removed", removed);
+        return out;
+    }
+
+    // Folder ở độ sâu depth (+ offset cấp) có nằm trong giới hạn maxDepth không; null = không thuộc cây con
+    private static boolean withinDepth(Integer depth, Integer maxDepth, int offset) {
+        return depth != null && (maxDepth == null || depth + offset <= maxDepth);
+    }
+
+    private static JsonArray row(Folders f, boolean hasChildren) {
+        JsonArray r = new JsonArray();
+        r.add(f.getFolderId());
+        if (f.getParentId() != null) r.add(f.getParentId()); else r.add(JsonNull.INSTANCE);
+        r.add(f.getFolderName());
+        r.add(hasChildren);
+        return r;
+    }
+
+    private static final class Node {
+        final Folders folder;
+        final int mask;
+        final int depth;
+
+        Node(Folders folder, int mask, int depth) {
+            this.folder = folder;
+            this.mask = mask;
+            this.depth = depth;
+        }
+    }
+
+    private static Integer intOrNull(JsonObject data, String key) {
+        return data.has(key) && !data.get(key).isJsonNull() ? data.get(key).getAsInt() : null;
+    }
+
+    private Response error(String msg) {
+        return new Response("error", msg, null);
+    }
+}
@@ -0,0 +1,73 @@
+package com.pbl4.syncproject.server.handlers;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.pbl4.syncproject.common.dispatcher.RequestHandler;
+import com.pbl4.syncproject.common.jsonhandler.Request;
+import com.pbl4.syncproject.common.jsonhandler.Response;
+import com.pbl4.syncproject.server.dao.FileVersionDAO;
+import com.pbl4.syncproject.server.dao.FilesDAO;
+import com.pbl4.syncproject.server.service.Permission;
+import com.pbl4.syncproject.server.service.PermissionResolver;
+
+import java.sql.Connection;
+
+/**
+ * LIST_VERSIONS: các phiên bản cũ của file (mới nhất trước), cần quyền đọc file.
+ *
+ * data: fileId
+ * Kết quả: fileId, currentVersion, versions[] {versionNo, size, hash, lastModified, createdAt, kind, storedSize}
+ */
+public class ListVersionsHandler implements RequestHandler {
+
+    private final Connection dbConnection;
+    private final ClientSession session;
+
+    public ListVersionsHandler(Connection dbConnection, ClientSession session) {
+        this.dbConnection = dbConnection;
+        this.session = session;
+    }
+
+    @Override
+    public Response handle(Request req) {
+        if (!session.isAuthenticated()) return error("Chưa đăng nhập");
+        try {
+            JsonObject data = req.getData();
+            if (data == null || !data.has("fileId")) return error("Thiếu 'fileId'");
+            int fileId = data.get("fileId").getAsInt();
+
+            FilesDAO.CurrentContent current = new FilesDAO(dbConnection).getCurrentContent(fileId);
+            if (current == null) return error("File không tồn tại");
+            int mask = PermissionResolver.getInstance()
+                    .getFilePermission(dbConnection, session.getUser(), current.folderId, fileId);
+            if (!Permission.has(mask, Permission.READ)) return error("Không có quyền đọc file này");
+
+            JsonArray versions = new JsonArray();
+            for (FileVersionDAO.Version v : new FileVersionDAO(dbConnection).listVersions(fileId)) {
+                JsonObject o = new JsonObject();
+                o.addProperty("versionNo", v.versionNo);
+                o.addProperty("size", v.size);
+                o.addProperty("hash", v.hash);
+                o.addProperty("lastModified", v.lastModifiedMs);
+                o.addProperty("createdAt", v.createdAtMs);
+                o.addProperty("kind", v.kind);
+                o.addProperty("storedSize", v.storedSize);
+                versions.add(o);
+            }
+
+            JsonObject out = new JsonObject();
+            out.addProperty("fileId", fileId);
+            out.addProperty("currentVersion", current.versionNo);
+            out.add("versions", versions);
+            return new Response("success", "OK", out);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return error("Lỗi lấy danh sách phiên bản: " + e.getMessage());
+        }
+    }
+
+    private Response error(String msg) {
+        return new Response("error", msg, null);
+    }
+}
@@ -4,15 +4,18 @@ import com.pbl4.syncproject.common.dispatcher.RequestHandler;
 import com.pbl4.syncproject.common.jsonhandler.Request;
 import com.pbl4.syncproject.common.jsonhandler.Response;
 import com.google.gson.JsonObject;
+import com.pbl4.syncproject.common.model.User;
 import com.pbl4.syncproject.server.dao.UserDAO;
 
 import java.sql.Connection;
 
 public class LoginHandler implements RequestHandler {
     private final UserDAO userDAO;
+    private final ClientSession session;
 
-    public LoginHandler(Connection connection) {
+    public LoginHandler(Connection connection, ClientSession session) {
         this.userDAO = new UserDAO(connection);
+        this.session = session;
     }
 
     @Override
@@ -22,10 +25,20 @@ public class LoginHandler implements RequestHandler {
         String password = data.get("password").getAsString();
 
         Response res = new Response();
-        if (userDAO.checkLogin(username, password)) {
+        User user = userDAO.findByLogin(username, password);
+        if (user != null) {
+            session.setUser(user);
+
+            JsonObject out = new JsonObject();
+            out.addProperty("userId", user.getUserId());
+            out.addProperty("role", user.getRoleName());
+
             res.setStatus("success");
             res.setMessage("Login successful");
+            res.setData(out);
         } else {
+            // Đăng nhập lại thất bại thì không giữ quyền của user trước đó trên kết nối này
+            session.setUser(null);
             res.setStatus("error");
             res.setMessage("Invalid username or password");
         }
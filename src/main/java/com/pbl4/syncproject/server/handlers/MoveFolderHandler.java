@@ -0,0 +1,74 @@
+package com.pbl4.syncproject.server.handlers;
+
+import com.google.gson.JsonObject;
+import com.pbl4.syncproject.common.dispatcher.RequestHandler;
+import com.pbl4.syncproject.common.jsonhandler.Request;
+import com.pbl4.syncproject.common.jsonhandler.Response;
+import com.pbl4.syncproject.server.dao.FolderDAO;
+import com.pbl4.syncproject.server.service.FolderJobService;
+import com.pbl4.syncproject.server.service.Permission;
+import com.pbl4.syncproject.server.service.PermissionResolver;
+
+import java.sql.Connection;
+
+/**
+ * MOVE_FOLDER: chuyển folder (cùng cả cây con) sang parent khác. Trả về ngay operationId, việc chuyển chạy nền
+ * (FolderJobService); theo dõi bằng FOLDER_JOB_STATUS.
+ * Cần quyền DELETE trên folder nguồn (nó rời khỏi parent cũ) và WRITE trên parent mới.
+ *
+ * data: { "folderId", "newParentId" }
+ */
+public class MoveFolderHandler implements RequestHandler {
+    private final Connection dbConnection;
+    private final FolderDAO folderDAO;
+    private final ClientSession session;
+
+    public MoveFolderHandler(Connection dbConnection, ClientSession session) {
+        this.dbConnection = dbConnection;
+        this.folderDAO = new FolderDAO(dbConnection);
+        this.session = session;
+    }
+
+    @Override
+    public Response handle(Request req) {
+        if (!session.isAuthenticated()) return error("Chưa đăng nhập");
+        try {
+            JsonObject data = req.getData();
+            if (data == null || !data.has("folderId") || !data.has("newParentId")
+                    || data.get("folderId").isJsonNull() || data.get("newParentId").isJsonNull()) {
+                return error("Thiếu 'folderId' hoặc 'newParentId'");
+            }
+            int folderId = data.get("folderId").getAsInt();
+            int newParentId = data.get("newParentId").getAsInt();
+
+            if (folderDAO.getParentId(folderId) == null) return error("Không thể chuyển folder root");
+            folderDAO.getParentId(newParentId); // kiểm tra parent mới tồn tại
+            if (folderDAO.isDescendant(newParentId, folderId)) {
+                return error("Không thể chuyển folder vào chính nó hoặc cây con của nó");
+            }
+
+            PermissionResolver resolver = PermissionResolver.getInstance();
+            if (!Permission.has(resolver.getFolderPermission(dbConnection, session.getUser(), folderId), Permission.DELETE)) {
+                return error("Không có quyền chuyển thư mục này");
+            }
+            if (!Permission.has(resolver.getFolderPermission(dbConnection, session.getUser(), newParentId), Permission.WRITE)) {
+                return error("Không có quyền ghi vào thư mục đích");
+            }
+
+            FolderJobService jobs = FolderJobService.getInstance();
+            FolderJobService.Job busy = jobs.findConflicting(dbConnection, folderId, newParentId);
+            if (busy != null) return error("Thư mục đang có thao tác khác chạy (operationId=" + busy.id + ")");
+
+            FolderJobService.Job job = jobs.submitMove(folderId, newParentId, session.getUserId());
+            return new Response("success", "Đã nhận yêu cầu chuyển thư mục", job.toJson());
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return error("Lỗi chuyển thư mục: " + e.getMessage());
+        }
+    }
+
+    private Response error(String msg) {
+        return new Response("error", msg, null);
+    }
+}
@@ -0,0 +1,41 @@
+package com.pbl4.syncproject.server.handlers;
+
+import com.pbl4.syncproject.common.dispatcher.RequestHandler;
+import com.pbl4.syncproject.common.jsonhandler.Request;
+import com.pbl4.syncproject.common.jsonhandler.Response;
+import com.pbl4.syncproject.server.service.ReplicaSync;
+
+import java.sql.Connection;
+
+/**
+ * PROMOTE_REPLICA: dừng nhân bản và biến replica này thành primary nhận ghi (chỉ ADMIN, thao tác thủ công).
+ * Primary cũ phải được dừng / chuyển hướng client trước, server không tự kiểm tra việc đó.
+ */
+public class PromoteReplicaHandler implements RequestHandler {
+    private final Connection dbConnection;
+    private final ClientSession session;
+
+    public PromoteReplicaHandler(Connection dbConnection, ClientSession session) {
+        this.dbConnection = dbConnection;
+        this.session = session;
+    }
+
+    @Override
+    public Response handle(Request req) {
+        if (!session.isAuthenticated() || !session.getUser().isAdmin()) {
+            return error("Chỉ ADMIN mới được promote replica");
+        }
+        try {
+            return new Response("success", "Đã promote thành primary", ReplicaSync.getInstance().promote(dbConnection));
+        } catch (IllegalStateException e) {
+            return error(e.getMessage());
+        } catch (Exception e) {
+            e.printStackTrace();
+            return error("Promote thất bại: " + e.getMessage());
+        }
+    }
+
+    private Response error(String msg) {
+        return new Response("error", msg, null);
+    }
+}
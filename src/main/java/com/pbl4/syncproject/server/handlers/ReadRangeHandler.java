@@ -0,0 +1,152 @@
+package com.pbl4.syncproject.server.handlers;
+
+import com.google.gson.JsonObject;
+import com.pbl4.syncproject.common.dispatcher.RequestHandler;
+import com.pbl4.syncproject.common.jsonhandler.Request;
+import com.pbl4.syncproject.common.jsonhandler.Response;
+import com.pbl4.syncproject.common.storage.StorageManager;
+import com.pbl4.syncproject.common.storage.StoredContent;
+import com.pbl4.syncproject.server.dao.FilesDAO;
+import com.pbl4.syncproject.server.service.ContentCache;
+import com.pbl4.syncproject.server.service.Permission;
+import com.pbl4.syncproject.server.service.PermissionResolver;
+import com.pbl4.syncproject.server.service.ServerMetrics;
+
+import java.nio.ByteBuffer;
+import java.nio.file.NoSuchFileException;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * READ_RANGE: đọc một đoạn [offset, offset + length) của file bằng FileChannel đọc theo vị trí
+ * (file riêng hoặc đoạn trong segment, xem StoredContent).
+ * Dùng để tải file lớn theo từng đoạn (tiếp tục được khi bị ngắt) hoặc chỉ đọc phần đầu để xem trước.
+ *
+ * data: fileId, offset (mặc định 0), length (mặc định MAX_LENGTH, bị cắt ở cuối file và ở MAX_LENGTH)
+ * Kết quả: fileId, fileName, fileSize, hash, offset, length (số byte thật sự trả về), eof, content (base64)
+ * File nhỏ (≤ content.cache.max.file.bytes) được phục vụ từ ContentCache khi còn đúng hash trong DB.
+ * Client so "hash" giữa các đoạn: hash đổi nghĩa là file đã bị ghi đè, phải tải lại từ đầu.
+ */
+public class ReadRangeHandler implements RequestHandler {
+
+    // Một response là một dòng JSON: giữ mỗi đoạn vừa phải (base64 tăng ~33%)
+    public static final int MAX_LENGTH = 4 * 1024 * 1024;
+
+    private final Connection dbConnection;
+    private final ClientSession session;
+    private final PermissionResolver permissions = PermissionResolver.getInstance();
+    private final ContentCache cache = ContentCache.getInstance();
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+
+    public ReadRangeHandler(Connection dbConnection, ClientSession session) {
+        this.dbConnection = dbConnection;
+        this.session = session;
+    }
+
+    @Override
+    public Response handle(Request req) {
+        if (!session.isAuthenticated()) return error("Chưa đăng nhập");
+        try {
+            JsonObject data = req.getData();
+            if (data == null || !data.has("fileId")) return error("Thiếu 'fileId'");
+            int fileId = data.get("fileId").getAsInt();
+            long offset = data.has("offset") ? data.get("offset").getAsLong() : 0L;
+            long length = data.has("length") ? data.get("length").getAsLong() : MAX_LENGTH;
+            if (offset < 0 || length < 0) return error("offset/length không được âm");
+
+            com.pbl4.syncproject.common.model.Files file = new FilesDAO(dbConnection).getFileById(fileId);
+            if (file == null) return error("File không tồn tại");
+            int mask = permissions.getFilePermission(dbConnection, session.getUser(), file.getFolderId(), fileId);
+            if (!Permission.has(mask, Permission.READ)) return error("Không có quyền đọc file này");
+
+            // File nhỏ tải nhiều lần: lấy từ cache nếu còn đúng bản có hash hiện tại
+            byte[] cached = cache.get(fileId, file.getFileHash(), file.getSize());
+            if (cached != null) return success(file, offset, length, cached);
+
+            StorageManager sm = StorageManager.getInstance();
+
+            byte[] bytes;
+            long fileSize;
+            StoredContent content;
+            try {
+                content = sm.openContent(dbConnection, fileId, file.getFolderId(), file.getFileName());
+            } catch (NoSuchFileException e) {
+                // Có thể vừa được StorageLayoutMigrator chuyển sang ObjectStore / vừa được gói: tìm lại một lần
+                try {
+                    content = sm.openContent(dbConnection, fileId, file.getFolderId(), file.getFileName());
+                } catch (NoSuchFileException e2) {
+                    return error("File không còn trên ổ đĩa");
+                }
+            }
+            try (StoredContent c = content) {
+                fileSize = c.size();
+                if (cache.accepts(fileSize)) {
+                    // Đọc cả file (nhỏ) để đưa vào cache, nếu đúng là nội dung có hash trong DB
+                    byte[] whole = c.readAll();
+                    if (file.getFileHash() != null && file.getFileHash().equalsIgnoreCase(sha256(whole))) {
+                        cache.put(fileId, file.getFileHash(), whole);
+                    }
+                    return success(file, offset, length, whole);
+                }
+                if (offset > fileSize) {
+                    return error("offset " + offset + " vượt quá kích thước file (" + fileSize + ")");
+                }
+                int n = (int) Math.min(Math.min(length, MAX_LENGTH), fileSize - offset);
+                ByteBuffer buf = ByteBuffer.allocate(n);
+                long pos = offset;
+                while (buf.hasRemaining()) {
+                    int r = c.read(buf, pos);
+                    if (r < 0) break; // file bị cắt ngắn trong lúc đọc
+                    pos += r;
+                }
+                bytes = buf.position() == n ? buf.array() : Arrays.copyOf(buf.array(), buf.position());
+            }
+
+            return response(file, offset, bytes, fileSize);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return error("Đọc file thất bại: " + e.getMessage());
+        }
+    }
+
+    // Trả đoạn [offset, offset + length) từ nội dung đầy đủ đã có trong bộ nhớ
+    private Response success(com.pbl4.syncproject.common.model.Files file, long offset, long length, byte[] content) {
+        if (offset > content.length) {
+            return error("offset " + offset + " vượt quá kích thước file (" + content.length + ")");
+        }
+        int n = (int) Math.min(Math.min(length, MAX_LENGTH), content.length - offset);
+        byte[] bytes = offset == 0 && n == content.length
+                ? content : Arrays.copyOfRange(content, (int) offset, (int) offset + n);
+        return response(file, offset, bytes, content.length);
+    }
+
+    private Response response(com.pbl4.syncproject.common.model.Files file, long offset, byte[] bytes, long fileSize) {
+        boolean whole = offset == 0 && bytes.length == fileSize;
+        metrics.add(whole ? "download.whole.bytes" : "download.range.bytes", bytes.length);
+        metrics.increment(whole ? "download.whole.requests" : "download.range.requests");
+
+        JsonObject out = new JsonObject();
+        out.addProperty("fileId", file.getFileId());
+        out.addProperty("fileName", file.getFileName());
+        out.addProperty("fileSize", fileSize);
+        out.addProperty("hash", file.getFileHash());
+        out.addProperty("offset", offset);
+        out.addProperty("length", bytes.length);
+        out.addProperty("eof", offset + bytes.length >= fileSize);
+        out.addProperty("content", Base64.getEncoder().encodeToString(bytes));
+        return new Response("success", "OK", out);
+    }
+
+    private static String sha256(byte[] bytes) throws Exception {
+        StringBuilder sb = new StringBuilder(64);
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+
+    private Response error(String msg) {
+        return new Response("error", msg, null);
+    }
+}
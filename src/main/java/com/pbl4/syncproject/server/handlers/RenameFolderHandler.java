@@ -0,0 +1,87 @@
+package com.pbl4.syncproject.server.handlers;
+
+import com.google.gson.JsonObject;
+import com.pbl4.syncproject.common.dispatcher.RequestHandler;
+import com.pbl4.syncproject.common.jsonhandler.Request;
+import com.pbl4.syncproject.common.jsonhandler.Response;
+import com.pbl4.syncproject.common.storage.StorageManager;
+import com.pbl4.syncproject.server.dao.FolderDAO;
+import com.pbl4.syncproject.server.service.FolderJobService;
+import com.pbl4.syncproject.server.service.NamespaceEvents;
+import com.pbl4.syncproject.server.service.Permission;
+import com.pbl4.syncproject.server.service.PermissionResolver;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+
+/**
+ * RENAME_FOLDER: đổi tên folder. data: { "folderId", "newName" }
+ * Closure table chỉ lưu ID nên không cần sửa; chỉ đổi tên thư mục trên đĩa và FolderName.
+ */
+public class RenameFolderHandler implements RequestHandler {
+    private final Connection dbConnection;
+    private final FolderDAO folderDAO;
+    private final ClientSession session;
+
+    public RenameFolderHandler(Connection dbConnection, ClientSession session) {
+        this.dbConnection = dbConnection;
+        this.folderDAO = new FolderDAO(dbConnection);
+        this.session = session;
+    }
+
+    @Override
+    public Response handle(Request req) {
+        if (!session.isAuthenticated()) return error("Chưa đăng nhập");
+        try {
+            JsonObject data = req.getData();
+            if (data == null || !data.has("folderId") || !data.has("newName")) {
+                return error("Thiếu 'folderId' hoặc 'newName'");
+            }
+            int folderId = data.get("folderId").getAsInt();
+            String newName = StorageManager.sanitizeName(data.get("newName").getAsString());
+            if (newName.isBlank()) return error("Tên thư mục không hợp lệ");
+
+            int mask = PermissionResolver.getInstance().getFolderPermission(dbConnection, session.getUser(), folderId);
+            if (!Permission.has(mask, Permission.WRITE)) return error("Không có quyền đổi tên thư mục");
+
+            // Cây đang bị xóa / chuyển bởi job nền: đổi tên (và dời thư mục trên đĩa) sẽ chen vào giữa job
+            FolderJobService.Job busy = FolderJobService.getInstance().findConflicting(dbConnection, folderId);
+            if (busy != null) return error("Thư mục đang có thao tác khác chạy (operationId=" + busy.id + ")");
+
+            Integer parentId = folderDAO.getParentId(folderId);
+            if (folderDAO.existsInParent(parentId, newName)) return error("Thư mục đã tồn tại");
+
+            // Node root ứng với storage.root nên không có thư mục riêng để đổi tên.
+            // Layout object: thư mục cũ chỉ còn khi chưa migrate xong, sau đó rename chỉ là cập nhật DB
+            StorageManager sm = StorageManager.getInstance();
+            Path oldPath = sm.resolveFolderPathFromDb(dbConnection, folderId);
+            Path newPath = parentId != null ? oldPath.resolveSibling(newName) : oldPath;
+            boolean moved = false;
+            if (!newPath.equals(oldPath) && Files.exists(oldPath)) {
+                Files.move(oldPath, newPath);
+                moved = true;
+            }
+            try {
+                folderDAO.renameFolder(folderId, newName);
+            } catch (Exception e) {
+                if (moved) Files.move(newPath, oldPath);
+                throw e;
+            }
+            NamespaceEvents.folderRenamed(folderId, newName);
+
+            JsonObject out = new JsonObject();
+            out.addProperty("folderId", folderId);
+            out.addProperty("folderName", newName);
+            return new Response("success", "Đổi tên thư mục thành công", out);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return error("Lỗi đổi tên thư mục: " + e.getMessage());
+        }
+    }
+
+    private Response error(String msg) {
+        return new Response("error", msg, null);
+    }
+}
@@ -0,0 +1,44 @@
+package com.pbl4.syncproject.server.handlers;
+
+import com.google.gson.JsonObject;
+import com.pbl4.syncproject.common.dispatcher.RequestHandler;
+import com.pbl4.syncproject.common.jsonhandler.Request;
+import com.pbl4.syncproject.common.jsonhandler.Response;
+import com.pbl4.syncproject.server.service.ReplicationSource;
+
+import java.sql.Connection;
+
+/**
+ * REPLICATION_PULL: replica lấy các bản ghi ReplicationLog sau seq đã áp (chỉ ADMIN, xem ReplicationSource.pull).
+ * data: { "afterSeq", "limit" (mặc định 500) }
+ */
+public class ReplicationPullHandler implements RequestHandler {
+    private final Connection dbConnection;
+    private final ClientSession session;
+
+    public ReplicationPullHandler(Connection dbConnection, ClientSession session) {
+        this.dbConnection = dbConnection;
+        this.session = session;
+    }
+
+    @Override
+    public Response handle(Request req) {
+        if (!session.isAuthenticated() || !session.getUser().isAdmin()) {
+            return error("Chỉ ADMIN mới được nhân bản");
+        }
+        try {
+            JsonObject data = req.getData();
+            if (data == null || !data.has("afterSeq")) return error("Thiếu 'afterSeq'");
+            long afterSeq = data.get("afterSeq").getAsLong();
+            int limit = data.has("limit") ? data.get("limit").getAsInt() : 500;
+            return new Response("success", "OK", ReplicationSource.getInstance().pull(dbConnection, afterSeq, limit));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return error("Lỗi đọc nhật ký nhân bản: " + e.getMessage());
+        }
+    }
+
+    private Response error(String msg) {
+        return new Response("error", msg, null);
+    }
+}
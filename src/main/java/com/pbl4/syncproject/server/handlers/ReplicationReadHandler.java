@@ -0,0 +1,91 @@
+package com.pbl4.syncproject.server.handlers;
+
+import com.google.gson.JsonObject;
+import com.pbl4.syncproject.common.dispatcher.RequestHandler;
+import com.pbl4.syncproject.common.jsonhandler.Request;
+import com.pbl4.syncproject.common.jsonhandler.Response;
+import com.pbl4.syncproject.common.storage.StorageManager;
+import com.pbl4.syncproject.common.storage.StoredContent;
+import com.pbl4.syncproject.server.dao.FilesDAO;
+import com.pbl4.syncproject.server.service.ServerMetrics;
+
+import java.nio.ByteBuffer;
+import java.nio.file.NoSuchFileException;
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * REPLICATION_READ: như READ_RANGE nhưng cho replica tải nội dung đã lưu của một FileID, kể cả file trong thùng rác
+ * (chỉ ADMIN, không đi qua ContentCache, không tính vào bộ đếm download).
+ *
+ * data: fileId, offset (mặc định 0), length (mặc định / tối đa ReadRangeHandler.MAX_LENGTH)
+ * Kết quả: fileId, fileSize, hash, offset, length, eof, content (base64)
+ */
+public class ReplicationReadHandler implements RequestHandler {
+    private final Connection dbConnection;
+    private final ClientSession session;
+
+    public ReplicationReadHandler(Connection dbConnection, ClientSession session) {
+        this.dbConnection = dbConnection;
+        this.session = session;
+    }
+
+    @Override
+    public Response handle(Request req) {
+        if (!session.isAuthenticated() || !session.getUser().isAdmin()) {
+            return error("Chỉ ADMIN mới được nhân bản");
+        }
+        try {
+            JsonObject data = req.getData();
+            if (data == null || !data.has("fileId")) return error("Thiếu 'fileId'");
+            int fileId = data.get("fileId").getAsInt();
+            long offset = data.has("offset") ? data.get("offset").getAsLong() : 0L;
+            long length = data.has("length") ? data.get("length").getAsLong() : ReadRangeHandler.MAX_LENGTH;
+            if (offset < 0 || length < 0) return error("offset/length không được âm");
+
+            FilesDAO.CurrentContent file = new FilesDAO(dbConnection).getCurrentContent(fileId);
+            if (file == null) return error("File không tồn tại");
+
+            byte[] bytes;
+            long fileSize;
+            try (StoredContent c = StorageManager.getInstance()
+                    .openContent(dbConnection, fileId, file.folderId, file.fileName)) {
+                fileSize = c.size();
+                if (offset > fileSize) {
+                    return error("offset " + offset + " vượt quá kích thước file (" + fileSize + ")");
+                }
+                int n = (int) Math.min(Math.min(length, ReadRangeHandler.MAX_LENGTH), fileSize - offset);
+                ByteBuffer buf = ByteBuffer.allocate(n);
+                long pos = offset;
+                while (buf.hasRemaining()) {
+                    int r = c.read(buf, pos);
+                    if (r < 0) break;
+                    pos += r;
+                }
+                bytes = buf.position() == n ? buf.array() : Arrays.copyOf(buf.array(), buf.position());
+            } catch (NoSuchFileException e) {
+                return error("File không còn trên ổ đĩa");
+            }
+            ServerMetrics.getInstance().add("replication.read.bytes", bytes.length);
+
+            JsonObject out = new JsonObject();
+            out.addProperty("fileId", fileId);
+            out.addProperty("fileSize", fileSize);
+            out.addProperty("hash", file.hash);
+            out.addProperty("offset", offset);
+            out.addProperty("length", bytes.length);
+            out.addProperty("eof", offset + bytes.length >= fileSize);
+            out.addProperty("content", Base64.getEncoder().encodeToString(bytes));
+            return new Response("success", "OK", out);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return error("Đọc file thất bại: " + e.getMessage());
+        }
+    }
+
+    private Response error(String msg) {
+        return new Response("error", msg, null);
+    }
+}
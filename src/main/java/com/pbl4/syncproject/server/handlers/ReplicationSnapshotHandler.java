@@ -0,0 +1,47 @@
+package com.pbl4.syncproject.server.handlers;
+
+import com.google.gson.JsonObject;
+import com.pbl4.syncproject.common.dispatcher.RequestHandler;
+import com.pbl4.syncproject.common.jsonhandler.Request;
+import com.pbl4.syncproject.common.jsonhandler.Response;
+import com.pbl4.syncproject.server.service.ReplicationSource;
+
+import java.sql.Connection;
+
+/**
+ * REPLICATION_SNAPSHOT: một trang dòng của một bảng được nhân bản, cho replica nạp lần đầu
+ * (chỉ ADMIN, xem ReplicationSource.snapshot).
+ * data: { "table", "afterKey" (mặc định 0), "limit" (mặc định 500) }
+ */
+public class ReplicationSnapshotHandler implements RequestHandler {
+    private final Connection dbConnection;
+    private final ClientSession session;
+
+    public ReplicationSnapshotHandler(Connection dbConnection, ClientSession session) {
+        this.dbConnection = dbConnection;
+        this.session = session;
+    }
+
+    @Override
+    public Response handle(Request req) {
+        if (!session.isAuthenticated() || !session.getUser().isAdmin()) {
+            return error("Chỉ ADMIN mới được nhân bản");
+        }
+        try {
+            JsonObject data = req.getData();
+            if (data == null || !data.has("table")) return error("Thiếu 'table'");
+            String table = data.get("table").getAsString();
+            long afterKey = data.has("afterKey") ? data.get("afterKey").getAsLong() : 0L;
+            int limit = data.has("limit") ? data.get("limit").getAsInt() : 500;
+            return new Response("success", "OK",
+                    ReplicationSource.getInstance().snapshot(dbConnection, table, afterKey, limit));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return error("Lỗi đọc snapshot: " + e.getMessage());
+        }
+    }
+
+    private Response error(String msg) {
+        return new Response("error", msg, null);
+    }
+}
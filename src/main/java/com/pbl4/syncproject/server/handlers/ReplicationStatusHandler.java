@@ -0,0 +1,39 @@
+package com.pbl4.syncproject.server.handlers;
+
+import com.pbl4.syncproject.common.dispatcher.RequestHandler;
+import com.pbl4.syncproject.common.jsonhandler.Request;
+import com.pbl4.syncproject.common.jsonhandler.Response;
+import com.pbl4.syncproject.server.service.ReplicaSync;
+
+import java.sql.Connection;
+
+/**
+ * REPLICATION_STATUS: vai trò của server và, với replica, seq đã áp / head của primary / độ trễ / số file còn chờ
+ * tải nội dung (chỉ ADMIN).
+ */
+public class ReplicationStatusHandler implements RequestHandler {
+    private final Connection dbConnection;
+    private final ClientSession session;
+
+    public ReplicationStatusHandler(Connection dbConnection, ClientSession session) {
+        this.dbConnection = dbConnection;
+        this.session = session;
+    }
+
+    @Override
+    public Response handle(Request req) {
+        if (!session.isAuthenticated() || !session.getUser().isAdmin()) {
+            return error("Chỉ ADMIN mới được xem trạng thái nhân bản");
+        }
+        try {
+            return new Response("success", "OK", ReplicaSync.getInstance().status(dbConnection));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return error("Lỗi đọc trạng thái nhân bản: " + e.getMessage());
+        }
+    }
+
+    private Response error(String msg) {
+        return new Response("error", msg, null);
+    }
+}
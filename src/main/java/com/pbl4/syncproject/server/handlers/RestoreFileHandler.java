@@ -0,0 +1,63 @@
+package com.pbl4.syncproject.server.handlers;
+
+import com.google.gson.JsonObject;
+import com.pbl4.syncproject.common.dispatcher.RequestHandler;
+import com.pbl4.syncproject.common.jsonhandler.Request;
+import com.pbl4.syncproject.common.jsonhandler.Response;
+import com.pbl4.syncproject.server.dao.FilesDAO;
+import com.pbl4.syncproject.server.service.NamespaceEvents;
+import com.pbl4.syncproject.server.service.Permission;
+import com.pbl4.syncproject.server.service.PermissionResolver;
+
+import java.sql.Connection;
+
+/**
+ * RESTORE_FILE: lấy file ra khỏi thùng rác (cần quyền ghi trên file).
+ *
+ * data: fileId
+ */
+public class RestoreFileHandler implements RequestHandler {
+
+    private final Connection dbConnection;
+    private final ClientSession session;
+
+    public RestoreFileHandler(Connection dbConnection, ClientSession session) {
+        this.dbConnection = dbConnection;
+        this.session = session;
+    }
+
+    @Override
+    public Response handle(Request req) {
+        if (!session.isAuthenticated()) return error("Chưa đăng nhập");
+        try {
+            JsonObject data = req.getData();
+            if (data == null || !data.has("fileId")) return error("Thiếu 'fileId'");
+            int fileId = data.get("fileId").getAsInt();
+
+            FilesDAO filesDAO = new FilesDAO(dbConnection);
+            FilesDAO.TrashedFile file = filesDAO.getTrashedFile(fileId);
+            if (file == null) return error("File không có trong thùng rác");
+
+            int mask = PermissionResolver.getInstance()
+                    .getFilePermission(dbConnection, session.getUser(), file.folderId, fileId);
+            if (!Permission.has(mask, Permission.WRITE)) return error("Không có quyền khôi phục file này");
+
+            if (!filesDAO.restoreFromTrash(fileId)) return error("File không có trong thùng rác");
+            NamespaceEvents.fileUpserted(fileId, file.folderId, file.fileName, file.size, file.lastModifiedMs);
+
+            JsonObject out = new JsonObject();
+            out.addProperty("fileId", fileId);
+            out.addProperty("folderId", file.folderId);
+            out.addProperty("fileName", file.fileName);
+            return new Response("success", "Đã khôi phục file", out);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return error("Lỗi khôi phục file: " + e.getMessage());
+        }
+    }
+
+    private Response error(String msg) {
+        return new Response("error", msg, null);
+    }
+}
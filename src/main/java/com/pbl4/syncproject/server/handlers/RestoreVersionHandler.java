@@ -0,0 +1,73 @@
+package com.pbl4.syncproject.server.handlers;
+
+import com.google.gson.JsonObject;
+import com.pbl4.syncproject.common.dispatcher.RequestHandler;
+import com.pbl4.syncproject.common.jsonhandler.Request;
+import com.pbl4.syncproject.common.jsonhandler.Response;
+import com.pbl4.syncproject.server.dao.FilesDAO;
+import com.pbl4.syncproject.server.service.FileContentWriter;
+import com.pbl4.syncproject.server.service.Permission;
+import com.pbl4.syncproject.server.service.PermissionResolver;
+import com.pbl4.syncproject.server.service.VersionService;
+
+import java.sql.Connection;
+
+/**
+ * RESTORE_VERSION: đưa nội dung của một phiên bản cũ trở thành nội dung hiện tại (cần quyền ghi file).
+ * Giống một upload mới: nội dung đang có được giữ lại thành phiên bản kế tiếp nên thao tác này cũng hoàn tác được.
+ *
+ * data: fileId, versionNo
+ */
+public class RestoreVersionHandler implements RequestHandler {
+
+    private final Connection dbConnection;
+    private final ClientSession session;
+
+    public RestoreVersionHandler(Connection dbConnection, ClientSession session) {
+        this.dbConnection = dbConnection;
+        this.session = session;
+    }
+
+    @Override
+    public Response handle(Request req) {
+        if (!session.isAuthenticated()) return error("Chưa đăng nhập");
+        try {
+            JsonObject data = req.getData();
+            if (data == null || !data.has("fileId") || !data.has("versionNo")) {
+                return error("Thiếu 'fileId' hoặc 'versionNo'");
+            }
+            int fileId = data.get("fileId").getAsInt();
+            int versionNo = data.get("versionNo").getAsInt();
+
+            FilesDAO.CurrentContent current = new FilesDAO(dbConnection).getCurrentContent(fileId);
+            if (current == null) return error("File không tồn tại");
+            int mask = PermissionResolver.getInstance()
+                    .getFilePermission(dbConnection, session.getUser(), current.folderId, fileId);
+            if (!Permission.has(mask, Permission.WRITE)) return error("Không có quyền ghi file này");
+            if (versionNo == current.versionNo) return error("Đây đã là phiên bản hiện tại");
+
+            VersionService versions = VersionService.getInstance();
+            byte[] content = versions.reconstruct(dbConnection, fileId, versionNo);
+            FileContentWriter.Written w = new FileContentWriter(dbConnection)
+                    .writeBytes(current.folderId, current.fileName, content, versions.hashOf(content));
+
+            JsonObject out = new JsonObject();
+            out.addProperty("fileId", w.fileId);
+            out.addProperty("folderId", current.folderId);
+            out.addProperty("fileName", current.fileName);
+            out.addProperty("restoredVersion", versionNo);
+            out.addProperty("size", w.size);
+            out.addProperty("hash", w.hash);
+            out.addProperty("lastModified", w.lastModifiedMs);
+            return new Response("success", "Đã khôi phục phiên bản " + versionNo, out);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return error("Lỗi khôi phục phiên bản: " + e.getMessage());
+        }
+    }
+
+    private Response error(String msg) {
+        return new Response("error", msg, null);
+    }
+}
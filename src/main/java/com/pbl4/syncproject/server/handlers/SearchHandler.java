@@ -0,0 +1,251 @@
+package com.pbl4.syncproject.server.handlers;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.pbl4.syncproject.common.dispatcher.RequestHandler;
+import com.pbl4.syncproject.common.jsonhandler.Request;
+import com.pbl4.syncproject.common.jsonhandler.Response;
+import com.pbl4.syncproject.common.model.User;
+import com.pbl4.syncproject.common.storage.FileTypes;
+import com.pbl4.syncproject.server.service.Permission;
+import com.pbl4.syncproject.server.service.PermissionResolver;
+import com.pbl4.syncproject.server.service.SearchIndex;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SEARCH: tìm file/folder theo tên trên toàn bộ cây (chỉ trả những mục user có quyền đọc).
+ *
+ * data:
+ *   query        - chuỗi tìm (không dấu, không phân biệt hoa thường; nhiều từ = phải chứa đủ các từ)
+ *   type         - "Folder" hoặc một loại trong FileTypes (Document, Image, ...)
+ *   minSize, maxSize           - byte
+ *   modifiedFrom, modifiedTo   - epoch millis hoặc "yyyy-MM-dd" / "yyyy-MM-ddTHH:mm[:ss]"
+ *   offset (mặc định 0), limit (mặc định 50, tối đa 200)
+ *
+ * Kết quả: { results: [...], offset, limit, total, hasMore, tookMs, indexed }
+ * total là số mục khớp trước khi lọc quyền.
+ */
+public class SearchHandler implements RequestHandler {
+
+    private static final int DEFAULT_LIMIT = 50;
+    private static final int MAX_LIMIT = 200;
+
+    private final Connection dbConnection;
+    private final ClientSession session;
+    private final PermissionResolver permissions = PermissionResolver.getInstance();
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd/MM/yyyy HH:mm");
+
+    public SearchHandler(Connection dbConnection, ClientSession session) {
+        this.dbConnection = dbConnection;
+        this.session = session;
+    }
+
+    @Override
+    public Response handle(Request req) {
+        if (!session.isAuthenticated()) return error("Chưa đăng nhập");
+        long start = System.nanoTime();
+        try {
+            JsonObject data = req.getData() != null ? req.getData() : new JsonObject();
+            SearchIndex.Query q = new SearchIndex.Query();
+            q.text = data.has("query") && !data.get("query").isJsonNull() ? data.get("query").getAsString() : "";
+
+            if (data.has("type") && !data.get("type").isJsonNull()) {
+                String type = data.get("type").getAsString();
+                if ("Folder".equalsIgnoreCase(type)) {
+                    q.typeCode = SearchIndex.FOLDER_TYPE;
+                } else {
+                    q.typeCode = FileTypes.codeOfCategory(type);
+                    if (q.typeCode < 0) return error("Loại không hợp lệ: " + type);
+                    q.includeFolders = false;
+                }
+            }
+            if (data.has("minSize")) { q.minSize = data.get("minSize").getAsLong(); q.includeFolders = false; }
+            if (data.has("maxSize")) { q.maxSize = data.get("maxSize").getAsLong(); q.includeFolders = false; }
+            if (data.has("modifiedFrom")) q.modifiedFrom = parseTime(data.get("modifiedFrom"), false);
+            if (data.has("modifiedTo")) q.modifiedTo = parseTime(data.get("modifiedTo"), true);
+            if (q.text.isBlank() && q.typeCode == Integer.MIN_VALUE && q.minSize < 0 && q.maxSize < 0
+                    && q.modifiedFrom == Long.MIN_VALUE && q.modifiedTo == Long.MAX_VALUE) {
+                return error("Thiếu 'query' hoặc bộ lọc");
+            }
+
+            int offset = data.has("offset") ? Math.max(0, data.get("offset").getAsInt()) : 0;
+            int limit = data.has("limit") ? Math.min(MAX_LIMIT, Math.max(1, data.get("limit").getAsInt())) : DEFAULT_LIMIT;
+
+            SearchIndex index = SearchIndex.getInstance();
+            boolean indexed = index.isLoaded();
+            SearchIndex.Result result = indexed ? index.search(q) : searchDb(q, offset + limit + 1);
+
+            // Lọc quyền theo thứ tự xếp hạng, chỉ tới khi đủ trang hiện tại (+1 để biết còn trang sau)
+            User user = session.getUser();
+            Map<Integer, Integer> folderMasks = new HashMap<>();
+            Map<Integer, Map<Integer, Integer>> fileGrants = new HashMap<>();
+            JsonArray results = new JsonArray();
+            int visible = 0;
+            boolean hasMore = false;
+            for (SearchIndex.Hit h : result.hits) {
+                if (!canRead(user, h, folderMasks, fileGrants)) continue;
+                if (visible++ < offset) continue;
+                if (results.size() == limit) {
+                    hasMore = true;
+                    break;
+                }
+                results.add(toJson(h, indexed ? index.folderName(h.parentFolderId) : null));
+            }
+
+            JsonObject out = new JsonObject();
+            out.add("results", results);
+            out.addProperty("offset", offset);
+            out.addProperty("limit", limit);
+            out.addProperty("total", result.totalMatches);
+            out.addProperty("hasMore", hasMore);
+            out.addProperty("indexed", indexed);
+            out.addProperty("tookMs", (System.nanoTime() - start) / 1_000_000);
+            return new Response("success", "Tìm thấy " + result.totalMatches + " mục", out);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return error("Lỗi tìm kiếm: " + e.getMessage());
+        }
+    }
+
+    private boolean canRead(User user, SearchIndex.Hit h, Map<Integer, Integer> folderMasks,
+                            Map<Integer, Map<Integer, Integer>> fileGrants) throws SQLException {
+        if (user.isAdmin()) return true;
+        if (h.folder) return Permission.has(folderMask(user, h.id, folderMasks), Permission.READ);
+
+        int mask = folderMask(user, h.parentFolderId, folderMasks);
+        if (!Permission.has(mask, Permission.READ)) {
+            Map<Integer, Integer> grants = fileGrants.get(h.parentFolderId);
+            if (grants == null) {
+                grants = permissions.getFileGrants(dbConnection, user, h.parentFolderId);
+                fileGrants.put(h.parentFolderId, grants);
+            }
+            mask |= grants.getOrDefault(h.id, Permission.NONE);
+        }
+        return Permission.has(mask, Permission.READ);
+    }
+
+    private int folderMask(User user, int folderId, Map<Integer, Integer> folderMasks) throws SQLException {
+        Integer m = folderMasks.get(folderId);
+        if (m == null) {
+            m = permissions.getFolderPermission(dbConnection, user, folderId);
+            folderMasks.put(folderId, m);
+        }
+        return m;
+    }
+
+    private JsonObject toJson(SearchIndex.Hit h, String parentName) {
+        JsonObject o = new JsonObject();
+        o.addProperty("id", h.id);
+        o.addProperty("name", h.name);
+        o.addProperty("type", h.folder ? "folder" : "file");
+        if (h.parentFolderId != 0) o.addProperty("folderId", h.parentFolderId); else o.add("folderId", null);
+        if (parentName != null) o.addProperty("folderName", parentName);
+        if (!h.folder) {
+            o.addProperty("fileType", FileTypes.categoryOf(h.name));
+            o.addProperty("sizeBytes", h.size);
+        }
+        o.addProperty("lastModified", dateFormat.format(new Date(h.lastModifiedMs)));
+        o.addProperty("score", h.score);
+        return o;
+    }
+
+    /**
+     * Dự phòng khi SearchIndex chưa nạp xong: LIKE trên DB (quét bảng), chỉ lấy tối đa cap dòng mỗi bảng.
+     */
+    private SearchIndex.Result searchDb(SearchIndex.Query q, int cap) throws SQLException {
+        String[] terms = SearchIndex.normalize(q.text).trim().split("\\s+");
+        // LIKE theo từ dài nhất (collation của DB đã bỏ qua dấu/hoa thường), các từ còn lại kiểm tra qua score()
+        String longest = "";
+        for (String w : q.text.trim().split("\\s+")) if (w.length() > longest.length()) longest = w;
+        String like = "%" + longest.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        List<SearchIndex.Hit> hits = new ArrayList<>();
+
+        if (q.includeFiles && q.typeCode != SearchIndex.FOLDER_TYPE) {
+            StringBuilder sql = new StringBuilder(
+                    "SELECT FileID, FolderID, FileName, FileSize, COALESCE(LastModified, CreatedAt) AS Modified " +
+                            "FROM Files WHERE FileName LIKE ? AND DeletedAt IS NULL");
+            if (q.minSize >= 0) sql.append(" AND FileSize >= ?");
+            if (q.maxSize >= 0) sql.append(" AND FileSize <= ?");
+            if (q.modifiedFrom != Long.MIN_VALUE) sql.append(" AND COALESCE(LastModified, CreatedAt) >= ?");
+            if (q.modifiedTo != Long.MAX_VALUE) sql.append(" AND COALESCE(LastModified, CreatedAt) <= ?");
+            sql.append(" LIMIT ?");
+            try (PreparedStatement ps = dbConnection.prepareStatement(sql.toString())) {
+                int i = 1;
+                ps.setString(i++, like);
+                if (q.minSize >= 0) ps.setLong(i++, q.minSize);
+                if (q.maxSize >= 0) ps.setLong(i++, q.maxSize);
+                if (q.modifiedFrom != Long.MIN_VALUE) ps.setTimestamp(i++, new Timestamp(q.modifiedFrom));
+                if (q.modifiedTo != Long.MAX_VALUE) ps.setTimestamp(i++, new Timestamp(q.modifiedTo));
+                ps.setInt(i, cap);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        String name = rs.getString(3);
+                        if (q.typeCode != Integer.MIN_VALUE && FileTypes.codeOf(name) != q.typeCode) continue;
+                        Timestamp m = rs.getTimestamp(5);
+                        addHit(hits, terms, false, rs.getInt(1), name, rs.getInt(2), rs.getLong(4), m != null ? m.getTime() : 0L);
+                    }
+                }
+            }
+        }
+
+        if (q.includeFolders && (q.typeCode == Integer.MIN_VALUE || q.typeCode == SearchIndex.FOLDER_TYPE)) {
+            try (PreparedStatement ps = dbConnection.prepareStatement(
+                    "SELECT FolderID, ParentFolderID, FolderName, COALESCE(LastModified, CreatedAt) AS Modified " +
+                            "FROM Folders WHERE FolderName LIKE ? LIMIT ?")) {
+                ps.setString(1, like);
+                ps.setInt(2, cap);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        Timestamp m = rs.getTimestamp(4);
+                        long modified = m != null ? m.getTime() : 0L;
+                        if (modified < q.modifiedFrom || modified > q.modifiedTo) continue;
+                        addHit(hits, terms, true, rs.getInt(1), rs.getString(3), rs.getInt(2), 0L, modified);
+                    }
+                }
+            }
+        }
+
+        hits.sort(Comparator.comparingInt((SearchIndex.Hit h) -> h.score).reversed()
+                .thenComparing(Comparator.comparingLong((SearchIndex.Hit h) -> h.lastModifiedMs).reversed()));
+        return new SearchIndex.Result(hits, hits.size());
+    }
+
+    private static void addHit(List<SearchIndex.Hit> hits, String[] terms, boolean folder, int id, String name,
+                               int parentId, long size, long modified) {
+        int score = SearchIndex.score(SearchIndex.normalize(name), terms);
+        if (score >= 0) hits.add(new SearchIndex.Hit(folder, id, name, parentId, size, modified, score));
+    }
+
+    private static long parseTime(JsonElement e, boolean endOfDay) {
+        if (e.isJsonPrimitive() && e.getAsJsonPrimitive().isNumber()) return e.getAsLong();
+        String s = e.getAsString().trim();
+        ZoneId zone = ZoneId.systemDefault();
+        if (s.length() == 10) {
+            LocalDate d = LocalDate.parse(s);
+            return (endOfDay ? d.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli() - 1
+                    : d.atStartOfDay(zone).toInstant().toEpochMilli());
+        }
+        return LocalDateTime.parse(s).atZone(zone).toInstant().toEpochMilli();
+    }
+
+    private Response error(String msg) {
+        return new Response("error", msg, null);
+    }
+}
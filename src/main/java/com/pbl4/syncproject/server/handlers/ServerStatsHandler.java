@@ -0,0 +1,123 @@
+package com.pbl4.syncproject.server.handlers;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.pbl4.syncproject.common.dispatcher.RequestHandler;
+import com.pbl4.syncproject.common.jsonhandler.Request;
+import com.pbl4.syncproject.common.jsonhandler.Response;
+import com.pbl4.syncproject.common.storage.ObjectStore;
+import com.pbl4.syncproject.common.storage.StorageManager;
+import com.pbl4.syncproject.server.service.ContentCache;
+import com.pbl4.syncproject.server.service.LatencyHistogram;
+import com.pbl4.syncproject.server.service.ServerMetrics;
+
+import java.util.Map;
+
+/**
+ * SERVER_STATS: trả các bộ đếm và histogram của ServerMetrics, tình trạng các object root, tầng lạnh và cache
+ * nội dung (chỉ admin).
+ */
+public class ServerStatsHandler implements RequestHandler {
+
+    private final ClientSession session;
+
+    public ServerStatsHandler(ClientSession session) {
+        this.session = session;
+    }
+
+    @Override
+    public Response handle(Request req) {
+        if (!session.isAuthenticated()) return new Response("error", "Chưa đăng nhập", null);
+        if (!session.getUser().isAdmin()) return new Response("error", "Chỉ admin được xem thống kê", null);
+
+        JsonObject counters = new JsonObject();
+        for (Map.Entry<String, Long> e : ServerMetrics.getInstance().snapshot().entrySet()) {
+            counters.addProperty(e.getKey(), e.getValue());
+        }
+        // Từng object root: dung lượng + trọng số (bộ đếm I/O theo root nằm trong counters: storage.root.<index>.*)
+        JsonArray roots = new JsonArray();
+        for (ObjectStore.Root r : StorageManager.getInstance().objects().roots()) {
+            JsonObject o = new JsonObject();
+            o.addProperty("index", r.getIndex());
+            o.addProperty("path", r.getDir().toString());
+            o.addProperty("weight", r.getWeight());
+            o.addProperty("draining", r.isDraining());
+            o.addProperty("available", r.isAvailable());
+            o.addProperty("inFlight", r.getInFlight());
+            o.addProperty("latencyMicros", r.getLatencyMicros());
+            o.addProperty("usableBytes", r.getUsableSpace());
+            o.addProperty("totalBytes", r.getTotalSpace());
+            roots.add(o);
+        }
+        JsonObject out = new JsonObject();
+        out.add("counters", counters);
+        out.add("storageRoots", roots);
+        out.add("histograms", histograms());
+        if (StorageManager.getInstance().tier() != null) out.add("tier", tierStats());
+        if (ContentCache.getInstance().isEnabled()) out.add("contentCache", contentCacheStats());
+        out.addProperty("serverTime", System.currentTimeMillis());
+        return new Response("success", "OK", out);
+    }
+
+    // Phân bố đầy đủ (bucket khác 0) của từng histogram, ví dụ thời gian chờ khóa ghi file
+    private static JsonObject histograms() {
+        JsonObject out = new JsonObject();
+        for (Map.Entry<String, LatencyHistogram> e : ServerMetrics.getInstance().histograms().entrySet()) {
+            LatencyHistogram h = e.getValue();
+            JsonObject o = new JsonObject();
+            o.addProperty("count", h.count());
+            o.addProperty("sum", h.sum());
+            o.addProperty("p50", h.percentile(0.5));
+            o.addProperty("p90", h.percentile(0.9));
+            o.addProperty("p99", h.percentile(0.99));
+            o.addProperty("max", h.max());
+            JsonArray buckets = new JsonArray();
+            long[] counts = h.bucketCounts();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) continue;
+                JsonObject b = new JsonObject();
+                b.addProperty("le", LatencyHistogram.upperBound(i));
+                b.addProperty("count", counts[i]);
+                buckets.add(b);
+            }
+            o.add("buckets", buckets);
+            out.add(e.getKey(), o);
+        }
+        return out;
+    }
+
+    // Tỉ lệ trúng theo số lần đọc và theo số byte của ContentCache
+    private static JsonObject contentCacheStats() {
+        ServerMetrics m = ServerMetrics.getInstance();
+        long hits = m.get("content.cache.hits");
+        long misses = m.get("content.cache.misses");
+        long hitBytes = m.get("content.cache.hit.bytes");
+        long missBytes = m.get("content.cache.miss.bytes");
+        JsonObject o = new JsonObject();
+        o.addProperty("hits", hits);
+        o.addProperty("misses", misses);
+        o.addProperty("hitRatio", hits + misses > 0 ? (double) hits / (hits + misses) : 0.0);
+        o.addProperty("byteHitRatio", hitBytes + missBytes > 0 ? (double) hitBytes / (hitBytes + missBytes) : 0.0);
+        o.addProperty("evictions", m.get("content.cache.evictions"));
+        o.addProperty("rejections", m.get("content.cache.rejections"));
+        o.addProperty("entries", m.get("content.cache.entries"));
+        o.addProperty("bytes", m.get("content.cache.bytes"));
+        return o;
+    }
+
+    // Tỉ lệ đọc trúng bản nóng + dung lượng tiết kiệm nhờ nén (gauge do TieringService cập nhật)
+    private static JsonObject tierStats() {
+        ServerMetrics m = ServerMetrics.getInstance();
+        long hot = m.get("tier.hot.hits");
+        long cold = m.get("tier.cold.hits");
+        JsonObject o = new JsonObject();
+        o.addProperty("hotHits", hot);
+        o.addProperty("coldHits", cold);
+        o.addProperty("hotHitRatio", hot + cold > 0 ? (double) hot / (hot + cold) : 1.0);
+        o.addProperty("coldFiles", m.get("tier.cold.files"));
+        o.addProperty("coldBytesOriginal", m.get("tier.cold.bytes.original"));
+        o.addProperty("coldBytesStored", m.get("tier.cold.bytes.stored"));
+        o.addProperty("bytesSaved", m.get("tier.bytes.saved"));
+        return o;
+    }
+}
@@ -0,0 +1,59 @@
+package com.pbl4.syncproject.server.handlers;
+
+import com.google.gson.JsonObject;
+import com.pbl4.syncproject.common.dispatcher.RequestHandler;
+import com.pbl4.syncproject.common.jsonhandler.Request;
+import com.pbl4.syncproject.common.jsonhandler.Response;
+import com.pbl4.syncproject.server.dao.FolderStatsDAO;
+
+import java.sql.Connection;
+
+/**
+ * SET_FOLDER_QUOTA: đặt hạn mức dung lượng cho cả cây con của một folder (chỉ ADMIN), có hiệu lực khi quota.enabled.
+ * Hạn mức cho một user = hạn mức trên folder riêng của user đó.
+ * data: { "folderId", "quotaBytes" } (quotaBytes null hoặc <= 0: bỏ giới hạn)
+ */
+public class SetFolderQuotaHandler implements RequestHandler {
+    private final FolderStatsDAO folderStatsDAO;
+    private final ClientSession session;
+
+    public SetFolderQuotaHandler(Connection dbConnection, ClientSession session) {
+        this.folderStatsDAO = new FolderStatsDAO(dbConnection);
+        this.session = session;
+    }
+
+    @Override
+    public Response handle(Request req) {
+        if (!session.isAuthenticated() || !session.getUser().isAdmin()) {
+            return error("Chỉ ADMIN mới được đặt hạn mức");
+        }
+        try {
+            JsonObject data = req.getData();
+            if (data == null || !data.has("folderId") || data.get("folderId").isJsonNull()) {
+                return error("Thiếu 'folderId'");
+            }
+            int folderId = data.get("folderId").getAsInt();
+            Long quota = data.has("quotaBytes") && !data.get("quotaBytes").isJsonNull()
+                    && data.get("quotaBytes").getAsLong() > 0 ? data.get("quotaBytes").getAsLong() : null;
+
+            if (folderStatsDAO.getStats(folderId) == null) return error("Folder không tồn tại: id=" + folderId);
+            folderStatsDAO.setQuota(folderId, quota);
+            FolderStatsDAO.Stats stats = folderStatsDAO.getStats(folderId);
+
+            JsonObject out = new JsonObject();
+            out.addProperty("folderId", folderId);
+            if (quota != null) out.addProperty("quotaBytes", quota);
+            out.addProperty("usedBytes", stats.totalBytes);
+            out.addProperty("fileCount", stats.fileCount);
+            return new Response("success", quota != null ? "Đã đặt hạn mức" : "Đã bỏ hạn mức", out);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return error("Lỗi đặt hạn mức: " + e.getMessage());
+        }
+    }
+
+    private Response error(String msg) {
+        return new Response("error", msg, null);
+    }
+}
@@ -0,0 +1,86 @@
+package com.pbl4.syncproject.server.handlers;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.pbl4.syncproject.common.dispatcher.RequestHandler;
+import com.pbl4.syncproject.common.jsonhandler.Request;
+import com.pbl4.syncproject.common.jsonhandler.Response;
+import com.pbl4.syncproject.server.dao.AccessControlDAO;
+import com.pbl4.syncproject.server.dao.DatabaseManager;
+import com.pbl4.syncproject.server.dao.FilesDAO;
+import com.pbl4.syncproject.server.dao.UserDAO;
+import com.pbl4.syncproject.server.service.NamespaceEvents;
+import com.pbl4.syncproject.server.service.Permission;
+
+import java.sql.Connection;
+
+/**
+ * SET_PERMISSIONS: ghi đè quyền của một user trên folder hoặc file (chỉ ADMIN).
+ * data: { "username" | "userId", "folderId" | "fileId", "permissions": ["READ","WRITE","DELETE"] }
+ * Việc ghi (xóa + chèn trong một transaction) chạy trên kết nối mượn từ pool, không trên kết nối chung.
+ */
+public class SetPermissionsHandler implements RequestHandler {
+    private final FilesDAO filesDAO;
+    private final UserDAO userDAO;
+    private final ClientSession session;
+
+    public SetPermissionsHandler(Connection dbConnection, ClientSession session) {
+        this.filesDAO = new FilesDAO(dbConnection);
+        this.userDAO = new UserDAO(dbConnection);
+        this.session = session;
+    }
+
+    @Override
+    public Response handle(Request req) {
+        if (!session.isAuthenticated() || !session.getUser().isAdmin()) {
+            return error("Chỉ ADMIN mới được phân quyền");
+        }
+        try {
+            JsonObject data = req.getData();
+            if (data == null || !data.has("permissions") || !data.get("permissions").isJsonArray()) {
+                return error("Thiếu 'permissions'");
+            }
+
+            Integer userId = data.has("userId") ? Integer.valueOf(data.get("userId").getAsInt())
+                    : data.has("username") ? userDAO.findUserId(data.get("username").getAsString()) : null;
+            if (userId == null) return error("Không tìm thấy user");
+
+            int mask = Permission.NONE;
+            for (JsonElement p : data.getAsJsonArray("permissions")) {
+                mask |= Permission.fromName(p.getAsString());
+            }
+
+            if (data.has("fileId") && !data.get("fileId").isJsonNull()) {
+                int fileId = data.get("fileId").getAsInt();
+                Integer folderId = filesDAO.getFolderIdOfFile(fileId);
+                if (folderId == null) return error("File không tồn tại: id=" + fileId);
+
+                try (Connection conn = DatabaseManager.borrowConnection()) {
+                    new AccessControlDAO(conn).replaceFileGrants(userId, fileId, mask);
+                }
+                NamespaceEvents.aclChanged(userId, folderId, fileId);
+            } else if (data.has("folderId") && !data.get("folderId").isJsonNull()) {
+                int folderId = data.get("folderId").getAsInt();
+                try (Connection conn = DatabaseManager.borrowConnection()) {
+                    new AccessControlDAO(conn).replaceFolderGrants(userId, folderId, mask);
+                }
+                NamespaceEvents.aclChanged(userId, folderId, null);
+            } else {
+                return error("Thiếu 'folderId' hoặc 'fileId'");
+            }
+
+            JsonObject out = new JsonObject();
+            out.addProperty("userId", userId);
+            out.addProperty("permission", Permission.toDisplay(mask));
+            return new Response("success", "Cập nhật quyền thành công", out);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return error("Lỗi cập nhật quyền: " + e.getMessage());
+        }
+    }
+
+    private Response error(String msg) {
+        return new Response("error", msg, null);
+    }
+}
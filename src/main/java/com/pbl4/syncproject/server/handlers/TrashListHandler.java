@@ -0,0 +1,77 @@
+package com.pbl4.syncproject.server.handlers;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.pbl4.syncproject.common.dispatcher.RequestHandler;
+import com.pbl4.syncproject.common.jsonhandler.Request;
+import com.pbl4.syncproject.common.jsonhandler.Response;
+import com.pbl4.syncproject.common.model.User;
+import com.pbl4.syncproject.server.dao.FilesDAO;
+import com.pbl4.syncproject.server.service.Permission;
+import com.pbl4.syncproject.server.service.PermissionResolver;
+import com.pbl4.syncproject.server.service.TrashCollector;
+
+import java.sql.Connection;
+
+/**
+ * LIST_TRASH: các file trong thùng rác mà user đọc được (mới xóa trước).
+ *
+ * data: folderId (tùy chọn, mặc định mọi folder), limit (mặc định 200, tối đa 1000)
+ */
+public class TrashListHandler implements RequestHandler {
+
+    private static final int MAX_LIMIT = 1000;
+
+    private final Connection dbConnection;
+    private final ClientSession session;
+
+    public TrashListHandler(Connection dbConnection, ClientSession session) {
+        this.dbConnection = dbConnection;
+        this.session = session;
+    }
+
+    @Override
+    public Response handle(Request req) {
+        if (!session.isAuthenticated()) return error("Chưa đăng nhập");
+        try {
+            JsonObject data = req.getData() != null ? req.getData() : new JsonObject();
+            Integer folderId = data.has("folderId") && !data.get("folderId").isJsonNull()
+                    ? data.get("folderId").getAsInt() : null;
+            int limit = data.has("limit") ? Math.min(MAX_LIMIT, Math.max(1, data.get("limit").getAsInt())) : 200;
+
+            User user = session.getUser();
+            PermissionResolver permissions = PermissionResolver.getInstance();
+            long retentionMs = TrashCollector.getInstance().getRetentionMs();
+
+            JsonArray items = new JsonArray();
+            for (FilesDAO.TrashedFile f : new FilesDAO(dbConnection).listTrash(folderId, limit)) {
+                int mask = permissions.getFilePermission(dbConnection, user, f.folderId, f.fileId);
+                if (!Permission.has(mask, Permission.READ)) continue;
+
+                JsonObject o = new JsonObject();
+                o.addProperty("fileId", f.fileId);
+                o.addProperty("folderId", f.folderId);
+                o.addProperty("fileName", f.fileName);
+                o.addProperty("size", f.size);
+                o.addProperty("lastModified", f.lastModifiedMs);
+                o.addProperty("deletedAt", f.deletedAtMs);
+                if (f.deletedBy != null) o.addProperty("deletedBy", f.deletedBy);
+                o.addProperty("purgeAt", f.deletedAtMs + retentionMs);
+                o.addProperty("canRestore", Permission.has(mask, Permission.WRITE));
+                items.add(o);
+            }
+
+            JsonObject out = new JsonObject();
+            out.add("files", items);
+            return new Response("success", "OK", out);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return error("Lỗi đọc thùng rác: " + e.getMessage());
+        }
+    }
+
+    private Response error(String msg) {
+        return new Response("error", msg, null);
+    }
+}
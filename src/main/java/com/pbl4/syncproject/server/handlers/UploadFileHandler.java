@@ -5,13 +5,16 @@ import com.pbl4.syncproject.common.jsonhandler.Request;
 import com.pbl4.syncproject.common.jsonhandler.Response;
 import com.google.gson.JsonObject;
 import com.pbl4.syncproject.server.dao.DatabaseManager;
+import com.pbl4.syncproject.server.dao.FolderDAO;
 import com.pbl4.syncproject.common.storage.StorageManager;
+import com.pbl4.syncproject.server.service.FileContentWriter;
+import com.pbl4.syncproject.server.service.NamespaceIndex;
+import com.pbl4.syncproject.server.service.Permission;
+import com.pbl4.syncproject.server.service.PermissionResolver;
+import com.pbl4.syncproject.server.service.UploadJournal;
 
-import java.io.IOException;
-import java.nio.file.*;
 import java.security.MessageDigest;
 import java.sql.*;
-import java.sql.Timestamp;
 import java.util.Base64;
 
 public class UploadFileHandler implements RequestHandler {
@@ -19,9 +22,18 @@ public class UploadFileHandler implements RequestHandler {
     // Giới hạn khi upload bằng base64 (có thể tăng/giảm)
     private static final long MAX_SIZE_BYTES = 50L * 1024 * 1024;
 
+    private final ClientSession session;
+
+    public UploadFileHandler(ClientSession session) {
+        this.session = session;
+    }
+
     @Override
     public Response handle(Request req) {
-        try (Connection connection = DatabaseManager.getConnection()) {
+        if (!session.isAuthenticated()) return error("Chưa đăng nhập");
+        // Kết nối riêng (mượn từ pool): upload các file khác nhau chạy song song, cùng file thì FileContentWriter
+        // xếp hàng theo khóa của file
+        try (Connection connection = DatabaseManager.borrowConnection()) {
 
             JsonObject data = req.getData();
             if (data == null
@@ -41,44 +53,50 @@ public class UploadFileHandler implements RequestHandler {
                     ? data.get("folderId").getAsInt()
                     : ensureRootFolder(connection);
 
+            // Ghi đè / tạo file cần quyền WRITE trên folder đích
+            int mask = PermissionResolver.getInstance().getFolderPermission(connection, session.getUser(), folderId);
+            if (!Permission.has(mask, Permission.WRITE)) return error("Không có quyền ghi vào thư mục này");
+
             byte[] fileBytes = Base64.getDecoder().decode(base64Content);
             if (fileBytes.length > MAX_SIZE_BYTES) {
                 return error("File quá lớn (> " + (MAX_SIZE_BYTES / 1024 / 1024) + "MB). Hãy chuyển sang upload theo chunk.");
             }
 
-            // 1) Xác định đường dẫn vật lý theo cây Folders (FolderName, ParentFolderID)
-            Path folderPath = StorageManager.getInstance().resolveFolderPathFromDb(connection, folderId);
-            Files.createDirectories(folderPath);
-            StorageManager.getInstance().assertWithinRoot(folderPath);
-
-            // 2) Ghi trực tiếp vào đích
-            Path dst = folderPath.resolve(fileName).normalize();
-            Files.write(dst, fileBytes,
-                    StandardOpenOption.CREATE,
-                    StandardOpenOption.TRUNCATE_EXISTING,
-                    StandardOpenOption.WRITE);
-
-            // 3) Metadata
-            long fileSize = Files.size(dst);
             String fileHash = computeSHA256(fileBytes);
-            long lastModifiedMs = Files.getLastModifiedTime(dst).toMillis();
-
-            // 4) Upsert DB (yêu cầu UNIQUE(FolderID, FileName))
-            try (PreparedStatement ps = connection.prepareStatement(
-                    "INSERT INTO Files (FolderID, FileName, FileSize, FileHash, LastModified) " +
-                            "VALUES (?,?,?,?,?) " +
-                            "ON DUPLICATE KEY UPDATE FileSize=VALUES(FileSize), FileHash=VALUES(FileHash), LastModified=VALUES(LastModified)"
-            )) {
-                ps.setInt(1, folderId);
-                ps.setString(2, fileName);
-                ps.setLong(3, fileSize);
-                ps.setString(4, fileHash);
-                ps.setTimestamp(5, new Timestamp(lastModifiedMs));
-                ps.executeUpdate();
+
+            // Bật upload.journal: trả lời khi nội dung + bản ghi nhật ký đã xuống đĩa, DB được cập nhật theo lô sau đó
+            UploadJournal journal = UploadJournal.getInstance();
+            if (journal.isRunning()) {
+                NamespaceIndex index = NamespaceIndex.getInstance();
+                if (index.isLoaded() && !index.containsFolder(folderId)) {
+                    return error("Thư mục không tồn tại");
+                }
+                // Hạn mức phải kiểm tra trước khi báo thành công (lúc áp vào DB thì đã muộn), tính cả các upload
+                // khác còn nằm trong nhật ký
+                FileContentWriter writer = new FileContentWriter(connection);
+                UploadJournal.Receipt receipt = journal.append(folderId, fileName, fileBytes, fileHash,
+                        queued -> writer.checkQuota(folderId, fileName, fileBytes.length, queued));
+                JsonObject out = new JsonObject();
+                out.addProperty("folderId", folderId);
+                out.addProperty("fileName", fileName);
+                out.addProperty("size", fileBytes.length);
+                out.addProperty("hash", fileHash);
+                out.addProperty("lastModified", receipt.lastModifiedMs);
+                out.addProperty("queued", true);
+                out.addProperty("journalSeq", receipt.seq);
+                return new Response("success", "File uploaded successfully", out);
             }
 
+            // Ghi theo layout đang dùng + upsert DB (nội dung cũ được giữ làm phiên bản nếu khác)
+            FileContentWriter.Written written = new FileContentWriter(connection)
+                    .writeBytes(folderId, fileName, fileBytes, fileHash);
+            int fileId = written.fileId;
+            long fileSize = written.size;
+            long lastModifiedMs = written.lastModifiedMs;
+
             // 5) Trả data cho client
             JsonObject out = new JsonObject();
+            out.addProperty("fileId", fileId);
             out.addProperty("folderId", folderId);
             out.addProperty("fileName", fileName);
             out.addProperty("size", fileSize);
@@ -123,17 +141,8 @@ public class UploadFileHandler implements RequestHandler {
                 if (rs.next()) return rs.getInt(1);
             }
         }
-        // chưa có → tạo "Root"
-        try (PreparedStatement ins = c.prepareStatement(
-                "INSERT INTO Folders (FolderName, ParentFolderID, LastModified) VALUES (?, NULL, NOW())",
-                Statement.RETURN_GENERATED_KEYS)) {
-            ins.setString(1, "Root");
-            ins.executeUpdate();
-            try (ResultSet keys = ins.getGeneratedKeys()) {
-                if (keys.next()) return keys.getInt(1);
-            }
-        }
-        throw new SQLException("Failed to create root folder");
+        // chưa có → tạo "Root" (kèm dòng closure)
+        return new FolderDAO(c).insertFolder(null, "Root");
     }
 
     private Response success(String msg) {
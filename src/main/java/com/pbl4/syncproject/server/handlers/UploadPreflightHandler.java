@@ -0,0 +1,177 @@
+package com.pbl4.syncproject.server.handlers;
+
+import com.google.gson.JsonObject;
+import com.pbl4.syncproject.common.dispatcher.RequestHandler;
+import com.pbl4.syncproject.common.jsonhandler.Request;
+import com.pbl4.syncproject.common.jsonhandler.Response;
+import com.pbl4.syncproject.common.model.User;
+import com.pbl4.syncproject.common.storage.StorageManager;
+import com.pbl4.syncproject.server.dao.DatabaseManager;
+import com.pbl4.syncproject.server.dao.FilesDAO;
+import com.pbl4.syncproject.server.service.FileContentWriter;
+import com.pbl4.syncproject.server.service.Permission;
+import com.pbl4.syncproject.server.service.PermissionResolver;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.time.ZoneId;
+import java.util.List;
+
+/**
+ * UPLOAD_PREFLIGHT: client gửi tên, kích thước, SHA-256 trước khi gửi nội dung.
+ * Nếu server đã có nội dung giống hệt trong một file mà người gọi có quyền đọc thì tạo file đích bằng hard link/copy
+ * cục bộ và ghi metadata luôn, client không cần gửi byte nào.
+ *
+ * data: fileName, folderId, fileSize, fileHash (hex SHA-256)
+ * Kết quả (success): uploadRequired = true  -> client upload bình thường bằng UPLOAD_FILE
+ *                    uploadRequired = false -> đã xong; kèm fileId, folderId, fileName, size, hash, lastModified,
+ *                                              deduplicated, linked
+ */
+public class UploadPreflightHandler implements RequestHandler {
+
+    // Số file trùng hash tối đa thử làm nguồn (file nguồn có thể đã bị sửa/xóa ngoài server)
+    private static final int MAX_CANDIDATES = 5;
+    // Lệch mtime tối đa giữa đĩa và DB để tin hash trong DB mà không đọc lại file nguồn (TIMESTAMP làm tròn giây)
+    private static final long MTIME_TOLERANCE_MS = 1000;
+
+    private final Connection dbConnection;
+    private final ClientSession session;
+    private final PermissionResolver permissions = PermissionResolver.getInstance();
+
+    public UploadPreflightHandler(Connection dbConnection, ClientSession session) {
+        this.dbConnection = dbConnection;
+        this.session = session;
+    }
+
+    @Override
+    public Response handle(Request req) {
+        if (!session.isAuthenticated()) return error("Chưa đăng nhập");
+        try {
+            JsonObject data = req.getData();
+            if (data == null || !data.has("fileName") || !data.has("folderId")
+                    || !data.has("fileSize") || !data.has("fileHash")) {
+                return error("Thiếu 'fileName', 'folderId', 'fileSize' hoặc 'fileHash'");
+            }
+            String fileName = StorageManager.sanitizeName(data.get("fileName").getAsString());
+            int folderId = data.get("folderId").getAsInt();
+            long fileSize = data.get("fileSize").getAsLong();
+            String fileHash = data.get("fileHash").getAsString().toLowerCase();
+            if (!fileHash.matches("[0-9a-f]{64}")) return error("fileHash phải là SHA-256 dạng hex");
+
+            // Có quyền ghi vào folder đích mới được "lấy" nội dung theo hash
+            User user = session.getUser();
+            if (!Permission.has(permissions.getFolderPermission(dbConnection, user, folderId), Permission.WRITE)) {
+                return error("Không có quyền ghi vào thư mục này");
+            }
+
+            StorageManager storage = StorageManager.getInstance();
+
+            FilesDAO filesDAO = new FilesDAO(dbConnection);
+            List<com.pbl4.syncproject.common.model.Files> candidates =
+                    filesDAO.findByHash(fileHash, fileSize, MAX_CANDIDATES);
+
+            for (com.pbl4.syncproject.common.model.Files c : candidates) {
+                // Chỉ dùng lại nội dung mà người gọi đã đọc được: biết hash không có nghĩa là có quyền xem file
+                int sourceMask = permissions.getFilePermission(dbConnection, user, c.getFolderId(), c.getFileId());
+                if (!Permission.has(sourceMask, Permission.READ)) continue;
+
+                FileContentWriter.Written written;
+                byte[] packed = storage.packs() != null ? storage.packs().read(dbConnection, c.getFileId()) : null;
+                if (packed != null) {
+                    // Nguồn nằm trong segment: file nhỏ, kiểm tra hash trực tiếp rồi ghi lại
+                    if (!fileHash.equals(sha256Of(packed))) continue;
+                    written = writeBytes(folderId, fileName, packed, fileHash);
+                } else {
+                    Path source;
+                    try {
+                        source = storage.locateFile(dbConnection, c.getFileId(), c.getFolderId(), c.getFileName());
+                    } catch (Exception e) {
+                        continue; // folder nguồn đã bị xóa
+                    }
+                    if (!isIntact(source, c, fileHash)) continue;
+                    written = linkFrom(folderId, fileName, source, fileSize, fileHash);
+                }
+
+                JsonObject out = new JsonObject();
+                out.addProperty("uploadRequired", false);
+                out.addProperty("deduplicated", true);
+                out.addProperty("linked", written.linked);
+                out.addProperty("fileId", written.fileId);
+                out.addProperty("folderId", folderId);
+                out.addProperty("fileName", fileName);
+                out.addProperty("size", fileSize);
+                out.addProperty("hash", fileHash);
+                out.addProperty("lastModified", written.lastModifiedMs);
+                return new Response("success", "Nội dung đã có trên server, không cần upload", out);
+            }
+
+            JsonObject out = new JsonObject();
+            out.addProperty("uploadRequired", true);
+            return new Response("success", "Cần upload nội dung", out);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            return error("Preflight failed: " + e.getMessage());
+        }
+    }
+
+    // Ghi file mới cần transaction (upsert + đặt nội dung): chạy trên kết nối mượn, không phải kết nối dùng chung
+    private FileContentWriter.Written writeBytes(int folderId, String fileName, byte[] bytes, String hash)
+            throws Exception {
+        try (Connection conn = DatabaseManager.borrowConnection()) {
+            return new FileContentWriter(conn).writeBytes(folderId, fileName, bytes, hash);
+        }
+    }
+
+    private FileContentWriter.Written linkFrom(int folderId, String fileName, Path source, long size, String hash)
+            throws Exception {
+        try (Connection conn = DatabaseManager.borrowConnection()) {
+            return new FileContentWriter(conn).linkFrom(folderId, fileName, source, size, hash);
+        }
+    }
+
+    /**
+     * File nguồn trên đĩa còn đúng nội dung trong DB không: kích thước phải khớp; nếu mtime cũng khớp
+     * LastModified thì tin hash trong DB, ngược lại đọc lại file để tính hash (vẫn rẻ hơn nhận qua mạng).
+     */
+    private boolean isIntact(Path source, com.pbl4.syncproject.common.model.Files c, String fileHash) {
+        try {
+            if (!Files.isRegularFile(source) || Files.size(source) != c.getSize()) return false;
+            if (c.getUpdatedAt() != null) {
+                long dbMs = c.getUpdatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                long diskMs = Files.getLastModifiedTime(source).toMillis();
+                if (Math.abs(diskMs - dbMs) <= MTIME_TOLERANCE_MS) return true;
+            }
+            return fileHash.equals(sha256Of(source));
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static String sha256Of(Path file) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] buf = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buf)) > 0) digest.update(buf, 0, n);
+        }
+        return hex(digest.digest());
+    }
+
+    private static String sha256Of(byte[] bytes) throws Exception {
+        return hex(MessageDigest.getInstance("SHA-256").digest(bytes));
+    }
+
+    private static String hex(byte[] hash) {
+        StringBuilder sb = new StringBuilder(64);
+        for (byte b : hash) sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+
+    private Response error(String msg) {
+        return new Response("error", msg, null);
+    }
+}
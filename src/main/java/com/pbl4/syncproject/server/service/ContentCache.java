@@ -0,0 +1,290 @@
+package com.pbl4.syncproject.server.service;
+
+import com.pbl4.syncproject.server.ServerConfig;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Cache nội dung file nhỏ (≤ content.cache.max.file.bytes) được tải nhiều lần (template, bảng tính dùng chung...)
+ * để không phải đọc đĩa mỗi lần một agent tải lại sau khi file đổi.
+ *
+ * Khóa là (FileID, hash): upload mới đổi hash nên lượt đọc sau tự bỏ bản cũ, không cần báo hủy.
+ * Nội dung nằm ngoài heap (các vùng ByteBuffer.allocateDirect chia thành block BLOCK_BYTES byte) nên cache lớn
+ * không làm GC chậm đi; trên heap chỉ còn metadata.
+ *
+ * Thay thế theo W-TinyLFU: bản mới vào "window" LRU nhỏ (1% dung lượng); bị đẩy khỏi window thì thành ứng viên
+ * vào vùng chính (SLRU: probation + protected 80%), chỉ được nhận nếu tần suất truy cập gần đây (FrequencySketch)
+ * cao hơn nạn nhân ở cuối probation. File chỉ tải một lần vì vậy không đẩy được file hay dùng ra khỏi cache.
+ */
+public final class ContentCache {
+
+    private static final ContentCache INSTANCE = new ContentCache();
+
+    public static ContentCache getInstance() {
+        return INSTANCE;
+    }
+
+    private static final int BLOCK_BYTES = 1024;
+    private static final int CHUNK_BLOCKS = 64 * 1024; // mỗi vùng off-heap 64 MB
+    private static final int WINDOW_PERCENT = 1;
+    private static final int PROTECTED_PERCENT = 80;
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private static final class Entry {
+        final int fileId;
+        final String hash;
+        final int length;
+        final int blockCount;
+        int[] blocks; // null cho tới khi được cấp chỗ
+        int queue = WINDOW;
+
+        Entry(int fileId, String hash, int length) {
+            this.fileId = fileId;
+            this.hash = hash;
+            this.length = length;
+            this.blockCount = (length + BLOCK_BYTES - 1) / BLOCK_BYTES;
+        }
+    }
+
+    private final boolean enabled = ServerConfig.getBoolean("content.cache.enabled", true);
+    private final int maxFileBytes = ServerConfig.getInt("content.cache.max.file.bytes", 256 * 1024);
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+
+    // Mọi trường dưới đây chỉ đọc/ghi khi giữ khóa this
+    private final int capacityBlocks;
+    private final int windowMax;
+    private final int mainMax;
+    private final int protectedMax;
+    private final ByteBuffer[] chunks;
+    private final int[] freeBlocks;
+    private int freeCount;
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    // LinkedHashMap theo thứ tự chèn: phần tử đầu là LRU, put lại = đưa lên MRU
+    private final LinkedHashMap<Integer, Entry> window = new LinkedHashMap<>();
+    private final LinkedHashMap<Integer, Entry> probation = new LinkedHashMap<>();
+    private final LinkedHashMap<Integer, Entry> protectedQueue = new LinkedHashMap<>();
+    private int windowBlocks;
+    private int probationBlocks;
+    private int protectedBlocks;
+    private long storedBytes;
+    private final FrequencySketch sketch;
+
+    private ContentCache() {
+        long capacityBytes = enabled ? ServerConfig.getLong("content.cache.mb", 64) * 1024 * 1024 : 0;
+        capacityBlocks = (int) Math.min(Integer.MAX_VALUE - CHUNK_BLOCKS, capacityBytes / BLOCK_BYTES);
+        windowMax = Math.max(1, capacityBlocks * WINDOW_PERCENT / 100);
+        mainMax = capacityBlocks - windowMax;
+        protectedMax = (int) ((long) mainMax * PROTECTED_PERCENT / 100);
+
+        int chunkCount = (capacityBlocks + CHUNK_BLOCKS - 1) / CHUNK_BLOCKS;
+        chunks = new ByteBuffer[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            int blocks = Math.min(CHUNK_BLOCKS, capacityBlocks - i * CHUNK_BLOCKS);
+            chunks[i] = ByteBuffer.allocateDirect(blocks * BLOCK_BYTES);
+        }
+        freeBlocks = new int[capacityBlocks];
+        for (int i = 0; i < capacityBlocks; i++) freeBlocks[i] = capacityBlocks - 1 - i;
+        freeCount = capacityBlocks;
+        // Ước lượng số entry: file trung bình ~4 block
+        sketch = new FrequencySketch(Math.max(16, capacityBlocks / 4));
+    }
+
+    public boolean isEnabled() {
+        return enabled && capacityBlocks > 0;
+    }
+
+    /** File có kích thước này được cache */
+    public boolean accepts(long size) {
+        return isEnabled() && size > 0 && size <= maxFileBytes;
+    }
+
+    /**
+     * Nội dung của fileId nếu cache đang giữ đúng bản có hash này, ngược lại null (bản khác hash bị bỏ).
+     * size: kích thước theo DB, chỉ dùng để tính byte hit rate.
+     */
+    public byte[] get(int fileId, String hash, long size) {
+        if (!accepts(size) || hash == null) return null;
+        byte[] out = null;
+        synchronized (this) {
+            sketch.increment(fileId);
+            Entry e = entries.get(fileId);
+            if (e != null && !e.hash.equals(hash)) {
+                remove(e);
+                metrics.increment("content.cache.invalidations");
+                e = null;
+            }
+            if (e != null && e.blocks != null) {
+                touch(e);
+                out = copyOut(e);
+            }
+        }
+        if (out != null) {
+            metrics.increment("content.cache.hits");
+            metrics.add("content.cache.hit.bytes", out.length);
+        } else {
+            metrics.increment("content.cache.misses");
+            metrics.add("content.cache.miss.bytes", size);
+        }
+        return out;
+    }
+
+    /** Đưa nội dung vừa đọc từ đĩa vào cache (người gọi đảm bảo bytes đúng là nội dung có hash này) */
+    public void put(int fileId, String hash, byte[] bytes) {
+        if (!accepts(bytes.length) || hash == null) return;
+        synchronized (this) {
+            Entry old = entries.get(fileId);
+            if (old != null) {
+                if (old.hash.equals(hash)) return;
+                remove(old);
+            }
+            Entry e = new Entry(fileId, hash, bytes.length);
+            if (e.blockCount > mainMax) return;
+            entries.put(fileId, e);
+            window.put(fileId, e);
+            windowBlocks += e.blockCount;
+            evictIfNeeded();
+            if (entries.get(fileId) != e) return; // không được nhận vào vùng chính
+            e.blocks = new int[e.blockCount];
+            for (int i = 0; i < e.blockCount; i++) e.blocks[i] = freeBlocks[--freeCount];
+            copyIn(e, bytes);
+            storedBytes += bytes.length;
+            metrics.set("content.cache.bytes", storedBytes);
+            metrics.set("content.cache.entries", entries.size());
+        }
+    }
+
+    /** Bỏ bản đang giữ của fileId (nội dung vừa được thay / file bị xóa): trả chỗ sớm thay vì chờ bị đẩy ra */
+    public void invalidate(int fileId) {
+        if (!isEnabled()) return;
+        synchronized (this) {
+            Entry e = entries.get(fileId);
+            if (e != null) remove(e);
+        }
+    }
+
+    // ---------- W-TinyLFU ----------
+
+    // Truy cập trúng: probation -> protected; protected quá đầy thì đẩy bản LRU của nó về probation
+    private void touch(Entry e) {
+        if (e.queue == WINDOW) {
+            window.remove(e.fileId);
+            window.put(e.fileId, e);
+        } else if (e.queue == PROBATION) {
+            probation.remove(e.fileId);
+            probationBlocks -= e.blockCount;
+            e.queue = PROTECTED;
+            protectedQueue.put(e.fileId, e);
+            protectedBlocks += e.blockCount;
+            while (protectedBlocks > protectedMax) {
+                Entry demoted = eldest(protectedQueue);
+                protectedQueue.remove(demoted.fileId);
+                protectedBlocks -= demoted.blockCount;
+                demoted.queue = PROBATION;
+                probation.put(demoted.fileId, demoted);
+                probationBlocks += demoted.blockCount;
+            }
+        } else {
+            protectedQueue.remove(e.fileId);
+            protectedQueue.put(e.fileId, e);
+        }
+    }
+
+    private void evictIfNeeded() {
+        // Window quá đầy: bản LRU của window thành ứng viên (đứng ở MRU của probation)
+        Deque<Entry> candidates = new ArrayDeque<>();
+        while (windowBlocks > windowMax && !window.isEmpty()) {
+            Entry e = eldest(window);
+            window.remove(e.fileId);
+            windowBlocks -= e.blockCount;
+            e.queue = PROBATION;
+            probation.put(e.fileId, e);
+            probationBlocks += e.blockCount;
+            candidates.addLast(e);
+        }
+        // Vùng chính quá đầy: ứng viên mới nhất đấu với nạn nhân ở LRU của probation
+        while (probationBlocks + protectedBlocks > mainMax) {
+            Entry victim = !probation.isEmpty() ? eldest(probation) : eldest(protectedQueue);
+            Entry candidate = candidates.peekLast();
+            if (candidate == null || candidate == victim || victim.queue == PROTECTED) {
+                candidates.remove(victim);
+                evict(victim, "content.cache.evictions");
+            } else if (admit(candidate.fileId, victim.fileId)) {
+                evict(victim, "content.cache.evictions");
+            } else {
+                candidates.pollLast();
+                evict(candidate, "content.cache.rejections");
+            }
+        }
+    }
+
+    // Nhận ứng viên nếu tần suất cao hơn nạn nhân; thỉnh thoảng nhận ngẫu nhiên ứng viên khá "nóng"
+    // để một nạn nhân có tần suất giả cao (trùng hash trong sketch) không chiếm chỗ mãi
+    private boolean admit(int candidateKey, int victimKey) {
+        int candidateFreq = sketch.frequency(candidateKey);
+        int victimFreq = sketch.frequency(victimKey);
+        if (candidateFreq > victimFreq) return true;
+        if (candidateFreq <= 5) return false;
+        return (ThreadLocalRandom.current().nextInt() & 127) == 0;
+    }
+
+    private void evict(Entry e, String metric) {
+        remove(e);
+        metrics.increment(metric);
+    }
+
+    private void remove(Entry e) {
+        entries.remove(e.fileId);
+        if (e.queue == WINDOW) {
+            window.remove(e.fileId);
+            windowBlocks -= e.blockCount;
+        } else if (e.queue == PROBATION) {
+            probation.remove(e.fileId);
+            probationBlocks -= e.blockCount;
+        } else {
+            protectedQueue.remove(e.fileId);
+            protectedBlocks -= e.blockCount;
+        }
+        if (e.blocks != null) {
+            for (int b : e.blocks) freeBlocks[freeCount++] = b;
+            e.blocks = null;
+            storedBytes -= e.length;
+        }
+        metrics.set("content.cache.bytes", storedBytes);
+        metrics.set("content.cache.entries", entries.size());
+    }
+
+    private static Entry eldest(LinkedHashMap<Integer, Entry> queue) {
+        return queue.values().iterator().next();
+    }
+
+    // ---------- Off-heap ----------
+
+    private void copyIn(Entry e, byte[] bytes) {
+        int off = 0;
+        for (int b : e.blocks) {
+            int n = Math.min(BLOCK_BYTES, bytes.length - off);
+            chunks[b / CHUNK_BLOCKS].put((b % CHUNK_BLOCKS) * BLOCK_BYTES, bytes, off, n);
+            off += n;
+        }
+    }
+
+    private byte[] copyOut(Entry e) {
+        byte[] out = new byte[e.length];
+        int off = 0;
+        for (int b : e.blocks) {
+            int n = Math.min(BLOCK_BYTES, e.length - off);
+            chunks[b / CHUNK_BLOCKS].get((b % CHUNK_BLOCKS) * BLOCK_BYTES, out, off, n);
+            off += n;
+        }
+        return out;
+    }
+}
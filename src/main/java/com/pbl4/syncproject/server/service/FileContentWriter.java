@@ -0,0 +1,417 @@
+package com.pbl4.syncproject.server.service;
+
+import com.pbl4.syncproject.common.storage.PackStore;
+import com.pbl4.syncproject.common.storage.StorageManager;
+import com.pbl4.syncproject.server.ServerConfig;
+import com.pbl4.syncproject.server.dao.DatabaseManager;
+import com.pbl4.syncproject.server.dao.FilesDAO;
+import com.pbl4.syncproject.server.dao.FolderStatsDAO;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ghi nội dung mới cho (folderId, fileName) theo layout đang dùng, upsert metadata và phát sự kiện.
+ * Dùng chung cho UPLOAD_FILE, UPLOAD_PREFLIGHT (dedupe), RESTORE_VERSION và UploadJournal (writeStagedBatch).
+ *
+ * Nếu file đã tồn tại với nội dung khác thì nội dung cũ được giữ lại làm một phiên bản (VersionService)
+ * trước khi bị thay. Các lượt ghi cùng một (folderId, fileName) chạy lần lượt (FileWriteLocks).
+ * Bật quota.enabled thì nội dung làm vượt hạn mức của một thư mục tổ tiên (FolderStats.QuotaBytes) bị từ chối.
+ */
+public final class FileContentWriter {
+
+    private static final boolean QUOTA_ENABLED = ServerConfig.getBoolean("quota.enabled", false);
+
+    /** Ghi nội dung sẽ vượt hạn mức dung lượng của một thư mục */
+    public static final class QuotaExceededException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        QuotaExceededException(String message) {
+            super(message);
+        }
+    }
+
+    private final Connection dbConnection;
+    private final StorageManager storage = StorageManager.getInstance();
+
+    public FileContentWriter(Connection dbConnection) {
+        this.dbConnection = dbConnection;
+    }
+
+    public static final class Written {
+        public final int fileId;
+        public final long size;
+        public final String hash;
+        public final long lastModifiedMs;
+        public final boolean linked;
+
+        Written(int fileId, long size, String hash, long lastModifiedMs, boolean linked) {
+            this.fileId = fileId;
+            this.size = size;
+            this.hash = hash;
+            this.lastModifiedMs = lastModifiedMs;
+            this.linked = linked;
+        }
+    }
+
+    /** Một upload đã được UploadJournal ghi nhận: nội dung nằm ở file staged (đã fsync), DB chưa có */
+    public static final class Staged {
+        public final int folderId;
+        public final String fileName;
+        public final long size;
+        public final String hash;
+        public final Path file;
+        public final long lastModifiedMs;
+
+        public Staged(int folderId, String fileName, long size, String hash, Path file, long lastModifiedMs) {
+            this.folderId = folderId;
+            this.fileName = fileName;
+            this.size = size;
+            this.hash = hash;
+            this.file = file;
+            this.lastModifiedMs = lastModifiedMs;
+        }
+    }
+
+    /**
+     * Từ chối nếu (folderId, fileName) có size byte sẽ làm vượt hạn mức của thư mục đó hoặc một tổ tiên.
+     * Một truy vấn O(độ sâu) trên FolderStats, cộng cả byte UploadJournal đang chờ áp; không làm gì khi
+     * quota.enabled tắt.
+     */
+    public void checkQuota(int folderId, String fileName, long size) throws SQLException, QuotaExceededException {
+        if (!QUOTA_ENABLED) return;
+        checkQuota(folderId, fileName, size, UploadJournal.getInstance().queuedBytes());
+    }
+
+    /** Như trên, với byte đang chờ áp (theo folder đích) do người gọi đưa vào: UploadJournal.QuotaCheck */
+    public void checkQuota(int folderId, String fileName, long size, Map<Integer, Long> queued)
+            throws SQLException, QuotaExceededException {
+        if (!QUOTA_ENABLED) return;
+        FolderStatsDAO.Stats exceeded = new FolderStatsDAO(dbConnection)
+                .findExceededQuota(folderId, fileName, size, queued);
+        if (exceeded != null) {
+            ServerMetrics.getInstance().increment("quota.rejections");
+            throw new QuotaExceededException("Vượt hạn mức dung lượng của thư mục " + exceeded.folderId
+                    + " (đã dùng " + exceeded.totalBytes + "/" + exceeded.quotaBytes + " byte)");
+        }
+    }
+
+    /** Ghi nội dung bytes (hash = SHA-256 của bytes) */
+    public Written writeBytes(int folderId, String fileName, byte[] bytes, String hash) throws Exception {
+        return write(folderId, fileName, bytes.length, hash, bytes, null);
+    }
+
+    /** Tạo nội dung bằng hard link/copy từ một file đã có trên server (dedupe) */
+    public Written linkFrom(int folderId, String fileName, Path source, long size, String hash) throws Exception {
+        return write(folderId, fileName, size, hash, null, source);
+    }
+
+    // Cả chuỗi đọc bản hiện tại -> giữ phiên bản -> đặt nội dung -> upsert chạy dưới khóa của file:
+    // hai lượt ghi cùng file không xen nhau (DB và đĩa luôn cùng một nội dung).
+    // "try": Held chỉ giữ khóa tới hết khối try, không được dùng trong thân
+    @SuppressWarnings("try")
+    private Written write(int folderId, String fileName, long size, String hash, byte[] bytes, Path source)
+            throws Exception {
+        try (FileWriteLocks.Held ignored = FileWriteLocks.getInstance().lock(folderId, fileName)) {
+            return writeLocked(folderId, fileName, size, hash, bytes, source);
+        }
+    }
+
+    private Written writeLocked(int folderId, String fileName, long size, String hash, byte[] bytes, Path source)
+            throws Exception {
+        checkQuota(folderId, fileName, size);
+        FilesDAO filesDAO = new FilesDAO(dbConnection);
+        FilesDAO.CurrentContent current = filesDAO.getCurrentContent(folderId, fileName);
+        VersionService.getInstance().captureBeforeOverwrite(dbConnection, current, hash);
+
+        boolean linked = false;
+        long lastModifiedMs;
+        int fileId;
+        PackStore packs = storage.packs();
+        if (packs != null && packs.accepts(size)) {
+            // File nhỏ: nối vào segment thay vì tạo file riêng (nội dung nguồn dedupe cũng nhỏ, đọc hết được)
+            byte[] content = bytes != null ? bytes : Files.readAllBytes(source);
+            long mtime = System.currentTimeMillis();
+            lastModifiedMs = mtime;
+            fileId = storeThenPublish(current,
+                    () -> filesDAO.upsertFile(folderId, fileName, size, hash, mtime),
+                    id -> packs.put(dbConnection, id, content),
+                    id -> packs.remove(dbConnection, id));
+            // Bản riêng cũ (nếu có) không còn dùng
+            storage.deleteLooseFile(dbConnection, fileId, folderId, fileName);
+            ContentCache.getInstance().invalidate(fileId);
+            NamespaceEvents.fileUpserted(fileId, folderId, fileName, size, lastModifiedMs);
+            return new Written(fileId, size, hash, lastModifiedMs, false);
+        }
+        if (storage.isObjectLayout()) {
+            // Ghi/link vào file tạm trước. Ghi đè file có sẵn thì đã biết FileID: file tạm nằm luôn ở root
+            // sẽ chứa object, commit rồi mới upsert; file mới thì upsert + commit trong một transaction
+            int fileIdHint = current != null ? current.fileId : 0;
+            Path tmp;
+            if (bytes != null) {
+                tmp = storage.objects().writeTemp(bytes, fileIdHint);
+            } else {
+                tmp = storage.objects().newTempFile(fileIdHint);
+            }
+            try {
+                if (source != null) linked = storage.linkOrCopy(source, tmp);
+                long mtime = Files.getLastModifiedTime(tmp).toMillis();
+                lastModifiedMs = mtime;
+                fileId = storeThenPublish(current,
+                        () -> filesDAO.upsertFile(folderId, fileName, size, hash, mtime),
+                        id -> storage.objects().commit(tmp, id),
+                        id -> storage.objects().delete(id));
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            // Bản cũ theo cây thư mục (chưa được migrate) không còn dùng
+            storage.deleteLegacyFile(dbConnection, folderId, fileName);
+        } else {
+            Path folderPath = storage.resolveFolderPathFromDb(dbConnection, folderId);
+            Files.createDirectories(folderPath);
+            // Ghi qua file tạm + rename (không ghi đè tại chỗ vì file có thể là hard link dùng chung nội dung)
+            Path target = folderPath.resolve(fileName).normalize();
+            if (bytes != null) {
+                storage.writeAtomically(target, bytes);
+            } else {
+                linked = storage.linkOrCopy(source, target);
+            }
+            lastModifiedMs = Files.getLastModifiedTime(target).toMillis();
+            // Upsert DB (yêu cầu UNIQUE(FolderID, FileName))
+            fileId = filesDAO.upsertFile(folderId, fileName, size, hash, lastModifiedMs);
+        }
+        // Nội dung đã thay: bản ở tầng lạnh (nếu có) không còn đúng (upsert đã đặt lại Tier=0)
+        if (storage.tier() != null) storage.tier().delete(fileId);
+        // Nội dung mới quá lớn để gói: bỏ bản cũ trong segment
+        if (packs != null) packs.remove(dbConnection, fileId);
+        ContentCache.getInstance().invalidate(fileId);
+        NamespaceEvents.fileUpserted(fileId, folderId, fileName, size, lastModifiedMs);
+        return new Written(fileId, size, hash, lastModifiedMs, linked);
+    }
+
+    private interface Upsert {
+        int run() throws SQLException;
+    }
+
+    private interface ContentStep {
+        void run(int fileId) throws Exception;
+    }
+
+    /**
+     * Đặt nội dung trước, công bố metadata (hash/size mới) sau: người đọc không thấy hash mới đi với byte cũ và
+     * crash giữa chừng để lại dòng vẫn trỏ tới nội dung cũ. File đã có thì biết FileID: store rồi upsert.
+     * File mới cần FileID trước khi đặt nội dung: upsert + store trong một transaction (dòng chỉ hiện ra khi
+     * commit), lỗi thì rollback và gỡ nội dung đã đặt (undo). Vì vậy người gọi phải dùng kết nối riêng.
+     */
+    private int storeThenPublish(FilesDAO.CurrentContent current, Upsert upsert, ContentStep store, ContentStep undo)
+            throws Exception {
+        if (current != null) {
+            store.run(current.fileId);
+            return upsert.run();
+        }
+        if (DatabaseManager.isSharedConnection(dbConnection)) {
+            throw new SQLException("Ghi file mới phải chạy trên kết nối riêng");
+        }
+        boolean autoCommit = dbConnection.getAutoCommit();
+        dbConnection.setAutoCommit(false);
+        int fileId = 0;
+        try {
+            fileId = upsert.run();
+            store.run(fileId);
+            dbConnection.commit();
+            return fileId;
+        } catch (Exception e) {
+            dbConnection.rollback();
+            if (fileId > 0) {
+                try {
+                    undo.run(fileId);
+                } catch (Exception cleanup) {
+                    e.addSuppressed(cleanup);
+                }
+            }
+            throw e;
+        } finally {
+            dbConnection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Replica: đặt nội dung vừa tải từ primary (file tạm source trong storage root) cho dòng Files đã được ReplicaSync
+     * áp. Không upsert metadata, không giữ phiên bản, không kiểm tra hạn mức; chỉ đưa bản tầng lạnh của dòng về 0.
+     */
+    @SuppressWarnings("try")
+    public void placeReplicated(int fileId, int folderId, String fileName, Path source, long size) throws Exception {
+        try (FileWriteLocks.Held ignored = FileWriteLocks.getInstance().lock(folderId, fileName)) {
+            PackStore packs = storage.packs();
+            if (packs != null && packs.accepts(size)) {
+                packs.put(dbConnection, fileId, Files.readAllBytes(source));
+                storage.deleteLooseFile(dbConnection, fileId, folderId, fileName);
+            } else {
+                if (storage.isObjectLayout()) {
+                    Path tmp = storage.objects().newTempFile(fileId);
+                    try {
+                        storage.linkOrCopy(source, tmp);
+                        storage.objects().commit(tmp, fileId);
+                    } finally {
+                        Files.deleteIfExists(tmp);
+                    }
+                    storage.deleteLegacyFile(dbConnection, folderId, fileName);
+                } else {
+                    Path folderPath = storage.resolveFolderPathFromDb(dbConnection, folderId);
+                    Files.createDirectories(folderPath);
+                    storage.linkOrCopy(source, folderPath.resolve(fileName).normalize());
+                }
+                if (storage.tier() != null) storage.tier().delete(fileId);
+                if (packs != null) packs.remove(dbConnection, fileId);
+            }
+            new FilesDAO(dbConnection).resetTier(fileId);
+            ContentCache.getInstance().invalidate(fileId);
+        }
+    }
+
+    /**
+     * Áp một lô upload từ UploadJournal: metadata của cả lô được upsert bằng một câu lệnh nhiều dòng thay vì
+     * một round trip mỗi file. Mỗi (folderId, fileName) chỉ được xuất hiện một lần trong lô (journal giữ bản sau).
+     * Áp lại cùng lô (replay sau crash) cho cùng kết quả: nội dung trùng hash không tạo phiên bản mới.
+     * File staged được hard link (cùng ổ) vào chỗ, người gọi xóa sau khi áp xong.
+     */
+    @SuppressWarnings("try")
+    public List<Written> writeStagedBatch(List<Staged> batch) throws Exception {
+        FileWriteLocks locks = FileWriteLocks.getInstance();
+        List<Integer> stripes = new ArrayList<>(batch.size());
+        for (Staged s : batch) stripes.add(locks.stripeOf(s.folderId, s.fileName));
+        try (FileWriteLocks.Held ignored = locks.lockAll(stripes)) {
+            return writeStagedBatchLocked(batch);
+        }
+    }
+
+    private List<Written> writeStagedBatchLocked(List<Staged> batch) throws Exception {
+        FilesDAO filesDAO = new FilesDAO(dbConnection);
+        PackStore packs = storage.packs();
+        List<FilesDAO.NewContent> rows = new ArrayList<>(batch.size());
+        for (Staged s : batch) rows.add(new FilesDAO.NewContent(s.folderId, s.fileName, s.size, s.hash, s.lastModifiedMs));
+
+        List<FilesDAO.CurrentContent> before = filesDAO.getCurrentContents(rows);
+        // File đã có (biết FileID): đặt nội dung trước khi upsert công bố hash mới, như write
+        Map<Staged, Boolean> linked = new IdentityHashMap<>();
+        for (Staged s : batch) {
+            if (storage.isObjectLayout() || (packs != null && packs.accepts(s.size))) {
+                FilesDAO.CurrentContent current = find(before, s);
+                VersionService.getInstance().captureBeforeOverwrite(dbConnection, current, s.hash);
+                if (current != null) linked.put(s, storeStaged(s, current.fileId));
+                continue;
+            }
+            // Layout path: nội dung vào chỗ trước rồi mới upsert (như write). Lần áp trước hỏng sau bước này
+            // (DB lỗi) thì file đã là hard link của bản staged: bản cũ đã được giữ, không giữ lại nội dung mới
+            Path folderPath = storage.resolveFolderPathFromDb(dbConnection, s.folderId);
+            Files.createDirectories(folderPath);
+            Path target = folderPath.resolve(s.fileName).normalize();
+            if (Files.exists(target) && Files.isSameFile(target, s.file)) continue;
+            VersionService.getInstance().captureBeforeOverwrite(dbConnection, find(before, s), s.hash);
+            storage.linkOrCopy(s.file, target);
+        }
+        List<FilesDAO.CurrentContent> after = upsertThenStoreNew(filesDAO, rows, batch, linked);
+
+        List<Written> out = new ArrayList<>(batch.size());
+        for (Staged s : batch) {
+            FilesDAO.CurrentContent now = find(after, s);
+            int fileId = now.fileId;
+            if (packs != null && packs.accepts(s.size)) {
+                storage.deleteLooseFile(dbConnection, fileId, s.folderId, s.fileName);
+            } else {
+                if (storage.isObjectLayout()) storage.deleteLegacyFile(dbConnection, s.folderId, s.fileName);
+                if (storage.tier() != null) storage.tier().delete(fileId);
+                if (packs != null) packs.remove(dbConnection, fileId);
+            }
+            ContentCache.getInstance().invalidate(fileId);
+            NamespaceEvents.fileUpserted(fileId, s.folderId, now.fileName, s.size, s.lastModifiedMs);
+            out.add(new Written(fileId, s.size, s.hash, s.lastModifiedMs, linked.get(s)));
+        }
+        return out;
+    }
+
+    /**
+     * Upsert cả lô rồi đặt nội dung các file chưa có trong linked (file mới: chỉ có FileID sau upsert) trong một
+     * transaction, như storeThenPublish: dòng mới chỉ hiện ra khi nội dung đã ở chỗ. Lỗi thì rollback, gỡ nội dung
+     * vừa đặt và journal áp lại cả lô. Trả về các dòng sau upsert; linked được điền cho mọi file.
+     */
+    private List<FilesDAO.CurrentContent> upsertThenStoreNew(FilesDAO filesDAO, List<FilesDAO.NewContent> rows,
+                                                             List<Staged> batch, Map<Staged, Boolean> linked)
+            throws Exception {
+        if (DatabaseManager.isSharedConnection(dbConnection)) {
+            throw new SQLException("Áp lô upload phải chạy trên kết nối riêng");
+        }
+        Map<Staged, Integer> stored = new IdentityHashMap<>();
+        boolean autoCommit = dbConnection.getAutoCommit();
+        dbConnection.setAutoCommit(false);
+        try {
+            filesDAO.upsertFiles(rows);
+            List<FilesDAO.CurrentContent> after = filesDAO.getCurrentContents(rows);
+            for (Staged s : batch) {
+                FilesDAO.CurrentContent now = find(after, s);
+                if (now == null) throw new SQLException("Không thấy dòng vừa upsert: " + s.folderId + "/" + s.fileName);
+                if (linked.containsKey(s)) continue;
+                stored.put(s, now.fileId);
+                linked.put(s, storeStaged(s, now.fileId));
+            }
+            dbConnection.commit();
+            return after;
+        } catch (Exception e) {
+            dbConnection.rollback();
+            for (Map.Entry<Staged, Integer> n : stored.entrySet()) {
+                try {
+                    unstoreStaged(n.getKey(), n.getValue());
+                } catch (Exception cleanup) {
+                    e.addSuppressed(cleanup);
+                }
+            }
+            throw e;
+        } finally {
+            dbConnection.setAutoCommit(autoCommit);
+        }
+    }
+
+    // Đặt nội dung staged của một file vào segment/object store; layout path đã đặt trước upsert nên bỏ qua
+    private boolean storeStaged(Staged s, int fileId) throws Exception {
+        PackStore packs = storage.packs();
+        if (packs != null && packs.accepts(s.size)) {
+            packs.put(dbConnection, fileId, Files.readAllBytes(s.file));
+            return false;
+        }
+        if (!storage.isObjectLayout()) return false;
+        Path tmp = storage.objects().newTempFile(fileId);
+        try {
+            boolean linked = storage.linkOrCopy(s.file, tmp);
+            storage.objects().commit(tmp, fileId);
+            return linked;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // Ngược lại storeStaged cho file mới có transaction bị rollback (layout path không đặt gì ở đây)
+    private void unstoreStaged(Staged s, int fileId) throws Exception {
+        PackStore packs = storage.packs();
+        if (packs != null && packs.accepts(s.size)) {
+            packs.remove(dbConnection, fileId);
+        } else if (storage.isObjectLayout()) {
+            storage.objects().delete(fileId);
+        }
+    }
+
+    // Dòng của (folderId, fileName) theo cách so sánh của UNIQUE(FolderID, FileName) (utf8mb4_unicode_ci:
+    // không phân biệt hoa/thường và dấu)
+    private static FilesDAO.CurrentContent find(List<FilesDAO.CurrentContent> rows, Staged s) {
+        for (FilesDAO.CurrentContent c : rows) {
+            if (c.folderId == s.folderId && FileWriteLocks.sameName(c.fileName, s.fileName)) return c;
+        }
+        return null;
+    }
+}
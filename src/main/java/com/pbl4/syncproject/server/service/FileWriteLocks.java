@@ -0,0 +1,108 @@
+package com.pbl4.syncproject.server.service;
+
+import com.pbl4.syncproject.server.ServerConfig;
+
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Khóa ghi theo (folderId, fileName) cho FileContentWriter: hai lượt ghi cùng một file chạy lần lượt theo thứ tự
+ * đến (khóa công bằng), ghi các file khác nhau chạy song song.
+ *
+ * Khóa được chia thành upload.lock.stripes dải cố định (không tạo/xóa khóa theo từng file); hai file khác nhau chỉ
+ * chờ nhau khi trùng dải. Tên được so theo cách của UNIQUE(FolderID, FileName) (không phân biệt hoa/thường và dấu)
+ * nên hai tên mà DB coi là một file luôn vào cùng dải. Không ai chờ thì lấy khóa chỉ là một CAS.
+ *
+ * Thời gian chờ (micro giây) được ghi vào histogram "upload.lock.wait.us" của ServerMetrics.
+ */
+public final class FileWriteLocks {
+
+    private static final FileWriteLocks INSTANCE = new FileWriteLocks();
+
+    public static FileWriteLocks getInstance() {
+        return INSTANCE;
+    }
+
+    /** Khóa đang giữ, nhả bằng close (try-with-resources) */
+    public interface Held extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    // Collator không thread-safe
+    private static final ThreadLocal<Collator> NAME_COLLATOR = ThreadLocal.withInitial(() -> {
+        Collator c = Collator.getInstance(Locale.ROOT);
+        c.setStrength(Collator.PRIMARY);
+        return c;
+    });
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+
+    private FileWriteLocks() {
+        int n = Integer.highestOneBit(Math.max(16, ServerConfig.getInt("upload.lock.stripes", 1024)) - 1) << 1;
+        stripes = new ReentrantLock[n];
+        for (int i = 0; i < n; i++) stripes[i] = new ReentrantLock(true);
+        mask = n - 1;
+    }
+
+    /** Hai tên là cùng một file theo collation utf8mb4_unicode_ci của bảng Files */
+    public static boolean sameName(String a, String b) {
+        return NAME_COLLATOR.get().compare(a, b) == 0;
+    }
+
+    public int stripeOf(int folderId, String fileName) {
+        int h = folderId * 0x9E3779B9 ^ Arrays.hashCode(NAME_COLLATOR.get().getCollationKey(fileName).toByteArray());
+        h ^= h >>> 16;
+        h *= 0x45d9f3b;
+        h ^= h >>> 16;
+        return h & mask;
+    }
+
+    public Held lock(int folderId, String fileName) {
+        ReentrantLock l = stripes[stripeOf(folderId, fileName)];
+        acquire(l);
+        return l::unlock;
+    }
+
+    /** Khóa nhiều dải cùng lúc (lô của UploadJournal): lấy theo thứ tự tăng dần để hai lô không chờ nhau vòng tròn */
+    public Held lockAll(Collection<Integer> stripeIds) {
+        Integer[] ordered = new TreeSet<>(stripeIds).toArray(new Integer[0]);
+        int taken = 0;
+        try {
+            for (int id : ordered) {
+                acquire(stripes[id]);
+                taken++;
+            }
+        } catch (RuntimeException e) {
+            for (int i = taken - 1; i >= 0; i--) stripes[ordered[i]].unlock();
+            throw e;
+        }
+        return () -> {
+            for (int i = ordered.length - 1; i >= 0; i--) stripes[ordered[i]].unlock();
+        };
+    }
+
+    private void acquire(ReentrantLock l) {
+        metrics.increment("upload.lock.acquired");
+        // tryLock có timeout tôn trọng thứ tự chờ của khóa công bằng (tryLock() không tham số thì chen ngang)
+        try {
+            if (l.tryLock(0, TimeUnit.NANOSECONDS)) {
+                metrics.observe("upload.lock.wait.us", 0);
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        metrics.increment("upload.lock.contended");
+        long started = System.nanoTime();
+        l.lock();
+        metrics.observe("upload.lock.wait.us", (System.nanoTime() - started) / 1000);
+    }
+}
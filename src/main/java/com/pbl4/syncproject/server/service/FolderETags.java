@@ -0,0 +1,174 @@
+package com.pbl4.syncproject.server.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ETag cho GET_FILE_LIST / FOLDER_TREE, tính hoàn toàn trong bộ nhớ (không query DB).
+ *
+ * Mỗi folder có một bộ đếm, tăng khi nội dung hiển thị trong listing của nó thay đổi:
+ * - file trong folder được ghi / xóa
+ * - folder con được tạo / đổi tên / chuyển đi hoặc đến / xóa
+ * - hasChildren của một folder con thay đổi (tạo/xóa/chuyển folder cháu)
+ * - dung lượng / số file (FolderStats) của một folder con thay đổi: file ghi / xóa ở bất kỳ đâu trong cây con,
+ *   nên mọi tổ tiên của folder chứa file đều bị tăng (đi lên theo parent đã biết, hoặc theo NamespaceIndex)
+ * Bộ đếm 0 dùng cho danh sách các folder root.
+ *
+ * ETag = epoch khởi động + bộ đếm folder + user + bộ đếm thay đổi quyền của user đó.
+ * Server khởi động lại thì mọi ETag cũ tự mất hiệu lực.
+ * Thay đổi DB trực tiếp (không qua server) sẽ không được phát hiện.
+ */
+public final class FolderETags implements NamespaceListener {
+
+    private static final FolderETags INSTANCE = new FolderETags();
+
+    public static FolderETags getInstance() {
+        return INSTANCE;
+    }
+
+    private static final int ROOT_LEVEL = 0; // FolderID trong DB bắt đầu từ 1
+    private static final int MAX_DEPTH = 1000;
+
+    private final long epoch = System.currentTimeMillis();
+    private final Map<Integer, Long> versions = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> aclVersions = new ConcurrentHashMap<>();
+    // folder -> parent (ROOT_LEVEL nếu là root), học từ các listing đã trả và từ sự kiện.
+    // Mọi ETag phủ hasChildren của folder X đều được cấp sau khi đã biết parent của X.
+    private final Map<Integer, Integer> parents = new ConcurrentHashMap<>();
+    // Tăng ở mọi thay đổi folder; handler so sánh trước/sau khi liệt kê để phát hiện thay đổi
+    // xảy ra trước khi kịp noteChild (khi đó không trả ETag cho lần này)
+    private final AtomicLong folderChanges = new AtomicLong();
+    // Tăng khi không đi hết được chuỗi tổ tiên của một folder vừa đổi dung lượng; nằm trong ETag của listing ("L")
+    // để listing của tổ tiên chưa biết không trả 304 với dung lượng cũ
+    private final AtomicLong unresolvedStats = new AtomicLong();
+
+    private FolderETags() {}
+
+    /** ETag của listing folder (folderId = null: các folder root); kind phân biệt loại response */
+    public String etag(String kind, Integer folderId, int userId) {
+        int key = folderId != null ? folderId : ROOT_LEVEL;
+        return kind + "-" + epoch + "-" + versions.getOrDefault(key, 0L)
+                + "-" + userId + "-" + aclVersions.getOrDefault(userId, 0L)
+                + ("L".equals(kind) ? "-" + unresolvedStats.get() : "");
+    }
+
+    /**
+     * Phiên bản listing của folder: đổi mỗi khi tập folder con hoặc dung lượng / số file của một folder con đổi.
+     * Dùng làm khóa cho dữ liệu suy ra từ listing (FolderStatsCache).
+     */
+    public String listingVersion(int folderId) {
+        return versions.getOrDefault(folderId, 0L) + "-" + unresolvedStats.get();
+    }
+
+    public long folderChangeStamp() {
+        return folderChanges.get();
+    }
+
+    /** Ghi nhận quan hệ cha/con của các folder vừa được liệt kê */
+    public void noteChild(Integer parentId, int childId) {
+        parents.put(childId, parentId != null ? parentId : ROOT_LEVEL);
+    }
+
+    private void folderChanged() {
+        folderChanges.incrementAndGet();
+    }
+
+    private void bump(Integer folderId) {
+        versions.merge(folderId != null ? folderId : ROOT_LEVEL, 1L, Long::sum);
+    }
+
+    // Folder thay đổi số con -> listing của chính nó và hasChildren trong listing của cha nó
+    private void bumpWithParent(Integer folderId) {
+        bump(folderId);
+        if (folderId == null) return;
+        Integer parent = parents.get(folderId);
+        if (parent != null) bump(parent);
+    }
+
+    // Dung lượng của cây con folderId đổi: listing của chính nó và của mọi tổ tiên (cột size của folder con)
+    private void bumpAncestors(Integer folderId) {
+        if (folderId == null) {
+            bump(null);
+            return;
+        }
+        bump(folderId);
+        int current = folderId;
+        for (int depth = 0; depth < MAX_DEPTH; depth++) {
+            Integer parent = parentOf(current);
+            if (parent == null) {
+                unresolvedStats.incrementAndGet();
+                return;
+            }
+            bump(parent);
+            if (parent == ROOT_LEVEL) return;
+            current = parent;
+        }
+    }
+
+    private Integer parentOf(int folderId) {
+        Integer parent = parents.get(folderId);
+        if (parent != null) return parent;
+        NamespaceIndex index = NamespaceIndex.getInstance();
+        if (!index.isLoaded() || !index.containsFolder(folderId)) return null;
+        try {
+            parent = index.getParentId(folderId);
+        } catch (Exception e) {
+            return null;
+        }
+        parent = parent != null ? parent : ROOT_LEVEL;
+        parents.put(folderId, parent);
+        return parent;
+    }
+
+    // ---------- NamespaceListener ----------
+
+    @Override
+    public void onFolderCreated(int folderId, Integer parentId, String folderName) {
+        folderChanged();
+        noteChild(parentId, folderId);
+        bumpWithParent(parentId);
+    }
+
+    @Override
+    public void onFolderRenamed(int folderId, String newName) {
+        folderChanged();
+        bump(folderId);
+        Integer parent = parents.get(folderId);
+        if (parent != null) bump(parent);
+    }
+
+    @Override
+    public void onFolderMoved(int folderId, Integer oldParentId, Integer newParentId) {
+        folderChanged();
+        noteChild(newParentId, folderId);
+        bumpWithParent(oldParentId);
+        bumpWithParent(newParentId);
+        // Cây con mang theo dung lượng của nó
+        bumpAncestors(oldParentId);
+        bumpAncestors(newParentId);
+    }
+
+    @Override
+    public void onFolderDeleted(int folderId, Integer parentId) {
+        folderChanged();
+        bump(folderId);
+        parents.remove(folderId);
+        bumpWithParent(parentId);
+    }
+
+    @Override
+    public void onFileUpserted(int fileId, int folderId, String fileName, long size, long lastModifiedMs) {
+        bumpAncestors(folderId);
+    }
+
+    @Override
+    public void onFileDeleted(int fileId, int folderId) {
+        bumpAncestors(folderId);
+    }
+
+    @Override
+    public void onAclChanged(int userId, int folderId, Integer fileId) {
+        aclVersions.merge(userId, 1L, Long::sum);
+    }
+}
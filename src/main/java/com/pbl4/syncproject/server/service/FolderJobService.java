@@ -0,0 +1,482 @@
+package com.pbl4.syncproject.server.service;
+
+import com.google.gson.JsonObject;
+import com.pbl4.syncproject.common.model.Folders;
+import com.pbl4.syncproject.common.storage.StorageManager;
+import com.pbl4.syncproject.server.ServerConfig;
+import com.pbl4.syncproject.server.dao.DatabaseManager;
+import com.pbl4.syncproject.server.dao.FolderDAO;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Xóa / chuyển cả cây thư mục chạy nền (DELETE_FOLDER, MOVE_FOLDER): handler chỉ kiểm tra rồi xếp job và trả ngay
+ * operationId, client hỏi tiến độ bằng FOLDER_JOB_STATUS.
+ *
+ * Job chạy lần lượt trên một thread nền với kết nối DB riêng:
+ *   - Xóa: folder không có thùng rác nên file còn trong cây con (kể cả file đã ở thùng rác) bị xóa hẳn; chỉ chạy
+ *     khi người gọi xác nhận permanent, không thì job dừng ở file đầu tiên. Xóa theo từng lô folder.job.batch.size
+ *     dòng (mỗi lô một transaction ngắn, giữ FileWriteLocks của các file trong lô), dọn nội dung trên đĩa như
+ *     TrashCollector; sau đó xóa folder từ sâu lên nông theo lô. Trigger trên Files giữ FolderStats đúng sau từng lô.
+ *   - Chuyển: file không đổi FolderID nên chỉ là một lần cập nhật closure (FolderDAO.moveFolder), O(số folder).
+ * Job đã xong được giữ folder.job.retention.minutes phút để client đọc kết quả.
+ */
+public final class FolderJobService {
+
+    private static final FolderJobService INSTANCE = new FolderJobService();
+
+    public static FolderJobService getInstance() {
+        return INSTANCE;
+    }
+
+    public static final String DELETE = "DELETE_FOLDER";
+    public static final String MOVE = "MOVE_FOLDER";
+
+    public static final String QUEUED = "queued";
+    public static final String RUNNING = "running";
+    public static final String DONE = "done";
+    public static final String FAILED = "failed";
+
+    /** Một thao tác trên cây thư mục; các trường tiến độ do thread nền ghi, handler chỉ đọc */
+    public static final class Job {
+        public final String id;
+        public final String kind;
+        public final int folderId;
+        public final Integer targetParentId; // MOVE: parent mới
+        public final int userId;
+        public final boolean permanent;      // DELETE: được xóa hẳn file còn trong cây con
+        public final long createdAt = System.currentTimeMillis();
+
+        volatile String state = QUEUED;
+        volatile String error;
+        volatile long startedAt;
+        volatile long finishedAt;
+        volatile long filesTotal;
+        volatile long filesDone;
+        volatile long foldersTotal;
+        volatile long foldersDone;
+
+        Job(String kind, int folderId, Integer targetParentId, int userId, boolean permanent) {
+            this.id = UUID.randomUUID().toString();
+            this.kind = kind;
+            this.folderId = folderId;
+            this.targetParentId = targetParentId;
+            this.userId = userId;
+            this.permanent = permanent;
+        }
+
+        public String getState() {
+            return state;
+        }
+
+        public boolean isActive() {
+            return QUEUED.equals(state) || RUNNING.equals(state);
+        }
+
+        public JsonObject toJson() {
+            JsonObject o = new JsonObject();
+            o.addProperty("operationId", id);
+            o.addProperty("kind", kind);
+            o.addProperty("folderId", folderId);
+            if (targetParentId != null) o.addProperty("newParentId", targetParentId);
+            if (DELETE.equals(kind)) o.addProperty("permanent", permanent);
+            o.addProperty("state", state);
+            o.addProperty("filesTotal", filesTotal);
+            o.addProperty("filesDone", filesDone);
+            o.addProperty("foldersTotal", foldersTotal);
+            o.addProperty("foldersDone", foldersDone);
+            long total = filesTotal + foldersTotal;
+            o.addProperty("progress", DONE.equals(state) ? 1.0
+                    : total > 0 ? Math.min(1.0, (double) (filesDone + foldersDone) / total) : 0.0);
+            o.addProperty("createdAt", createdAt);
+            if (startedAt > 0) o.addProperty("startedAt", startedAt);
+            if (finishedAt > 0) o.addProperty("finishedAt", finishedAt);
+            if (error != null) o.addProperty("error", error);
+            return o;
+        }
+    }
+
+    private final int batchSize = Math.max(1, ServerConfig.getInt("folder.job.batch.size", 500));
+    private final long retentionMs = TimeUnit.MINUTES.toMillis(ServerConfig.getLong("folder.job.retention.minutes", 60));
+
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final BlockingQueue<Job> queue = new LinkedBlockingQueue<>();
+    private volatile Thread worker;
+
+    private FolderJobService() {}
+
+    public synchronized void start() {
+        if (worker != null) return;
+        worker = new Thread(this::loop, "folder-jobs");
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MIN_PRIORITY);
+        worker.start();
+    }
+
+    public Job submitDelete(int folderId, int userId, boolean permanent) {
+        return submit(new Job(DELETE, folderId, null, userId, permanent));
+    }
+
+    public Job submitMove(int folderId, int newParentId, int userId) {
+        return submit(new Job(MOVE, folderId, newParentId, userId, false));
+    }
+
+    /** Số file (kể cả trong thùng rác) trong cây con của folderId */
+    public long countFiles(Connection conn, int folderId) throws SQLException {
+        return countSubtree(conn, FILES_IN_SUBTREE, folderId);
+    }
+
+    private Job submit(Job job) {
+        pruneFinished();
+        jobs.put(job.id, job);
+        queue.add(job);
+        metrics.increment("folder.jobs.submitted");
+        metrics.set("folder.jobs.queued", queue.size());
+        return job;
+    }
+
+    public Job get(String operationId) {
+        return operationId != null ? jobs.get(operationId) : null;
+    }
+
+    /** Các job (đang chạy và đã xong còn giữ) của một user, mới nhất trước */
+    public List<Job> jobsOf(int userId) {
+        List<Job> out = new ArrayList<>();
+        for (Job j : jobs.values()) if (j.userId == userId) out.add(j);
+        out.sort(Comparator.comparingLong((Job j) -> j.createdAt).reversed());
+        return out;
+    }
+
+    /**
+     * Job chưa xong có cây con chồng lên một trong các folder (folder nằm trong cây của job hoặc ngược lại), null
+     * nếu không có. Handler từ chối thao tác mới trên cây đang bị xóa / chuyển.
+     */
+    public Job findConflicting(Connection conn, int... folderIds) throws SQLException {
+        FolderDAO folderDAO = new FolderDAO(conn);
+        for (Job j : jobs.values()) {
+            if (!j.isActive()) continue;
+            for (int id : folderIds) {
+                if (folderDAO.isDescendant(id, j.folderId) || folderDAO.isDescendant(j.folderId, id)) return j;
+                if (j.targetParentId != null && folderDAO.isDescendant(j.targetParentId, id)) return j;
+            }
+        }
+        return null;
+    }
+
+    private void pruneFinished() {
+        long cutoff = System.currentTimeMillis() - retentionMs;
+        jobs.values().removeIf(j -> !j.isActive() && j.finishedAt > 0 && j.finishedAt < cutoff);
+    }
+
+    private void loop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Job job;
+            try {
+                job = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            metrics.set("folder.jobs.queued", queue.size());
+            run(job);
+        }
+    }
+
+    void run(Job job) {
+        job.state = RUNNING;
+        job.startedAt = System.currentTimeMillis();
+        try (Connection conn = DatabaseManager.openConnection()) {
+            if (DELETE.equals(job.kind)) runDelete(conn, job);
+            else runMove(conn, job);
+            job.state = DONE;
+            metrics.increment("folder.jobs.completed");
+            System.out.println("📁 FolderJob " + job.kind + " folder " + job.folderId + ": xong ("
+                    + job.filesDone + " file, " + job.foldersDone + " folder)");
+        } catch (Exception e) {
+            job.error = e.getMessage();
+            job.state = FAILED;
+            metrics.increment("folder.jobs.failed");
+            System.err.println("❌ FolderJob " + job.kind + " folder " + job.folderId + " lỗi: " + e.getMessage());
+        } finally {
+            job.finishedAt = System.currentTimeMillis();
+            metrics.observe("folder.job.ms", job.finishedAt - job.startedAt);
+        }
+    }
+
+    // ---------- DELETE_FOLDER ----------
+
+    private void runDelete(Connection conn, Job job) throws Exception {
+        FolderDAO folderDAO = new FolderDAO(conn);
+        if (folderDAO.getParentId(job.folderId) == null) throw new SQLException("Không thể xóa folder root");
+        StorageManager storage = StorageManager.getInstance();
+        // Đường dẫn kiểu cũ phải lấy trước khi các dòng Folders biến mất
+        Path legacyDir = storage.resolveFolderPathFromDb(conn, job.folderId);
+
+        job.foldersTotal = countSubtree(conn,
+                "SELECT COUNT(*) FROM FolderClosure WHERE AncestorID = ?", job.folderId);
+        job.filesTotal = countSubtree(conn, FILES_IN_SUBTREE, job.folderId);
+
+        // Folder bị xóa từ sâu lên nông; lô nào còn file (upload chen vào) thì quay lại xóa file rồi thử lại
+        while (true) {
+            while (deleteFileBatch(conn, job) > 0) {
+                // tiếp lô sau
+            }
+            List<Integer> batch = deepestFolders(conn, job.folderId);
+            if (batch.isEmpty()) break;
+            deleteFolderBatch(conn, job, batch);
+        }
+
+        if (!legacyDir.equals(storage.getRoot()) && Files.isDirectory(legacyDir)) deleteTree(legacyDir);
+    }
+
+    private static final String FILES_IN_SUBTREE =
+            "SELECT COUNT(*) FROM FolderClosure c JOIN Files f ON f.FolderID = c.DescendantID WHERE c.AncestorID = ?";
+
+    private static long countSubtree(Connection conn, String sql, int folderId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, folderId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    private static final class Doomed {
+        final int fileId;
+        final int folderId;
+        final String fileName;
+        final long size;
+        final boolean live;
+
+        Doomed(int fileId, int folderId, String fileName, long size, boolean live) {
+            this.fileId = fileId;
+            this.folderId = folderId;
+            this.fileName = fileName;
+            this.size = size;
+            this.live = live;
+        }
+    }
+
+    /** Xóa hẳn một lô file (cả file trong thùng rác) của cây con, trả về số dòng đã xóa */
+    @SuppressWarnings("try") // Held chỉ giữ khóa tới hết khối try
+    private int deleteFileBatch(Connection conn, Job job) throws Exception {
+        List<Doomed> candidates = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT f.FileID, f.FolderID, f.FileName, f.FileSize, f.DeletedAt IS NULL FROM FolderClosure c " +
+                        "JOIN Files f ON f.FolderID = c.DescendantID WHERE c.AncestorID = ? LIMIT ?")) {
+            ps.setInt(1, job.folderId);
+            ps.setInt(2, batchSize);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    candidates.add(new Doomed(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getLong(4), rs.getBoolean(5)));
+                }
+            }
+        }
+        if (candidates.isEmpty()) return 0;
+        // Không xác nhận xóa vĩnh viễn (cây rỗng lúc nhận job, có upload chen vào): dừng, không đụng tới file nào
+        if (!job.permanent) throw new SQLException("Thư mục có file: xóa thư mục sẽ xóa vĩnh viễn, cần 'permanent': true");
+
+        // Giữ khóa ghi của các file trong lô: upload đang ghi dở cùng file phải xong (hoặc chờ) trước khi xóa
+        FileWriteLocks locks = FileWriteLocks.getInstance();
+        Set<Integer> stripes = new HashSet<>();
+        for (Doomed d : candidates) stripes.add(locks.stripeOf(d.folderId, d.fileName));
+        List<Doomed> deleted = new ArrayList<>();
+        try (FileWriteLocks.Held ignored = locks.lockAll(stripes)) {
+            conn.setAutoCommit(false);
+            try {
+                String in = placeholders(candidates.size());
+                Set<Integer> present = new HashSet<>();
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "SELECT FileID FROM Files WHERE FileID IN (" + in + ") FOR UPDATE")) {
+                    for (int i = 0; i < candidates.size(); i++) ps.setInt(i + 1, candidates.get(i).fileId);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) present.add(rs.getInt(1));
+                    }
+                }
+                for (Doomed d : candidates) if (present.contains(d.fileId)) deleted.add(d);
+                if (!deleted.isEmpty()) {
+                    try (PreparedStatement ps = conn.prepareStatement(
+                            "DELETE FROM Files WHERE FileID IN (" + placeholders(deleted.size()) + ")")) {
+                        for (int i = 0; i < deleted.size(); i++) ps.setInt(i + 1, deleted.get(i).fileId);
+                        ps.executeUpdate();
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+
+            for (Doomed d : deleted) {
+                try {
+                    if (!TrashCollector.purgeStoredContent(conn, d.fileId) && d.live) {
+                        // Layout cũ: thư mục của cả cây được xóa khi xong; bỏ sớm để không chiếm chỗ suốt job
+                        Files.deleteIfExists(StorageManager.getInstance().legacyFilePath(conn, d.folderId, d.fileName));
+                    }
+                } catch (Exception ex) {
+                    metrics.increment("folder.job.unlink.errors");
+                }
+            }
+        }
+
+        for (Doomed d : deleted) {
+            if (d.live) NamespaceEvents.fileDeleted(d.fileId, d.folderId);
+        }
+        job.filesDone += deleted.size();
+        // Upload chen vào cây trong lúc xóa làm tổng tăng theo
+        if (job.filesDone > job.filesTotal) job.filesTotal = job.filesDone;
+        metrics.add("folder.job.files.deleted", deleted.size());
+        return candidates.size();
+    }
+
+    // Lô folder sâu nhất của cây con: con của chúng (nếu có) đã bị xóa ở lô trước hoặc cũng nằm trong lô
+    private List<Integer> deepestFolders(Connection conn, int rootId) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT DescendantID FROM FolderClosure WHERE AncestorID = ? ORDER BY Depth DESC LIMIT ?")) {
+            ps.setInt(1, rootId);
+            ps.setInt(2, batchSize);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) ids.add(rs.getInt(1));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Xóa một lô folder đã rỗng. Khóa các dòng Folders trước (upload / CREATE_FOLDER vào đó phải chờ và sau đó lỗi
+     * khóa ngoại), rồi kiểm tra lại: còn file hoặc folder con ngoài lô thì bỏ lô này, vòng ngoài sẽ xử lý chúng trước
+     * (xóa cascade sẽ bỏ qua trigger thống kê và nội dung trên đĩa).
+     */
+    private void deleteFolderBatch(Connection conn, Job job, List<Integer> batch) throws SQLException {
+        String in = placeholders(batch.size());
+        List<Integer[]> removed = new ArrayList<>();
+        conn.setAutoCommit(false);
+        try {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT FolderID, ParentFolderID FROM Folders WHERE FolderID IN (" + in + ") ORDER BY FolderID FOR UPDATE")) {
+                bindAll(ps, batch, 1);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) removed.add(new Integer[]{rs.getInt(1), (Integer) rs.getObject(2)});
+                }
+            }
+            boolean busy;
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT 1 FROM Files WHERE FolderID IN (" + in + ") LIMIT 1")) {
+                bindAll(ps, batch, 1);
+                try (ResultSet rs = ps.executeQuery()) {
+                    busy = rs.next();
+                }
+            }
+            if (!busy) {
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "SELECT 1 FROM Folders WHERE ParentFolderID IN (" + in + ") AND FolderID NOT IN (" + in + ") LIMIT 1")) {
+                    bindAll(ps, batch, 1);
+                    bindAll(ps, batch, batch.size() + 1);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        busy = rs.next();
+                    }
+                }
+            }
+            if (busy) {
+                conn.rollback();
+                metrics.increment("folder.job.retries");
+                return;
+            }
+            try (PreparedStatement ps = conn.prepareStatement("DELETE FROM Folders WHERE FolderID IN (" + in + ")")) {
+                bindAll(ps, batch, 1);
+                ps.executeUpdate();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+
+        job.foldersDone += removed.size();
+        if (job.foldersDone > job.foldersTotal) job.foldersTotal = job.foldersDone;
+        for (Integer[] f : removed) NamespaceEvents.folderDeleted(f[0], f[1]);
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    // ---------- MOVE_FOLDER ----------
+
+    private void runMove(Connection conn, Job job) throws Exception {
+        FolderDAO folderDAO = new FolderDAO(conn);
+        int newParentId = job.targetParentId;
+        Integer oldParentId = folderDAO.getParentId(job.folderId);
+        if (oldParentId == null) throw new SQLException("Không thể chuyển folder root");
+        List<Folders> found = folderDAO.getFoldersByIds(List.of(job.folderId, newParentId));
+        if (found.size() < 2) throw new SQLException("Folder nguồn hoặc đích không còn tồn tại");
+        if (oldParentId == newParentId) {
+            job.foldersTotal = job.foldersDone = 1;
+            return;
+        }
+        String name = null;
+        for (Folders f : found) if (f.getFolderId() == job.folderId) name = f.getFolderName();
+        if (folderDAO.existsInParent(newParentId, name)) throw new SQLException("Thư mục đích đã có folder '" + name + "'");
+
+        job.foldersTotal = countSubtree(conn, "SELECT COUNT(*) FROM FolderClosure WHERE AncestorID = ?", job.folderId);
+
+        // Như RENAME_FOLDER: thư mục trên đĩa chỉ còn với layout cũ / chưa migrate xong
+        StorageManager sm = StorageManager.getInstance();
+        Path oldPath = sm.resolveFolderPathFromDb(conn, job.folderId);
+        Path newPath = sm.resolveFolderPathFromDb(conn, newParentId).resolve(name);
+        boolean moved = false;
+        if (Files.exists(oldPath)) {
+            Files.createDirectories(newPath.getParent());
+            Files.move(oldPath, newPath);
+            moved = true;
+        }
+        try {
+            folderDAO.moveFolder(job.folderId, newParentId);
+        } catch (Exception e) {
+            if (moved) Files.move(newPath, oldPath);
+            throw e;
+        }
+        job.foldersDone = job.foldersTotal;
+        NamespaceEvents.folderMoved(job.folderId, oldParentId, newParentId);
+    }
+
+    // ---------- tiện ích ----------
+
+    private static String placeholders(int n) {
+        StringBuilder in = new StringBuilder();
+        for (int i = 0; i < n; i++) in.append(i == 0 ? "?" : ",?");
+        return in.toString();
+    }
+
+    private static void bindAll(PreparedStatement ps, List<Integer> ids, int from) throws SQLException {
+        for (int i = 0; i < ids.size(); i++) ps.setInt(from + i, ids.get(i));
+    }
+}
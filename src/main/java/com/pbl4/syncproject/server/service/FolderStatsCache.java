@@ -0,0 +1,65 @@
+package com.pbl4.syncproject.server.service;
+
+import com.pbl4.syncproject.server.dao.FolderStatsDAO;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Thống kê (FolderStats) của các folder con trong một listing, giữ theo FolderETags.listingVersion của folder cha:
+ * listing lặp lại của folder không đổi không query FolderStats. Phiên bản được đọc TRƯỚC khi query, nên kết quả
+ * đọc song song với một thay đổi chỉ nằm dưới phiên bản cũ và không bao giờ được dùng lại.
+ */
+public final class FolderStatsCache {
+
+    private static final FolderStatsCache INSTANCE = new FolderStatsCache();
+
+    public static FolderStatsCache getInstance() {
+        return INSTANCE;
+    }
+
+    private static final int MAX_FOLDERS = 4096;
+
+    private static final class Entry {
+        final String version;
+        final List<Integer> childIds;
+        final Map<Integer, FolderStatsDAO.Stats> stats;
+
+        Entry(String version, List<Integer> childIds, Map<Integer, FolderStatsDAO.Stats> stats) {
+            this.version = version;
+            this.childIds = childIds;
+            this.stats = stats;
+        }
+    }
+
+    // Chỉ đọc/ghi khi giữ khóa entries
+    private final Map<Integer, Entry> entries = new LinkedHashMap<Integer, Entry>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+            return size() > MAX_FOLDERS;
+        }
+    };
+
+    private FolderStatsCache() {}
+
+    /** Thống kê của childIds (các folder con của parentId); folder chưa có dòng thống kê thì không có trong kết quả */
+    public Map<Integer, FolderStatsDAO.Stats> getChildStats(Connection conn, int parentId, List<Integer> childIds)
+            throws SQLException {
+        String version = FolderETags.getInstance().listingVersion(parentId);
+        synchronized (entries) {
+            Entry e = entries.get(parentId);
+            if (e != null && e.version.equals(version) && e.childIds.equals(childIds)) return e.stats;
+        }
+        Map<Integer, FolderStatsDAO.Stats> stats =
+                Collections.unmodifiableMap(new FolderStatsDAO(conn).getStats(childIds));
+        synchronized (entries) {
+            entries.put(parentId, new Entry(version, new ArrayList<>(childIds), stats));
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,124 @@
+package com.pbl4.syncproject.server.service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Phiên bản của cây thư mục, tăng mỗi khi cây (hoặc quyền trên cây) thay đổi.
+ * Dạng chuỗi "epoch.seq": epoch = thời điểm server khởi động, nên version của lần chạy trước
+ * luôn bị coi là quá cũ và client nhận lại snapshot đầy đủ.
+ *
+ * Giữ một nhật ký giới hạn các folder bị thay đổi để trả diff cho FOLDER_TREE_SNAPSHOT.
+ * Đổi quyền và di chuyển folder làm thay đổi cả cây con (tập folder nhìn thấy được, độ sâu, thuộc cây con
+ * client đang cache hay không) nên được ghi là "reset" (client lấy lại toàn bộ).
+ */
+public final class FolderTreeVersion implements NamespaceListener {
+
+    private static final FolderTreeVersion INSTANCE = new FolderTreeVersion();
+
+    public static FolderTreeVersion getInstance() {
+        return INSTANCE;
+    }
+
+    private static final int MAX_LOG = 4096;
+
+    private static final int CHANGED = 0;
+    private static final int DELETED = 1;
+    private static final int RESET = 2;
+
+    private final long epoch = System.currentTimeMillis();
+    private long seq;                                     // chỉ đọc/ghi trong synchronized
+    private final Deque<long[]> log = new ArrayDeque<>(); // {seq, folderId, kind, parentId (-1 = không có)}
+
+    private FolderTreeVersion() {}
+
+    public synchronized String current() {
+        return epoch + "." + seq;
+    }
+
+    /** Một folder trong diff: bị xóa (kèm folder cha lúc xóa, để lọc theo cây con) hoặc cần đọc lại */
+    public static final class Change {
+        public final boolean deleted;
+        public final Integer parentId;
+
+        Change(boolean deleted, Integer parentId) {
+            this.deleted = deleted;
+            this.parentId = parentId;
+        }
+    }
+
+    /**
+     * Các thay đổi kể từ sinceVersion theo FolderID.
+     * Trả về null nếu không thể diff (khác epoch, quá cũ so với nhật ký, hoặc có reset) -> gửi snapshot đầy đủ.
+     */
+    public synchronized Map<Integer, Change> changesSince(String sinceVersion) {
+        long since = parseSeq(sinceVersion);
+        if (since < 0 || since > seq) return null;
+        if (since < seq && (log.isEmpty() || log.peekFirst()[0] > since + 1)) return null;
+
+        Map<Integer, Change> changes = new LinkedHashMap<>();
+        for (Iterator<long[]> it = log.iterator(); it.hasNext(); ) {
+            long[] e = it.next();
+            if (e[0] <= since) continue;
+            if (e[2] == RESET) return null;
+            changes.put((int) e[1], new Change(e[2] == DELETED, e[3] >= 0 ? (int) e[3] : null));
+        }
+        return changes;
+    }
+
+    private long parseSeq(String version) {
+        if (version == null) return -1;
+        int dot = version.indexOf('.');
+        if (dot <= 0) return -1;
+        try {
+            if (Long.parseLong(version.substring(0, dot)) != epoch) return -1;
+            return Long.parseLong(version.substring(dot + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void record(int folderId, int kind) {
+        record(folderId, kind, null);
+    }
+
+    private synchronized void record(int folderId, int kind, Integer parentId) {
+        seq++;
+        log.addLast(new long[]{seq, folderId, kind, parentId != null ? parentId : -1});
+        while (log.size() > MAX_LOG) log.removeFirst();
+    }
+
+    // ---------- NamespaceListener ----------
+
+    @Override
+    public void onFolderCreated(int folderId, Integer parentId, String folderName) {
+        record(folderId, CHANGED);
+        // hasChildren của folder cha có thể đổi
+        if (parentId != null) record(parentId, CHANGED);
+    }
+
+    @Override
+    public void onFolderRenamed(int folderId, String newName) {
+        record(folderId, CHANGED);
+    }
+
+    @Override
+    public void onFolderMoved(int folderId, Integer oldParentId, Integer newParentId) {
+        // Cả cây con đổi độ sâu/quyền thừa kế và có thể ra/vào cây con client đang cache
+        record(folderId, RESET);
+    }
+
+    @Override
+    public void onFolderDeleted(int folderId, Integer parentId) {
+        record(folderId, DELETED, parentId);
+        if (parentId != null) record(parentId, CHANGED);
+    }
+
+    @Override
+    public void onAclChanged(int userId, int folderId, Integer fileId) {
+        if (fileId == null) record(folderId, RESET);
+    }
+}
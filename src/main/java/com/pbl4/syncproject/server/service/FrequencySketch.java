@@ -0,0 +1,80 @@
+package com.pbl4.syncproject.server.service;
+
+/**
+ * Count-Min sketch 4 bit ước lượng tần suất truy cập gần đây của một key int (dùng cho ContentCache).
+ * Mỗi key ứng với 4 bộ đếm (tối đa 15) nằm trong cùng một nhóm 16 bộ đếm của một ô long; sau mỗi
+ * sampleSize lần tăng mọi bộ đếm bị chia đôi để tần suất cũ phai dần.
+ * Không thread-safe: ContentCache bảo vệ bằng khóa của nó.
+ */
+final class FrequencySketch {
+
+    private static final long[] SEED = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    private final long[] table;
+    private final int mask;
+    private final int sampleSize;
+    private int size;
+
+    FrequencySketch(int expectedEntries) {
+        int cap = Integer.highestOneBit(Math.max(16, expectedEntries) - 1) << 1;
+        table = new long[cap];
+        mask = cap - 1;
+        sampleSize = 10 * cap;
+    }
+
+    int frequency(int key) {
+        int hash = spread(key);
+        int start = (hash & 3) << 2;
+        int freq = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int count = (int) ((table[indexOf(hash, i)] >>> ((start + i) << 2)) & 0xfL);
+            freq = Math.min(freq, count);
+        }
+        return freq;
+    }
+
+    void increment(int key) {
+        int hash = spread(key);
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++size >= sampleSize) reset();
+    }
+
+    private boolean incrementAt(int i, int j) {
+        int offset = j << 2;
+        long m = 0xfL << offset;
+        if ((table[i] & m) != m) {
+            table[i] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    // Chia đôi mọi bộ đếm (phần lẻ bị bỏ được trừ khỏi size)
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size - (odd >>> 2)) >>> 1;
+    }
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEED[i]) * SEED[i];
+        h += h >>> 32;
+        return (int) h & mask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
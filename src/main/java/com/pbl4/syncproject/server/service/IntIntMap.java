@@ -0,0 +1,112 @@
+package com.pbl4.syncproject.server.service;
+
+import java.util.Arrays;
+
+/**
+ * Map int -> int không boxing (open addressing, dò tuyến tính), dùng cho NamespaceIndex.
+ * Khóa 0 được dùng làm ô trống nên không được dùng làm key (ID trong DB bắt đầu từ 1).
+ * Không thread-safe: NamespaceIndex bảo vệ bằng khóa của nó.
+ */
+final class IntIntMap {
+
+    private static final float MAX_LOAD = 0.75f;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    IntIntMap(int expected) {
+        int cap = Integer.highestOneBit(Math.max(16, (int) (expected / MAX_LOAD) + 1) - 1) << 1;
+        keys = new int[cap];
+        values = new int[cap];
+        mask = cap - 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** Giá trị của key, hoặc missing nếu không có */
+    int get(int key, int missing) {
+        int i = slot(key);
+        while (true) {
+            int k = keys[i];
+            if (k == key) return values[i];
+            if (k == 0) return missing;
+            i = (i + 1) & mask;
+        }
+    }
+
+    void put(int key, int value) {
+        if (key == 0) throw new IllegalArgumentException("key 0 không được hỗ trợ");
+        int i = slot(key);
+        while (true) {
+            int k = keys[i];
+            if (k == key) {
+                values[i] = value;
+                return;
+            }
+            if (k == 0) {
+                keys[i] = key;
+                values[i] = value;
+                if (++size > keys.length * MAX_LOAD) resize(keys.length << 1);
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    void remove(int key) {
+        int i = slot(key);
+        while (true) {
+            int k = keys[i];
+            if (k == 0) return;
+            if (k == key) break;
+            i = (i + 1) & mask;
+        }
+        // Dồn các phần tử phía sau về để không cần đánh dấu "đã xóa"
+        int gap = i;
+        int j = (i + 1) & mask;
+        while (keys[j] != 0) {
+            int home = slot(keys[j]);
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+            j = (j + 1) & mask;
+        }
+        keys[gap] = 0;
+        values[gap] = 0;
+        size--;
+    }
+
+    void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, 0);
+        size = 0;
+    }
+
+    /** Số byte của hai mảng bên trong (cho thống kê bộ nhớ) */
+    long memoryBytes() {
+        return 8L * keys.length;
+    }
+
+    private void resize(int newCap) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[newCap];
+        values = new int[newCap];
+        mask = newCap - 1;
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) put(oldKeys[i], oldValues[i]);
+        }
+    }
+
+    private int slot(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
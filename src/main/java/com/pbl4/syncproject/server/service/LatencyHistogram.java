@@ -0,0 +1,68 @@
+package com.pbl4.syncproject.server.service;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram theo lũy thừa 2 (bucket i chứa giá trị trong [2^(i-1), 2^i - 1], bucket 0 chỉ chứa 0) cho ServerMetrics.
+ * Ghi không khóa (LongAdder), phân vị đọc ra là cận trên của bucket nên sai tối đa 2 lần.
+ */
+public final class LatencyHistogram {
+
+    private static final int BUCKETS = 48;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) buckets[i] = new LongAdder();
+    }
+
+    void record(long value) {
+        long v = Math.max(0, value);
+        buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(v))].increment();
+        count.increment();
+        sum.add(v);
+        max.accumulate(v);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long sum() {
+        return sum.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    /** Cận trên của bucket chứa phân vị p (0..1) */
+    public long percentile(double p) {
+        long[] snap = bucketCounts();
+        long total = 0;
+        for (long c : snap) total += c;
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(p * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snap[i];
+            if (seen >= rank) return Math.min(upperBound(i), max());
+        }
+        return max();
+    }
+
+    /** Số giá trị trong từng bucket (cận trên của bucket i là upperBound(i)) */
+    public long[] bucketCounts() {
+        long[] out = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) out[i] = buckets[i].sum();
+        return out;
+    }
+
+    public static long upperBound(int bucket) {
+        return bucket == 0 ? 0 : (1L << bucket) - 1;
+    }
+}
@@ -0,0 +1,59 @@
+package com.pbl4.syncproject.server.service;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Nơi các handler thông báo thay đổi trên cây thư mục và file.
+ * Listener được đăng ký một lần lúc khởi động server (ServerApp).
+ */
+public final class NamespaceEvents {
+
+    private static final List<NamespaceListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    private NamespaceEvents() {}
+
+    public static void register(NamespaceListener listener) {
+        if (listener != null && !LISTENERS.contains(listener)) LISTENERS.add(listener);
+    }
+
+    public static void folderCreated(int folderId, Integer parentId, String folderName) {
+        fire(l -> l.onFolderCreated(folderId, parentId, folderName));
+    }
+
+    public static void folderRenamed(int folderId, String newName) {
+        fire(l -> l.onFolderRenamed(folderId, newName));
+    }
+
+    public static void folderMoved(int folderId, Integer oldParentId, Integer newParentId) {
+        fire(l -> l.onFolderMoved(folderId, oldParentId, newParentId));
+    }
+
+    public static void folderDeleted(int folderId, Integer parentId) {
+        fire(l -> l.onFolderDeleted(folderId, parentId));
+    }
+
+    public static void fileUpserted(int fileId, int folderId, String fileName, long size, long lastModifiedMs) {
+        fire(l -> l.onFileUpserted(fileId, folderId, fileName, size, lastModifiedMs));
+    }
+
+    public static void fileDeleted(int fileId, int folderId) {
+        fire(l -> l.onFileDeleted(fileId, folderId));
+    }
+
+    public static void aclChanged(int userId, int folderId, Integer fileId) {
+        fire(l -> l.onAclChanged(userId, folderId, fileId));
+    }
+
+    // Một listener lỗi không được làm hỏng request đang xử lý
+    private static void fire(Consumer<NamespaceListener> event) {
+        for (NamespaceListener l : LISTENERS) {
+            try {
+                event.accept(l);
+            } catch (Exception e) {
+                System.err.println("❌ NamespaceListener error (" + l.getClass().getSimpleName() + "): " + e.getMessage());
+            }
+        }
+    }
+}
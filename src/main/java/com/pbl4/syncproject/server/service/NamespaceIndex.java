@@ -0,0 +1,657 @@
+package com.pbl4.syncproject.server.service;
+
+import com.pbl4.syncproject.common.model.Folders;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Ảnh cây thư mục + file của DB nằm trong bộ nhớ server (bật bằng namespace.index.enabled=true).
+ * Nạp một lần lúc khởi động, sau đó được cập nhật write-through qua NamespaceEvents, nên listing,
+ * tra folder con, kiểm tra trùng tên và dựng đường dẫn không cần query MySQL.
+ *
+ * Dữ liệu nằm trong các mảng nguyên thủy theo "slot" (không có object Folders/Files nào được giữ lại):
+ *   folder: id, parent, con đầu, anh/em trước-sau, file đầu, tên, createdAt, lastModified
+ *   file  : id, folder, size, lastModified, tên, file trước-sau trong cùng folder
+ * Tên lưu UTF-8 nối liền trong một byte[] chung; FolderID/FileID -> slot bằng IntIntMap.
+ *
+ * Bộ nhớ ước tính cho mỗi file (JVM 64-bit, compressed oops):
+ *   id 4 + folder 4 + size 8 + lastModified 8 + offset tên 4 + độ dài tên 2 + prev/next 8 = 38 B
+ *   + IntIntMap (2 x int, tải 0.375..0.75)                                         ~ 11-21 B
+ *   + tên UTF-8 (trung bình ~24 B)                                                 ~ 24 B
+ *   => ~75-85 B/file, 10 triệu file ~ 0.75-0.85 GB (cộng tối đa 2x khi mảng đang giãn).
+ * So với giữ object: Files (~48 B) + String tên (~72 B) + String hash 64 ký tự (~104 B)
+ *   + 2 LocalDateTime (~72 B mỗi cái) + entry HashMap<Integer,...> (~48 B) ~ 400+ B/file,
+ *   tức ~4+ GB cho 10 triệu file.
+ *
+ * Đọc dùng read lock, ghi dùng write lock. Mọi method trả về dữ liệu đã copy ra ngoài.
+ */
+public final class NamespaceIndex implements NamespaceListener {
+
+    private static final NamespaceIndex INSTANCE = new NamespaceIndex();
+
+    public static NamespaceIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /** Một dòng file trả về cho listing (chỉ tạo khi đọc, không lưu trong index) */
+    public static final class FileEntry {
+        public final int fileId;
+        public final String name;
+        public final long size;
+        public final long lastModifiedMs;
+
+        FileEntry(int fileId, String name, long size, long lastModifiedMs) {
+            this.fileId = fileId;
+            this.name = name;
+            this.size = size;
+            this.lastModifiedMs = lastModifiedMs;
+        }
+    }
+
+    private static final int NONE = -1;
+    private static final int MAX_DEPTH = 1024;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean loaded;
+
+    // ---------- Folder ----------
+    private int folderSlots;                 // số slot đã dùng (kể cả slot trống trong free list)
+    private int[] folderId = new int[0];     // 0 = slot trống
+    private int[] folderParent = new int[0]; // slot cha, NONE nếu là root
+    private int[] folderFirstChild = new int[0];
+    private int[] folderPrevSibling = new int[0];
+    private int[] folderNextSibling = new int[0];
+    private int[] folderFirstFile = new int[0];
+    private int[] folderNameOff = new int[0];
+    private int[] folderNameLen = new int[0];
+    private long[] folderCreated = new long[0];
+    private long[] folderModified = new long[0];
+    private int rootFirstChild = NONE;
+    private int[] folderFree = new int[0];
+    private int folderFreeCount;
+    private IntIntMap folderSlotById = new IntIntMap(16);
+
+    // ---------- File ----------
+    private int fileSlots;
+    private int[] fileId = new int[0];
+    private int[] fileFolder = new int[0];
+    private long[] fileSize = new long[0];
+    private long[] fileModified = new long[0];
+    private int[] fileNameOff = new int[0];
+    private short[] fileNameLen = new short[0]; // đọc bằng & 0xFFFF
+    private int[] filePrev = new int[0];
+    private int[] fileNext = new int[0];
+    private int[] fileFree = new int[0];
+    private int fileFreeCount;
+    private IntIntMap fileSlotById = new IntIntMap(16);
+
+    // ---------- Tên ----------
+    private byte[] names = new byte[1024];
+    private int namesUsed;
+    private long namesGarbage; // byte của tên đã bị thay/xóa, dọn khi chiếm quá nửa
+
+    private NamespaceIndex() {}
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    // ================= Nạp từ DB =================
+
+    /** Nạp toàn bộ Folders + Files. Gọi lúc khởi động, trước khi nhận client. */
+    public void load(Connection conn) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            loaded = false;
+            reset();
+
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT FolderID, ParentFolderID, FolderName, CreatedAt, LastModified FROM Folders");
+                 ResultSet rs = ps.executeQuery()) {
+                List<int[]> links = new ArrayList<>();
+                while (rs.next()) {
+                    int id = rs.getInt(1);
+                    Integer parent = (Integer) rs.getObject(2);
+                    long created = millis(rs.getTimestamp(4), 0L);
+                    int slot = newFolderSlot(id, rs.getString(3), created, millis(rs.getTimestamp(5), created));
+                    links.add(new int[]{slot, parent != null ? parent : 0});
+                }
+                // Nối cha/con sau khi có đủ slot (thứ tự dòng trả về không đảm bảo cha trước con)
+                for (int[] l : links) {
+                    int parentSlot = l[1] != 0 ? folderSlotById.get(l[1], NONE) : NONE;
+                    linkFolder(l[0], parentSlot);
+                }
+            }
+
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT FileID, FolderID, FileName, FileSize, LastModified, CreatedAt FROM Files WHERE DeletedAt IS NULL",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                ps.setFetchSize(Integer.MIN_VALUE); // MySQL: stream từng dòng, không giữ cả result set
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        int folderSlot = folderSlotById.get(rs.getInt(2), NONE);
+                        if (folderSlot == NONE) continue;
+                        long modified = millis(rs.getTimestamp(5), millis(rs.getTimestamp(6), 0L));
+                        addFile(rs.getInt(1), folderSlot, rs.getString(3), rs.getLong(4), modified);
+                    }
+                }
+            }
+
+            loaded = true;
+            System.out.println("✅ NamespaceIndex: " + folderSlotById.size() + " folders, "
+                    + fileSlotById.size() + " files, ~" + (memoryBytes() / (1024 * 1024)) + " MB");
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void reset() {
+        folderSlots = 0;
+        folderFreeCount = 0;
+        rootFirstChild = NONE;
+        folderSlotById = new IntIntMap(16);
+        fileSlots = 0;
+        fileFreeCount = 0;
+        fileSlotById = new IntIntMap(16);
+        namesUsed = 0;
+        namesGarbage = 0;
+    }
+
+    // ================= Đọc =================
+
+    public boolean containsFolder(int id) {
+        lock.readLock().lock();
+        try {
+            return folderSlotById.get(id, NONE) != NONE;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** ParentFolderID của folder (null nếu là root); SQLException nếu không có, giống FolderDAO.getParentId */
+    public Integer getParentId(int id) throws SQLException {
+        lock.readLock().lock();
+        try {
+            int slot = requireFolder(id);
+            int p = folderParent[slot];
+            return p != NONE ? folderId[p] : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Tên folder, null nếu không có */
+    public String getFolderName(int id) {
+        lock.readLock().lock();
+        try {
+            int slot = folderSlotById.get(id, NONE);
+            return slot != NONE ? name(folderNameOff[slot], folderNameLen[slot]) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Đọc các folder theo id (id không có trong index bị bỏ qua, giống FolderDAO.getFoldersByIds) */
+    public List<Folders> getFoldersByIds(Iterable<Integer> ids) {
+        lock.readLock().lock();
+        try {
+            List<Folders> list = new ArrayList<>();
+            for (Integer id : ids) {
+                int slot = folderSlotById.get(id, NONE);
+                if (slot != NONE) list.add(toFolders(slot));
+            }
+            return list;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Folder con của parentId (null: các folder root) */
+    public List<Folders> getChildFolders(Integer parentId) throws SQLException {
+        lock.readLock().lock();
+        try {
+            List<Folders> list = new ArrayList<>();
+            for (int c = firstChildOf(parentId); c != NONE; c = folderNextSibling[c]) {
+                list.add(toFolders(c));
+            }
+            return list;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Trong các folder con của parentId (null: root), những folder nào có con */
+    public Set<Integer> getChildIdsWithChildren(Integer parentId) throws SQLException {
+        lock.readLock().lock();
+        try {
+            Set<Integer> ids = new HashSet<>();
+            for (int c = firstChildOf(parentId); c != NONE; c = folderNextSibling[c]) {
+                if (folderFirstChild[c] != NONE) ids.add(folderId[c]);
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Trong danh sách ids, những folder nào có con */
+    public Set<Integer> getIdsWithChildren(Iterable<Integer> ids) {
+        lock.readLock().lock();
+        try {
+            Set<Integer> out = new HashSet<>();
+            for (Integer id : ids) {
+                int slot = folderSlotById.get(id, NONE);
+                if (slot != NONE && folderFirstChild[slot] != NONE) out.add(id);
+            }
+            return out;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Folders> getAllFolders() {
+        lock.readLock().lock();
+        try {
+            List<Folders> list = new ArrayList<>(folderSlotById.size());
+            for (int s = 0; s < folderSlots; s++) {
+                if (folderId[s] != 0) list.add(toFolders(s));
+            }
+            return list;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Cây con của rootId tới độ sâu maxDepth, sắp theo độ sâu (giống FolderDAO.getSubtree) */
+    public List<Folders> getSubtree(int rootId, int maxDepth) {
+        lock.readLock().lock();
+        try {
+            List<Folders> list = new ArrayList<>();
+            int root = folderSlotById.get(rootId, NONE);
+            if (root == NONE) return list;
+            Deque<int[]> queue = new ArrayDeque<>();
+            queue.add(new int[]{root, 0});
+            while (!queue.isEmpty()) {
+                int[] item = queue.poll();
+                list.add(toFolders(item[0]));
+                if (item[1] >= maxDepth) continue;
+                for (int c = folderFirstChild[item[0]]; c != NONE; c = folderNextSibling[c]) {
+                    queue.add(new int[]{c, item[1] + 1});
+                }
+            }
+            return list;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Chuỗi tổ tiên từ root xuống chính nó (giống FolderDAO.getAncestors); rỗng nếu không có folder */
+    public List<Folders> getAncestors(int id) {
+        lock.readLock().lock();
+        try {
+            List<Folders> list = new ArrayList<>();
+            int slot = folderSlotById.get(id, NONE);
+            while (slot != NONE && list.size() <= MAX_DEPTH) {
+                list.add(toFolders(slot));
+                slot = folderParent[slot];
+            }
+            Collections.reverse(list);
+            return list;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Trong parentId (null: root) đã có folder tên này chưa (không phân biệt hoa thường như collation của DB) */
+    public boolean folderExists(Integer parentId, String name) throws SQLException {
+        lock.readLock().lock();
+        try {
+            for (int c = firstChildOf(parentId); c != NONE; c = folderNextSibling[c]) {
+                if (name(folderNameOff[c], folderNameLen[c]).equalsIgnoreCase(name)) return true;
+            }
+            return false;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Các file trong folder */
+    public List<FileEntry> getFiles(int id) throws SQLException {
+        lock.readLock().lock();
+        try {
+            int slot = requireFolder(id);
+            List<FileEntry> list = new ArrayList<>();
+            for (int f = folderFirstFile[slot]; f != NONE; f = fileNext[f]) {
+                list.add(new FileEntry(fileId[f], name(fileNameOff[f], fileNameLen[f] & 0xFFFF),
+                        fileSize[f], fileModified[f]));
+            }
+            return list;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int folderCount() {
+        return folderSlotById.size();
+    }
+
+    public int fileCount() {
+        return fileSlotById.size();
+    }
+
+    /** Ước lượng bộ nhớ các mảng đang chiếm */
+    public long memoryBytes() {
+        long folderBytes = (long) folderId.length * (4 * 8 + 8 * 2) + 4L * folderFree.length;
+        long fileBytes = (long) fileId.length * (4 + 4 + 8 + 8 + 4 + 2 + 4 + 4) + 4L * fileFree.length;
+        return folderBytes + fileBytes + names.length
+                + folderSlotById.memoryBytes() + fileSlotById.memoryBytes();
+    }
+
+    // ================= Write-through (NamespaceListener) =================
+
+    @Override
+    public void onFolderCreated(int id, Integer parentId, String folderName) {
+        if (!loaded) return;
+        lock.writeLock().lock();
+        try {
+            if (folderSlotById.get(id, NONE) != NONE) return;
+            int parentSlot = parentId != null ? folderSlotById.get(parentId, NONE) : NONE;
+            if (parentId != null && parentSlot == NONE) return;
+            long now = System.currentTimeMillis();
+            linkFolder(newFolderSlot(id, folderName, now, now), parentSlot);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onFolderRenamed(int id, String newName) {
+        if (!loaded) return;
+        lock.writeLock().lock();
+        try {
+            int slot = folderSlotById.get(id, NONE);
+            if (slot == NONE) return;
+            namesGarbage += folderNameLen[slot];
+            folderNameOff[slot] = appendName(newName);
+            folderNameLen[slot] = namesUsed - folderNameOff[slot];
+            folderModified[slot] = System.currentTimeMillis();
+            compactNamesIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onFolderMoved(int id, Integer oldParentId, Integer newParentId) {
+        if (!loaded) return;
+        lock.writeLock().lock();
+        try {
+            int slot = folderSlotById.get(id, NONE);
+            if (slot == NONE) return;
+            int newParentSlot = newParentId != null ? folderSlotById.get(newParentId, NONE) : NONE;
+            unlinkFolder(slot);
+            if (newParentId != null && newParentSlot == NONE) {
+                removeFolderTree(slot); // đích không có trong index: bỏ hẳn thay vì giữ sai vị trí
+            } else {
+                linkFolder(slot, newParentSlot);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onFolderDeleted(int id, Integer parentId) {
+        if (!loaded) return;
+        lock.writeLock().lock();
+        try {
+            int slot = folderSlotById.get(id, NONE);
+            if (slot == NONE) return;
+            unlinkFolder(slot);
+            removeFolderTree(slot);
+            compactNamesIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onFileUpserted(int id, int folderIdOfFile, String fileName, long size, long lastModifiedMs) {
+        if (!loaded) return;
+        lock.writeLock().lock();
+        try {
+            int folderSlot = folderSlotById.get(folderIdOfFile, NONE);
+            int slot = fileSlotById.get(id, NONE);
+            if (slot != NONE) removeFile(slot);
+            if (folderSlot != NONE) addFile(id, folderSlot, fileName, size, lastModifiedMs);
+            compactNamesIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onFileDeleted(int id, int folderIdOfFile) {
+        if (!loaded) return;
+        lock.writeLock().lock();
+        try {
+            int slot = fileSlotById.get(id, NONE);
+            if (slot != NONE) removeFile(slot);
+            compactNamesIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ================= Nội bộ (gọi khi đang giữ khóa) =================
+
+    private int requireFolder(int id) throws SQLException {
+        int slot = folderSlotById.get(id, NONE);
+        if (slot == NONE) throw new SQLException("Folder không tồn tại: id=" + id);
+        return slot;
+    }
+
+    private int firstChildOf(Integer parentId) throws SQLException {
+        return parentId == null ? rootFirstChild : folderFirstChild[requireFolder(parentId)];
+    }
+
+    private Folders toFolders(int slot) {
+        int p = folderParent[slot];
+        return new Folders(folderId[slot], name(folderNameOff[slot], folderNameLen[slot]),
+                p != NONE ? folderId[p] : null, toLocal(folderCreated[slot]), toLocal(folderModified[slot]));
+    }
+
+    private int newFolderSlot(int id, String name, long created, long modified) {
+        int slot;
+        if (folderFreeCount > 0) {
+            slot = folderFree[--folderFreeCount];
+        } else {
+            if (folderSlots == folderId.length) growFolders();
+            slot = folderSlots++;
+        }
+        folderId[slot] = id;
+        folderParent[slot] = NONE;
+        folderFirstChild[slot] = NONE;
+        folderPrevSibling[slot] = NONE;
+        folderNextSibling[slot] = NONE;
+        folderFirstFile[slot] = NONE;
+        folderNameOff[slot] = appendName(name);
+        folderNameLen[slot] = namesUsed - folderNameOff[slot];
+        folderCreated[slot] = created;
+        folderModified[slot] = modified;
+        folderSlotById.put(id, slot);
+        return slot;
+    }
+
+    private void linkFolder(int slot, int parentSlot) {
+        folderParent[slot] = parentSlot;
+        int head = parentSlot != NONE ? folderFirstChild[parentSlot] : rootFirstChild;
+        folderPrevSibling[slot] = NONE;
+        folderNextSibling[slot] = head;
+        if (head != NONE) folderPrevSibling[head] = slot;
+        if (parentSlot != NONE) folderFirstChild[parentSlot] = slot; else rootFirstChild = slot;
+    }
+
+    private void unlinkFolder(int slot) {
+        int prev = folderPrevSibling[slot];
+        int next = folderNextSibling[slot];
+        if (prev != NONE) {
+            folderNextSibling[prev] = next;
+        } else if (folderParent[slot] != NONE) {
+            folderFirstChild[folderParent[slot]] = next;
+        } else {
+            rootFirstChild = next;
+        }
+        if (next != NONE) folderPrevSibling[next] = prev;
+        folderParent[slot] = NONE;
+        folderPrevSibling[slot] = NONE;
+        folderNextSibling[slot] = NONE;
+    }
+
+    // Xóa folder (đã unlink khỏi cha) cùng toàn bộ folder con và file
+    private void removeFolderTree(int top) {
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(top);
+        while (!stack.isEmpty()) {
+            int slot = stack.pop();
+            for (int c = folderFirstChild[slot]; c != NONE; c = folderNextSibling[c]) stack.push(c);
+            while (folderFirstFile[slot] != NONE) removeFile(folderFirstFile[slot]);
+
+            folderSlotById.remove(folderId[slot]);
+            namesGarbage += folderNameLen[slot];
+            folderId[slot] = 0;
+            if (folderFreeCount == folderFree.length) folderFree = Arrays.copyOf(folderFree, Math.max(16, folderFree.length * 2));
+            folderFree[folderFreeCount++] = slot;
+        }
+    }
+
+    private void addFile(int id, int folderSlot, String name, long size, long modified) {
+        int slot;
+        if (fileFreeCount > 0) {
+            slot = fileFree[--fileFreeCount];
+        } else {
+            if (fileSlots == fileId.length) growFiles();
+            slot = fileSlots++;
+        }
+        fileId[slot] = id;
+        fileFolder[slot] = folderSlot;
+        fileSize[slot] = size;
+        fileModified[slot] = modified;
+        fileNameOff[slot] = appendName(name);
+        fileNameLen[slot] = (short) (namesUsed - fileNameOff[slot]);
+
+        int head = folderFirstFile[folderSlot];
+        filePrev[slot] = NONE;
+        fileNext[slot] = head;
+        if (head != NONE) filePrev[head] = slot;
+        folderFirstFile[folderSlot] = slot;
+        fileSlotById.put(id, slot);
+    }
+
+    private void removeFile(int slot) {
+        int prev = filePrev[slot];
+        int next = fileNext[slot];
+        if (prev != NONE) fileNext[prev] = next; else folderFirstFile[fileFolder[slot]] = next;
+        if (next != NONE) filePrev[next] = prev;
+
+        fileSlotById.remove(fileId[slot]);
+        namesGarbage += fileNameLen[slot] & 0xFFFF;
+        fileId[slot] = 0;
+        if (fileFreeCount == fileFree.length) fileFree = Arrays.copyOf(fileFree, Math.max(16, fileFree.length * 2));
+        fileFree[fileFreeCount++] = slot;
+    }
+
+    private void growFolders() {
+        int cap = Math.max(16, folderId.length + (folderId.length >> 1));
+        folderId = Arrays.copyOf(folderId, cap);
+        folderParent = Arrays.copyOf(folderParent, cap);
+        folderFirstChild = Arrays.copyOf(folderFirstChild, cap);
+        folderPrevSibling = Arrays.copyOf(folderPrevSibling, cap);
+        folderNextSibling = Arrays.copyOf(folderNextSibling, cap);
+        folderFirstFile = Arrays.copyOf(folderFirstFile, cap);
+        folderNameOff = Arrays.copyOf(folderNameOff, cap);
+        folderNameLen = Arrays.copyOf(folderNameLen, cap);
+        folderCreated = Arrays.copyOf(folderCreated, cap);
+        folderModified = Arrays.copyOf(folderModified, cap);
+    }
+
+    private void growFiles() {
+        int cap = Math.max(1024, fileId.length + (fileId.length >> 1));
+        fileId = Arrays.copyOf(fileId, cap);
+        fileFolder = Arrays.copyOf(fileFolder, cap);
+        fileSize = Arrays.copyOf(fileSize, cap);
+        fileModified = Arrays.copyOf(fileModified, cap);
+        fileNameOff = Arrays.copyOf(fileNameOff, cap);
+        fileNameLen = Arrays.copyOf(fileNameLen, cap);
+        filePrev = Arrays.copyOf(filePrev, cap);
+        fileNext = Arrays.copyOf(fileNext, cap);
+    }
+
+    // Thêm tên vào cuối byte[] chung, trả về offset
+    private int appendName(String name) {
+        byte[] b = (name != null ? name : "").getBytes(StandardCharsets.UTF_8);
+        if (b.length > 0xFFFF) b = Arrays.copyOf(b, 0xFFFF);
+        if (namesUsed + b.length > names.length) {
+            long cap = Math.max((long) names.length * 3 / 2, (long) namesUsed + b.length);
+            if (cap > Integer.MAX_VALUE - 8) throw new IllegalStateException("NamespaceIndex: vùng tên vượt 2GB");
+            names = Arrays.copyOf(names, (int) cap);
+        }
+        int off = namesUsed;
+        System.arraycopy(b, 0, names, off, b.length);
+        namesUsed += b.length;
+        return off;
+    }
+
+    private String name(int off, int len) {
+        return new String(names, off, len, StandardCharsets.UTF_8);
+    }
+
+    // Dồn lại vùng tên khi hơn nửa là rác (tên cũ của folder/file đã đổi tên hoặc bị xóa)
+    private void compactNamesIfNeeded() {
+        if (namesGarbage < 1_000_000 || namesGarbage * 2 < namesUsed) return;
+        byte[] fresh = new byte[Math.max(1024, (int) ((namesUsed - namesGarbage) * 3 / 2))];
+        int used = 0;
+        for (int s = 0; s < folderSlots; s++) {
+            if (folderId[s] == 0) continue;
+            System.arraycopy(names, folderNameOff[s], fresh, used, folderNameLen[s]);
+            folderNameOff[s] = used;
+            used += folderNameLen[s];
+        }
+        for (int s = 0; s < fileSlots; s++) {
+            if (fileId[s] == 0) continue;
+            int len = fileNameLen[s] & 0xFFFF;
+            System.arraycopy(names, fileNameOff[s], fresh, used, len);
+            fileNameOff[s] = used;
+            used += len;
+        }
+        names = fresh;
+        namesUsed = used;
+        namesGarbage = 0;
+    }
+
+    private static long millis(Timestamp ts, long fallback) {
+        return ts != null ? ts.getTime() : fallback;
+    }
+
+    // Cùng múi giờ với Timestamp.toLocalDateTime() mà FolderDAO dùng
+    private static LocalDateTime toLocal(long ms) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(ms), ZoneId.systemDefault());
+    }
+}
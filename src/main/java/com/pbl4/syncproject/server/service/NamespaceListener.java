@@ -0,0 +1,24 @@
+package com.pbl4.syncproject.server.service;
+
+/**
+ * Nhận thông báo khi cây thư mục / file / quyền truy cập thay đổi.
+ * Các cache phía server (quyền, đường dẫn...) implement interface này để tự invalidate.
+ */
+public interface NamespaceListener {
+
+    default void onFolderCreated(int folderId, Integer parentId, String folderName) {}
+
+    default void onFolderRenamed(int folderId, String newName) {}
+
+    default void onFolderMoved(int folderId, Integer oldParentId, Integer newParentId) {}
+
+    default void onFolderDeleted(int folderId, Integer parentId) {}
+
+    /** File được tạo mới hoặc ghi đè nội dung */
+    default void onFileUpserted(int fileId, int folderId, String fileName, long size, long lastModifiedMs) {}
+
+    default void onFileDeleted(int fileId, int folderId) {}
+
+    /** Quyền của userId trên folder hoặc file đã thay đổi (fileId = null nếu là quyền folder) */
+    default void onAclChanged(int userId, int folderId, Integer fileId) {}
+}
@@ -0,0 +1,88 @@
+package com.pbl4.syncproject.server.service;
+
+import com.pbl4.syncproject.common.storage.PackStore;
+import com.pbl4.syncproject.common.storage.StorageManager;
+import com.pbl4.syncproject.server.ServerConfig;
+import com.pbl4.syncproject.server.dao.DatabaseManager;
+
+import java.sql.Connection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gộp segment của PackStore chạy nền: segment có tỉ lệ byte chết (file đã bị ghi đè / xóa) từ
+ * storage.pack.compact.dead.ratio trở lên được chép phần còn sống sang segment đang ghi rồi bỏ đi.
+ * Tốc độ chép giới hạn bởi storage.pack.compact.mb.per.sec để không tranh I/O với client.
+ */
+public final class PackCompactor {
+
+    private static final PackCompactor INSTANCE = new PackCompactor();
+
+    public static PackCompactor getInstance() {
+        return INSTANCE;
+    }
+
+    private final long intervalMs = TimeUnit.MINUTES.toMillis(ServerConfig.getLong("storage.pack.compact.interval.minutes", 10));
+    private final double deadRatio = parseRatio(ServerConfig.getString("storage.pack.compact.dead.ratio", "0.5"));
+    private final long bytesPerSec = ServerConfig.getLong("storage.pack.compact.mb.per.sec", 20) * 1024 * 1024;
+
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+    private volatile Thread worker;
+
+    private PackCompactor() {}
+
+    public synchronized void start() {
+        if (worker != null) return;
+        worker = new Thread(this::loop, "pack-compactor");
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MIN_PRIORITY);
+        worker.start();
+    }
+
+    private void loop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(intervalMs);
+                int compacted = compact();
+                if (compacted > 0) System.out.println("📦 PackCompactor: đã gộp " + compacted + " segment");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                System.err.println("❌ PackCompactor lỗi: " + e.getMessage());
+            }
+        }
+    }
+
+    /** Một lượt gộp, trả về số segment đã xử lý */
+    public int compact() throws Exception {
+        PackStore packs = StorageManager.getInstance().packs();
+        packs.sweepRetired();
+        int done = 0;
+        long started = System.currentTimeMillis();
+        long copiedTotal = 0;
+        try (Connection conn = DatabaseManager.openConnection()) {
+            for (int segmentId : packs.compactionCandidates(conn, deadRatio)) {
+                if (Thread.currentThread().isInterrupted()) break;
+                copiedTotal += packs.compact(conn, segmentId);
+                done++;
+                // Giới hạn tốc độ: ngủ tới lúc số byte đã chép khớp với ngân sách
+                if (bytesPerSec > 0) {
+                    long sleepMs = copiedTotal * 1000 / bytesPerSec - (System.currentTimeMillis() - started);
+                    if (sleepMs > 0) Thread.sleep(sleepMs);
+                }
+            }
+        }
+        metrics.set("storage.pack.files", packs.packedFiles());
+        metrics.set("storage.pack.segments", packs.segmentCount());
+        metrics.set("storage.pack.live.bytes", packs.liveBytes());
+        metrics.set("storage.pack.dead.bytes", packs.totalBytes() - packs.liveBytes());
+        return done;
+    }
+
+    private static double parseRatio(String s) {
+        try {
+            return Double.parseDouble(s.strip());
+        } catch (NumberFormatException e) {
+            return 0.5;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.pbl4.syncproject.server.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Quyền được lưu dạng bitmask để gộp (OR) quyền kế thừa từ các folder cha.
+ * Giá trị khớp với ENUM('READ','WRITE','DELETE') trong FolderAccessControl/FileAccessControl.
+ */
+public final class Permission {
+    public static final int NONE = 0;
+    public static final int READ = 1;
+    public static final int WRITE = 2;
+    public static final int DELETE = 4;
+    public static final int ALL = READ | WRITE | DELETE;
+
+    private Permission() {}
+
+    public static int fromName(String name) {
+        if (name == null) return NONE;
+        switch (name.trim().toUpperCase()) {
+            case "READ": return READ;
+            case "WRITE": return WRITE;
+            case "DELETE": return DELETE;
+            default: return NONE;
+        }
+    }
+
+    public static List<String> toNames(int mask) {
+        List<String> names = new ArrayList<>();
+        if ((mask & READ) != 0) names.add("READ");
+        if ((mask & WRITE) != 0) names.add("WRITE");
+        if ((mask & DELETE) != 0) names.add("DELETE");
+        return names;
+    }
+
+    public static boolean has(int mask, int permission) {
+        return (mask & permission) == permission;
+    }
+
+    /** Chuỗi hiển thị cho cột "Quyền" ở client */
+    public static String toDisplay(int mask) {
+        if (mask == NONE) return "Không có quyền";
+        StringBuilder sb = new StringBuilder();
+        if ((mask & READ) != 0) sb.append("Đọc");
+        if ((mask & WRITE) != 0) sb.append(sb.length() > 0 ? "/" : "").append("Ghi");
+        if ((mask & DELETE) != 0) sb.append(sb.length() > 0 ? "/" : "").append("Xóa");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,244 @@
+package com.pbl4.syncproject.server.service;
+
+import com.pbl4.syncproject.common.model.User;
+import com.pbl4.syncproject.server.dao.AccessControlDAO;
+import com.pbl4.syncproject.server.dao.FolderDAO;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tính quyền hiệu lực (READ/WRITE/DELETE) của user trên folder, có kế thừa từ folder cha:
+ *   effective(user, folder) = grant(user, folder) | effective(user, parent(folder))
+ *
+ * Kết quả được cache theo khóa (user, folder). Cache chỉ bị xóa đúng phần bị ảnh hưởng:
+ * - đổi quyền trên folder X  -> các entry của user đó nằm trong cây con của X
+ * - di chuyển / xóa folder X -> các entry (mọi user) nằm trong cây con của X
+ * Tạo folder mới không cần invalidate vì folder mới chưa có entry nào.
+ *
+ * User có role ADMIN luôn có toàn quyền.
+ */
+public final class PermissionResolver implements NamespaceListener {
+
+    private static final PermissionResolver INSTANCE = new PermissionResolver();
+
+    public static PermissionResolver getInstance() {
+        return INSTANCE;
+    }
+
+    private static final int NO_PARENT = 0;     // FolderID trong DB bắt đầu từ 1
+    private static final int MAX_DEPTH = 1024;  // chặn vòng lặp nếu dữ liệu cây bị hỏng
+
+    // (user, folder) -> quyền hiệu lực
+    private final Map<Long, Integer> effective = new ConcurrentHashMap<>();
+    // (user, folder) -> quyền cấp trực tiếp trên từng file của folder đó
+    private final Map<Long, Map<Integer, Integer>> fileGrants = new ConcurrentHashMap<>();
+    // user -> quyền cấp trực tiếp trên các folder
+    private final Map<Integer, Map<Integer, Integer>> folderGrants = new ConcurrentHashMap<>();
+    // folder -> parent (NO_PARENT nếu là root), dùng để đi lên cây và xác định cây con khi invalidate
+    private final Map<Integer, Integer> parents = new ConcurrentHashMap<>();
+
+    // Tăng trước và sau mỗi lần invalidate (giá trị lẻ = đang invalidate).
+    // Kết quả tính song song với invalidate sẽ không được giữ lại trong cache.
+    private final AtomicLong generation = new AtomicLong();
+
+    private PermissionResolver() {}
+
+    // ---------- Truy vấn quyền ----------
+
+    /** Quyền hiệu lực của user trên folder */
+    public int getFolderPermission(Connection conn, User user, int folderId) throws SQLException {
+        if (user == null) return Permission.NONE;
+        if (user.isAdmin()) return Permission.ALL;
+        return resolve(conn, user.getUserId(), folderId);
+    }
+
+    /**
+     * Quyền của folder con khi đã biết quyền của folder cha (dùng khi liệt kê, không tốn query).
+     */
+    public int getChildFolderPermission(Connection conn, User user, int parentId, int parentMask, int childId)
+            throws SQLException {
+        if (user == null) return Permission.NONE;
+        if (user.isAdmin()) return Permission.ALL;
+
+        int userId = user.getUserId();
+        long key = key(userId, childId);
+        Integer cached = effective.get(key);
+        if (cached != null) return cached;
+
+        long gen = generation.get();
+        parents.put(childId, parentId);
+        int mask = parentMask | grantsOf(conn, userId).getOrDefault(childId, Permission.NONE);
+        cache(effective, key, mask, gen);
+        return mask;
+    }
+
+    /** Quyền hiệu lực của user trên một file = quyền folder chứa nó | quyền riêng của file */
+    public int getFilePermission(Connection conn, User user, int folderId, int fileId) throws SQLException {
+        int mask = getFolderPermission(conn, user, folderId);
+        if (mask == Permission.ALL) return mask;
+        return mask | getFileGrants(conn, user, folderId).getOrDefault(fileId, Permission.NONE);
+    }
+
+    /**
+     * Quyền riêng trên từng file của folder (FileID -> mask), chỉ 1 query cho cả folder rồi cache lại.
+     * Quyền hiệu lực của file = quyền folder | quyền riêng của file.
+     */
+    public Map<Integer, Integer> getFileGrants(Connection conn, User user, int folderId) throws SQLException {
+        if (user == null || user.isAdmin()) return Collections.emptyMap();
+
+        long key = key(user.getUserId(), folderId);
+        Map<Integer, Integer> cached = fileGrants.get(key);
+        if (cached != null) return cached;
+
+        long gen = generation.get();
+        Map<Integer, Integer> grants = Collections.unmodifiableMap(
+                new AccessControlDAO(conn).getFileGrantsInFolder(user.getUserId(), folderId));
+        cache(fileGrants, key, grants, gen);
+        return grants;
+    }
+
+    private int resolve(Connection conn, int userId, int folderId) throws SQLException {
+        Integer cached = effective.get(key(userId, folderId));
+        if (cached != null) return cached;
+
+        long gen = generation.get();
+        Map<Integer, Integer> grants = grantsOf(conn, userId);
+
+        // Đi lên cho tới khi gặp tổ tiên đã có trong cache (hoặc tới root)
+        Deque<Integer> chain = new ArrayDeque<>();
+        int inherited = Permission.NONE;
+        int cur = folderId;
+        while (cur != NO_PARENT) {
+            Integer c = effective.get(key(userId, cur));
+            if (c != null) {
+                inherited = c;
+                break;
+            }
+            chain.push(cur);
+            if (chain.size() > MAX_DEPTH) {
+                throw new SQLException("Cây thư mục có vòng lặp tại folder id=" + folderId);
+            }
+            cur = parentOf(conn, cur);
+        }
+
+        // Đi xuống, cộng dồn quyền và cache từng cấp
+        int mask = inherited;
+        while (!chain.isEmpty()) {
+            int f = chain.pop();
+            mask |= grants.getOrDefault(f, Permission.NONE);
+            cache(effective, key(userId, f), mask, gen);
+        }
+        return mask;
+    }
+
+    private Map<Integer, Integer> grantsOf(Connection conn, int userId) throws SQLException {
+        Map<Integer, Integer> grants = folderGrants.get(userId);
+        if (grants != null) return grants;
+
+        long gen = generation.get();
+        grants = Collections.unmodifiableMap(new AccessControlDAO(conn).getFolderGrants(userId));
+        cache(folderGrants, userId, grants, gen);
+        return grants;
+    }
+
+    private int parentOf(Connection conn, int folderId) throws SQLException {
+        Integer p = parents.get(folderId);
+        if (p != null) return p;
+        Integer parent = new FolderDAO(conn).getParentId(folderId);
+        int value = parent != null ? parent : NO_PARENT;
+        parents.put(folderId, value);
+        return value;
+    }
+
+    // Chỉ giữ kết quả nếu không có invalidate nào xảy ra trong lúc tính
+    private <K, V> void cache(Map<K, V> map, K key, V value, long gen) {
+        if ((gen & 1) != 0) return;
+        map.put(key, value);
+        if (generation.get() != gen) map.remove(key, value);
+    }
+
+    // ---------- Invalidate ----------
+
+    @Override
+    public void onFolderCreated(int folderId, Integer parentId, String folderName) {
+        parents.put(folderId, parentId != null ? parentId : NO_PARENT);
+    }
+
+    @Override
+    public synchronized void onFolderMoved(int folderId, Integer oldParentId, Integer newParentId) {
+        generation.incrementAndGet();
+        invalidateSubtree(null, folderId);
+        parents.put(folderId, newParentId != null ? newParentId : NO_PARENT);
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public synchronized void onFolderDeleted(int folderId, Integer parentId) {
+        generation.incrementAndGet();
+        invalidateSubtree(null, folderId);
+        // Xác định cây con trước rồi mới xóa, để việc xóa không làm đứt chuỗi parent của các node khác
+        List<Integer> removed = new ArrayList<>();
+        for (Integer f : parents.keySet()) {
+            if (isInSubtree(f, folderId)) removed.add(f);
+        }
+        parents.keySet().removeAll(removed);
+        generation.incrementAndGet();
+    }
+
+    @Override
+    public synchronized void onAclChanged(int userId, int folderId, Integer fileId) {
+        generation.incrementAndGet();
+        if (fileId != null) {
+            fileGrants.remove(key(userId, folderId));
+        } else {
+            folderGrants.remove(userId);
+            invalidateSubtree(userId, folderId);
+        }
+        generation.incrementAndGet();
+    }
+
+    /** Xóa các entry trong cây con của root; userId = null nghĩa là mọi user */
+    private void invalidateSubtree(Integer userId, int root) {
+        effective.keySet().removeIf(k -> matches(k, userId, root));
+        fileGrants.keySet().removeIf(k -> matches(k, userId, root));
+    }
+
+    private boolean matches(long key, Integer userId, int root) {
+        if (userId != null && userOf(key) != userId) return false;
+        return isInSubtree(folderOf(key), root);
+    }
+
+    // Không biết parent của một node thì coi như nằm trong cây con (xóa thừa còn hơn giữ sai)
+    private boolean isInSubtree(int folderId, int root) {
+        int cur = folderId;
+        for (int depth = 0; depth <= MAX_DEPTH; depth++) {
+            if (cur == root) return true;
+            Integer p = parents.get(cur);
+            if (p == null) return true;
+            if (p == NO_PARENT) return false;
+            cur = p;
+        }
+        return true;
+    }
+
+    private static long key(int userId, int folderId) {
+        return ((long) userId << 32) | (folderId & 0xFFFFFFFFL);
+    }
+
+    private static int userOf(long key) {
+        return (int) (key >>> 32);
+    }
+
+    private static int folderOf(long key) {
+        return (int) key;
+    }
+}
@@ -0,0 +1,713 @@
+package com.pbl4.syncproject.server.service;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.pbl4.syncproject.common.storage.StorageManager;
+import com.pbl4.syncproject.server.ServerConfig;
+import com.pbl4.syncproject.server.dao.DatabaseManager;
+import com.pbl4.syncproject.server.dao.FilesDAO;
+import com.pbl4.syncproject.server.dao.FolderDAO;
+import com.pbl4.syncproject.server.dao.FolderStatsDAO;
+import com.pbl4.syncproject.server.dao.ReplicatedRowDAO;
+import com.pbl4.syncproject.server.dao.ReplicationLogDAO;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Phía replica của nhân bản (replication.role=replica): tail ReplicationLog của primary qua REPLICATION_PULL bằng
+ * chính giao thức đồng bộ, áp từng lô trong một transaction cùng với seq đã áp, rồi tải nội dung các file đã đổi
+ * (REPLICATION_READ) vào storage của mình. Trong lúc đó server chỉ phục vụ các request đọc (Dispatcher).
+ *
+ * Lần đầu (chưa có ReplicationState) nạp snapshot từng bảng qua REPLICATION_SNAPSHOT rồi tail từ "head" của trang đầu.
+ * FolderClosure / FolderStats (trừ hạn mức) / FileVersions không được nhân bản: closure và thống kê do mỗi server tự
+ * dựng, lịch sử phiên bản chỉ có trên primary.
+ *
+ * Độ trễ (SERVER_STATS / REPLICATION_STATUS): replication.lag.records = head của primary - seq đã áp,
+ * replication.lag.ms = tuổi (theo đồng hồ DB của primary) của bản ghi mới nhất đã áp khi còn tụt, 0 khi đã bắt kịp.
+ * PROMOTE_REPLICA dừng tail, ghi Promoted = 1 và bật lại các dịch vụ ghi: từ đó server là primary.
+ */
+public final class ReplicaSync {
+
+    private static final ReplicaSync INSTANCE = new ReplicaSync();
+
+    public static ReplicaSync getInstance() {
+        return INSTANCE;
+    }
+
+    private static final int CHUNK = 4 * 1024 * 1024;
+    // Tải nội dung xen giữa các lần pull để metadata không tụt theo file lớn
+    private static final int CONTENT_PER_ROUND = 50;
+    private static final long MAX_BACKOFF_MS = 10_000;
+    private static final long PROMOTE_WAIT_MS = 60_000;
+
+    private final boolean replicaRole = "replica".equalsIgnoreCase(ServerConfig.getString("replication.role", "primary"));
+    private final String host = ServerConfig.getString("replication.primary.host", "127.0.0.1");
+    private final int port = ServerConfig.getInt("replication.primary.port", 8080);
+    private final String user = ServerConfig.getString("replication.primary.user", "admin");
+    private final String password = ServerConfig.getString("replication.primary.password", "");
+    private final long pollMs = ServerConfig.getLong("replication.poll.ms", 200);
+    private final int batchSize = ServerConfig.getInt("replication.batch.size", 500);
+    private final int timeoutMs = ServerConfig.getInt("replication.socket.timeout.ms", 30_000);
+
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+    private final StorageManager storage = StorageManager.getInstance();
+
+    private volatile boolean readOnly;
+    private volatile boolean promoted;
+    private volatile boolean stopping;
+    private volatile boolean resyncRequired;
+    private volatile Thread worker;
+    private volatile ReplicationClient client;
+    private volatile Runnable onPromote;
+
+    private volatile long appliedSeq;
+    private volatile long lastAppliedCreatedAt;
+    private volatile long primaryHead;
+    private volatile long lagMs = -1;
+    private volatile boolean connected;
+    private volatile long lastContactAt;
+    // Giờ của DB primary trong response pull gần nhất (cùng đồng hồ với createdAt của bản ghi)
+    private volatile long primaryNow;
+    private volatile String lastError;
+
+    private ReplicaSync() {}
+
+    /** true khi server đang là replica chưa promote: chỉ nhận request đọc */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /** Việc chạy khi được promote (bật các dịch vụ ghi của primary) */
+    public void onPromote(Runnable hook) {
+        this.onPromote = hook;
+    }
+
+    /**
+     * Gọi lúc khởi động, trước khi nạp các cache: xác định vai trò và nạp snapshot nếu replica chưa có dữ liệu
+     * (chờ tới khi primary trả lời). true nếu server chạy như replica.
+     */
+    public boolean prepare() {
+        if (!replicaRole) return false;
+        while (true) {
+            try (Connection conn = openApplyConnection()) {
+                ReplicationLogDAO state = new ReplicationLogDAO(conn);
+                if (state.isPromoted()) {
+                    promoted = true;
+                    System.out.println("⚠️ Replica đã được promote trước đó, chạy như primary (bỏ replication.role=replica)");
+                    return false;
+                }
+                readOnly = true;
+                metrics.set("replication.replica", 1);
+                Long applied = state.getAppliedSeq();
+                if (applied == null) applied = bootstrap(conn);
+                appliedSeq = applied;
+                metrics.set("replication.applied.seq", applied);
+                return true;
+            } catch (Exception e) {
+                lastError = e.getMessage();
+                metrics.increment("replication.errors");
+                System.err.println("❌ Replica: nạp snapshot thất bại, thử lại sau " + MAX_BACKOFF_MS + " ms: " + e.getMessage());
+                try {
+                    Thread.sleep(MAX_BACKOFF_MS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return true;
+                }
+            }
+        }
+    }
+
+    public synchronized void start() {
+        if (!readOnly || worker != null) return;
+        stopping = false;
+        worker = new Thread(this::loop, "replica-sync");
+        worker.setDaemon(true);
+        worker.start();
+        System.out.println("🔄 Replica: tail ReplicationLog của " + host + ":" + port + " từ seq " + appliedSeq);
+    }
+
+    // ---------- Snapshot ----------
+
+    private long bootstrap(Connection conn) throws Exception {
+        System.out.println("🔄 Replica: nạp snapshot từ primary " + host + ":" + port);
+        long started = System.currentTimeMillis();
+        ReplicationLogDAO state = new ReplicationLogDAO(conn);
+        ReplicatedRowDAO rows = new ReplicatedRowDAO(conn);
+        Long head = null;
+        long count = 0;
+        try (ReplicationClient primary = connect()) {
+            // Bảng được nạp theo thứ tự khóa chính: folder con có thể đến trước cha nên tắt kiểm tra khóa ngoại
+            state.wipeForSnapshot();
+            try {
+                for (String name : ReplicatedRowDAO.tableNames()) {
+                    ReplicatedRowDAO.Table table = ReplicatedRowDAO.table(name);
+                    long afterKey = 0;
+                    while (true) {
+                        JsonObject data = new JsonObject();
+                        data.addProperty("table", name);
+                        data.addProperty("afterKey", afterKey);
+                        data.addProperty("limit", batchSize);
+                        JsonObject page = primary.call("REPLICATION_SNAPSHOT", data);
+                        if (head == null) head = page.get("head").getAsLong();
+                        JsonArray arr = page.getAsJsonArray("rows");
+                        conn.setAutoCommit(false);
+                        try {
+                            for (JsonElement r : arr) rows.upsert(table, r.getAsJsonObject());
+                            conn.commit();
+                        } catch (SQLException e) {
+                            conn.rollback();
+                            throw e;
+                        } finally {
+                            conn.setAutoCommit(true);
+                        }
+                        count += arr.size();
+                        afterKey = page.get("lastKey").getAsLong();
+                        if (page.get("done").getAsBoolean()) break;
+                    }
+                }
+            } finally {
+                try (Statement st = conn.createStatement()) {
+                    st.execute("SET FOREIGN_KEY_CHECKS = 1");
+                }
+            }
+        }
+        new FolderDAO(conn).rebuildClosure();
+        new FolderStatsDAO(conn).recomputeAll();
+        state.queueAllContent();
+        long seq = head != null ? head : 0;
+        state.saveAppliedSeq(seq);
+        metrics.add("replication.snapshot.rows", count);
+        System.out.println("✅ Replica: đã nạp " + count + " dòng trong " + (System.currentTimeMillis() - started)
+                + " ms, tail từ seq " + seq + " (nội dung file tải dần)");
+        return seq;
+    }
+
+    // ---------- Tail ----------
+
+    private void loop() {
+        long backoff = pollMs;
+        while (!stopping) {
+            try (Connection conn = openApplyConnection();
+                 ReplicationClient primary = connect()) {
+                connected = true;
+                lastError = null;
+                backoff = pollMs;
+                ReplicationLogDAO state = new ReplicationLogDAO(conn);
+                while (!stopping) {
+                    JsonObject data = new JsonObject();
+                    data.addProperty("afterSeq", appliedSeq);
+                    data.addProperty("limit", batchSize);
+                    JsonObject res = primary.call("REPLICATION_PULL", data);
+                    lastContactAt = System.currentTimeMillis();
+                    primaryNow = res.get("now").getAsLong();
+                    if (res.get("resync").getAsBoolean()) {
+                        // Nhật ký trên primary đã bị dọn qua seq của replica: lần khởi động sau nạp lại snapshot
+                        state.clearState();
+                        resyncRequired = true;
+                        metrics.set("replication.resync.required", 1);
+                        System.err.println("❌ Replica: primary đã dọn ReplicationLog sau seq " + appliedSeq
+                                + ", dừng tail. Khởi động lại server để nạp lại snapshot");
+                        return;
+                    }
+                    JsonArray records = res.getAsJsonArray("records");
+                    if (records.size() > 0) apply(conn, records);
+                    updateLag(res.get("head").getAsLong());
+                    int fetched = drainContent(conn, primary, CONTENT_PER_ROUND);
+                    if (records.size() < batchSize && fetched == 0) Thread.sleep(pollMs);
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                connected = false;
+                if (stopping) break;
+                lastError = e.getMessage();
+                metrics.increment("replication.errors");
+                System.err.println("⚠️ Replica: " + e.getMessage() + ", thử lại sau " + backoff + " ms");
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+            } finally {
+                connected = false;
+                client = null;
+            }
+        }
+    }
+
+    private void updateLag(long head) {
+        primaryHead = head;
+        long behind = Math.max(0, head - appliedSeq);
+        if (behind == 0) lagMs = 0;
+        else if (lastAppliedCreatedAt > 0) lagMs = Math.max(0, primaryNow - lastAppliedCreatedAt);
+        else lagMs = -1;
+        metrics.set("replication.lag.records", behind);
+        metrics.set("replication.lag.ms", lagMs);
+    }
+
+    /**
+     * Áp một lô bản ghi trong một transaction cùng seq đã áp và danh sách file cần tải nội dung. Kết nối này đặt
+     * @replication_apply nên trigger không ghi lại vào ReplicationLog của replica. Xóa nội dung trên đĩa và thông báo
+     * NamespaceEvents chạy sau commit.
+     */
+    private void apply(Connection conn, JsonArray records) throws Exception {
+        long started = System.nanoTime();
+        Batch batch = new Batch(conn);
+        long last = appliedSeq;
+        long lastCreated = lastAppliedCreatedAt;
+        conn.setAutoCommit(false);
+        try {
+            for (JsonElement el : records) {
+                JsonObject r = el.getAsJsonObject();
+                applyRecord(batch, r.get("table").getAsString(), r.get("op").getAsString().charAt(0),
+                        r.getAsJsonObject("row"));
+                last = r.get("seq").getAsLong();
+                lastCreated = r.get("createdAt").getAsLong();
+            }
+            ReplicationLogDAO state = new ReplicationLogDAO(conn);
+            state.addPendingContent(batch.fetch);
+            state.saveAppliedSeq(last);
+            conn.commit();
+        } catch (Exception e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        appliedSeq = last;
+        lastAppliedCreatedAt = lastCreated;
+        metrics.set("replication.applied.seq", last);
+        metrics.add("replication.applied.records", records.size());
+        metrics.observe("replication.apply.us", (System.nanoTime() - started) / 1000);
+
+        for (Purge p : batch.purges) purgeContent(conn, p);
+        for (Path dir : batch.dirs) {
+            try {
+                if (!dir.equals(storage.getRoot()) && Files.isDirectory(dir)) deleteTree(dir);
+            } catch (IOException e) {
+                metrics.increment("replication.content.errors");
+            }
+        }
+        for (Runnable event : batch.events) event.run();
+    }
+
+    private static final class Batch {
+        final Connection conn;
+        final ReplicatedRowDAO rows;
+        final FolderDAO folders;
+        final FilesDAO files;
+        final Set<Integer> fetch = new LinkedHashSet<>();
+        final List<Purge> purges = new ArrayList<>();
+        final List<Path> dirs = new ArrayList<>();
+        final List<Runnable> events = new ArrayList<>();
+
+        Batch(Connection conn) {
+            this.conn = conn;
+            this.rows = new ReplicatedRowDAO(conn);
+            this.folders = new FolderDAO(conn);
+            this.files = new FilesDAO(conn);
+        }
+    }
+
+    // Nội dung cần xóa sau commit: theo FileID (fileId > 0) và/hoặc đường dẫn cũ (folderId, fileName)
+    private static final class Purge {
+        final int fileId;
+        final int folderId;
+        final String fileName;
+
+        Purge(int fileId, int folderId, String fileName) {
+            this.fileId = fileId;
+            this.folderId = folderId;
+            this.fileName = fileName;
+        }
+    }
+
+    private void applyRecord(Batch b, String tableName, char op, JsonObject row) throws Exception {
+        ReplicatedRowDAO.Table table = ReplicatedRowDAO.table(tableName);
+        switch (table.name) {
+            case "Folders":
+                if (op == 'D') deleteFolder(b, row.get("FolderID").getAsInt());
+                else upsertFolder(b, table, row);
+                break;
+            case "Files":
+                if (op == 'D') deleteFile(b, table, row.get("FileID").getAsInt());
+                else upsertFile(b, table, row);
+                break;
+            case "FolderAccessControl":
+            case "FileAccessControl":
+                applyAcl(b, table, op, row);
+                break;
+            case "FolderStats":
+                // Chỉ mang hạn mức; folder có thể đã bị xóa ở bản ghi sau
+                if (b.rows.get(ReplicatedRowDAO.table("Folders"), row.get("FolderID").getAsInt()) != null) {
+                    b.rows.upsert(table, row);
+                }
+                break;
+            default:
+                if (op == 'D') b.rows.delete(table, row.get(table.key).getAsInt());
+                else b.rows.upsert(table, row);
+        }
+    }
+
+    private void upsertFolder(Batch b, ReplicatedRowDAO.Table table, JsonObject row) throws Exception {
+        int folderId = row.get("FolderID").getAsInt();
+        Integer parentId = intOrNull(row, "ParentFolderID");
+        String name = row.get("FolderName").getAsString();
+        JsonObject cur = b.rows.get(table, folderId);
+        if (cur == null) {
+            b.folders.insertReplicatedFolder(folderId, parentId, name, timestampOrNull(row, "LastModified"),
+                    timestampOrNull(row, "CreatedAt"));
+            b.events.add(() -> NamespaceEvents.folderCreated(folderId, parentId, name));
+            return;
+        }
+        Integer oldParentId = intOrNull(cur, "ParentFolderID");
+        boolean moved = !Objects.equals(oldParentId, parentId);
+        boolean renamed = !cur.get("FolderName").getAsString().equals(name);
+        if (moved && parentId == null) throw new SQLException("Không thể chuyển folder " + folderId + " thành root");
+
+        if (moved || renamed) {
+            // Như MOVE_FOLDER / RENAME_FOLDER: thư mục trên đĩa chỉ còn với layout cũ
+            Path oldPath = storage.resolveFolderPathFromDb(b.conn, folderId);
+            Path newPath = parentId != null ? storage.resolveFolderPathFromDb(b.conn, parentId).resolve(name) : oldPath;
+            if (!newPath.equals(oldPath) && Files.exists(oldPath)) {
+                Files.createDirectories(newPath.getParent());
+                Files.move(oldPath, newPath);
+            }
+        }
+        if (moved) b.folders.moveFolder(folderId, parentId);
+        b.rows.upsert(table, row);
+        if (moved || renamed) storage.invalidateFolderSubtree(folderId);
+        if (moved) b.events.add(() -> NamespaceEvents.folderMoved(folderId, oldParentId, parentId));
+        if (renamed) b.events.add(() -> NamespaceEvents.folderRenamed(folderId, name));
+    }
+
+    /**
+     * Primary xóa file của cây con trước folder nên thường cây đã rỗng. File còn sót được xóa trước bằng câu lệnh
+     * riêng để trigger thống kê chạy (xóa dây chuyền bỏ qua trigger).
+     */
+    private void deleteFolder(Batch b, int folderId) throws Exception {
+        Connection conn = b.conn;
+        if (b.rows.get(ReplicatedRowDAO.table("Folders"), folderId) == null) return;
+        b.dirs.add(storage.resolveFolderPathFromDb(conn, folderId));
+
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT f.FileID, f.FolderID, f.FileName, f.DeletedAt IS NULL FROM FolderClosure c " +
+                        "JOIN Files f ON f.FolderID = c.DescendantID WHERE c.AncestorID = ?")) {
+            ps.setInt(1, folderId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int fileId = rs.getInt(1);
+                    int inFolder = rs.getInt(2);
+                    b.purges.add(new Purge(fileId, inFolder, null));
+                    if (rs.getBoolean(4)) b.events.add(() -> NamespaceEvents.fileDeleted(fileId, inFolder));
+                }
+            }
+        }
+        try (PreparedStatement ps = conn.prepareStatement(
+                "DELETE f FROM Files f JOIN FolderClosure c ON f.FolderID = c.DescendantID WHERE c.AncestorID = ?")) {
+            ps.setInt(1, folderId);
+            ps.executeUpdate();
+        }
+        // Thông báo từ folder sâu nhất lên, như DELETE_FOLDER
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT f.FolderID, f.ParentFolderID FROM FolderClosure c JOIN Folders f ON f.FolderID = c.DescendantID " +
+                        "WHERE c.AncestorID = ? ORDER BY c.Depth DESC")) {
+            ps.setInt(1, folderId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int id = rs.getInt(1);
+                    Integer parentId = (Integer) rs.getObject(2);
+                    b.events.add(() -> NamespaceEvents.folderDeleted(id, parentId));
+                }
+            }
+        }
+        b.rows.delete(ReplicatedRowDAO.table("Folders"), folderId);
+    }
+
+    private void upsertFile(Batch b, ReplicatedRowDAO.Table table, JsonObject row) throws Exception {
+        int fileId = row.get("FileID").getAsInt();
+        int folderId = row.get("FolderID").getAsInt();
+        String name = row.get("FileName").getAsString();
+        JsonObject cur = b.rows.get(table, fileId);
+        b.rows.upsert(table, row);
+
+        boolean relocated = cur != null
+                && (cur.get("FolderID").getAsInt() != folderId || !cur.get("FileName").getAsString().equals(name));
+        boolean changed = cur == null
+                || !Objects.equals(stringOrNull(cur, "FileHash"), stringOrNull(row, "FileHash"))
+                || longOr(cur, "FileSize", 0) != longOr(row, "FileSize", 0);
+        // Layout cũ: nội dung nằm theo (thư mục, tên) nên đổi chỗ cũng phải tải lại vào chỗ mới
+        if (changed || (relocated && !storage.isObjectLayout())) b.fetch.add(fileId);
+        if (relocated && !storage.isObjectLayout()) {
+            b.purges.add(new Purge(0, cur.get("FolderID").getAsInt(), cur.get("FileName").getAsString()));
+        }
+
+        boolean live = isNull(row, "DeletedAt");
+        boolean wasLive = cur != null && isNull(cur, "DeletedAt");
+        if (live) {
+            long size = longOr(row, "FileSize", 0);
+            long modified = longOr(row, "LastModified", longOr(row, "CreatedAt", 0));
+            if (wasLive && cur.get("FolderID").getAsInt() != folderId) {
+                int oldFolderId = cur.get("FolderID").getAsInt();
+                b.events.add(() -> NamespaceEvents.fileDeleted(fileId, oldFolderId));
+            }
+            b.events.add(() -> NamespaceEvents.fileUpserted(fileId, folderId, name, size, modified));
+        } else if (wasLive) {
+            int oldFolderId = cur.get("FolderID").getAsInt();
+            b.events.add(() -> NamespaceEvents.fileDeleted(fileId, oldFolderId));
+        }
+    }
+
+    private void deleteFile(Batch b, ReplicatedRowDAO.Table table, int fileId) throws Exception {
+        JsonObject cur = b.rows.get(table, fileId);
+        if (cur == null) return;
+        int folderId = cur.get("FolderID").getAsInt();
+        b.rows.delete(table, fileId);
+        b.purges.add(new Purge(fileId, folderId, cur.get("FileName").getAsString()));
+        if (isNull(cur, "DeletedAt")) b.events.add(() -> NamespaceEvents.fileDeleted(fileId, folderId));
+    }
+
+    private void applyAcl(Batch b, ReplicatedRowDAO.Table table, char op, JsonObject row) throws Exception {
+        int key = row.get(table.key).getAsInt();
+        JsonObject cur = b.rows.get(table, key);
+        if (op == 'D') {
+            if (cur == null) return;
+            b.rows.delete(table, key);
+        } else {
+            b.rows.upsert(table, row);
+        }
+        // Quyền cũ và mới (UPDATE có thể đổi cả user / đối tượng)
+        for (JsonObject r : new JsonObject[]{cur, op == 'D' ? null : row}) {
+            if (r == null) continue;
+            int userId = r.get("UserID").getAsInt();
+            if (r.has("FolderID")) {
+                int folderId = r.get("FolderID").getAsInt();
+                b.events.add(() -> NamespaceEvents.aclChanged(userId, folderId, null));
+            } else {
+                int fileId = r.get("FileID").getAsInt();
+                Integer folderId = b.files.getFolderIdOfFile(fileId);
+                if (folderId != null) b.events.add(() -> NamespaceEvents.aclChanged(userId, folderId, fileId));
+            }
+        }
+    }
+
+    private void purgeContent(Connection conn, Purge p) {
+        try {
+            if (p.fileId > 0 && TrashCollector.purgeStoredContent(conn, p.fileId)) return;
+            // Layout cũ: chỉ xóa khi không còn dòng nào (kể cả trong thùng rác) giữ (thư mục, tên) đó
+            if (p.fileName == null || ownedByRow(conn, p.folderId, p.fileName)) return;
+            Files.deleteIfExists(storage.legacyFilePath(conn, p.folderId, p.fileName));
+        } catch (Exception e) {
+            metrics.increment("replication.content.errors");
+        }
+    }
+
+    private static boolean ownedByRow(Connection conn, int folderId, String fileName) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT 1 FROM Files WHERE FolderID = ? AND FileName = ? LIMIT 1")) {
+            ps.setInt(1, folderId);
+            ps.setString(2, fileName);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    // ---------- Nội dung ----------
+
+    /**
+     * Tải tối đa limit file đang chờ (ReplicationPendingContent). File chỉ được bỏ khỏi hàng chờ khi đã đặt xong
+     * hoặc không còn trên primary / trên replica. Nội dung tải về có thể mới hơn metadata replica đang có trong khoảng
+     * giữa hai lô; bản ghi sau sẽ đưa file vào hàng chờ lần nữa nếu hash còn đổi.
+     */
+    private int drainContent(Connection conn, ReplicationClient primary, int limit) throws Exception {
+        ReplicationLogDAO state = new ReplicationLogDAO(conn);
+        List<Integer> ids = state.getPendingContent(limit);
+        for (int fileId : ids) {
+            if (stopping) break;
+            fetchContent(conn, primary, fileId);
+            state.removePendingContent(fileId);
+        }
+        return ids.size();
+    }
+
+    private void fetchContent(Connection conn, ReplicationClient primary, int fileId) throws Exception {
+        FilesDAO.CurrentContent file = new FilesDAO(conn).getCurrentContent(fileId);
+        if (file == null) return; // đã bị xóa ở bản ghi sau
+
+        Path dir = storage.replicationRoot();
+        Files.createDirectories(dir);
+        Path tmp = dir.resolve("fetch-" + fileId + "-" + System.nanoTime() + ".tmp");
+        try {
+            long size;
+            try {
+                size = download(primary, fileId, tmp);
+            } catch (ReplicationClient.RemoteException e) {
+                metrics.increment("replication.content.missing");
+                return;
+            }
+            new FileContentWriter(conn).placeReplicated(fileId, file.folderId, file.fileName, tmp, size);
+            metrics.add("replication.content.bytes", size);
+            metrics.increment("replication.content.files");
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // Tải cả file theo đoạn; hash đổi giữa các đoạn (file bị ghi đè trên primary) thì tải lại từ đầu
+    private long download(ReplicationClient primary, int fileId, Path target) throws IOException {
+        for (int attempt = 0; attempt < 3; attempt++) {
+            String hash = null;
+            long offset = 0;
+            boolean restarted = false;
+            try (OutputStream out = Files.newOutputStream(target)) {
+                while (true) {
+                    JsonObject data = new JsonObject();
+                    data.addProperty("fileId", fileId);
+                    data.addProperty("offset", offset);
+                    data.addProperty("length", CHUNK);
+                    JsonObject r = primary.call("REPLICATION_READ", data);
+                    String h = r.has("hash") && !r.get("hash").isJsonNull() ? r.get("hash").getAsString() : "";
+                    if (hash == null) hash = h;
+                    else if (!hash.equals(h)) {
+                        restarted = true;
+                        break;
+                    }
+                    byte[] bytes = Base64.getDecoder().decode(r.get("content").getAsString());
+                    out.write(bytes);
+                    offset += bytes.length;
+                    if (r.get("eof").getAsBoolean() || bytes.length == 0) break;
+                }
+            }
+            if (!restarted) return offset;
+        }
+        throw new IOException("Nội dung file " + fileId + " liên tục thay đổi trên primary");
+    }
+
+    // ---------- Promote / trạng thái ----------
+
+    /**
+     * Dừng tail và biến replica thành primary: ghi Promoted = 1 (giữ qua lần khởi động sau), bỏ chế độ chỉ đọc và
+     * chạy các dịch vụ ghi. Những gì primary chưa kịp gửi (lag.records) và nội dung còn chờ tải sẽ không có.
+     */
+    public synchronized JsonObject promote(Connection conn) throws Exception {
+        if (!readOnly) throw new IllegalStateException("Server không phải replica đang chạy");
+        stopping = true;
+        ReplicationClient c = client;
+        if (c != null) c.close();
+        Thread t = worker;
+        if (t != null) {
+            t.interrupt();
+            t.join(PROMOTE_WAIT_MS);
+            if (t.isAlive()) throw new IllegalStateException("Luồng nhân bản chưa dừng, thử lại sau");
+            worker = null;
+        }
+        new ReplicationLogDAO(conn).markPromoted();
+        promoted = true;
+        readOnly = false;
+        metrics.set("replication.replica", 0);
+        System.out.println("⚠️ Replica đã được promote thành primary tại seq " + appliedSeq);
+        Runnable hook = onPromote;
+        if (hook != null) hook.run();
+        return status(conn);
+    }
+
+    public JsonObject status(Connection conn) throws SQLException {
+        JsonObject out = new JsonObject();
+        out.addProperty("role", readOnly ? "replica" : "primary");
+        out.addProperty("readOnly", readOnly);
+        out.addProperty("promoted", promoted);
+        if (readOnly || promoted) {
+            ReplicationLogDAO state = new ReplicationLogDAO(conn);
+            out.addProperty("primary", host + ":" + port);
+            out.addProperty("appliedSeq", appliedSeq);
+            out.addProperty("primaryHead", primaryHead);
+            out.addProperty("lagRecords", Math.max(0, primaryHead - appliedSeq));
+            out.addProperty("lagMs", lagMs);
+            out.addProperty("connected", connected);
+            out.addProperty("lastContactAt", lastContactAt);
+            out.addProperty("pendingContent", state.countPendingContent());
+            out.addProperty("resyncRequired", resyncRequired);
+            if (lastError != null) out.addProperty("lastError", lastError);
+        }
+        if (!readOnly) {
+            long[] bounds = new ReplicationLogDAO(conn).bounds();
+            out.addProperty("logOldestSeq", bounds[0]);
+            out.addProperty("logHeadSeq", bounds[1]);
+        }
+        return out;
+    }
+
+    // ---------- tiện ích ----------
+
+    private ReplicationClient connect() throws IOException {
+        ReplicationClient c = new ReplicationClient(host, port, timeoutMs);
+        try {
+            c.login(user, password);
+        } catch (IOException e) {
+            c.close();
+            throw e;
+        }
+        client = c;
+        return c;
+    }
+
+    // Kết nối riêng của replica: trigger thấy @replication_apply nên không ghi những gì đang áp vào nhật ký
+    private static Connection openApplyConnection() throws SQLException {
+        Connection conn = DatabaseManager.openConnection();
+        try (Statement st = conn.createStatement()) {
+            st.execute("SET @replication_apply = 1");
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+        return conn;
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path p : (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    private static boolean isNull(JsonObject row, String column) {
+        return !row.has(column) || row.get(column).isJsonNull();
+    }
+
+    private static Integer intOrNull(JsonObject row, String column) {
+        return isNull(row, column) ? null : row.get(column).getAsInt();
+    }
+
+    private static String stringOrNull(JsonObject row, String column) {
+        return isNull(row, column) ? null : row.get(column).getAsString();
+    }
+
+    private static long longOr(JsonObject row, String column, long fallback) {
+        return isNull(row, column) ? fallback : row.get(column).getAsLong();
+    }
+
+    private static Timestamp timestampOrNull(JsonObject row, String column) {
+        return isNull(row, column) ? null : new Timestamp(row.get(column).getAsLong());
+    }
+}
@@ -0,0 +1,70 @@
+package com.pbl4.syncproject.server.service;
+
+import com.google.gson.JsonObject;
+import com.pbl4.syncproject.common.jsonhandler.JsonUtils;
+import com.pbl4.syncproject.common.jsonhandler.Request;
+import com.pbl4.syncproject.common.jsonhandler.Response;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Kết nối của replica tới primary bằng chính giao thức đồng bộ (mỗi request / response là một dòng JSON),
+ * đăng nhập bằng một tài khoản ADMIN (replication.primary.user / password).
+ */
+final class ReplicationClient implements AutoCloseable {
+
+    /** Primary trả status "error" */
+    static final class RemoteException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        RemoteException(String action, String message) {
+            super(action + ": " + message);
+        }
+    }
+
+    private final Socket socket;
+    private final BufferedReader in;
+    private final PrintWriter out;
+
+    ReplicationClient(String host, int port, int timeoutMs) throws IOException {
+        socket = new Socket();
+        socket.connect(new InetSocketAddress(host, port), timeoutMs);
+        socket.setSoTimeout(timeoutMs);
+        in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        out = new PrintWriter(socket.getOutputStream(), false, StandardCharsets.UTF_8);
+    }
+
+    void login(String username, String password) throws IOException {
+        JsonObject data = new JsonObject();
+        data.addProperty("username", username);
+        data.addProperty("password", password);
+        call("LOGIN", data);
+    }
+
+    /** Gửi một request, trả data của response (status "error" thành RemoteException) */
+    JsonObject call(String action, JsonObject data) throws IOException {
+        out.println(JsonUtils.toJson(new Request(action, data)));
+        out.flush();
+        String line = in.readLine();
+        if (line == null) throw new EOFException("Primary đóng kết nối");
+        Response res = JsonUtils.fromJson(line, Response.class);
+        if (!"success".equals(res.getStatus())) throw new RemoteException(action, res.getMessage());
+        return res.getData() != null && res.getData().isJsonObject() ? res.getData().getAsJsonObject() : new JsonObject();
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // bỏ qua
+        }
+    }
+}
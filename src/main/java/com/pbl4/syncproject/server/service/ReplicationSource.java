@@ -0,0 +1,143 @@
+package com.pbl4.syncproject.server.service;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.pbl4.syncproject.server.ServerConfig;
+import com.pbl4.syncproject.server.dao.DatabaseManager;
+import com.pbl4.syncproject.server.dao.ReplicatedRowDAO;
+import com.pbl4.syncproject.server.dao.ReplicationLogDAO;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Phía primary của nhân bản: phục vụ REPLICATION_PULL / REPLICATION_SNAPSHOT và dọn ReplicationLog cũ hơn
+ * replication.log.retention.hours (replica tụt quá mức đó phải nạp lại snapshot).
+ *
+ * Seq được cấp lúc ghi, không phải lúc commit: transaction đang chạy có thể giữ một seq nhỏ hơn các dòng đã commit
+ * sau nó. Pull dừng trước chỗ trống đầu tiên cho tới khi dòng sau chỗ trống đã cũ hơn replication.gap.wait.ms
+ * (khi đó chỗ trống là transaction đã rollback); các transaction ghi metadata của server đều ngắn hơn nhiều.
+ */
+public final class ReplicationSource {
+
+    private static final ReplicationSource INSTANCE = new ReplicationSource();
+
+    public static ReplicationSource getInstance() {
+        return INSTANCE;
+    }
+
+    private static final int PURGE_BATCH = 10_000;
+
+    private final long retentionMs = TimeUnit.HOURS.toMillis(ServerConfig.getLong("replication.log.retention.hours", 24));
+    private final long gapWaitMs = ServerConfig.getLong("replication.gap.wait.ms", 10_000);
+    private final int maxPull = ServerConfig.getInt("replication.pull.max", 1000);
+
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+    private volatile Thread worker;
+
+    private ReplicationSource() {}
+
+    public synchronized void start() {
+        if (worker != null) return;
+        worker = new Thread(this::loop, "replication-log-gc");
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MIN_PRIORITY);
+        worker.start();
+    }
+
+    private void loop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(10));
+                int purged = purge();
+                if (purged > 0) System.out.println("🗑 ReplicationLog: đã dọn " + purged + " dòng");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                System.err.println("❌ ReplicationSource lỗi: " + e.getMessage());
+            }
+        }
+    }
+
+    public int purge() throws SQLException {
+        int total = 0;
+        try (Connection conn = DatabaseManager.openConnection()) {
+            ReplicationLogDAO dao = new ReplicationLogDAO(conn);
+            long[] bounds = dao.bounds();
+            long cutoff = bounds[2] - retentionMs;
+            int n;
+            do {
+                n = dao.purgeOlderThan(cutoff, bounds[1], PURGE_BATCH);
+                total += n;
+            } while (n == PURGE_BATCH);
+        }
+        metrics.add("replication.log.purged", total);
+        return total;
+    }
+
+    /**
+     * Các bản ghi sau afterSeq: { records: [{seq, table, op, row, createdAt}], head, oldest, now, resync }.
+     * resync = true: các bản ghi ngay sau afterSeq đã bị dọn, replica phải nạp lại snapshot.
+     */
+    public JsonObject pull(Connection conn, long afterSeq, int limit) throws SQLException {
+        ReplicationLogDAO dao = new ReplicationLogDAO(conn);
+        long[] bounds = dao.bounds();
+        long oldest = bounds[0], head = bounds[1], now = bounds[2];
+
+        JsonObject out = new JsonObject();
+        out.addProperty("head", head);
+        out.addProperty("oldest", oldest);
+        out.addProperty("now", now);
+        JsonArray records = new JsonArray();
+        out.add("records", records);
+        // Việc dọn luôn chừa dòng mới nhất nên oldest = 0 nghĩa là chưa từng có thay đổi nào
+        boolean lost = oldest > 0 && afterSeq + 1 < oldest;
+        out.addProperty("resync", lost);
+        if (lost) return out;
+
+        long expected = afterSeq + 1;
+        for (ReplicationLogDAO.Entry e : dao.readAfter(afterSeq, Math.max(1, Math.min(limit, maxPull)))) {
+            if (e.seq != expected && now - e.createdAtMs < gapWaitMs) {
+                metrics.increment("replication.pull.gap.waits");
+                break;
+            }
+            JsonObject r = new JsonObject();
+            r.addProperty("seq", e.seq);
+            r.addProperty("table", e.table);
+            r.addProperty("op", String.valueOf(e.op));
+            r.add("row", e.row);
+            r.addProperty("createdAt", e.createdAtMs);
+            records.add(r);
+            expected = e.seq + 1;
+        }
+        metrics.add("replication.pull.records", records.size());
+        return out;
+    }
+
+    /**
+     * Một trang snapshot của một bảng: { table, rows, lastKey, done, head }. "head" được đọc trước các dòng nên
+     * replica tail từ head của trang đầu sẽ áp lại mọi thay đổi xảy ra trong lúc chép (áp lại không sai vì idempotent).
+     */
+    public JsonObject snapshot(Connection conn, String tableName, long afterKey, int limit) throws SQLException {
+        ReplicatedRowDAO.Table table = ReplicatedRowDAO.table(tableName);
+        long head = new ReplicationLogDAO(conn).bounds()[1];
+        int n = Math.max(1, Math.min(limit, maxPull));
+        List<JsonObject> rows = new ReplicatedRowDAO(conn).page(table, afterKey, n);
+
+        JsonObject out = new JsonObject();
+        out.addProperty("table", table.name);
+        out.addProperty("head", head);
+        JsonArray arr = new JsonArray();
+        long lastKey = afterKey;
+        for (JsonObject row : rows) {
+            arr.add(row);
+            lastKey = row.get(table.key).getAsLong();
+        }
+        out.add("rows", arr);
+        out.addProperty("lastKey", lastKey);
+        out.addProperty("done", rows.size() < n);
+        return out;
+    }
+}
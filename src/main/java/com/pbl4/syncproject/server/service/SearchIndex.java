@@ -0,0 +1,516 @@
+package com.pbl4.syncproject.server.service;
+
+import com.pbl4.syncproject.common.storage.FileTypes;
+import com.pbl4.syncproject.server.dao.DatabaseManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Chỉ mục tìm kiếm tên file/folder theo trigram (chuỗi 3 ký tự liên tiếp), phục vụ action SEARCH.
+ *
+ * Tên được chuẩn hóa (chữ thường, bỏ dấu tiếng Việt, đ -> d) rồi tách trigram. Mỗi trigram trỏ tới danh sách
+ * "slot" tài liệu tăng dần; truy vấn lấy giao của các danh sách (bắt đầu từ danh sách ngắn nhất), sau đó
+ * kiểm tra lại bằng contains để loại trùng trigram ngẫu nhiên, áp bộ lọc và xếp hạng.
+ *
+ * Slot chỉ được cấp tăng dần và không dùng lại, nên danh sách luôn có thứ tự và thêm vào chỉ là append.
+ * Xóa/đổi tên chỉ đánh dấu slot chết; khi số slot chết vượt 1/3 thì dựng lại toàn bộ chỉ mục.
+ *
+ * Nạp nền lúc khởi động; sự kiện đến trong lúc nạp được xếp hàng rồi áp dụng sau.
+ * Khi chưa nạp xong, SearchHandler tự chuyển sang LIKE trên DB.
+ */
+public final class SearchIndex implements NamespaceListener {
+
+    private static final SearchIndex INSTANCE = new SearchIndex();
+
+    public static SearchIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /** Mã loại của folder (các file dùng index trong FileTypes.ALL) */
+    public static final byte FOLDER_TYPE = -1;
+    /** Số kết quả tối đa được xếp hạng cho một truy vấn */
+    public static final int MAX_RANKED = 10_000;
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    /** Điều kiện tìm kiếm; bỏ trống trường nào thì không lọc theo trường đó */
+    public static final class Query {
+        public String text = "";
+        public int typeCode = Integer.MIN_VALUE;   // FileTypes code hoặc FOLDER_TYPE
+        public long minSize = -1;
+        public long maxSize = -1;
+        public long modifiedFrom = Long.MIN_VALUE;
+        public long modifiedTo = Long.MAX_VALUE;
+        public boolean includeFolders = true;
+        public boolean includeFiles = true;
+    }
+
+    /** Một kết quả (copy ra ngoài, không tham chiếu vào chỉ mục) */
+    public static final class Hit {
+        public final boolean folder;
+        public final int id;
+        public final String name;
+        public final int parentFolderId;   // folder chứa (0 nếu folder root)
+        public final long size;
+        public final long lastModifiedMs;
+        public final int score;
+
+        public Hit(boolean folder, int id, String name, int parentFolderId, long size, long lastModifiedMs, int score) {
+            this.folder = folder;
+            this.id = id;
+            this.name = name;
+            this.parentFolderId = parentFolderId;
+            this.size = size;
+            this.lastModifiedMs = lastModifiedMs;
+            this.score = score;
+        }
+    }
+
+    /** Kết quả truy vấn: các hit đã xếp hạng (tối đa MAX_RANKED) và tổng số khớp */
+    public static final class Result {
+        public final List<Hit> hits;
+        public final int totalMatches;
+
+        public Result(List<Hit> hits, int totalMatches) {
+            this.hits = hits;
+            this.totalMatches = totalMatches;
+        }
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean loaded;
+    private volatile boolean loading;
+    private final ConcurrentLinkedQueue<Consumer<SearchIndex>> pending = new ConcurrentLinkedQueue<>();
+
+    // ---------- Tài liệu theo slot ----------
+    private int docCount;
+    private int deadCount;
+    private int[] docKey = new int[0];        // fileId (>0) hoặc -folderId (<0); 0 = slot chết
+    private int[] docParent = new int[0];     // folder chứa
+    private long[] docSize = new long[0];
+    private long[] docModified = new long[0];
+    private byte[] docType = new byte[0];
+    private String[] docName = new String[0];
+    private String[] docNorm = new String[0];
+    private IntIntMap slotByKey = new IntIntMap(16);
+
+    // trigram -> các slot chứa nó (tăng dần)
+    private Map<Long, IntList> postings = new HashMap<>();
+    // folder -> parent (0 nếu root), để xóa theo cây con
+    private final Map<Integer, Integer> folderParents = new HashMap<>();
+    private final Map<Integer, String> folderNames = new HashMap<>();
+
+    private SearchIndex() {}
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    // ================= Nạp =================
+
+    /** Nạp toàn bộ Folders + Files trên một thread nền, bằng kết nối DB riêng */
+    public void loadAsync() {
+        loading = true;
+        Thread t = new Thread(() -> {
+            try (Connection conn = DatabaseManager.openConnection()) {
+                long start = System.currentTimeMillis();
+                load(conn);
+                System.out.println("✅ SearchIndex: " + (docCount - deadCount) + " mục, "
+                        + postings.size() + " trigram, " + (System.currentTimeMillis() - start) + " ms");
+            } catch (Exception e) {
+                System.err.println("❌ Không nạp được SearchIndex, SEARCH dùng DB: " + e.getMessage());
+                pending.clear();
+            } finally {
+                loading = false;
+            }
+        }, "search-index-loader");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void load(Connection conn) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT FolderID, ParentFolderID, FolderName, LastModified, CreatedAt FROM Folders");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Integer parent = (Integer) rs.getObject(2);
+                    long modified = millis(rs.getTimestamp(4), millis(rs.getTimestamp(5), 0L));
+                    putFolder(rs.getInt(1), parent != null ? parent : 0, rs.getString(3), modified);
+                }
+            }
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT FileID, FolderID, FileName, FileSize, LastModified, CreatedAt FROM Files WHERE DeletedAt IS NULL",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                ps.setFetchSize(Integer.MIN_VALUE); // MySQL: stream từng dòng
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        long modified = millis(rs.getTimestamp(5), millis(rs.getTimestamp(6), 0L));
+                        putFile(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getLong(4), modified);
+                    }
+                }
+            }
+            // Bật cờ trước rồi mới áp dụng các thay đổi đến trong lúc nạp: sự kiện nào vào hàng đợi
+            // sau lượt này sẽ thấy loaded = true và tự áp dụng (xem apply)
+            loaded = true;
+            Consumer<SearchIndex> ev;
+            while ((ev = pending.poll()) != null) ev.accept(this);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ================= Truy vấn =================
+
+    public Result search(Query q) {
+        String[] terms = normalize(q.text).trim().split("\\s+");
+        List<String> longTerms = new ArrayList<>();
+        for (String t : terms) if (t.length() >= 3) longTerms.add(t);
+
+        lock.readLock().lock();
+        try {
+            // Ứng viên: giao các danh sách trigram (null = không có term đủ dài, phải quét hết)
+            int[] candidates = null;
+            int candidateCount = 0;
+            if (!longTerms.isEmpty()) {
+                List<IntList> lists = new ArrayList<>();
+                for (String t : longTerms) {
+                    for (long g : trigrams(t)) {
+                        IntList l = postings.get(g);
+                        if (l == null) return new Result(new ArrayList<>(), 0);
+                        lists.add(l);
+                    }
+                }
+                lists.sort(Comparator.comparingInt(l -> l.size));
+                candidates = Arrays.copyOf(lists.get(0).data, lists.get(0).size);
+                candidateCount = candidates.length;
+                for (int i = 1; i < lists.size() && candidateCount > 0; i++) {
+                    candidateCount = intersect(candidates, candidateCount, lists.get(i));
+                }
+            }
+
+            // Giữ MAX_RANKED kết quả tốt nhất bằng heap (phần tử đầu heap là kết quả kém nhất)
+            PriorityQueue<int[]> top = new PriorityQueue<>(Comparator
+                    .<int[]>comparingInt(h -> h[1])
+                    .thenComparingLong(h -> docModified[h[0]]));
+            int total = 0;
+            int n = candidates != null ? candidateCount : docCount;
+            for (int i = 0; i < n; i++) {
+                int slot = candidates != null ? candidates[i] : i;
+                if (docKey[slot] == 0 || !passesFilters(slot, q)) continue;
+                int score = score(docNorm[slot], terms);
+                if (score < 0) continue;
+                total++;
+                top.add(new int[]{slot, score});
+                if (top.size() > MAX_RANKED) top.poll();
+            }
+
+            List<Hit> hits = new ArrayList<>(top.size());
+            while (!top.isEmpty()) {
+                int[] h = top.poll();
+                int slot = h[0];
+                boolean folder = docKey[slot] < 0;
+                hits.add(new Hit(folder, Math.abs(docKey[slot]), docName[slot], docParent[slot],
+                        docSize[slot], docModified[slot], h[1]));
+            }
+            java.util.Collections.reverse(hits);
+            return new Result(hits, total);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Tên folder đang có trong chỉ mục (để hiển thị folder chứa kết quả) */
+    public String folderName(int folderId) {
+        lock.readLock().lock();
+        try {
+            return folderNames.get(folderId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean passesFilters(int slot, Query q) {
+        boolean folder = docKey[slot] < 0;
+        if (folder ? !q.includeFolders : !q.includeFiles) return false;
+        if (q.typeCode != Integer.MIN_VALUE && docType[slot] != q.typeCode) return false;
+        if (q.minSize >= 0 && (folder || docSize[slot] < q.minSize)) return false;
+        if (q.maxSize >= 0 && (folder || docSize[slot] > q.maxSize)) return false;
+        long m = docModified[slot];
+        return m >= q.modifiedFrom && m <= q.modifiedTo;
+    }
+
+    /**
+     * Điểm của tên với các term (mọi term phải có mặt, nếu không trả -1):
+     * trùng cả tên > bắt đầu bằng term > term ở đầu một từ > nằm giữa từ; tên ngắn hơn xếp trước.
+     */
+    public static int score(String name, String[] terms) {
+        int total = 0;
+        for (String t : terms) {
+            if (t.isEmpty()) continue;
+            int idx = name.indexOf(t);
+            if (idx < 0) return -1;
+            int s;
+            if (name.equals(t)) {
+                s = 4000;
+            } else if (idx == 0) {
+                s = 3000;
+            } else if (!Character.isLetterOrDigit(name.charAt(idx - 1)) || startsWord(name, t)) {
+                s = 2000;
+            } else {
+                s = 1000;
+            }
+            total += s;
+        }
+        return total - Math.min(999, name.length());
+    }
+
+    private static boolean startsWord(String name, String t) {
+        int from = 0;
+        int idx;
+        while ((idx = name.indexOf(t, from)) > 0) {
+            if (!Character.isLetterOrDigit(name.charAt(idx - 1))) return true;
+            from = idx + 1;
+        }
+        return false;
+    }
+
+    // Giao tại chỗ: giữ các phần tử của a[0..n) có trong list (cả hai đều tăng dần)
+    private static int intersect(int[] a, int n, IntList list) {
+        int[] b = list.data;
+        int m = list.size;
+        int out = 0;
+        int j = 0;
+        for (int i = 0; i < n && j < m; i++) {
+            int v = a[i];
+            // nhảy nhanh (galloping) trên danh sách dài
+            int step = 1;
+            while (j + step < m && b[j + step] < v) {
+                j += step;
+                step <<= 1;
+            }
+            while (j < m && b[j] < v) j++;
+            if (j < m && b[j] == v) a[out++] = v;
+        }
+        return out;
+    }
+
+    // ================= Cập nhật (NamespaceListener) =================
+
+    @Override
+    public void onFolderCreated(int folderId, Integer parentId, String folderName) {
+        apply(ix -> ix.putFolder(folderId, parentId != null ? parentId : 0, folderName, System.currentTimeMillis()));
+    }
+
+    @Override
+    public void onFolderRenamed(int folderId, String newName) {
+        apply(ix -> {
+            Integer parent = ix.folderParents.get(folderId);
+            if (parent != null) ix.putFolder(folderId, parent, newName, System.currentTimeMillis());
+        });
+    }
+
+    @Override
+    public void onFolderMoved(int folderId, Integer oldParentId, Integer newParentId) {
+        apply(ix -> {
+            int parent = newParentId != null ? newParentId : 0;
+            ix.folderParents.put(folderId, parent);
+            int slot = ix.slotByKey.get(-folderId, -1);
+            if (slot >= 0) ix.docParent[slot] = parent;
+        });
+    }
+
+    @Override
+    public void onFolderDeleted(int folderId, Integer parentId) {
+        apply(ix -> ix.removeFolderTree(folderId));
+    }
+
+    @Override
+    public void onFileUpserted(int fileId, int folderId, String fileName, long size, long lastModifiedMs) {
+        apply(ix -> ix.putFile(fileId, folderId, fileName, size, lastModifiedMs));
+    }
+
+    @Override
+    public void onFileDeleted(int fileId, int folderId) {
+        apply(ix -> ix.kill(fileId));
+    }
+
+    private void apply(Consumer<SearchIndex> change) {
+        if (!loaded) {
+            if (!loading) return; // chỉ mục không được bật / nạp lỗi
+            pending.add(change);
+            // Nạp xong ngay sau khi thêm vào hàng đợi: nếu loader chưa lấy thì tự áp dụng
+            if (!loaded || !pending.remove(change)) return;
+        }
+        lock.writeLock().lock();
+        try {
+            change.accept(this);
+            if (deadCount > 10_000 && deadCount * 3 > docCount) rebuild();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ================= Nội bộ (đang giữ write lock) =================
+
+    private void putFolder(int folderId, int parentId, String name, long modified) {
+        folderParents.put(folderId, parentId);
+        folderNames.put(folderId, name);
+        kill(-folderId);
+        addDoc(-folderId, parentId, name, 0L, modified, FOLDER_TYPE);
+    }
+
+    private void putFile(int fileId, int folderId, String name, long size, long modified) {
+        kill(fileId);
+        addDoc(fileId, folderId, name, size, modified, (byte) FileTypes.codeOf(name));
+    }
+
+    private void addDoc(int key, int parent, String name, long size, long modified, byte type) {
+        if (docCount == docKey.length) grow();
+        int slot = docCount++;
+        String norm = normalize(name);
+        docKey[slot] = key;
+        docParent[slot] = parent;
+        docSize[slot] = size;
+        docModified[slot] = modified;
+        docType[slot] = type;
+        docName[slot] = name;
+        docNorm[slot] = norm;
+        slotByKey.put(key, slot);
+        for (long g : trigrams(norm)) {
+            postings.computeIfAbsent(g, k -> new IntList()).add(slot);
+        }
+    }
+
+    private void kill(int key) {
+        int slot = slotByKey.get(key, -1);
+        if (slot < 0) return;
+        slotByKey.remove(key);
+        docKey[slot] = 0;
+        docName[slot] = null;
+        docNorm[slot] = null;
+        deadCount++;
+    }
+
+    private void removeFolderTree(int root) {
+        // Các folder thuộc cây con (đi lên bằng folderParents, có nhớ kết quả)
+        Set<Integer> subtree = new HashSet<>();
+        Set<Integer> outside = new HashSet<>();
+        for (Integer f : folderParents.keySet()) {
+            List<Integer> path = new ArrayList<>();
+            Integer cur = f;
+            boolean inside = false;
+            while (cur != null && cur != 0 && path.size() < 1024) {
+                if (cur == root || subtree.contains(cur)) { inside = true; break; }
+                if (outside.contains(cur)) break;
+                path.add(cur);
+                cur = folderParents.get(cur);
+            }
+            (inside ? subtree : outside).addAll(path);
+        }
+        subtree.add(root);
+
+        for (int slot = 0; slot < docCount; slot++) {
+            if (docKey[slot] != 0 && docKey[slot] > 0 && subtree.contains(docParent[slot])) kill(docKey[slot]);
+        }
+        for (Integer f : subtree) {
+            kill(-f);
+            folderParents.remove(f);
+            folderNames.remove(f);
+        }
+    }
+
+    // Dựng lại các mảng và postings chỉ với slot còn sống
+    private void rebuild() {
+        int[] oldKey = docKey;
+        int[] oldParent = docParent;
+        long[] oldSize = docSize;
+        long[] oldModified = docModified;
+        byte[] oldType = docType;
+        String[] oldName = docName;
+        int oldCount = docCount;
+
+        int live = docCount - deadCount;
+        docKey = new int[live + 16];
+        docParent = new int[live + 16];
+        docSize = new long[live + 16];
+        docModified = new long[live + 16];
+        docType = new byte[live + 16];
+        docName = new String[live + 16];
+        docNorm = new String[live + 16];
+        slotByKey = new IntIntMap(live);
+        postings = new HashMap<>();
+        docCount = 0;
+        deadCount = 0;
+        for (int s = 0; s < oldCount; s++) {
+            if (oldKey[s] == 0) continue;
+            addDoc(oldKey[s], oldParent[s], oldName[s], oldSize[s], oldModified[s], oldType[s]);
+        }
+    }
+
+    private void grow() {
+        int cap = Math.max(1024, docKey.length + (docKey.length >> 1));
+        docKey = Arrays.copyOf(docKey, cap);
+        docParent = Arrays.copyOf(docParent, cap);
+        docSize = Arrays.copyOf(docSize, cap);
+        docModified = Arrays.copyOf(docModified, cap);
+        docType = Arrays.copyOf(docType, cap);
+        docName = Arrays.copyOf(docName, cap);
+        docNorm = Arrays.copyOf(docNorm, cap);
+    }
+
+    // ================= Chuẩn hóa / trigram =================
+
+    /** Chữ thường, bỏ dấu (tiếng Việt), đ -> d */
+    public static String normalize(String s) {
+        if (s == null) return "";
+        boolean ascii = true;
+        for (int i = 0; i < s.length() && ascii; i++) ascii = s.charAt(i) < 128;
+        if (ascii) return s.toLowerCase(Locale.ROOT);
+        String n = MARKS.matcher(Normalizer.normalize(s, Normalizer.Form.NFD)).replaceAll("");
+        return n.replace('đ', 'd').replace('Đ', 'd').toLowerCase(Locale.ROOT);
+    }
+
+    // Các trigram khác nhau của chuỗi đã chuẩn hóa
+    private static Set<Long> trigrams(String s) {
+        Set<Long> grams = new HashSet<>();
+        for (int i = 0; i + 3 <= s.length(); i++) {
+            grams.add(((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2));
+        }
+        return grams;
+    }
+
+    private static long millis(Timestamp ts, long fallback) {
+        return ts != null ? ts.getTime() : fallback;
+    }
+
+    private static final class IntList {
+        int[] data = new int[4];
+        int size;
+
+        void add(int v) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = v;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.pbl4.syncproject.server.service;
+
+import com.pbl4.syncproject.common.storage.StorageMetrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bộ đếm của server (byte đã phục vụ, số request...), đọc qua action SERVER_STATS.
+ * Tên bộ đếm dạng "nhóm.tên", ví dụ "download.range.bytes".
+ * Phân bố (thời gian chờ khóa...) ghi bằng observe; snapshot kèm theo count/p50/p90/p99/max của từng histogram.
+ */
+public final class ServerMetrics implements StorageMetrics {
+
+    private static final ServerMetrics INSTANCE = new ServerMetrics();
+
+    public static ServerMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    // Giá trị đo tại một thời điểm (không cộng dồn), ví dụ tổng dung lượng ở tầng lạnh
+    private final Map<String, Long> gauges = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    private ServerMetrics() {}
+
+    @Override
+    public void increment(String name) {
+        add(name, 1);
+    }
+
+    @Override
+    public void add(String name, long delta) {
+        counters.computeIfAbsent(name, k -> new LongAdder()).add(delta);
+    }
+
+    public void set(String name, long value) {
+        gauges.put(name, value);
+    }
+
+    /** Ghi một giá trị vào histogram name (đơn vị nằm trong tên, ví dụ "upload.lock.wait.us") */
+    public void observe(String name, long value) {
+        histograms.computeIfAbsent(name, k -> new LatencyHistogram()).record(value);
+    }
+
+    public Map<String, LatencyHistogram> histograms() {
+        return new TreeMap<>(histograms);
+    }
+
+    public long get(String name) {
+        LongAdder a = counters.get(name);
+        if (a != null) return a.sum();
+        return gauges.getOrDefault(name, 0L);
+    }
+
+    /** Ảnh chụp mọi bộ đếm và gauge, sắp theo tên */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> out = new TreeMap<>(gauges);
+        counters.forEach((k, v) -> out.put(k, v.sum()));
+        histograms.forEach((k, h) -> {
+            out.put(k + ".count", h.count());
+            out.put(k + ".p50", h.percentile(0.5));
+            out.put(k + ".p90", h.percentile(0.9));
+            out.put(k + ".p99", h.percentile(0.99));
+            out.put(k + ".max", h.max());
+        });
+        return out;
+    }
+}
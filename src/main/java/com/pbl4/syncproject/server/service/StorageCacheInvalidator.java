@@ -0,0 +1,31 @@
+package com.pbl4.syncproject.server.service;
+
+import com.pbl4.syncproject.common.storage.StorageManager;
+
+/**
+ * Giữ cache FolderID -> Path của StorageManager khớp với cây thư mục trong DB.
+ * Tạo folder mới không cần làm gì: path của folder mới được cache ở lần resolve đầu tiên.
+ */
+public class StorageCacheInvalidator implements NamespaceListener {
+
+    private final StorageManager storage;
+
+    public StorageCacheInvalidator(StorageManager storage) {
+        this.storage = storage;
+    }
+
+    @Override
+    public void onFolderRenamed(int folderId, String newName) {
+        storage.invalidateFolderSubtree(folderId);
+    }
+
+    @Override
+    public void onFolderMoved(int folderId, Integer oldParentId, Integer newParentId) {
+        storage.invalidateFolderSubtree(folderId);
+    }
+
+    @Override
+    public void onFolderDeleted(int folderId, Integer parentId) {
+        storage.invalidateFolderSubtree(folderId);
+    }
+}
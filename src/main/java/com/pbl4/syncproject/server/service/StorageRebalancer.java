@@ -0,0 +1,177 @@
+package com.pbl4.syncproject.server.service;
+
+import com.pbl4.syncproject.common.storage.ObjectStore;
+import com.pbl4.syncproject.common.storage.StorageManager;
+import com.pbl4.syncproject.server.ServerConfig;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Chuyển object về đúng root chạy nền (xem ObjectStore): sau khi thêm root, đổi trọng số hay rút root
+ * (storage.objects.drain), các object đang nằm ở root không còn là root ưu tiên của chúng được chép sang
+ * root đúng rồi xóa bản cũ. Khi nhân bản (storage.objects.replicas > 1) còn chép bù các bản thiếu/lệch.
+ *
+ * Luồng storage-health kiểm tra các root mỗi storage.health.interval.seconds; root mất hoặc quay lại,
+ * hay có lần ghi không đủ bản, thì chạy một lượt ngay thay vì chờ tới lượt định kỳ.
+ *
+ * Mỗi root nguồn được duyệt bởi một luồng riêng nên các ổ làm việc song song; tổng tốc độ chép giới hạn
+ * bởi storage.rebalance.mb.per.sec (chia đều cho các luồng) để không tranh I/O với client.
+ * Việc chép một object giữ khóa của FileID đó trong ObjectStore nên không bao giờ đè bản vừa upload.
+ */
+public final class StorageRebalancer {
+
+    private static final StorageRebalancer INSTANCE = new StorageRebalancer();
+
+    public static StorageRebalancer getInstance() {
+        return INSTANCE;
+    }
+
+    private final long bytesPerSec = ServerConfig.getLong("storage.rebalance.mb.per.sec", 20) * 1024 * 1024;
+    private final long intervalMs = TimeUnit.MINUTES.toMillis(ServerConfig.getLong("storage.rebalance.interval.minutes", 60));
+    private final long healthIntervalMs = TimeUnit.SECONDS.toMillis(ServerConfig.getLong("storage.health.interval.seconds", 10));
+    // Chờ một chút sau khi khởi động để không tranh I/O với lúc nạp index
+    private static final long START_DELAY_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+    private final Object wakeLock = new Object();
+    private boolean wakeRequested; // chỉ đọc/ghi trong wakeLock
+    private volatile Thread worker;
+
+    private StorageRebalancer() {}
+
+    public synchronized void start() {
+        if (worker != null) return;
+        worker = new Thread(this::loop, "storage-rebalancer");
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MIN_PRIORITY);
+        worker.start();
+
+        Thread health = new Thread(this::healthLoop, "storage-health");
+        health.setDaemon(true);
+        health.start();
+    }
+
+    /** Chạy một lượt sớm (root vừa mất / quay lại, hoặc có lần ghi thiếu bản) */
+    public void requestRun() {
+        synchronized (wakeLock) {
+            wakeRequested = true;
+            wakeLock.notifyAll();
+        }
+    }
+
+    private void loop() {
+        long delay = START_DELAY_MS;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                synchronized (wakeLock) {
+                    long until = System.currentTimeMillis() + delay;
+                    while (!wakeRequested) {
+                        long left = until - System.currentTimeMillis();
+                        if (left <= 0) break;
+                        wakeLock.wait(left);
+                    }
+                    wakeRequested = false;
+                }
+                delay = intervalMs;
+                long moved = rebalance();
+                if (moved > 0) System.out.println("⚖ StorageRebalancer: đã chuyển/chép lại " + moved + " object");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                System.err.println("❌ StorageRebalancer lỗi: " + e.getMessage());
+            }
+        }
+    }
+
+    private void healthLoop() {
+        ObjectStore store = StorageManager.getInstance().objects();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(healthIntervalMs);
+                boolean changed = store.checkHealth();
+                long degraded = store.takeDegradedWrites();
+                if (degraded > 0) metrics.add("storage.replica.degraded.writes", degraded);
+                if (changed || degraded > 0) requestRun();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                System.err.println("❌ Kiểm tra object root lỗi: " + e.getMessage());
+            }
+        }
+    }
+
+    /** Một lượt qua mọi root, trả về số object đã chuyển */
+    public long rebalance() throws Exception {
+        ObjectStore store = StorageManager.getInstance().objects();
+        List<ObjectStore.Root> roots = store.roots();
+        if (roots.size() < 2) return 0;
+
+        AtomicLong moved = new AtomicLong();
+        long perThreadBytesPerSec = bytesPerSec / roots.size();
+        ExecutorService pool = Executors.newFixedThreadPool(roots.size(), r -> {
+            Thread t = new Thread(r, "storage-rebalancer-root");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (ObjectStore.Root root : roots) {
+                if (!root.isAvailable()) continue;
+                tasks.add(pool.submit(() -> {
+                    drainMisplaced(store, root, perThreadBytesPerSec, moved);
+                    return null;
+                }));
+            }
+            for (Future<?> f : tasks) f.get();
+        } finally {
+            pool.shutdownNow();
+        }
+        return moved.get();
+    }
+
+    private void drainMisplaced(ObjectStore store, ObjectStore.Root root, long limitBytesPerSec, AtomicLong moved)
+            throws Exception {
+        long started = System.currentTimeMillis();
+        long[] copiedTotal = {0};
+        store.forEach(root, (fileId, path) -> {
+            if (Thread.currentThread().isInterrupted()) throw new InterruptedIOException();
+            if (store.getReplicas() == 1 && store.preferredRoot(fileId) == root) return;
+            long copied;
+            try {
+                copied = store.relocate(fileId, root);
+            } catch (IOException e) {
+                metrics.increment("storage.rebalance.errors");
+                System.err.println("⚠️ StorageRebalancer: object " + fileId + ": " + e.getMessage());
+                return;
+            }
+            if (copied < 0) return;
+            moved.incrementAndGet();
+            metrics.increment("storage.rebalance.moved");
+            metrics.add("storage.rebalance.bytes", copied);
+
+            // Giới hạn tốc độ: ngủ tới lúc số byte đã chép khớp với ngân sách
+            copiedTotal[0] += copied;
+            if (limitBytesPerSec > 0) {
+                long dueMs = copiedTotal[0] * 1000 / limitBytesPerSec;
+                long sleepMs = dueMs - (System.currentTimeMillis() - started);
+                if (sleepMs > 0) {
+                    try {
+                        Thread.sleep(sleepMs);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,234 @@
+package com.pbl4.syncproject.server.service;
+
+import com.pbl4.syncproject.common.storage.FileTypes;
+import com.pbl4.syncproject.common.storage.StorageManager;
+import com.pbl4.syncproject.common.storage.TierStore;
+import com.pbl4.syncproject.server.ServerConfig;
+import com.pbl4.syncproject.server.dao.DatabaseManager;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chuyển file nguội sang tầng lạnh chạy nền (xem TierStore).
+ *
+ * File là ứng viên khi không bị sửa và không được đọc trong tier.after.days ngày. Lần đọc gần nhất được
+ * ghi vào Files.LastAccessedAt theo lô (mỗi phút) thay vì dựa vào atime của hệ điều hành (thường bị tắt
+ * hoặc relatime). Loại file trong tier.compress.types (theo FileTypes) được nén gzip, chỉ giữ bản nén khi
+ * nhỏ hơn tier.compress.min.ratio kích thước gốc; ảnh/video/archive vốn đã nén nên chỉ được chuyển nguyên.
+ *
+ * Tổng tốc độ đọc bản nóng giới hạn bởi tier.mb.per.sec để không tranh I/O với client.
+ */
+public final class TieringService {
+
+    private static final TieringService INSTANCE = new TieringService();
+
+    public static TieringService getInstance() {
+        return INSTANCE;
+    }
+
+    private static final long FLUSH_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+    private static final int PAGE_SIZE = 200;
+
+    private final long coldAfterMs = TimeUnit.DAYS.toMillis(ServerConfig.getLong("tier.after.days", 7));
+    private final long intervalMs = TimeUnit.MINUTES.toMillis(ServerConfig.getLong("tier.interval.minutes", 60));
+    private final long minBytes = ServerConfig.getLong("tier.min.bytes", 4096);
+    private final long bytesPerSec = ServerConfig.getLong("tier.mb.per.sec", 20) * 1024 * 1024;
+    private final double minRatio = parseRatio(ServerConfig.getString("tier.compress.min.ratio", "0.9"));
+    private final Set<String> compressTypes = parseTypes(ServerConfig.getString("tier.compress.types", "Document,Spreadsheet,File"));
+
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+    private volatile Thread worker;
+
+    private TieringService() {}
+
+    public synchronized void start() {
+        if (worker != null) return;
+        worker = new Thread(this::loop, "tiering");
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MIN_PRIORITY);
+        worker.start();
+    }
+
+    private void loop() {
+        long nextPass = System.currentTimeMillis() + FLUSH_INTERVAL_MS;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(FLUSH_INTERVAL_MS);
+                try (Connection conn = DatabaseManager.openConnection()) {
+                    flushAccesses(conn);
+                    if (System.currentTimeMillis() >= nextPass) {
+                        nextPass = System.currentTimeMillis() + intervalMs;
+                        int demoted = demoteCold(conn);
+                        if (demoted > 0) System.out.println("🧊 TieringService: đã chuyển " + demoted + " file sang tầng lạnh");
+                        updateGauges(conn);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                System.err.println("❌ TieringService lỗi: " + e.getMessage());
+            }
+        }
+    }
+
+    /** Ghi lần đọc gần nhất và các file vừa được khôi phục xuống DB */
+    public void flushAccesses(Connection conn) throws SQLException {
+        TierStore tier = StorageManager.getInstance().tier();
+        Map<Integer, Long> accesses = tier.drainAccesses();
+        if (!accesses.isEmpty()) {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "UPDATE Files SET LastAccessedAt = ?, LastModified = LastModified WHERE FileID = ?")) {
+                int n = 0;
+                for (Map.Entry<Integer, Long> e : accesses.entrySet()) {
+                    ps.setTimestamp(1, new Timestamp(e.getValue()));
+                    ps.setInt(2, e.getKey());
+                    ps.addBatch();
+                    if (++n % PAGE_SIZE == 0) ps.executeBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+        Set<Integer> promoted = tier.drainPromoted();
+        if (!promoted.isEmpty()) {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "UPDATE Files SET Tier = 0, ColdSize = NULL, LastModified = LastModified WHERE FileID = ?")) {
+                for (int id : promoted) {
+                    ps.setInt(1, id);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+    }
+
+    /** Một lượt qua các file nguội (phân trang theo FileID), trả về số file đã chuyển */
+    public int demoteCold(Connection conn) throws SQLException, InterruptedException {
+        TierStore tier = StorageManager.getInstance().tier();
+        long now = System.currentTimeMillis();
+        Timestamp cutoff = new Timestamp(now - coldAfterMs);
+        long started = System.currentTimeMillis();
+        long readTotal = 0;
+        int demoted = 0;
+        int lastId = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            List<Candidate> page = candidates(conn, cutoff, lastId);
+            if (page.isEmpty()) break;
+            lastId = page.get(page.size() - 1).fileId;
+
+            for (Candidate c : page) {
+                // Được đọc gần đây nhưng chưa kịp ghi xuống DB
+                if (tier.pendingAccess(c.fileId) >= cutoff.getTime()) continue;
+                boolean compress = compressTypes.contains(FileTypes.categoryOf(c.fileName));
+                long stored;
+                try {
+                    stored = tier.demote(conn, c.fileId, c.folderId, c.fileName, compress, minRatio);
+                } catch (IOException e) {
+                    metrics.increment("tier.demote.errors");
+                    System.err.println("⚠️ TieringService: file " + c.fileId + ": " + e.getMessage());
+                    continue;
+                }
+                if (stored < 0) continue;
+                if (markCold(conn, c, stored)) demoted++;
+
+                // Giới hạn tốc độ: ngủ tới lúc số byte đã đọc khớp với ngân sách
+                readTotal += c.size;
+                if (bytesPerSec > 0) {
+                    long sleepMs = readTotal * 1000 / bytesPerSec - (System.currentTimeMillis() - started);
+                    if (sleepMs > 0) Thread.sleep(sleepMs);
+                }
+            }
+            if (page.size() < PAGE_SIZE) break;
+        }
+        return demoted;
+    }
+
+    private List<Candidate> candidates(Connection conn, Timestamp cutoff, int afterId) throws SQLException {
+        List<Candidate> page = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT FileID, FolderID, FileName, FileSize, FileHash FROM Files " +
+                        "WHERE Tier = 0 AND DeletedAt IS NULL AND FileID > ? AND FileSize >= ? " +
+                        "AND LastModified < ? AND (LastAccessedAt IS NULL OR LastAccessedAt < ?) " +
+                        "AND NOT EXISTS (SELECT 1 FROM PackedContent p WHERE p.FileID = Files.FileID) " +
+                        "ORDER BY FileID LIMIT ?")) {
+            ps.setInt(1, afterId);
+            ps.setLong(2, minBytes);
+            ps.setTimestamp(3, cutoff);
+            ps.setTimestamp(4, cutoff);
+            ps.setInt(5, PAGE_SIZE);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    page.add(new Candidate(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getLong(4), rs.getString(5)));
+                }
+            }
+        }
+        return page;
+    }
+
+    // Chỉ đánh dấu nếu nội dung trong DB vẫn là cái đã chuyển
+    private static boolean markCold(Connection conn, Candidate c, long stored) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "UPDATE Files SET Tier = 1, ColdSize = ?, LastModified = LastModified " +
+                        "WHERE FileID = ? AND FileHash <=> ? AND DeletedAt IS NULL")) {
+            ps.setLong(1, stored);
+            ps.setInt(2, c.fileId);
+            ps.setString(3, c.hash);
+            return ps.executeUpdate() > 0;
+        }
+    }
+
+    /** Gauge: số file / dung lượng gốc / dung lượng thật ở tầng lạnh */
+    public void updateGauges(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT COUNT(*), COALESCE(SUM(FileSize), 0), COALESCE(SUM(ColdSize), 0) FROM Files WHERE Tier = 1");
+             ResultSet rs = ps.executeQuery()) {
+            if (!rs.next()) return;
+            metrics.set("tier.cold.files", rs.getLong(1));
+            metrics.set("tier.cold.bytes.original", rs.getLong(2));
+            metrics.set("tier.cold.bytes.stored", rs.getLong(3));
+            metrics.set("tier.bytes.saved", Math.max(0, rs.getLong(2) - rs.getLong(3)));
+        }
+    }
+
+    private static double parseRatio(String s) {
+        try {
+            return Double.parseDouble(s.strip());
+        } catch (NumberFormatException e) {
+            return 0.9;
+        }
+    }
+
+    private static Set<String> parseTypes(String s) {
+        Set<String> out = new HashSet<>();
+        for (String t : s.split(",")) {
+            if (!t.isBlank()) out.add(t.strip());
+        }
+        return out;
+    }
+
+    private static final class Candidate {
+        final int fileId;
+        final int folderId;
+        final String fileName;
+        final long size;
+        final String hash;
+
+        Candidate(int fileId, int folderId, String fileName, long size, String hash) {
+            this.fileId = fileId;
+            this.folderId = folderId;
+            this.fileName = fileName;
+            this.size = size;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.pbl4.syncproject.server.service;
+
+import com.pbl4.syncproject.common.storage.StorageManager;
+import com.pbl4.syncproject.server.ServerConfig;
+import com.pbl4.syncproject.server.dao.DatabaseManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dọn thùng rác chạy nền: xóa hẳn các file đã nằm trong thùng rác quá trash.retention.days.
+ *
+ * Mỗi lượt xử lý từng lô trash.gc.batch.size file:
+ *   1. Một transaction ngắn: khóa các dòng (FOR UPDATE) rồi DELETE (cascade FileAccessControl / SyncHistory).
+ *      Upload trùng tên trong lúc đó phải chờ transaction xong nên không "hồi sinh" nhầm dòng đang bị xóa.
+ *   2. Xóa nội dung trên đĩa, giới hạn trash.gc.unlinks.per.sec lần unlink mỗi giây để không tranh I/O với client.
+ */
+public final class TrashCollector {
+
+    private static final TrashCollector INSTANCE = new TrashCollector();
+
+    public static TrashCollector getInstance() {
+        return INSTANCE;
+    }
+
+    // File đã bị ghi lại sau khi xóa (mtime mới hơn DeletedAt) là của một upload mới cùng tên: không được xóa
+    private static final long MTIME_SLACK_MS = 1000;
+
+    private final long retentionMs = TimeUnit.DAYS.toMillis(ServerConfig.getLong("trash.retention.days", 30));
+    private final long intervalMs = TimeUnit.MINUTES.toMillis(ServerConfig.getLong("trash.gc.interval.minutes", 10));
+    private final int batchSize = ServerConfig.getInt("trash.gc.batch.size", 200);
+    private final int unlinksPerSec = ServerConfig.getInt("trash.gc.unlinks.per.sec", 50);
+
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+    private volatile Thread worker;
+
+    private TrashCollector() {}
+
+    public long getRetentionMs() {
+        return retentionMs;
+    }
+
+    public synchronized void start() {
+        if (worker != null) return;
+        worker = new Thread(this::loop, "trash-gc");
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MIN_PRIORITY);
+        worker.start();
+    }
+
+    private void loop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(intervalMs);
+                int purged = collect();
+                if (purged > 0) System.out.println("🗑 TrashCollector: đã xóa hẳn " + purged + " file");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                System.err.println("❌ TrashCollector lỗi: " + e.getMessage());
+            }
+        }
+    }
+
+    /** Một lượt dọn: xử lý hết các lô đã quá hạn, trả về số file đã xóa hẳn */
+    public int collect() throws Exception {
+        int total = 0;
+        Timestamp cutoff = new Timestamp(System.currentTimeMillis() - retentionMs);
+        try (Connection conn = DatabaseManager.openConnection()) {
+            while (true) {
+                List<Expired> batch = deleteBatch(conn, cutoff);
+                if (batch.isEmpty()) break;
+                unlinkAll(conn, batch);
+                total += batch.size();
+                metrics.add("trash.purged.files", batch.size());
+                if (batch.size() < batchSize) break;
+            }
+        }
+        return total;
+    }
+
+    private List<Expired> deleteBatch(Connection conn, Timestamp cutoff) throws SQLException {
+        List<Expired> batch = new ArrayList<>();
+        conn.setAutoCommit(false);
+        try {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT FileID, FolderID, FileName, FileSize, DeletedAt FROM Files " +
+                            "WHERE DeletedAt IS NOT NULL AND DeletedAt < ? ORDER BY DeletedAt LIMIT ? FOR UPDATE")) {
+                ps.setTimestamp(1, cutoff);
+                ps.setInt(2, batchSize);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        batch.add(new Expired(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getLong(4),
+                                rs.getTimestamp(5).getTime()));
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                StringBuilder in = new StringBuilder();
+                for (int i = 0; i < batch.size(); i++) in.append(i == 0 ? "?" : ",?");
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "DELETE FROM Files WHERE FileID IN (" + in + ")")) {
+                    for (int i = 0; i < batch.size(); i++) ps.setInt(i + 1, batch.get(i).fileId);
+                    ps.executeUpdate();
+                }
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        return batch;
+    }
+
+    private void unlinkAll(Connection conn, List<Expired> batch) throws InterruptedException {
+        StorageManager storage = StorageManager.getInstance();
+        long gapNanos = unlinksPerSec > 0 ? TimeUnit.SECONDS.toNanos(1) / unlinksPerSec : 0;
+        long next = System.nanoTime();
+        for (Expired e : batch) {
+            long wait = next - System.nanoTime();
+            if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+            next = Math.max(next, System.nanoTime()) + gapNanos;
+            try {
+                if (purgeStoredContent(conn, e.fileId)) {
+                    metrics.add("trash.purged.bytes", e.size);
+                    continue;
+                }
+            } catch (Exception ex) {
+                metrics.increment("trash.unlink.errors");
+            }
+            try {
+                // Layout cũ (hoặc chưa migrate): đường dẫn có thể đã được dùng lại bởi upload mới cùng tên
+                Path legacy = storage.legacyFilePath(conn, e.folderId, e.fileName);
+                if (Files.isRegularFile(legacy)
+                        && Files.getLastModifiedTime(legacy).toMillis() <= e.deletedAtMs + MTIME_SLACK_MS
+                        && !liveFileExists(conn, e.folderId, e.fileName)) {
+                    Files.delete(legacy);
+                    metrics.add("trash.purged.bytes", e.size);
+                }
+            } catch (Exception ex) {
+                // Folder đã bị xóa / file đã mất: dòng DB đã xóa xong, bỏ qua
+                metrics.increment("trash.unlink.errors");
+            }
+        }
+    }
+
+    /**
+     * Xóa các bản nội dung đi theo FileID của một file đã xóa khỏi DB: phiên bản cũ, bản gói, tầng lạnh, object.
+     * false: không có bản nào theo FileID, nội dung (nếu còn) nằm ở đường dẫn kiểu cũ để người gọi tự xử lý.
+     */
+    static boolean purgeStoredContent(Connection conn, int fileId) throws Exception {
+        StorageManager storage = StorageManager.getInstance();
+        // Các phiên bản cũ đi theo FileID nên luôn xóa được
+        storage.versions().deleteAll(fileId);
+        if (storage.packs() != null && storage.packs().remove(conn, fileId)) return true;
+        if (storage.tier() != null && storage.tier().delete(fileId)) return true;
+        return storage.isObjectLayout() && storage.objects().delete(fileId);
+    }
+
+    private static boolean liveFileExists(Connection conn, int folderId, String fileName) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT 1 FROM Files WHERE FolderID = ? AND FileName = ? LIMIT 1")) {
+            ps.setInt(1, folderId);
+            ps.setString(2, fileName);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static final class Expired {
+        final int fileId;
+        final int folderId;
+        final String fileName;
+        final long size;
+        final long deletedAtMs;
+
+        Expired(int fileId, int folderId, String fileName, long size, long deletedAtMs) {
+            this.fileId = fileId;
+            this.folderId = folderId;
+            this.fileName = fileName;
+            this.size = size;
+            this.deletedAtMs = deletedAtMs;
+        }
+    }
+}
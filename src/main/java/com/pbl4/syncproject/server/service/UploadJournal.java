@@ -0,0 +1,588 @@
+package com.pbl4.syncproject.server.service;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.pbl4.syncproject.common.model.Folders;
+import com.pbl4.syncproject.common.storage.StorageManager;
+import com.pbl4.syncproject.server.ServerConfig;
+import com.pbl4.syncproject.server.dao.DatabaseManager;
+import com.pbl4.syncproject.server.dao.FolderDAO;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Nhật ký commit cho UPLOAD_FILE: upload được trả lời ngay khi nội dung và bản ghi nhật ký đã xuống đĩa cục bộ,
+ * không chờ round trip tới MySQL (có thể ở xa). Một luồng nền áp các bản ghi vào DB theo lô bằng một câu
+ * upsert nhiều dòng (FileContentWriter.writeStagedBatch), gộp chung cho mọi client.
+ *
+ *   <storage.root>/.journal/staging/up-*.dat      nội dung đã nhận (force ngay khi ghi)
+ *   <storage.root>/.journal/journal-<seq>.log     bản ghi [int độ dài][int crc32][json], seq tăng dần
+ *   <storage.root>/.journal/checkpoint            seq lớn nhất đã áp vào DB (thay bằng rename nguyên tử)
+ *
+ * Thư mục nằm trong storage root nên nội dung staged được hard link vào chỗ, không chép lần hai.
+ * Force của file nhật ký được gộp như PackStore: các upload đồng thời chờ chung một lần fsync.
+ *
+ * Khởi động lại sau crash: các bản ghi sau checkpoint được áp lại (idempotent: nội dung trùng hash không tạo
+ * phiên bản mới), đuôi ghi dở (crc sai / thiếu byte) bị cắt bỏ, file staged không có bản ghi bị xóa.
+ *
+ * Byte của các upload chưa áp được giữ chỗ theo folder đích (queuedBytes) để kiểm tra hạn mức không bỏ sót phần
+ * FolderStats chưa thấy; chỗ được trả lại khi lô đã áp.
+ *
+ * Đánh đổi: metadata chỉ thấy được (LIST, READ_RANGE...) sau khi lô được áp, thường vài ms; nhiều lần ghi
+ * cùng một file trong một lô chỉ giữ bản cuối (các bản giữa không thành phiên bản).
+ */
+public final class UploadJournal {
+
+    private static final UploadJournal INSTANCE = new UploadJournal();
+
+    public static UploadJournal getInstance() {
+        return INSTANCE;
+    }
+
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+    private static final String CHECKPOINT = "checkpoint";
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 64 * 1024;
+    private static final long MAX_RETRY_SLEEP_MS = TimeUnit.SECONDS.toMillis(30);
+
+    /** Kết quả append: seq của bản ghi và thời điểm sửa đổi sẽ được ghi vào DB */
+    public static final class Receipt {
+        public final long seq;
+        public final long lastModifiedMs;
+
+        Receipt(long seq, long lastModifiedMs) {
+            this.seq = seq;
+            this.lastModifiedMs = lastModifiedMs;
+        }
+    }
+
+    /** Kiểm tra hạn mức trước khi nhận upload; queued = byte đang chờ áp của các upload khác, theo folder đích */
+    public interface QuotaCheck {
+        void check(Map<Integer, Long> queued) throws SQLException, IOException;
+    }
+
+    private static final class Record {
+        final long seq;
+        final FileContentWriter.Staged staged;
+        final long appendedAt;
+
+        Record(long seq, FileContentWriter.Staged staged, long appendedAt) {
+            this.seq = seq;
+            this.staged = staged;
+            this.appendedAt = appendedAt;
+        }
+    }
+
+    private static final class Segment {
+        final long firstSeq;
+        final Path path;
+        final FileChannel channel;
+        volatile long size;      // chỉ ghi trong appendLock
+        volatile long forcedTo;  // chỉ ghi trong forceLock
+        volatile long lastSeq;   // seq cuối trong segment (chỉ ghi trong appendLock)
+
+        Segment(long firstSeq, Path path, FileChannel channel) throws IOException {
+            this.firstSeq = firstSeq;
+            this.path = path;
+            this.channel = channel;
+            this.size = channel.size();
+            this.forcedTo = size;
+            this.lastSeq = firstSeq - 1;
+        }
+    }
+
+    private final boolean enabled = ServerConfig.getBoolean("upload.journal.enabled", false);
+    private final int batchSize = Math.max(1, ServerConfig.getInt("upload.journal.batch.size", 200));
+    private final long batchWaitMs = ServerConfig.getLong("upload.journal.batch.wait.ms", 5);
+    private final long segmentBytes = ServerConfig.getLong("upload.journal.segment.mb", 16) * 1024 * 1024;
+
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+    private final Object appendLock = new Object();
+    private final Object forceLock = new Object();
+    // Byte đã nhận nhưng chưa áp vào DB, theo folder đích (khóa chính map)
+    private final Map<Integer, Long> queuedBytes = new HashMap<>();
+
+    // Các trường dưới đây chỉ đọc/ghi khi giữ appendLock
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final ArrayDeque<Record> unapplied = new ArrayDeque<>();
+    private Segment active;
+    private long nextSeq = 1;
+    private volatile long forcedSeq;   // mọi bản ghi có seq <= forcedSeq đã xuống đĩa
+    private volatile long appliedSeq;  // = checkpoint
+
+    private Path dir;
+    private Path stagingDir;
+    private volatile Thread worker;
+
+    UploadJournal() {}
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Đã khôi phục xong và đang nhận bản ghi */
+    public boolean isRunning() {
+        return worker != null;
+    }
+
+    /** Khôi phục nhật ký (phải gọi trước khi nhận client) rồi chạy luồng áp vào DB */
+    public synchronized void start() throws IOException {
+        if (worker != null) return;
+        open(StorageManager.getInstance().journalRoot());
+        Thread t = new Thread(this::loop, "upload-journal");
+        t.setDaemon(true);
+        worker = t;
+        t.start();
+    }
+
+    // Khôi phục nhật ký trong journalDir, sau đó nhận được append (chưa áp vào DB cho tới khi start chạy luồng)
+    synchronized void open(Path journalDir) throws IOException {
+        dir = journalDir;
+        stagingDir = dir.resolve("staging");
+        Files.createDirectories(stagingDir);
+        recover();
+    }
+
+    // ---------- Ghi ----------
+
+    /**
+     * Ghi nhận upload: nội dung vào file staged, bản ghi vào nhật ký, chờ cả hai xuống đĩa.
+     * Trả về khi upload đã bền vững; metadata được áp vào DB sau. quota (có thể null) chạy trước khi ghi gì.
+     */
+    public Receipt append(int folderId, String fileName, byte[] bytes, String hash, QuotaCheck quota)
+            throws IOException, SQLException {
+        // Giữ chỗ trước rồi mới kiểm tra (không giữ khóa khi truy vấn DB): hai upload đồng thời vào cùng cây thấy
+        // phần của nhau, tệ nhất cả hai bị từ chối chứ không cùng lọt qua hạn mức
+        Map<Integer, Long> others = reserve(folderId, bytes.length);
+        try {
+            if (quota != null) quota.check(others);
+        } catch (SQLException | IOException | RuntimeException e) {
+            release(folderId, bytes.length);
+            throw e;
+        }
+        return appendRecord(folderId, fileName, bytes, hash);
+    }
+
+    /** Byte đang chờ áp theo folder đích (bản sao) */
+    public Map<Integer, Long> queuedBytes() {
+        synchronized (queuedBytes) {
+            return new HashMap<>(queuedBytes);
+        }
+    }
+
+    // Giữ chỗ size byte cho folderId, trả về byte đang chờ của các upload khác (trước lần giữ chỗ này)
+    private Map<Integer, Long> reserve(int folderId, long size) {
+        synchronized (queuedBytes) {
+            Map<Integer, Long> others = new HashMap<>(queuedBytes);
+            queuedBytes.merge(folderId, size, Long::sum);
+            return others;
+        }
+    }
+
+    private void release(int folderId, long size) {
+        synchronized (queuedBytes) {
+            queuedBytes.computeIfPresent(folderId, (id, bytes) -> bytes > size ? bytes - size : null);
+        }
+    }
+
+    // Chỗ đã giữ trong reserve được trả lại ở đây nếu không tạo được bản ghi, ngược lại apply trả
+    private Receipt appendRecord(int folderId, String fileName, byte[] bytes, String hash) throws IOException {
+        Path staged;
+        try {
+            staged = Files.createTempFile(stagingDir, "up-", ".dat");
+        } catch (IOException e) {
+            release(folderId, bytes.length);
+            throw e;
+        }
+        try {
+            try (FileChannel ch = FileChannel.open(staged, StandardOpenOption.WRITE)) {
+                ByteBuffer buf = ByteBuffer.wrap(bytes);
+                while (buf.hasRemaining()) ch.write(buf);
+                ch.force(true);
+            }
+            long lastModifiedMs = Files.getLastModifiedTime(staged).toMillis();
+
+            JsonObject json = new JsonObject();
+            json.addProperty("folderId", folderId);
+            json.addProperty("fileName", fileName);
+            json.addProperty("size", bytes.length);
+            json.addProperty("hash", hash);
+            json.addProperty("staged", staged.getFileName().toString());
+            json.addProperty("lastModified", lastModifiedMs);
+
+            FileContentWriter.Staged s = new FileContentWriter.Staged(folderId, fileName, bytes.length, hash, staged, lastModifiedMs);
+            Segment segment;
+            long seq;
+            synchronized (appendLock) {
+                seq = nextSeq;
+                json.addProperty("seq", seq);
+                segment = activeSegment();
+                writeRecord(segment, json);
+                nextSeq++;
+                segment.lastSeq = seq;
+                unapplied.addLast(new Record(seq, s, System.currentTimeMillis()));
+                updateGauges();
+            }
+            forceTo(segment, seq);
+            metrics.increment("upload.journal.appends");
+            return new Receipt(seq, lastModifiedMs);
+        } catch (IOException | RuntimeException e) {
+            // Chưa có bản ghi thì staged là rác; đã có (lỗi lúc force) thì vẫn có thể được áp, client thử lại cũng không sao
+            if (!isReferenced(staged)) {
+                release(folderId, bytes.length);
+                Files.deleteIfExists(staged);
+            }
+            throw e;
+        }
+    }
+
+    private boolean isReferenced(Path staged) {
+        synchronized (appendLock) {
+            for (Record r : unapplied) if (r.staged.file.equals(staged)) return true;
+        }
+        return false;
+    }
+
+    // Gọi trong appendLock: segment đang ghi, đổi segment mới khi quá segmentBytes
+    private Segment activeSegment() throws IOException {
+        if (active == null || active.size >= segmentBytes) {
+            // Segment cũ phải xuống đĩa hết trước: forcedSeq chỉ tính theo segment được force sau cùng
+            if (active != null) {
+                active.channel.force(false);
+                active.forcedTo = active.size;
+            }
+            Path p = dir.resolve(String.format("%s%016d%s", PREFIX, nextSeq, SUFFIX));
+            FileChannel ch = FileChannel.open(p, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            active = new Segment(nextSeq, p, ch);
+            segments.put(active.firstSeq, active);
+            forceDir(dir);
+        }
+        return active;
+    }
+
+    private static void writeRecord(Segment segment, JsonObject json) throws IOException {
+        byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+        if (body.length > MAX_RECORD_BYTES) throw new IOException("Bản ghi nhật ký quá lớn: " + body.length);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES + body.length);
+        buf.putInt(body.length).putInt((int) crc.getValue()).put(body).flip();
+        long pos = segment.size;
+        while (buf.hasRemaining()) pos += segment.channel.write(buf, pos);
+        segment.size = pos;
+    }
+
+    // Một lần force phủ được mọi bản ghi đã ghi xong trước nó: các upload đồng thời chờ chung một lần
+    private void forceTo(Segment segment, long seq) throws IOException {
+        if (forcedSeq >= seq) return;
+        synchronized (forceLock) {
+            if (forcedSeq >= seq) return;
+            long targetSize;
+            long targetSeq;
+            synchronized (appendLock) {
+                targetSize = segment.size;
+                targetSeq = segment.lastSeq;
+            }
+            // Entry thư mục của các file staged vừa tạo cũng phải bền trước khi báo thành công
+            forceDir(stagingDir);
+            segment.channel.force(false);
+            segment.forcedTo = targetSize;
+            metrics.increment("upload.journal.fsyncs");
+            synchronized (appendLock) {
+                // Segment cũ chỉ còn được force khi đã đổi segment: các bản ghi trước đó cũng đã được force lúc đổi
+                if (targetSeq > forcedSeq) forcedSeq = targetSeq;
+                appendLock.notifyAll();
+            }
+        }
+    }
+
+    private static void forceDir(Path dir) {
+        // Linux cho phép mở thư mục để fsync; hệ khác bỏ qua
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException ignore) {
+        }
+    }
+
+    // ---------- Áp vào DB ----------
+
+    private void loop() {
+        long retrySleepMs = 1000;
+        Connection conn = null;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                List<Record> batch = nextBatch();
+                if (conn == null || conn.isClosed()) conn = DatabaseManager.openConnection();
+                apply(conn, batch);
+                retrySleepMs = 1000;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                System.err.println("❌ UploadJournal: áp vào DB lỗi, thử lại sau " + retrySleepMs + "ms: " + e.getMessage());
+                closeQuietly(conn);
+                conn = null;
+                try {
+                    Thread.sleep(retrySleepMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+                retrySleepMs = Math.min(MAX_RETRY_SLEEP_MS, retrySleepMs * 2);
+            }
+        }
+        closeQuietly(conn);
+    }
+
+    // Chờ có bản ghi đã xuống đĩa; đợi thêm tối đa batchWaitMs để gom lô nếu còn ít (các upload đang force dở)
+    private List<Record> nextBatch() throws InterruptedException {
+        synchronized (appendLock) {
+            while (durableCount() == 0) appendLock.wait();
+            long deadline = System.currentTimeMillis() + batchWaitMs;
+            long wait;
+            while (durableCount() < batchSize && unapplied.size() > durableCount()
+                    && (wait = deadline - System.currentTimeMillis()) > 0) {
+                appendLock.wait(wait);
+            }
+            List<Record> batch = new ArrayList<>();
+            for (Record r : unapplied) {
+                if (r.seq > forcedSeq || batch.size() >= batchSize) break;
+                batch.add(r);
+            }
+            return batch;
+        }
+    }
+
+    private int durableCount() {
+        int n = 0;
+        for (Record r : unapplied) {
+            if (r.seq > forcedSeq || n >= batchSize) break;
+            n++;
+        }
+        return n;
+    }
+
+    private void apply(Connection conn, List<Record> batch) throws Exception {
+        // Cùng một file xuất hiện nhiều lần trong lô: bản sau thắng
+        List<Record> latest = new ArrayList<>();
+        List<Record> superseded = new ArrayList<>();
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            Record r = batch.get(i);
+            boolean dup = false;
+            for (Record l : latest) {
+                if (l.staged.folderId == r.staged.folderId && FileWriteLocks.sameName(l.staged.fileName, r.staged.fileName)) {
+                    dup = true;
+                    break;
+                }
+            }
+            (dup ? superseded : latest).add(0, r);
+        }
+
+        // Thư mục đã bị xóa sau khi upload được ghi nhận: không áp được (khóa ngoại), bỏ bản ghi
+        Set<Integer> folderIds = new HashSet<>();
+        for (Record r : latest) folderIds.add(r.staged.folderId);
+        Set<Integer> existing = new HashSet<>();
+        for (Folders f : new FolderDAO(conn).getFoldersByIds(folderIds)) existing.add(f.getFolderId());
+
+        List<FileContentWriter.Staged> rows = new ArrayList<>(latest.size());
+        for (Record r : latest) {
+            if (existing.contains(r.staged.folderId)) {
+                rows.add(r.staged);
+            } else {
+                metrics.increment("upload.journal.rejected");
+                System.err.println("⚠️ UploadJournal: bỏ bản ghi " + r.seq + " (" + r.staged.folderId + "/"
+                        + r.staged.fileName + "): thư mục không còn");
+            }
+        }
+        if (!rows.isEmpty()) new FileContentWriter(conn).writeStagedBatch(rows);
+
+        long last = batch.get(batch.size() - 1).seq;
+        writeCheckpoint(last);
+        metrics.increment("upload.journal.batches");
+        metrics.add("upload.journal.applied", batch.size());
+
+        synchronized (appendLock) {
+            for (int i = 0; i < batch.size(); i++) unapplied.pollFirst();
+            appliedSeq = last;
+            updateGauges();
+        }
+        // FolderStats đã gồm các file vừa áp (bản bị thay / bị bỏ thì không bao giờ vào): trả chỗ
+        for (Record r : batch) release(r.staged.folderId, r.staged.size);
+        for (Record r : batch) Files.deleteIfExists(r.staged.file);
+        deleteAppliedSegments();
+    }
+
+    private void writeCheckpoint(long seq) throws IOException {
+        Path tmp = dir.resolve(CHECKPOINT + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ch.write(ByteBuffer.wrap(Long.toString(seq).getBytes(StandardCharsets.US_ASCII)));
+            ch.force(true);
+        }
+        try {
+            Files.move(tmp, dir.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, dir.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Segment (không phải segment đang ghi) có mọi bản ghi đã áp thì bỏ
+    private void deleteAppliedSegments() throws IOException {
+        List<Segment> done = new ArrayList<>();
+        synchronized (appendLock) {
+            Iterator<Segment> it = segments.values().iterator();
+            while (it.hasNext()) {
+                Segment s = it.next();
+                if (s == active || s.lastSeq > appliedSeq) break;
+                it.remove();
+                done.add(s);
+            }
+        }
+        for (Segment s : done) {
+            s.channel.close();
+            Files.deleteIfExists(s.path);
+        }
+    }
+
+    // Gọi trong appendLock
+    private void updateGauges() {
+        metrics.set("upload.journal.pending", unapplied.size());
+        Record oldest = unapplied.peekFirst();
+        metrics.set("upload.journal.lag.ms", oldest != null ? System.currentTimeMillis() - oldest.appendedAt : 0);
+    }
+
+    private static void closeQuietly(Connection conn) {
+        if (conn == null) return;
+        try {
+            conn.close();
+        } catch (Exception ignore) {
+        }
+    }
+
+    // ---------- Khôi phục ----------
+
+    private void recover() throws IOException {
+        long checkpoint = readCheckpoint();
+        appliedSeq = checkpoint;
+        long maxSeq = checkpoint;
+        int replay = 0;
+        int missing = 0;
+        Set<Path> referenced = new HashSet<>();
+
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            for (Path p : ds) {
+                String name = p.getFileName().toString();
+                try {
+                    files.put(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())), p);
+                } catch (NumberFormatException ignore) {
+                }
+            }
+        }
+
+        for (Map.Entry<Long, Path> f : files.entrySet()) {
+            Segment s = new Segment(f.getKey(), f.getValue(),
+                    FileChannel.open(f.getValue(), StandardOpenOption.READ, StandardOpenOption.WRITE));
+            long pos = 0;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (true) {
+                header.clear();
+                if (readFully(s.channel, header, pos) < HEADER_BYTES) break;
+                header.flip();
+                int len = header.getInt();
+                int crcValue = header.getInt();
+                if (len <= 0 || len > MAX_RECORD_BYTES) break;
+                ByteBuffer body = ByteBuffer.allocate(len);
+                if (readFully(s.channel, body, pos + HEADER_BYTES) < len) break;
+                CRC32 crc = new CRC32();
+                crc.update(body.array());
+                if ((int) crc.getValue() != crcValue) break;
+                pos += HEADER_BYTES + len;
+
+                JsonObject json = JsonParser.parseString(new String(body.array(), StandardCharsets.UTF_8)).getAsJsonObject();
+                long seq = json.get("seq").getAsLong();
+                s.lastSeq = Math.max(s.lastSeq, seq);
+                maxSeq = Math.max(maxSeq, seq);
+                if (seq <= checkpoint) continue;
+                Path staged = stagingDir.resolve(json.get("staged").getAsString());
+                if (!Files.exists(staged)) {
+                    missing++;
+                    continue;
+                }
+                referenced.add(staged);
+                reserve(json.get("folderId").getAsInt(), json.get("size").getAsLong());
+                unapplied.addLast(new Record(seq, new FileContentWriter.Staged(json.get("folderId").getAsInt(),
+                        json.get("fileName").getAsString(), json.get("size").getAsLong(), json.get("hash").getAsString(),
+                        staged, json.get("lastModified").getAsLong()), System.currentTimeMillis()));
+                replay++;
+            }
+            if (pos < s.channel.size()) {
+                // Đuôi ghi dở lúc crash: chưa từng được báo thành công cho client
+                System.err.println("⚠️ UploadJournal: cắt " + (s.channel.size() - pos) + " byte hỏng cuối " + f.getValue().getFileName());
+                s.channel.truncate(pos);
+                s.channel.force(true);
+            }
+            s.size = pos;
+            s.forcedTo = pos;
+            segments.put(s.firstSeq, s);
+        }
+
+        // File staged không có bản ghi: crash giữa lúc ghi nội dung và ghi bản ghi
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(stagingDir)) {
+            for (Path p : ds) {
+                if (!referenced.contains(p)) Files.deleteIfExists(p);
+            }
+        }
+
+        nextSeq = maxSeq + 1;
+        forcedSeq = maxSeq;
+        active = null; // bản ghi mới vào segment mới
+        updateGauges();
+        deleteAppliedSegments();
+        if (replay > 0 || missing > 0) {
+            System.out.println("📒 UploadJournal: áp lại " + replay + " upload chưa vào DB"
+                    + (missing > 0 ? ", " + missing + " bản ghi mất nội dung staged" : ""));
+        }
+    }
+
+    private long readCheckpoint() throws IOException {
+        Path p = dir.resolve(CHECKPOINT);
+        if (!Files.exists(p)) return 0;
+        try {
+            return Long.parseLong(Files.readString(p, StandardCharsets.US_ASCII).strip());
+        } catch (NumberFormatException e) {
+            throw new IOException("Checkpoint hỏng: " + p, e);
+        }
+    }
+
+    private static int readFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        int total = 0;
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, pos + total);
+            if (n < 0) break;
+            total += n;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,180 @@
+package com.pbl4.syncproject.server.service;
+
+import com.pbl4.syncproject.common.storage.BinaryDelta;
+import com.pbl4.syncproject.common.storage.StorageManager;
+import com.pbl4.syncproject.common.storage.VersionStore;
+import com.pbl4.syncproject.server.ServerConfig;
+import com.pbl4.syncproject.server.dao.DatabaseManager;
+import com.pbl4.syncproject.server.dao.FileVersionDAO;
+import com.pbl4.syncproject.server.dao.FilesDAO;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Nén lịch sử phiên bản chạy nền (xem VersionService). Với mỗi file có việc cần làm:
+ *   1. Xóa các phiên bản cũ nhất khi vượt versions.max.count hoặc quá versions.max.age.days
+ *      (reverse delta: bản cũ phụ thuộc bản mới, không bao giờ ngược lại, nên xóa từ cũ nhất là an toàn).
+ *   2. Đổi các bản PENDING (hard link nguyên vẹn) thành delta so với phiên bản mới hơn liền kề.
+ *      Delta không nhỏ hơn đáng kể (>= versions.delta.max.ratio) hoặc file quá lớn thì giữ FULL.
+ *   3. Chuỗi delta dài hơn versions.max.chain thì rebase thẳng vào nội dung hiện tại để dựng lại không quá chậm.
+ * Mỗi bước ghi file mới trước, cập nhật DB, rồi mới xóa file cũ: dừng giữa chừng chỉ để lại file thừa.
+ * Nội dung hiện tại đổi giữa chừng (hash không khớp) thì bỏ qua file, lượt sau làm lại.
+ */
+public final class VersionCompactor {
+
+    private static final VersionCompactor INSTANCE = new VersionCompactor();
+
+    public static VersionCompactor getInstance() {
+        return INSTANCE;
+    }
+
+    private static final int PAGE_SIZE = 100;
+
+    private final int maxCount = ServerConfig.getInt("versions.max.count", 20);
+    private final long maxAgeMs = TimeUnit.DAYS.toMillis(ServerConfig.getLong("versions.max.age.days", 90));
+    private final int maxChain = ServerConfig.getInt("versions.max.chain", 8);
+    private final long maxDeltaBytes = ServerConfig.getLong("versions.delta.max.bytes", 64L * 1024 * 1024);
+    private final double maxDeltaRatio = Double.parseDouble(ServerConfig.getString("versions.delta.max.ratio", "0.9"));
+    private final long intervalMs = TimeUnit.MINUTES.toMillis(ServerConfig.getLong("versions.compact.interval.minutes", 5));
+
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+    private volatile Thread worker;
+
+    private VersionCompactor() {}
+
+    public synchronized void start() {
+        if (worker != null) return;
+        worker = new Thread(this::loop, "version-compactor");
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MIN_PRIORITY);
+        worker.start();
+    }
+
+    private void loop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(intervalMs);
+                int files = compactAll();
+                if (files > 0) System.out.println("🗜 VersionCompactor: đã xử lý " + files + " file");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                System.err.println("❌ VersionCompactor lỗi: " + e.getMessage());
+            }
+        }
+    }
+
+    /** Một lượt: duyệt các file cần xử lý theo FileID tăng dần, trả về số file đã xử lý xong */
+    public int compactAll() throws Exception {
+        int done = 0;
+        try (Connection conn = DatabaseManager.openConnection()) {
+            FileVersionDAO dao = new FileVersionDAO(conn);
+            Timestamp expiredBefore = new Timestamp(System.currentTimeMillis() - maxAgeMs);
+            int after = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                List<Integer> page = dao.filesNeedingWork(after, maxCount, expiredBefore, PAGE_SIZE);
+                for (int fileId : page) {
+                    try {
+                        compactFile(conn, fileId);
+                        done++;
+                    } catch (VersionService.ContentChangedException e) {
+                        metrics.increment("versions.compact.retries");
+                    } catch (Exception e) {
+                        metrics.increment("versions.compact.errors");
+                        System.err.println("⚠️ VersionCompactor: file " + fileId + ": " + e.getMessage());
+                    }
+                }
+                if (page.size() < PAGE_SIZE) break;
+                after = page.get(page.size() - 1);
+            }
+        }
+        return done;
+    }
+
+    public void compactFile(Connection conn, int fileId) throws Exception {
+        VersionStore store = StorageManager.getInstance().versions();
+        FileVersionDAO dao = new FileVersionDAO(conn);
+        FilesDAO.CurrentContent current = new FilesDAO(conn).getCurrentContent(fileId);
+        if (current == null) {
+            // Dòng Files đã bị xóa (FileVersions cascade theo): chỉ còn dọn đĩa
+            store.deleteAll(fileId);
+            return;
+        }
+        List<FileVersionDAO.Version> list = new ArrayList<>(dao.listVersions(fileId)); // mới nhất trước
+        VersionService.Resolver resolver = new VersionService.Resolver(conn, current, list);
+
+        // 1) Giới hạn số lượng / tuổi, xóa từ cũ nhất
+        long cutoff = System.currentTimeMillis() - maxAgeMs;
+        while (!list.isEmpty()) {
+            FileVersionDAO.Version oldest = list.get(list.size() - 1);
+            if (list.size() <= maxCount && oldest.createdAtMs >= cutoff) break;
+            dao.deleteVersion(fileId, oldest.versionNo);
+            store.delete(fileId, oldest.versionNo, null);
+            resolver.remove(oldest.versionNo);
+            list.remove(list.size() - 1);
+            metrics.increment("versions.pruned");
+        }
+
+        // 2) PENDING -> DELTA so với bản mới hơn liền kề; đi từ mới tới cũ để base vừa dựng còn trong cache
+        for (int i = 0; i < list.size(); i++) {
+            FileVersionDAO.Version v = list.get(i);
+            if (!FileVersionDAO.PENDING.equals(v.kind)) continue;
+            int baseNo = i > 0 ? list.get(i - 1).versionNo : current.versionNo;
+            FileVersionDAO.Version updated = reencode(conn, store, resolver, v, baseNo, true);
+            list.set(i, updated);
+            resolver.update(updated);
+            metrics.increment("versions.compacted");
+        }
+
+        // 3) Chuỗi quá dài -> rebase vào nội dung hiện tại
+        for (int i = 0; i < list.size(); i++) {
+            FileVersionDAO.Version v = list.get(i);
+            if (!FileVersionDAO.DELTA.equals(v.kind) || resolver.depth(v.versionNo) <= maxChain) continue;
+            FileVersionDAO.Version updated = reencode(conn, store, resolver, v, current.versionNo, false);
+            list.set(i, updated);
+            resolver.update(updated);
+            metrics.increment("versions.rebased");
+        }
+    }
+
+    /**
+     * Lưu lại phiên bản v dưới dạng delta so với baseNo (hoặc FULL nếu delta không đáng),
+     * fullOnDisk = bản .full của v đang có sẵn trên đĩa (PENDING).
+     */
+    private FileVersionDAO.Version reencode(Connection conn, VersionStore store, VersionService.Resolver resolver,
+                                            FileVersionDAO.Version v, int baseNo, boolean fullOnDisk) throws Exception {
+        FileVersionDAO dao = new FileVersionDAO(conn);
+        int fileId = v.fileId;
+        long baseSize = baseNo == resolver.current.versionNo
+                ? resolver.current.size
+                : resolver.versions.get(baseNo).size;
+
+        byte[] target = null;
+        if (v.size <= maxDeltaBytes && baseSize <= maxDeltaBytes) {
+            target = resolver.content(v.versionNo);
+            byte[] delta = BinaryDelta.encode(resolver.content(baseNo), target);
+            if (delta.length < target.length * maxDeltaRatio) {
+                Path written = store.writeDelta(fileId, v.versionNo, baseNo, delta);
+                dao.updateEncoding(fileId, v.versionNo, FileVersionDAO.DELTA, baseNo, delta.length);
+                store.delete(fileId, v.versionNo, written);
+                metrics.add("versions.bytes.saved", v.storedSize - delta.length);
+                return v.withEncoding(FileVersionDAO.DELTA, baseNo, delta.length);
+            }
+        }
+
+        // Giữ nguyên vẹn
+        Path full = store.fullPath(fileId, v.versionNo);
+        if (!fullOnDisk) {
+            if (target == null) target = resolver.content(v.versionNo);
+            full = store.writeFull(fileId, v.versionNo, target);
+        }
+        dao.updateEncoding(fileId, v.versionNo, FileVersionDAO.FULL, null, v.size);
+        store.delete(fileId, v.versionNo, full);
+        return v.withEncoding(FileVersionDAO.FULL, null, v.size);
+    }
+}
@@ -0,0 +1,185 @@
+package com.pbl4.syncproject.server.service;
+
+import com.pbl4.syncproject.common.storage.BinaryDelta;
+import com.pbl4.syncproject.common.storage.StorageManager;
+import com.pbl4.syncproject.common.storage.StoredContent;
+import com.pbl4.syncproject.common.storage.VersionStore;
+import com.pbl4.syncproject.server.ServerConfig;
+import com.pbl4.syncproject.server.dao.FileVersionDAO;
+import com.pbl4.syncproject.server.dao.FilesDAO;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lịch sử phiên bản file (reverse delta).
+ *
+ * Khi một upload thay nội dung của file, nội dung cũ được giữ làm phiên bản VersionNo hiện tại
+ * (Files.VersionNo tăng lên trong upsert): chỉ tạo hard link tới nội dung cũ + một dòng PENDING,
+ * không đọc file nên upload không chậm đi. VersionCompactor sau đó đổi các bản FULL thành delta
+ * so với phiên bản mới hơn liền kề (hoặc nội dung hiện tại) - kiểu reverse delta: bản mới nhất luôn
+ * nguyên vẹn, bản càng cũ càng phải áp nhiều delta.
+ *
+ * Dựng lại phiên bản v: đọc base (đệ quy theo BaseVersionNo, tới nội dung hiện tại hoặc một bản FULL)
+ * rồi áp delta; kết quả luôn được kiểm tra lại SHA-256.
+ */
+public final class VersionService {
+
+    private static final VersionService INSTANCE = new VersionService();
+
+    public static VersionService getInstance() {
+        return INSTANCE;
+    }
+
+    private final boolean enabled = ServerConfig.getBoolean("versions.enabled", true);
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+
+    private VersionService() {}
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Giữ nội dung hiện tại của file làm một phiên bản trước khi bị thay bằng nội dung có hash newHash.
+     * Lỗi ở đây chỉ được ghi log: mất một phiên bản cũ còn hơn làm hỏng upload.
+     */
+    public void captureBeforeOverwrite(Connection conn, FilesDAO.CurrentContent current, String newHash) {
+        if (!enabled || current == null || current.hash == null || current.hash.equals(newHash)) return;
+        try {
+            StorageManager storage = StorageManager.getInstance();
+            // Link/ghi trước rồi mới thêm dòng: có dòng PENDING thì chắc chắn có file .full
+            byte[] packed = storage.packs() != null ? storage.packs().read(conn, current.fileId) : null;
+            if (packed != null) {
+                storage.versions().writeFull(current.fileId, current.versionNo, packed);
+            } else {
+                Path path = storage.locateFile(conn, current.fileId, current.folderId, current.fileName);
+                if (!Files.isRegularFile(path)) return;
+                storage.versions().captureFull(path, current.fileId, current.versionNo);
+            }
+            new FileVersionDAO(conn).insertPending(current.fileId, current.versionNo, current.size, current.hash,
+                    current.lastModifiedMs);
+            metrics.increment("versions.captured");
+        } catch (Exception e) {
+            metrics.increment("versions.capture.errors");
+            System.err.println("⚠️ Không giữ được phiên bản cũ của file " + current.fileId + ": " + e.getMessage());
+        }
+    }
+
+    /** Nội dung của phiên bản versionNo (có thể là phiên bản hiện tại), đã kiểm tra hash */
+    public byte[] reconstruct(Connection conn, int fileId, int versionNo) throws Exception {
+        FilesDAO.CurrentContent current = new FilesDAO(conn).getCurrentContent(fileId);
+        if (current == null) throw new IOException("File không tồn tại");
+        Resolver resolver = new Resolver(conn, current, new FileVersionDAO(conn).listVersions(fileId));
+        return resolver.content(versionNo);
+    }
+
+    /**
+     * Dựng nội dung các phiên bản của một file. Giữ vài kết quả gần nhất vì các phiên bản thường được
+     * xử lý lần lượt từ mới tới cũ (bản sau dùng bản trước làm base).
+     */
+    static final class Resolver {
+        private static final int CACHE_ENTRIES = 3;
+
+        final FilesDAO.CurrentContent current;
+        final Map<Integer, FileVersionDAO.Version> versions = new HashMap<>();
+        private final Connection conn;
+        private final VersionStore store = StorageManager.getInstance().versions();
+        private final Map<Integer, byte[]> cache = new LinkedHashMap<Integer, byte[]>(8, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+                return size() > CACHE_ENTRIES;
+            }
+        };
+
+        Resolver(Connection conn, FilesDAO.CurrentContent current, List<FileVersionDAO.Version> list) {
+            this.conn = conn;
+            this.current = current;
+            for (FileVersionDAO.Version v : list) versions.put(v.versionNo, v);
+        }
+
+        void update(FileVersionDAO.Version v) {
+            versions.put(v.versionNo, v);
+        }
+
+        void remove(int versionNo) {
+            versions.remove(versionNo);
+            cache.remove(versionNo);
+        }
+
+        /** Số lần áp delta để dựng versionNo (0 = FULL / hiện tại) */
+        int depth(int versionNo) {
+            int d = 0;
+            FileVersionDAO.Version v = versions.get(versionNo);
+            while (v != null && FileVersionDAO.DELTA.equals(v.kind) && d <= versions.size()) {
+                d++;
+                v = versions.get(v.baseVersionNo);
+            }
+            return d;
+        }
+
+        byte[] content(int versionNo) throws Exception {
+            byte[] cached = cache.get(versionNo);
+            if (cached != null) return cached;
+
+            byte[] bytes;
+            String expectedHash;
+            if (versionNo == current.versionNo) {
+                try (StoredContent c = StorageManager.getInstance().openContent(conn, current.fileId,
+                        current.folderId, current.fileName)) {
+                    bytes = c.readAll();
+                }
+                expectedHash = current.hash;
+            } else {
+                FileVersionDAO.Version v = versions.get(versionNo);
+                if (v == null) throw new IOException("Không có phiên bản " + versionNo);
+                if (FileVersionDAO.DELTA.equals(v.kind)) {
+                    if (v.baseVersionNo == null || v.baseVersionNo <= versionNo) {
+                        throw new IOException("Base không hợp lệ cho phiên bản " + versionNo);
+                    }
+                    byte[] base = content(v.baseVersionNo);
+                    bytes = BinaryDelta.apply(base, store.readDelta(current.fileId, versionNo, v.baseVersionNo));
+                } else {
+                    bytes = store.readFull(current.fileId, versionNo);
+                }
+                expectedHash = v.hash;
+            }
+            if (expectedHash != null && !expectedHash.equalsIgnoreCase(sha256(bytes))) {
+                if (versionNo == current.versionNo) {
+                    // Nội dung hiện tại vừa bị thay bởi một upload chạy song song
+                    throw new ContentChangedException("Nội dung hiện tại của file " + current.fileId + " vừa thay đổi");
+                }
+                throw new IOException("Dữ liệu phiên bản " + versionNo + " bị hỏng (hash không khớp)");
+            }
+            cache.put(versionNo, bytes);
+            return bytes;
+        }
+    }
+
+    static final class ContentChangedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        ContentChangedException(String message) {
+            super(message);
+        }
+    }
+
+    /** SHA-256 (hex) của nội dung, cùng định dạng với Files.FileHash */
+    public String hashOf(byte[] data) throws Exception {
+        return sha256(data);
+    }
+
+    static String sha256(byte[] data) throws Exception {
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(data);
+        StringBuilder sb = new StringBuilder(64);
+        for (byte b : hash) sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+}
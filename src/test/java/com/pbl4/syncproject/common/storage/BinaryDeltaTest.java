@@ -0,0 +1,119 @@
+package com.pbl4.syncproject.common.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryDeltaTest {
+
+    private static final int MAGIC = 0x42443031;
+    private static final int OP_COPY = 1;
+    private static final int OP_INSERT = 2;
+    private static final int OP_END = 0;
+
+    @Test
+    void roundTripsTypicalEdits() throws IOException {
+        byte[] base = random(200_000, 1);
+
+        byte[] inserted = concat(Arrays.copyOfRange(base, 0, 50_000), random(1234, 2),
+                Arrays.copyOfRange(base, 50_000, base.length));
+        byte[] deleted = concat(Arrays.copyOfRange(base, 0, 70_000), Arrays.copyOfRange(base, 90_000, base.length));
+        byte[] appended = concat(base, random(5000, 3));
+        byte[] patched = base.clone();
+        for (int i = 0; i < patched.length; i += 10_007) patched[i] ^= 0x5a;
+
+        for (byte[] target : new byte[][] {inserted, deleted, appended, patched, base}) {
+            byte[] delta = BinaryDelta.encode(base, target);
+            assertArrayEquals(target, BinaryDelta.apply(base, delta));
+            assertTrue(delta.length < target.length / 4, "delta phải nhỏ hơn nhiều so với target: " + delta.length);
+        }
+    }
+
+    @Test
+    void roundTripsEdgeCases() throws IOException {
+        byte[] empty = new byte[0];
+        byte[] small = {1, 2, 3};
+        byte[] unrelated = random(10_000, 4);
+        assertArrayEquals(small, BinaryDelta.apply(empty, BinaryDelta.encode(empty, small)));
+        assertArrayEquals(empty, BinaryDelta.apply(small, BinaryDelta.encode(small, empty)));
+        assertArrayEquals(unrelated, BinaryDelta.apply(random(10_000, 5), BinaryDelta.encode(random(10_000, 5), unrelated)));
+    }
+
+    @Test
+    void rejectsWrongBase() throws IOException {
+        byte[] base = random(4096, 6);
+        byte[] delta = BinaryDelta.encode(base, random(4096, 7));
+        assertThrows(IOException.class, () -> BinaryDelta.apply(random(4095, 6), delta));
+    }
+
+    @Test
+    void rejectsCorruptedCrc() throws IOException {
+        byte[] base = random(4096, 8);
+        byte[] delta = BinaryDelta.encode(base, random(4096, 9));
+        // CRC nằm ngay sau magic và hai varint độ dài (4096 -> 2 byte mỗi varint)
+        delta[4 + 2 + 2] ^= 1;
+        assertThrows(IOException.class, () -> BinaryDelta.apply(base, delta));
+    }
+
+    @Test
+    void rejectsNegativeCopyLength() throws IOException {
+        byte[] base = random(64, 10);
+        assertThrows(IOException.class, () -> BinaryDelta.apply(base, delta(base.length, 8, OP_COPY, 0, -1)));
+    }
+
+    @Test
+    void rejectsOffsetAndLengthAboveIntRange() throws IOException {
+        byte[] base = random(64, 11);
+        long huge = 1L << 32;
+        assertThrows(IOException.class, () -> BinaryDelta.apply(base, delta(base.length, 8, OP_COPY, huge, 8)));
+        assertThrows(IOException.class, () -> BinaryDelta.apply(base, delta(base.length, 8, OP_COPY, 0, huge + 8)));
+        assertThrows(IOException.class, () -> BinaryDelta.apply(base, delta(base.length, 8, OP_INSERT, huge + 8)));
+    }
+
+    // Delta viết tay với một lệnh tùy ý (CRC để 0: phải bị từ chối trước khi tới bước kiểm tra CRC)
+    private static byte[] delta(int baseLen, int targetLen, int op, long... args) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bout);
+        out.writeInt(MAGIC);
+        writeVarLong(out, baseLen);
+        writeVarLong(out, targetLen);
+        out.writeInt((int) new CRC32().getValue());
+        out.flush();
+        try (DataOutputStream ops = new DataOutputStream(new DeflaterOutputStream(bout))) {
+            ops.writeByte(op);
+            for (long a : args) writeVarLong(ops, a);
+            ops.writeByte(OP_END);
+        }
+        return bout.toByteArray();
+    }
+
+    private static void writeVarLong(DataOutputStream out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    private static byte[] random(int n, long seed) {
+        byte[] b = new byte[n];
+        new Random(seed).nextBytes(b);
+        return b;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] p : parts) out.write(p, 0, p.length);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,128 @@
+package com.pbl4.syncproject.common.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PackStoreTest {
+
+    @TempDir
+    Path dir;
+
+    /** Index trong bộ nhớ thay cho bảng PackedContent; dùng chung giữa các PackStore để giả lập khởi động lại */
+    private static final class MemoryIndex implements PackIndex {
+        final Map<Integer, long[]> rows = new TreeMap<>();
+
+        @Override
+        public void upsert(int fileId, int segmentId, long offset, int length) {
+            rows.put(fileId, new long[] {segmentId, offset, length});
+        }
+
+        @Override
+        public void delete(int fileId) {
+            rows.remove(fileId);
+        }
+
+        @Override
+        public void forEach(SlotVisitor visitor) {
+            for (Map.Entry<Integer, long[]> e : rows.entrySet()) {
+                long[] r = e.getValue();
+                visitor.slot(e.getKey(), (int) r[0], r[1], (int) r[2]);
+            }
+        }
+    }
+
+    private final MemoryIndex index = new MemoryIndex();
+
+    private PackStore open(long segmentBytes) {
+        PackStore store = new PackStore(dir, segmentBytes, 1024);
+        store.setIndex(conn -> index);
+        return store;
+    }
+
+    @Test
+    void putReadOverwriteRemove() throws Exception {
+        PackStore store = open(1 << 20);
+        store.put(null, 1, bytes(100, 'a'));
+        store.put(null, 2, bytes(200, 'b'));
+        assertArrayEquals(bytes(100, 'a'), store.read(null, 1));
+        assertArrayEquals(bytes(200, 'b'), store.read(null, 2));
+
+        store.put(null, 1, bytes(50, 'c'));
+        assertArrayEquals(bytes(50, 'c'), store.read(null, 1));
+        assertEquals(250, store.liveBytes());
+        assertEquals(350, store.totalBytes());
+
+        assertTrue(store.remove(null, 2));
+        assertFalse(store.remove(null, 2));
+        assertNull(store.read(null, 2));
+        assertEquals(1, store.packedFiles());
+        assertEquals(1, index.rows.size());
+    }
+
+    @Test
+    void rejectsContentAboveMaxFileBytes() {
+        PackStore store = open(1 << 20);
+        assertFalse(store.accepts(1025));
+        assertThrows(IOException.class, () -> store.put(null, 1, new byte[1025]));
+    }
+
+    @Test
+    void reloadsIndexAfterRestart() throws Exception {
+        PackStore store = open(1 << 20);
+        for (int id = 1; id <= 20; id++) store.put(null, id, bytes(id * 10, id));
+        store.remove(null, 5);
+
+        PackStore reopened = open(1 << 20);
+        for (int id = 1; id <= 20; id++) {
+            if (id == 5) assertNull(reopened.read(null, id));
+            else assertArrayEquals(bytes(id * 10, id), reopened.read(null, id), "file " + id);
+        }
+    }
+
+    @Test
+    void compactMovesLiveContentOutOfSegment() throws Exception {
+        // Segment 300 byte: mỗi segment giữ vài file, ghi đè làm segment đầu gần như toàn byte chết
+        PackStore store = open(300);
+        for (int id = 1; id <= 6; id++) store.put(null, id, bytes(100, id));
+        for (int id = 1; id <= 2; id++) store.put(null, id, bytes(100, id + 100));
+        assertTrue(store.segmentCount() > 1);
+
+        List<Integer> candidates = store.compactionCandidates(null, 0.5);
+        assertFalse(candidates.isEmpty());
+        int segmentId = candidates.get(0);
+        int before = store.segmentCount();
+        store.compact(null, segmentId);
+
+        assertEquals(before - 1, store.segmentCount());
+        for (long[] row : index.rows.values()) assertTrue(row[0] != segmentId, "index còn trỏ vào segment đã gộp");
+        for (int id = 1; id <= 6; id++) {
+            assertArrayEquals(bytes(100, id <= 2 ? id + 100 : id), store.read(null, id), "file " + id);
+        }
+    }
+
+    @Test
+    void failsWithoutInstalledIndex() {
+        PackStore store = new PackStore(dir, 1 << 20, 1024);
+        assertThrows(SQLException.class, () -> store.put(null, 1, new byte[1]));
+    }
+
+    private static byte[] bytes(int n, int fill) {
+        byte[] b = new byte[n];
+        for (int i = 0; i < n; i++) b[i] = (byte) (fill + i);
+        return b;
+    }
+}
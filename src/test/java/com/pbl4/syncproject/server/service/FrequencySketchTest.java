@@ -0,0 +1,55 @@
+package com.pbl4.syncproject.server.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrequencySketchTest {
+
+    @Test
+    void countsIncrementsUpToFifteen() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        assertEquals(0, sketch.frequency(7));
+        for (int i = 1; i <= 15; i++) {
+            sketch.increment(7);
+            assertEquals(i, sketch.frequency(7));
+        }
+        sketch.increment(7);
+        assertEquals(15, sketch.frequency(7));
+    }
+
+    @Test
+    void neverUnderestimates() {
+        FrequencySketch sketch = new FrequencySketch(512);
+        int[] counts = new int[200];
+        for (int key = 1; key < counts.length; key++) {
+            counts[key] = key % 10;
+            for (int i = 0; i < counts[key]; i++) sketch.increment(key);
+        }
+        for (int key = 1; key < counts.length; key++) {
+            assertTrue(sketch.frequency(key) >= counts[key], "key " + key);
+        }
+    }
+
+    @Test
+    void agesOldCountsAfterSampleSize() {
+        // 16 ô -> sampleSize 160: sau đủ lần tăng mọi bộ đếm bị chia đôi
+        FrequencySketch sketch = new FrequencySketch(16);
+        for (int i = 0; i < 15; i++) sketch.increment(1);
+        assertEquals(15, sketch.frequency(1));
+        for (int key = 1000; key < 1400; key++) sketch.increment(key);
+        assertTrue(sketch.frequency(1) <= 8, "tần suất cũ phải phai đi: " + sketch.frequency(1));
+    }
+
+    @Test
+    void hotKeyStaysAboveColdKeys() {
+        FrequencySketch sketch = new FrequencySketch(256);
+        for (int round = 0; round < 50; round++) {
+            sketch.increment(42);
+            for (int key = 100 + round * 20; key < 120 + round * 20; key++) sketch.increment(key);
+        }
+        assertTrue(sketch.frequency(42) > sketch.frequency(500));
+        assertTrue(sketch.frequency(42) > sketch.frequency(999));
+    }
+}
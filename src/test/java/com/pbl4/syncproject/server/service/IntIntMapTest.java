@@ -0,0 +1,92 @@
+package com.pbl4.syncproject.server.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IntIntMapTest {
+
+    @Test
+    void putGetOverwrite() {
+        IntIntMap map = new IntIntMap(4);
+        map.put(1, 10);
+        map.put(2, 20);
+        map.put(1, 11);
+        assertEquals(2, map.size());
+        assertEquals(11, map.get(1, -1));
+        assertEquals(20, map.get(2, -1));
+        assertEquals(-1, map.get(3, -1));
+    }
+
+    @Test
+    void rejectsKeyZero() {
+        assertThrows(IllegalArgumentException.class, () -> new IntIntMap(4).put(0, 1));
+    }
+
+    @Test
+    void removeKeepsLaterKeysOfClusterReachable() {
+        // Map nhỏ, nhiều key: các cụm dò tuyến tính dài, xóa ở giữa cụm phải dồn đúng các phần tử phía sau
+        IntIntMap map = new IntIntMap(16);
+        for (int k = 1; k <= 12; k++) map.put(k, k * 100);
+        for (int k = 1; k <= 12; k += 3) map.remove(k);
+        for (int k = 1; k <= 12; k++) {
+            assertEquals(k % 3 == 1 ? -1 : k * 100, map.get(k, -1), "key " + k);
+        }
+        assertEquals(8, map.size());
+    }
+
+    @Test
+    void removeMissingKeyIsNoOp() {
+        IntIntMap map = new IntIntMap(4);
+        map.put(5, 50);
+        map.remove(6);
+        assertEquals(1, map.size());
+        assertEquals(50, map.get(5, -1));
+    }
+
+    @Test
+    void matchesHashMapUnderRandomPutsAndRemoves() {
+        Random rnd = new Random(42);
+        IntIntMap map = new IntIntMap(8);
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int op = 0; op < 200_000; op++) {
+            int key = 1 + rnd.nextInt(2000);
+            if (rnd.nextInt(3) == 0) {
+                map.remove(key);
+                expected.remove(key);
+            } else {
+                int value = rnd.nextInt();
+                map.put(key, value);
+                expected.put(key, value);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (int key = 1; key <= 2000; key++) {
+            Integer v = expected.get(key);
+            if (v != null) assertEquals((int) v, map.get(key, 0), "key " + key);
+            else assertEquals(-7, map.get(key, -7), "key " + key);
+        }
+    }
+
+    @Test
+    void removeAllThenReuse() {
+        IntIntMap map = new IntIntMap(4);
+        List<Integer> keys = new ArrayList<>();
+        for (int k = 1; k <= 1000; k++) {
+            keys.add(k * 7919);
+            map.put(k * 7919, k);
+        }
+        for (int k : keys) map.remove(k);
+        assertEquals(0, map.size());
+        for (int k : keys) assertEquals(-1, map.get(k, -1));
+        map.put(keys.get(0), 1);
+        assertEquals(1, map.get(keys.get(0), -1));
+    }
+}
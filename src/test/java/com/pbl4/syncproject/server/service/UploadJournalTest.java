@@ -0,0 +1,130 @@
+package com.pbl4.syncproject.server.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Khôi phục nhật ký khi khởi động lại: chỉ mở thư mục nhật ký, không chạy luồng áp vào DB.
+ * Bản ghi được áp lại thể hiện qua queuedBytes (mỗi bản ghi chưa áp giữ chỗ size byte cho folder đích).
+ */
+class UploadJournalTest {
+
+    private static final String HASH = "00".repeat(32);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replaysRecordsAfterCheckpoint() throws Exception {
+        UploadJournal journal = open();
+        assertEquals(1, journal.append(1, "a.txt", new byte[10], HASH, null).seq);
+        assertEquals(2, journal.append(1, "b.txt", new byte[20], HASH, null).seq);
+        assertEquals(3, journal.append(2, "c.txt", new byte[30], HASH, null).seq);
+        assertEquals(Map.of(1, 30L, 2, 30L), journal.queuedBytes());
+
+        // Bản ghi 1 đã vào DB trước khi "crash"
+        Files.writeString(dir.resolve("checkpoint"), "1", StandardCharsets.US_ASCII);
+
+        UploadJournal restarted = open();
+        assertEquals(Map.of(1, 20L, 2, 30L), restarted.queuedBytes());
+        // Nội dung staged của bản ghi đã áp không còn được tham chiếu nên bị dọn
+        assertEquals(2, stagedFiles().size());
+        assertEquals(4, restarted.append(2, "d.txt", new byte[5], HASH, null).seq);
+    }
+
+    @Test
+    void truncatesTornTail() throws Exception {
+        UploadJournal journal = open();
+        journal.append(1, "a.txt", new byte[10], HASH, null);
+        journal.append(1, "b.txt", new byte[20], HASH, null);
+        Path log = onlyLog();
+        long intact = Files.size(log);
+
+        // Bản ghi ghi dở: header hứa 100 byte nhưng chỉ có 10
+        try (FileChannel ch = FileChannel.open(log, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ch.write(ByteBuffer.allocate(8 + 10).putInt(100).putInt(0).put(new byte[10]).flip());
+        }
+
+        UploadJournal restarted = open();
+        assertEquals(intact, Files.size(log));
+        assertEquals(Map.of(1, 30L), restarted.queuedBytes());
+        assertEquals(3, restarted.append(1, "c.txt", new byte[1], HASH, null).seq);
+    }
+
+    @Test
+    void stopsAtRecordWithBadCrc() throws Exception {
+        UploadJournal journal = open();
+        journal.append(1, "a.txt", new byte[10], HASH, null);
+        Path log = onlyLog();
+        long first = Files.size(log);
+        journal.append(1, "b.txt", new byte[20], HASH, null);
+
+        // Hỏng một byte trong thân bản ghi thứ hai: nó và mọi thứ sau nó bị bỏ
+        try (FileChannel ch = FileChannel.open(log, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            ch.read(b, first + 12);
+            b.put(0, (byte) (b.get(0) ^ 1));
+            ch.write(b.rewind(), first + 12);
+        }
+
+        UploadJournal restarted = open();
+        assertEquals(first, Files.size(log));
+        assertEquals(Map.of(1, 10L), restarted.queuedBytes());
+        assertEquals(1, stagedFiles().size());
+    }
+
+    @Test
+    void quotaRejectionReleasesReservation() throws Exception {
+        UploadJournal journal = open();
+        journal.append(1, "a.txt", new byte[10], HASH, null);
+        List<Map<Integer, Long>> seen = new ArrayList<>();
+        assertThrows(IOException.class, () -> journal.append(1, "b.txt", new byte[20], HASH, queued -> {
+            seen.add(queued);
+            throw new IOException("vượt hạn mức");
+        }));
+        assertEquals(List.of(Map.of(1, 10L)), seen);
+        assertEquals(Map.of(1, 10L), journal.queuedBytes());
+        assertEquals(1, stagedFiles().size());
+    }
+
+    private UploadJournal open() throws IOException {
+        UploadJournal journal = new UploadJournal();
+        journal.open(dir);
+        return journal;
+    }
+
+    private Path onlyLog() throws IOException {
+        List<Path> logs = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "journal-*.log")) {
+            for (Path p : ds) logs.add(p);
+        }
+        assertFalse(logs.isEmpty());
+        assertTrue(logs.size() == 1, "chỉ một segment nhật ký: " + logs);
+        return logs.get(0);
+    }
+
+    private List<Path> stagedFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir.resolve("staging"))) {
+            for (Path p : ds) files.add(p);
+        }
+        return files;
+    }
+}
@@ -53,6 +53,29 @@ INSERT INTO Folders (ParentFolderID, FolderName) VALUES
                                                      (1, 'shared'),
                                                      (1, 'videos');
 
+-- Closure table của cây thư mục: mọi cặp (tổ tiên, hậu duệ), kể cả chính nó với Depth = 0
+CREATE TABLE FolderClosure (
+                               AncestorID INT NOT NULL,
+                               DescendantID INT NOT NULL,
+                               Depth INT NOT NULL,
+                               PRIMARY KEY (AncestorID, DescendantID),
+                               CONSTRAINT fk_closure_ancestor
+                                   FOREIGN KEY (AncestorID) REFERENCES Folders(FolderID)
+                                       ON UPDATE CASCADE ON DELETE CASCADE,
+                               CONSTRAINT fk_closure_descendant
+                                   FOREIGN KEY (DescendantID) REFERENCES Folders(FolderID)
+                                       ON UPDATE CASCADE ON DELETE CASCADE
+);
+INSERT INTO FolderClosure (AncestorID, DescendantID, Depth)
+WITH RECURSIVE paths (AncestorID, DescendantID, Depth) AS (
+    SELECT FolderID, FolderID, 0 FROM Folders
+    UNION ALL
+    SELECT p.AncestorID, f.FolderID, p.Depth + 1
+    FROM paths p
+    JOIN Folders f ON f.ParentFolderID = p.DescendantID
+)
+SELECT AncestorID, DescendantID, Depth FROM paths;
+
 -- Bảng file
 CREATE TABLE Files (
                        FileID INT AUTO_INCREMENT PRIMARY KEY,
@@ -62,12 +85,115 @@ CREATE TABLE Files (
                        FileHash CHAR(64), -- tối ưu cho SHA-256
                        LastModified TIMESTAMP NULL DEFAULT NULL ON UPDATE CURRENT_TIMESTAMP,
                        CreatedAt TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                       DeletedAt TIMESTAMP NULL DEFAULT NULL, -- khác NULL: đang trong thùng rác
+                       DeletedBy INT NULL,
+                       VersionNo INT NOT NULL DEFAULT 1, -- phiên bản của nội dung hiện tại
+                       Tier TINYINT NOT NULL DEFAULT 0, -- 1: nội dung ở tầng lạnh (xem migrations/005_storage_tier.sql)
+                       ColdSize BIGINT NULL,
+                       LastAccessedAt TIMESTAMP NULL DEFAULT NULL,
                        CONSTRAINT fk_files_folder
                            FOREIGN KEY (FolderID) REFERENCES Folders(FolderID)
                                ON UPDATE CASCADE ON DELETE CASCADE,
                        CONSTRAINT uq_file_siblings UNIQUE (FolderID, FileName)
 );
 
+-- Các phiên bản cũ của file (nội dung ở storage.versions.root, xem migrations/004_file_versions.sql)
+CREATE TABLE FileVersions (
+                              VersionID INT AUTO_INCREMENT PRIMARY KEY,
+                              FileID INT NOT NULL,
+                              VersionNo INT NOT NULL,
+                              FileSize BIGINT NOT NULL,
+                              FileHash CHAR(64),
+                              LastModified TIMESTAMP NULL DEFAULT NULL,
+                              CreatedAt TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                              Kind ENUM('PENDING','FULL','DELTA') NOT NULL DEFAULT 'PENDING',
+                              BaseVersionNo INT NULL,
+                              StoredSize BIGINT NOT NULL,
+                              CONSTRAINT fk_versions_file
+                                  FOREIGN KEY (FileID) REFERENCES Files(FileID)
+                                      ON UPDATE CASCADE ON DELETE CASCADE,
+                              CONSTRAINT uq_file_version UNIQUE (FileID, VersionNo)
+);
+
+-- File nhỏ được gói vào segment (xem migrations/006_packed_content.sql)
+CREATE TABLE PackedContent (
+                              FileID INT NOT NULL PRIMARY KEY,
+                              SegmentID INT NOT NULL,
+                              SegmentOffset BIGINT NOT NULL,
+                              Length INT NOT NULL,
+                              CONSTRAINT fk_packed_file
+                                  FOREIGN KEY (FileID) REFERENCES Files(FileID)
+                                      ON UPDATE CASCADE ON DELETE CASCADE
+);
+
+-- Thống kê dồn theo cây thư mục, cập nhật bởi trigger trên Files (xem migrations/007_folder_stats.sql)
+CREATE TABLE FolderStats (
+                              FolderID INT NOT NULL PRIMARY KEY,
+                              TotalBytes BIGINT NOT NULL DEFAULT 0,
+                              FileCount INT NOT NULL DEFAULT 0,
+                              NewestModified TIMESTAMP NULL DEFAULT NULL,
+                              QuotaBytes BIGINT NULL DEFAULT NULL,
+                              CONSTRAINT fk_stats_folder
+                                  FOREIGN KEY (FolderID) REFERENCES Folders(FolderID)
+                                      ON UPDATE CASCADE ON DELETE CASCADE
+);
+INSERT INTO FolderStats (FolderID) SELECT FolderID FROM Folders;
+
+DELIMITER //
+
+-- Cộng delta vào folder p_folder và mọi tổ tiên của nó
+CREATE PROCEDURE folder_stats_apply(IN p_folder INT, IN p_bytes BIGINT, IN p_count INT, IN p_modified TIMESTAMP)
+BEGIN
+    UPDATE FolderStats s JOIN FolderClosure c ON c.AncestorID = s.FolderID
+    SET s.TotalBytes = s.TotalBytes + p_bytes,
+        s.FileCount = s.FileCount + p_count,
+        s.NewestModified = IF(p_modified IS NOT NULL AND (s.NewestModified IS NULL OR p_modified > s.NewestModified),
+                              p_modified, s.NewestModified)
+    WHERE c.DescendantID = p_folder;
+END//
+
+CREATE TRIGGER trg_folders_stats_ins AFTER INSERT ON Folders FOR EACH ROW
+BEGIN
+    INSERT IGNORE INTO FolderStats (FolderID) VALUES (NEW.FolderID);
+END//
+
+CREATE TRIGGER trg_files_stats_ins AFTER INSERT ON Files FOR EACH ROW
+BEGIN
+    IF NEW.DeletedAt IS NULL THEN
+        CALL folder_stats_apply(NEW.FolderID, COALESCE(NEW.FileSize, 0), 1, NEW.LastModified);
+    END IF;
+END//
+
+-- Bỏ qua các UPDATE không đổi dung lượng / trạng thái / thời điểm sửa (LastAccessedAt, Tier...)
+CREATE TRIGGER trg_files_stats_upd AFTER UPDATE ON Files FOR EACH ROW
+BEGIN
+    DECLARE old_live INT DEFAULT IF(OLD.DeletedAt IS NULL, 1, 0);
+    DECLARE new_live INT DEFAULT IF(NEW.DeletedAt IS NULL, 1, 0);
+    IF OLD.FolderID <> NEW.FolderID THEN
+        IF old_live = 1 THEN
+            CALL folder_stats_apply(OLD.FolderID, -COALESCE(OLD.FileSize, 0), -1, NULL);
+        END IF;
+        IF new_live = 1 THEN
+            CALL folder_stats_apply(NEW.FolderID, COALESCE(NEW.FileSize, 0), 1, NEW.LastModified);
+        END IF;
+    ELSEIF old_live <> new_live
+        OR (new_live = 1 AND (NOT (OLD.FileSize <=> NEW.FileSize) OR NOT (OLD.LastModified <=> NEW.LastModified))) THEN
+        CALL folder_stats_apply(NEW.FolderID,
+                                new_live * COALESCE(NEW.FileSize, 0) - old_live * COALESCE(OLD.FileSize, 0),
+                                new_live - old_live,
+                                IF(new_live = 1, NEW.LastModified, NULL));
+    END IF;
+END//
+
+CREATE TRIGGER trg_files_stats_del AFTER DELETE ON Files FOR EACH ROW
+BEGIN
+    IF OLD.DeletedAt IS NULL THEN
+        CALL folder_stats_apply(OLD.FolderID, -COALESCE(OLD.FileSize, 0), -1, NULL);
+    END IF;
+END//
+
+DELIMITER ;
+
 -- Bảng quản lý phân quyền cho FILE
 CREATE TABLE FileAccessControl (
                                    FileAccessID INT AUTO_INCREMENT PRIMARY KEY,
@@ -128,7 +254,13 @@ CREATE TABLE SyncHistory (
 -- ============================
 
 CREATE INDEX idx_folders_parent ON Folders(ParentFolderID);
+CREATE INDEX idx_closure_descendant ON FolderClosure(DescendantID, Depth);
 CREATE INDEX idx_files_folder ON Files(FolderID);
+CREATE INDEX idx_files_hash ON Files(FileHash, FileSize);
+CREATE INDEX idx_files_deleted ON Files(DeletedAt);
+CREATE INDEX idx_files_tier ON Files(Tier, FileID);
+CREATE INDEX idx_versions_kind ON FileVersions(Kind);
+CREATE INDEX idx_packed_segment ON PackedContent(SegmentID);
 CREATE INDEX idx_fileaccess_user ON FileAccessControl(UserID);
 CREATE INDEX idx_fileaccess_file ON FileAccessControl(FileID);
 CREATE INDEX idx_folderaccess_user ON FolderAccessControl(UserID);
@@ -136,3 +268,184 @@ CREATE INDEX idx_folderaccess_folder ON FolderAccessControl(FolderID);
 CREATE INDEX idx_synchistory_user ON SyncHistory(UserID);
 CREATE INDEX idx_synchistory_file ON SyncHistory(FileID);
 CREATE INDEX idx_synchistory_folder ON SyncHistory(FolderID);
+
+-- Nhật ký nhân bản primary -> replica (xem migrations/008_replication_log.sql)
+CREATE TABLE ReplicationLog (
+                                Seq BIGINT AUTO_INCREMENT PRIMARY KEY,
+                                TableName VARCHAR(32) NOT NULL,
+                                Op CHAR(1) NOT NULL,
+                                RowData JSON NOT NULL,
+                                CreatedAt TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+                                INDEX idx_repl_created (CreatedAt)
+);
+
+CREATE TABLE ReplicationState (
+                                ID TINYINT NOT NULL PRIMARY KEY,
+                                AppliedSeq BIGINT NOT NULL DEFAULT 0,
+                                Promoted TINYINT NOT NULL DEFAULT 0,
+                                UpdatedAt TIMESTAMP NULL DEFAULT NULL
+);
+
+CREATE TABLE ReplicationPendingContent (
+                                FileID INT NOT NULL PRIMARY KEY
+);
+
+DELIMITER //
+
+CREATE TRIGGER trg_users_repl_ins AFTER INSERT ON Users FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData) VALUES ('Users', 'U', JSON_OBJECT(
+            'UserID', NEW.UserID, 'Username', NEW.Username, 'PasswordHash', NEW.PasswordHash, 'Email', NEW.Email,
+            'RoleID', NEW.RoleID, 'CreatedAt', ROUND(UNIX_TIMESTAMP(NEW.CreatedAt) * 1000)));
+    END IF;
+END//
+
+CREATE TRIGGER trg_users_repl_upd AFTER UPDATE ON Users FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData) VALUES ('Users', 'U', JSON_OBJECT(
+            'UserID', NEW.UserID, 'Username', NEW.Username, 'PasswordHash', NEW.PasswordHash, 'Email', NEW.Email,
+            'RoleID', NEW.RoleID, 'CreatedAt', ROUND(UNIX_TIMESTAMP(NEW.CreatedAt) * 1000)));
+    END IF;
+END//
+
+CREATE TRIGGER trg_users_repl_del AFTER DELETE ON Users FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData) VALUES ('Users', 'D', JSON_OBJECT('UserID', OLD.UserID));
+    END IF;
+END//
+
+CREATE TRIGGER trg_folders_repl_ins AFTER INSERT ON Folders FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData) VALUES ('Folders', 'U', JSON_OBJECT(
+            'FolderID', NEW.FolderID, 'ParentFolderID', NEW.ParentFolderID, 'FolderName', NEW.FolderName,
+            'LastModified', ROUND(UNIX_TIMESTAMP(NEW.LastModified) * 1000),
+            'CreatedAt', ROUND(UNIX_TIMESTAMP(NEW.CreatedAt) * 1000)));
+    END IF;
+END//
+
+CREATE TRIGGER trg_folders_repl_upd AFTER UPDATE ON Folders FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData) VALUES ('Folders', 'U', JSON_OBJECT(
+            'FolderID', NEW.FolderID, 'ParentFolderID', NEW.ParentFolderID, 'FolderName', NEW.FolderName,
+            'LastModified', ROUND(UNIX_TIMESTAMP(NEW.LastModified) * 1000),
+            'CreatedAt', ROUND(UNIX_TIMESTAMP(NEW.CreatedAt) * 1000)));
+    END IF;
+END//
+
+CREATE TRIGGER trg_folders_repl_del AFTER DELETE ON Folders FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData) VALUES ('Folders', 'D', JSON_OBJECT('FolderID', OLD.FolderID));
+    END IF;
+END//
+
+CREATE TRIGGER trg_files_repl_ins AFTER INSERT ON Files FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData) VALUES ('Files', 'U', JSON_OBJECT(
+            'FileID', NEW.FileID, 'FolderID', NEW.FolderID, 'FileName', NEW.FileName, 'FileSize', NEW.FileSize,
+            'FileHash', NEW.FileHash, 'LastModified', ROUND(UNIX_TIMESTAMP(NEW.LastModified) * 1000),
+            'CreatedAt', ROUND(UNIX_TIMESTAMP(NEW.CreatedAt) * 1000),
+            'DeletedAt', ROUND(UNIX_TIMESTAMP(NEW.DeletedAt) * 1000), 'DeletedBy', NEW.DeletedBy,
+            'VersionNo', NEW.VersionNo));
+    END IF;
+END//
+
+-- Chỉ đổi cột tầng lạnh / LastAccessedAt (TieringService) thì không ghi
+CREATE TRIGGER trg_files_repl_upd AFTER UPDATE ON Files FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL AND NOT (OLD.FolderID <=> NEW.FolderID AND OLD.FileName <=> NEW.FileName
+            AND OLD.FileSize <=> NEW.FileSize AND OLD.FileHash <=> NEW.FileHash
+            AND OLD.LastModified <=> NEW.LastModified AND OLD.DeletedAt <=> NEW.DeletedAt
+            AND OLD.DeletedBy <=> NEW.DeletedBy AND OLD.VersionNo <=> NEW.VersionNo) THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData) VALUES ('Files', 'U', JSON_OBJECT(
+            'FileID', NEW.FileID, 'FolderID', NEW.FolderID, 'FileName', NEW.FileName, 'FileSize', NEW.FileSize,
+            'FileHash', NEW.FileHash, 'LastModified', ROUND(UNIX_TIMESTAMP(NEW.LastModified) * 1000),
+            'CreatedAt', ROUND(UNIX_TIMESTAMP(NEW.CreatedAt) * 1000),
+            'DeletedAt', ROUND(UNIX_TIMESTAMP(NEW.DeletedAt) * 1000), 'DeletedBy', NEW.DeletedBy,
+            'VersionNo', NEW.VersionNo));
+    END IF;
+END//
+
+CREATE TRIGGER trg_files_repl_del AFTER DELETE ON Files FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData) VALUES ('Files', 'D', JSON_OBJECT('FileID', OLD.FileID));
+    END IF;
+END//
+
+CREATE TRIGGER trg_folacc_repl_ins AFTER INSERT ON FolderAccessControl FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData) VALUES ('FolderAccessControl', 'U', JSON_OBJECT(
+            'FolderAccessID', NEW.FolderAccessID, 'UserID', NEW.UserID, 'FolderID', NEW.FolderID,
+            'Permission', NEW.Permission, 'GrantedAt', ROUND(UNIX_TIMESTAMP(NEW.GrantedAt) * 1000)));
+    END IF;
+END//
+
+CREATE TRIGGER trg_folacc_repl_upd AFTER UPDATE ON FolderAccessControl FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData) VALUES ('FolderAccessControl', 'U', JSON_OBJECT(
+            'FolderAccessID', NEW.FolderAccessID, 'UserID', NEW.UserID, 'FolderID', NEW.FolderID,
+            'Permission', NEW.Permission, 'GrantedAt', ROUND(UNIX_TIMESTAMP(NEW.GrantedAt) * 1000)));
+    END IF;
+END//
+
+CREATE TRIGGER trg_folacc_repl_del AFTER DELETE ON FolderAccessControl FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData)
+        VALUES ('FolderAccessControl', 'D', JSON_OBJECT('FolderAccessID', OLD.FolderAccessID));
+    END IF;
+END//
+
+CREATE TRIGGER trg_facc_repl_ins AFTER INSERT ON FileAccessControl FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData) VALUES ('FileAccessControl', 'U', JSON_OBJECT(
+            'FileAccessID', NEW.FileAccessID, 'UserID', NEW.UserID, 'FileID', NEW.FileID,
+            'Permission', NEW.Permission, 'GrantedAt', ROUND(UNIX_TIMESTAMP(NEW.GrantedAt) * 1000)));
+    END IF;
+END//
+
+CREATE TRIGGER trg_facc_repl_upd AFTER UPDATE ON FileAccessControl FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData) VALUES ('FileAccessControl', 'U', JSON_OBJECT(
+            'FileAccessID', NEW.FileAccessID, 'UserID', NEW.UserID, 'FileID', NEW.FileID,
+            'Permission', NEW.Permission, 'GrantedAt', ROUND(UNIX_TIMESTAMP(NEW.GrantedAt) * 1000)));
+    END IF;
+END//
+
+CREATE TRIGGER trg_facc_repl_del AFTER DELETE ON FileAccessControl FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData)
+        VALUES ('FileAccessControl', 'D', JSON_OBJECT('FileAccessID', OLD.FileAccessID));
+    END IF;
+END//
+
+-- FolderStats: chỉ hạn mức được nhân bản (tổng dung lượng do trigger của mỗi server tự giữ)
+CREATE TRIGGER trg_stats_repl_ins AFTER INSERT ON FolderStats FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL AND NEW.QuotaBytes IS NOT NULL THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData)
+        VALUES ('FolderStats', 'U', JSON_OBJECT('FolderID', NEW.FolderID, 'QuotaBytes', NEW.QuotaBytes));
+    END IF;
+END//
+
+CREATE TRIGGER trg_stats_repl_upd AFTER UPDATE ON FolderStats FOR EACH ROW
+BEGIN
+    IF @replication_apply IS NULL AND NOT (OLD.QuotaBytes <=> NEW.QuotaBytes) THEN
+        INSERT INTO ReplicationLog (TableName, Op, RowData)
+        VALUES ('FolderStats', 'U', JSON_OBJECT('FolderID', NEW.FolderID, 'QuotaBytes', NEW.QuotaBytes));
+    END IF;
+END//
+
+DELIMITER ;